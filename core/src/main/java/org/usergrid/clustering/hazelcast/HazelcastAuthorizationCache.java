@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+import org.usergrid.persistence.cassandra.AuthorizationCache;
+
+/**
+ * Wraps a node local {@link AuthorizationCache} and broadcasts invalidations
+ * to every node in the Hazelcast cluster, so a role or permission change on
+ * one node takes effect on all of them
+ * 
+ */
+public class HazelcastAuthorizationCache
+        extends
+        HazelcastInvalidatingCache<AuthorizationCache, HazelcastAuthorizationCache.Invalidation>
+        implements AuthorizationCache {
+
+    public static final String DEFAULT_TOPIC = "usergrid.authorization.cache";
+
+    public HazelcastAuthorizationCache(AuthorizationCache delegate) {
+        super(delegate, DEFAULT_TOPIC);
+    }
+
+    @Override
+    public Object get(UUID applicationId, UUID principalId) {
+        return delegate.get(applicationId, principalId);
+    }
+
+    @Override
+    public void put(UUID applicationId, UUID principalId, Object grants) {
+        delegate.put(applicationId, principalId, grants);
+    }
+
+    @Override
+    public void invalidate(UUID applicationId, UUID principalId) {
+        delegate.invalidate(applicationId, principalId);
+        publish(new Invalidation(applicationId, principalId, false));
+    }
+
+    @Override
+    public void invalidateApplication(UUID applicationId) {
+        delegate.invalidateApplication(applicationId);
+        publish(new Invalidation(applicationId, null, true));
+    }
+
+    @Override
+    protected void invalidateLocally(Invalidation invalidation) {
+        if (invalidation.application) {
+            delegate.invalidateApplication(invalidation.applicationId);
+        } else {
+            delegate.invalidate(invalidation.applicationId,
+                    invalidation.principalId);
+        }
+    }
+
+    public static class Invalidation implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final UUID applicationId;
+        private final UUID principalId;
+        private final boolean application;
+
+        public Invalidation(UUID applicationId, UUID principalId,
+                boolean application) {
+            this.applicationId = applicationId;
+            this.principalId = principalId;
+            this.application = application;
+        }
+
+        @Override
+        public String toString() {
+            return application ? applicationId.toString() : applicationId
+                    + "/" + principalId;
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.usergrid.persistence.cassandra.EntityCache;
+import org.usergrid.persistence.cassandra.EntityCacheKey;
+
+/**
+ * Wraps a node local {@link EntityCache} and broadcasts invalidations to every
+ * node in the Hazelcast cluster, so a write on one node evicts the entity from
+ * the caches on all of them
+ * 
+ */
+public class HazelcastEntityCache extends
+        HazelcastInvalidatingCache<EntityCache, EntityCacheKey> implements
+        EntityCache {
+
+    public static final String DEFAULT_TOPIC = "usergrid.entity.cache";
+
+    public HazelcastEntityCache(EntityCache delegate) {
+        super(delegate, DEFAULT_TOPIC);
+    }
+
+    @Override
+    public Map<String, Object> get(UUID applicationId, UUID entityId) {
+        return delegate.get(applicationId, entityId);
+    }
+
+    @Override
+    public long getGeneration(UUID applicationId, UUID entityId) {
+        return delegate.getGeneration(applicationId, entityId);
+    }
+
+    @Override
+    public void put(UUID applicationId, UUID entityId, long generation,
+            Map<String, Object> properties, long size) {
+        delegate.put(applicationId, entityId, generation, properties, size);
+    }
+
+    @Override
+    public void invalidate(UUID applicationId, UUID entityId) {
+        delegate.invalidate(applicationId, entityId);
+        publish(new EntityCacheKey(applicationId, entityId));
+    }
+
+    @Override
+    protected void invalidateLocally(EntityCacheKey key) {
+        delegate.invalidate(key.getApplicationId(), key.getEntityId());
+    }
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MessageListener;
+
+/**
+ * Base for the wrappers of node local caches that broadcast invalidations to
+ * every node in the Hazelcast cluster. Subclasses implement the cache
+ * interface by delegating to the local cache, {@link #publish(Object)} each
+ * invalidation after applying it locally, and apply the invalidations
+ * published by other nodes in {@link #invalidateLocally(Object)}.
+ * 
+ * @param <C>
+ *            the cache interface
+ * @param <M>
+ *            the invalidation message, must be serializable
+ */
+public abstract class HazelcastInvalidatingCache<C, M> implements
+        MessageListener<M> {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(HazelcastInvalidatingCache.class);
+
+    protected final C delegate;
+
+    private String topicName;
+
+    private ITopic<M> topic;
+
+    protected HazelcastInvalidatingCache(C delegate, String topicName) {
+        this.delegate = delegate;
+        this.topicName = topicName;
+    }
+
+    public void init() {
+        init(Hazelcast.<M> getTopic(topicName));
+    }
+
+    void init(ITopic<M> topic) {
+        this.topic = topic;
+        topic.addMessageListener(this);
+        logger.info("Invalidations of {} will be published to topic {}",
+                delegate.getClass().getSimpleName(), topicName);
+    }
+
+    public void destroy() {
+        if (topic != null) {
+            topic.removeMessageListener(this);
+        }
+    }
+
+    public String getTopicName() {
+        return topicName;
+    }
+
+    public void setTopicName(String topicName) {
+        this.topicName = topicName;
+    }
+
+    public C getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Tell the other nodes about an invalidation. A failure is logged, the
+     * other nodes then only see the change once their entries expire.
+     */
+    protected void publish(M invalidation) {
+        try {
+            topic.publish(invalidation);
+        } catch (Exception e) {
+            logger.error("Unable to publish invalidation " + invalidation
+                    + " to topic " + topicName, e);
+        }
+    }
+
+    @Override
+    public void onMessage(M invalidation) {
+        invalidateLocally(invalidation);
+    }
+
+    /**
+     * Apply an invalidation published by any node, this one included, to the
+     * local cache
+     */
+    protected abstract void invalidateLocally(M invalidation);
+
+}
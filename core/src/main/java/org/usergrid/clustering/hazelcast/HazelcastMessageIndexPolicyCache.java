@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import java.util.UUID;
+
+import org.usergrid.mq.cassandra.MessageIndexPolicy;
+import org.usergrid.mq.cassandra.MessageIndexPolicyCache;
+import org.usergrid.persistence.cassandra.EntityCacheKey;
+
+/**
+ * Wraps a node local {@link MessageIndexPolicyCache} and broadcasts
+ * invalidations to every node in the Hazelcast cluster, so a property made
+ * indexed on one node is indexed in the messages posted on all of them
+ * 
+ */
+public class HazelcastMessageIndexPolicyCache extends
+        HazelcastInvalidatingCache<MessageIndexPolicyCache, EntityCacheKey>
+        implements MessageIndexPolicyCache {
+
+    public static final String DEFAULT_TOPIC = "usergrid.queue.index.policy.cache";
+
+    public HazelcastMessageIndexPolicyCache(MessageIndexPolicyCache delegate) {
+        super(delegate, DEFAULT_TOPIC);
+    }
+
+    @Override
+    public MessageIndexPolicy get(UUID applicationId, UUID queueId) {
+        return delegate.get(applicationId, queueId);
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return delegate.getInvalidationCount();
+    }
+
+    @Override
+    public void put(UUID applicationId, UUID queueId,
+            MessageIndexPolicy policy, long invalidationCount) {
+        delegate.put(applicationId, queueId, policy, invalidationCount);
+    }
+
+    @Override
+    public void invalidate(UUID applicationId, UUID queueId) {
+        delegate.invalidate(applicationId, queueId);
+        publish(new EntityCacheKey(applicationId, queueId));
+    }
+
+    @Override
+    protected void invalidateLocally(EntityCacheKey key) {
+        delegate.invalidate(key.getApplicationId(), key.getEntityId());
+    }
+
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.mq.cassandra.QueueNotifier;
+
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MessageListener;
+
+/**
+ * Wraps a node local {@link QueueNotifier} and broadcasts notifications to
+ * every node in the Hazelcast cluster, so a post on one node wakes the readers
+ * long polling the queue on all of them
+ * 
+ */
+public class HazelcastQueueNotifier implements QueueNotifier,
+        MessageListener<String> {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(HazelcastQueueNotifier.class);
+
+    public static final String DEFAULT_TOPIC = "usergrid.queue.notifications";
+
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    private final QueueNotifier delegate;
+
+    private String topicName = DEFAULT_TOPIC;
+
+    private ITopic<String> topic;
+
+    public HazelcastQueueNotifier(QueueNotifier delegate) {
+        this.delegate = delegate;
+    }
+
+    public void init() {
+        topic = Hazelcast.getTopic(topicName);
+        topic.addMessageListener(this);
+        logger.info("Queue notifications will be published to topic {}",
+                topicName);
+    }
+
+    public void destroy() {
+        if (topic != null) {
+            topic.removeMessageListener(this);
+        }
+    }
+
+    public String getTopicName() {
+        return topicName;
+    }
+
+    public void setTopicName(String topicName) {
+        this.topicName = topicName;
+    }
+
+    @Override
+    public Waiter register(UUID applicationId, UUID queueId) {
+        return delegate.register(applicationId, queueId);
+    }
+
+    @Override
+    public void messagesPosted(UUID applicationId, UUID queueId) {
+        delegate.messagesPosted(applicationId, queueId);
+
+        try {
+            topic.publish(NODE_ID + "/" + applicationId + "/" + queueId);
+        } catch (Exception e) {
+            logger.error("Unable to publish notification of queue " + queueId,
+                    e);
+        }
+    }
+
+    @Override
+    public void onMessage(String notification) {
+        String[] parts = notification.split("/");
+        if (parts.length != 3) {
+            logger.warn("Ignoring malformed queue notification {}",
+                    notification);
+            return;
+        }
+
+        // local waiters were already signalled when the post was made
+        if (NODE_ID.equals(parts[0])) {
+            return;
+        }
+
+        delegate.messagesPosted(UUID.fromString(parts[1]),
+                UUID.fromString(parts[2]));
+    }
+
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.usergrid.mq.cassandra.QueueSubscriberCache;
+import org.usergrid.persistence.cassandra.EntityCacheKey;
+
+/**
+ * Wraps a node local {@link QueueSubscriberCache} and broadcasts invalidations
+ * to every node in the Hazelcast cluster, so a queue subscribed on one node
+ * gets the messages posted on all of them
+ * 
+ */
+public class HazelcastQueueSubscriberCache extends
+        HazelcastInvalidatingCache<QueueSubscriberCache, EntityCacheKey>
+        implements QueueSubscriberCache {
+
+    public static final String DEFAULT_TOPIC = "usergrid.queue.subscribers.cache";
+
+    public HazelcastQueueSubscriberCache(QueueSubscriberCache delegate) {
+        super(delegate, DEFAULT_TOPIC);
+    }
+
+    @Override
+    public List<String> get(UUID applicationId, UUID publisherQueueId) {
+        return delegate.get(applicationId, publisherQueueId);
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return delegate.getInvalidationCount();
+    }
+
+    @Override
+    public void put(UUID applicationId, UUID publisherQueueId,
+            List<String> subscriberQueuePaths, long invalidationCount) {
+        delegate.put(applicationId, publisherQueueId, subscriberQueuePaths,
+                invalidationCount);
+    }
+
+    @Override
+    public void invalidate(UUID applicationId, UUID publisherQueueId) {
+        delegate.invalidate(applicationId, publisherQueueId);
+        publish(new EntityCacheKey(applicationId, publisherQueueId));
+    }
+
+    @Override
+    protected void invalidateLocally(EntityCacheKey key) {
+        delegate.invalidate(key.getApplicationId(), key.getEntityId());
+    }
+
+}
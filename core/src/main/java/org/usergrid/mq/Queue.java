@@ -45,6 +45,19 @@ public class Queue {
 	public static final String QUEUE_NEWEST = "newest";
 	public static final String QUEUE_OLDEST = "oldest";
 
+	/**
+	 * Which message properties are indexed, see
+	 * org.usergrid.mq.cassandra.MessageIndexPolicy
+	 */
+	public static final String QUEUE_INDEXED_PROPERTIES = "indexed_properties";
+
+	/**
+	 * Whether the queue can be read by consumer groups split into partitions.
+	 * Setting it writes the messages already in the queue to the partitions
+	 * of the inbox, posts write them from then on.
+	 */
+	public static final String QUEUE_CONSUMER_GROUPS = "consumer_groups";
+
 	@SuppressWarnings("rawtypes")
 	public static final Map<String, Class> QUEUE_PROPERTIES = hashMap(
 			QUEUE_PATH, (Class) String.class).map(QUEUE_ID, UUID.class)
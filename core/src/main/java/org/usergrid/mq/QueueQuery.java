@@ -38,6 +38,8 @@ public class QueueQuery extends Query {
 	boolean _synchronized;
 	boolean update = true;
 	long timeout;
+	int partitions;
+	long wait;
 
 	public QueueQuery() {
 	}
@@ -55,6 +57,8 @@ public class QueueQuery extends Query {
 			position = q.position;
 			_synchronized = q._synchronized;
 			update = q.update;
+			partitions = q.partitions;
+			wait = q.wait;
 		}
 		
 	}
@@ -132,6 +136,16 @@ public class QueueQuery extends Query {
 		  query.setTimeout(ConversionUtils.getLong(first(params.get("timeout"))));
 		}
 
+		if (params.containsKey("partitions")) {
+			query = newQueryIfNull(query);
+			query.setPartitions(getInt(first(params.get("partitions"))));
+		}
+
+		if (params.containsKey("wait")) {
+			query = newQueryIfNull(query);
+			query.setWait(getLong(first(params.get("wait"))));
+		}
+
 		if ((query != null) && (consumer != null)) {
 			query.setPositionIfUnset(QueuePosition.CONSUMER);
 		}
@@ -277,5 +291,56 @@ public class QueueQuery extends Query {
     return this;
   }
 
+  /**
+   * @return the number of partitions the consumer group is split into, 0 if
+   *         the consumer isn't partitioned
+   */
+  public int getPartitions() {
+    return partitions;
+  }
+
+  /**
+   * Split a consumer into a group of leased partitions. Transactional reads
+   * then only contend for a lease when a partition is first taken or its
+   * lease is renewed, rather than on every read. Messages are split over
+   * the partitions when they're posted, so there can be at most
+   * {@link org.usergrid.mq.cassandra.QueueManagerImpl#QUEUE_PARTITIONS}, and
+   * only queues with {@link Queue#QUEUE_CONSUMER_GROUPS} set can be read this
+   * way. Messages posted before it was set aren't seen by the partitions.
+   * 
+   * @param partitions the number of partitions
+   */
+  public void setPartitions(int partitions) {
+    this.partitions = partitions;
+  }
+
+  public QueueQuery withPartitions(int partitions) {
+    setPartitions(partitions);
+    return this;
+  }
+
+  /**
+   * @return the number of milliseconds to wait for messages when none are
+   *         available, 0 to return immediately
+   */
+  public long getWait() {
+    return wait;
+  }
+
+  /**
+   * Long poll the queue. When a read finds no messages it blocks until
+   * messages are posted to the queue or the wait elapses, instead of the
+   * client polling again.
+   * 
+   * @param wait the number of milliseconds to wait
+   */
+  public void setWait(long wait) {
+    this.wait = wait;
+  }
+
+  public QueueQuery withWait(long wait) {
+    setWait(wait);
+    return this;
+  }
 
 }
@@ -28,6 +28,7 @@ import static org.usergrid.utils.ConversionUtils.getLong;
 import static org.usergrid.utils.ConversionUtils.object;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -102,8 +103,11 @@ public class CassandraMQUtils {
   }
 
   public static Mutator<ByteBuffer> addMessageToMutator(Mutator<ByteBuffer> m, Message message, long timestamp) {
+    return addMessageToMutator(m, message, serializeMessage(message), timestamp);
+  }
 
-    Map<ByteBuffer, ByteBuffer> columns = serializeMessage(message);
+  public static Mutator<ByteBuffer> addMessageToMutator(Mutator<ByteBuffer> m, Message message,
+      Map<ByteBuffer, ByteBuffer> columns, long timestamp) {
 
     if (columns == null) {
       return m;
@@ -210,6 +214,27 @@ public class CassandraMQUtils {
     bytes.putLong(ts);
     return (ByteBuffer) bytes.rewind();
   }
+
+  /**
+   * Get the row key of one partition of a queue's inbox, for the same time
+   * shard as {@link #getQueueShardRowKey(UUID, long)}
+   * 
+   * @param uuid
+   *          The queue id
+   * @param partition
+   *          The inbox partition the messages were written to
+   * @param ts
+   *          The time shard
+   * @return
+   */
+  public static ByteBuffer getQueuePartitionRowKey(UUID uuid, int partition, long ts) {
+    ByteBuffer bytes = ByteBuffer.allocate(28);
+    bytes.putLong(uuid.getMostSignificantBits());
+    bytes.putLong(uuid.getLeastSignificantBits());
+    bytes.putInt(partition);
+    bytes.putLong(ts);
+    return (ByteBuffer) bytes.rewind();
+  }
   
   /**
    * Get a row key in format of queueId+clientId
@@ -270,6 +295,75 @@ public class CassandraMQUtils {
     }
     return consumerId;
   }
+
+  /**
+   * Get the id a partition of a consumer group reads and keeps its
+   * transactions under
+   * 
+   * @param consumerId
+   *          The consumer group id
+   * @param partition
+   *          The partition
+   * @return
+   */
+  public static UUID getPartitionConsumerId(UUID consumerId, int partition) {
+    return UUID.nameUUIDFromBytes(("partition:" + consumerId + ":" + partition).getBytes());
+  }
+
+  /**
+   * Get the id of the row holding the lease on a partition of a consumer
+   * group
+   * 
+   * @param consumerId
+   *          The consumer group id
+   * @param partition
+   *          The partition
+   * @return
+   */
+  public static UUID getPartitionLeaseId(UUID consumerId, int partition) {
+    return UUID.nameUUIDFromBytes(("lease:" + consumerId + ":" + partition).getBytes());
+  }
+
+  /**
+   * Get the inbox partition a message is written to when it's posted. Both
+   * halves of the id are mixed in since time uuids from the same node share
+   * their least significant bits.
+   * 
+   * @param messageId
+   * @param partitions
+   *          The number of inbox partitions
+   * @return
+   */
+  public static int getMessagePartition(UUID messageId, int partitions) {
+    long h = messageId.getMostSignificantBits() ^ messageId.getLeastSignificantBits();
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) ((h & Long.MAX_VALUE) % partitions);
+  }
+
+  /**
+   * Get the inbox partitions a partition of a consumer group reads, every
+   * one whose number modulo the size of the group is the partition's
+   * 
+   * @param partition
+   *          The partition of the consumer group
+   * @param partitions
+   *          The number of partitions in the group, at most the number of
+   *          inbox partitions
+   * @param inboxPartitions
+   *          The number of inbox partitions
+   * @return
+   */
+  public static List<Integer> getInboxPartitions(int partition, int partitions, int inboxPartitions) {
+    List<Integer> results = new ArrayList<Integer>();
+    for (int i = partition; i < inboxPartitions; i += partitions) {
+      results.add(i);
+    }
+    return results;
+  }
   
   
 }
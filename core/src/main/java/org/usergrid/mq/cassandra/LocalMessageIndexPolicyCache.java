@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.persistence.cassandra.EntityCacheKey;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * In memory {@link MessageIndexPolicyCache} bounded by the number of cached
+ * queues. A max size of 0 disables caching.
+ * 
+ * This cache only sees queue updates made on this node. For a cluster, wrap it
+ * with org.usergrid.clustering.hazelcast.HazelcastMessageIndexPolicyCache,
+ * since until the ttl expires messages posted here aren't indexed by a
+ * property made indexed on another node, and queries by it leave them out.
+ * 
+ */
+public class LocalMessageIndexPolicyCache implements MessageIndexPolicyCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalMessageIndexPolicyCache.class);
+
+  private final Cache<EntityCacheKey, MessageIndexPolicy> cache;
+
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * 
+   * @param maxSize
+   *          The max number of queues cached
+   * @param ttlSeconds
+   *          How long a policy stays in the cache after it's read. 0 or less
+   *          to never expire
+   */
+  public LocalMessageIndexPolicyCache(long maxSize, long ttlSeconds) {
+    if (maxSize <= 0) {
+      logger.info("Message index policy cache is disabled");
+      cache = null;
+      return;
+    }
+
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxSize);
+
+    if (ttlSeconds > 0) {
+      builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    cache = builder.build();
+  }
+
+  @Override
+  public MessageIndexPolicy get(UUID applicationId, UUID queueId) {
+    if (cache == null) {
+      return null;
+    }
+
+    return cache.getIfPresent(new EntityCacheKey(applicationId, queueId));
+  }
+
+  @Override
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  @Override
+  public void put(UUID applicationId, UUID queueId, MessageIndexPolicy policy, long invalidationCount) {
+    if ((cache == null) || (policy == null)) {
+      return;
+    }
+
+    EntityCacheKey key = new EntityCacheKey(applicationId, queueId);
+    cache.put(key, policy);
+
+    // invalidations count up before they remove, so one that began after the
+    // check below removes this entry itself
+    if (invalidations.get() != invalidationCount) {
+      cache.asMap().remove(key, policy);
+    }
+  }
+
+  @Override
+  public void invalidate(UUID applicationId, UUID queueId) {
+    if (cache == null) {
+      return;
+    }
+
+    invalidations.incrementAndGet();
+    cache.invalidate(new EntityCacheKey(applicationId, queueId));
+  }
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Notifies waiters in this JVM only. A signal is only kept for queues that
+ * have readers waiting on them, so notifying a queue nobody is polling is a
+ * map lookup.
+ * 
+ */
+public class LocalQueueNotifier implements QueueNotifier {
+
+  private final ConcurrentMap<String, Signal> signals = new ConcurrentHashMap<String, Signal>();
+
+  @Override
+  public Waiter register(UUID applicationId, UUID queueId) {
+    String key = getKey(applicationId, queueId);
+
+    while (true) {
+      Signal signal = signals.get(key);
+      if (signal == null) {
+        signal = new Signal();
+        Signal existing = signals.putIfAbsent(key, signal);
+        if (existing != null) {
+          signal = existing;
+        }
+      }
+
+      synchronized (signal) {
+        // the last waiter released it after we looked it up
+        if (signal.removed) {
+          continue;
+        }
+        signal.waiters++;
+        return new LocalWaiter(key, signal, signal.version);
+      }
+    }
+  }
+
+  @Override
+  public void messagesPosted(UUID applicationId, UUID queueId) {
+    Signal signal = signals.get(getKey(applicationId, queueId));
+    if (signal == null) {
+      return;
+    }
+
+    synchronized (signal) {
+      signal.version++;
+      signal.notifyAll();
+    }
+  }
+
+  /**
+   * @return the number of queues that have waiters
+   */
+  public int getWaitingQueueCount() {
+    return signals.size();
+  }
+
+  private static String getKey(UUID applicationId, UUID queueId) {
+    return applicationId + "/" + queueId;
+  }
+
+  private static class Signal {
+    private long version;
+    private int waiters;
+    private boolean removed;
+  }
+
+  private class LocalWaiter implements Waiter {
+
+    private final String key;
+    private final Signal signal;
+    private final long version;
+    private boolean released;
+
+    private LocalWaiter(String key, Signal signal, long version) {
+      this.key = key;
+      this.signal = signal;
+      this.version = version;
+    }
+
+    @Override
+    public boolean await(long timeout) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeout;
+
+      synchronized (signal) {
+        long remaining = timeout;
+        while ((signal.version == version) && (remaining > 0)) {
+          signal.wait(remaining);
+          remaining = deadline - System.currentTimeMillis();
+        }
+        return signal.version != version;
+      }
+    }
+
+    @Override
+    public void release() {
+      synchronized (signal) {
+        if (released) {
+          return;
+        }
+        released = true;
+
+        if (--signal.waiters == 0) {
+          signal.removed = true;
+          signals.remove(key, signal);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.persistence.cassandra.EntityCacheKey;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * In memory {@link QueueSubscriberCache} bounded by the number of cached
+ * publisher queues. A max size of 0 disables caching.
+ * 
+ * This cache only sees subscription changes made on this node. For a cluster,
+ * either wrap it with
+ * org.usergrid.clustering.hazelcast.HazelcastQueueSubscriberCache, or keep the
+ * ttl short, since until then posts made here don't reach a queue subscribed
+ * on another node.
+ * 
+ * A single invalidation count covers every queue, so a subscription change
+ * to any queue keeps subscribers read before it out of the cache. Those
+ * changes are rare next to posts.
+ * 
+ */
+public class LocalQueueSubscriberCache implements QueueSubscriberCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalQueueSubscriberCache.class);
+
+  private final Cache<EntityCacheKey, List<String>> cache;
+
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * 
+   * @param maxSize
+   *          The max number of publisher queues cached
+   * @param ttlSeconds
+   *          How long subscribers stay in the cache after they're read. 0 or
+   *          less to never expire
+   */
+  public LocalQueueSubscriberCache(long maxSize, long ttlSeconds) {
+    if (maxSize <= 0) {
+      logger.info("Queue subscriber cache is disabled");
+      cache = null;
+      return;
+    }
+
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxSize);
+
+    if (ttlSeconds > 0) {
+      builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    cache = builder.build();
+  }
+
+  @Override
+  public List<String> get(UUID applicationId, UUID publisherQueueId) {
+    if (cache == null) {
+      return null;
+    }
+
+    return cache.getIfPresent(new EntityCacheKey(applicationId, publisherQueueId));
+  }
+
+  @Override
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  @Override
+  public void put(UUID applicationId, UUID publisherQueueId, List<String> subscriberQueuePaths,
+      long invalidationCount) {
+    if ((cache == null) || (subscriberQueuePaths == null)) {
+      return;
+    }
+
+    EntityCacheKey key = new EntityCacheKey(applicationId, publisherQueueId);
+    cache.put(key, subscriberQueuePaths);
+
+    // invalidations count up before they remove, so one that began after the
+    // check below removes this entry itself
+    if (invalidations.get() != invalidationCount) {
+      cache.asMap().remove(key, subscriberQueuePaths);
+    }
+  }
+
+  @Override
+  public void invalidate(UUID applicationId, UUID publisherQueueId) {
+    if (cache == null) {
+      return;
+    }
+
+    invalidations.incrementAndGet();
+    cache.invalidate(new EntityCacheKey(applicationId, publisherQueueId));
+  }
+
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.usergrid.mq.Message;
+import org.usergrid.mq.Queue;
+
+/**
+ * Which message properties a queue indexes for filter queries, set by the
+ * queue's {@link Queue#QUEUE_INDEXED_PROPERTIES} property: "none", "all", or a
+ * list (or comma separated string) of property names. Queues without it index the messages
+ * posted with "indexed" set, as they always have.
+ * 
+ * Indexing a property multiplies the writes of every post to the queue, so
+ * work queues that are only read in order should index none.
+ * 
+ * The policy also carries the queue's {@link Queue#QUEUE_CONSUMER_GROUPS}
+ * setting, which decides if posts are written to the inbox partitions as well.
+ */
+public class MessageIndexPolicy {
+
+	public static final String NONE = "none";
+	public static final String ALL = "all";
+
+	/**
+	 * Index the messages that ask to be
+	 */
+	public static final MessageIndexPolicy DEFAULT = new MessageIndexPolicy(
+			false, false, null, false);
+
+	private final boolean none;
+	private final boolean all;
+	private final Set<String> properties;
+	private final boolean consumerGroups;
+
+	private MessageIndexPolicy(boolean none, boolean all,
+			Set<String> properties, boolean consumerGroups) {
+		this.none = none;
+		this.all = all;
+		this.properties = properties;
+		this.consumerGroups = consumerGroups;
+	}
+
+	private MessageIndexPolicy(boolean none, boolean all,
+			Set<String> properties) {
+		this(none, all, properties, false);
+	}
+
+	/**
+	 * @param value
+	 *            the queue's indexed_properties, or null
+	 * @return the policy it sets
+	 */
+	public static MessageIndexPolicy fromValue(Object value) {
+		if (value == null) {
+			return DEFAULT;
+		}
+		if (value instanceof Boolean) {
+			return (Boolean) value ? new MessageIndexPolicy(false, true, null)
+					: new MessageIndexPolicy(true, false, null);
+		}
+
+		Collection<?> names;
+		if (value instanceof Collection) {
+			names = (Collection<?>) value;
+		} else {
+			String s = value.toString().trim();
+			if (s.length() == 0) {
+				return DEFAULT;
+			}
+			if (NONE.equalsIgnoreCase(s)) {
+				return new MessageIndexPolicy(true, false, null);
+			}
+			if (ALL.equalsIgnoreCase(s)) {
+				return new MessageIndexPolicy(false, true, null);
+			}
+			names = Arrays.asList(s.split(","));
+		}
+
+		// message properties aren't case sensitive
+		Set<String> properties = new TreeSet<String>(
+				String.CASE_INSENSITIVE_ORDER);
+		for (Object name : names) {
+			if (name != null && name.toString().trim().length() > 0) {
+				properties.add(name.toString().trim());
+			}
+		}
+		if (properties.isEmpty()) {
+			return new MessageIndexPolicy(true, false, null);
+		}
+		return new MessageIndexPolicy(false, false,
+				Collections.unmodifiableSet(properties));
+	}
+
+	/**
+	 * @param consumerGroups
+	 *            the queue's consumer_groups
+	 * @return this policy for a queue that does or doesn't have consumer
+	 *         groups
+	 */
+	public MessageIndexPolicy withConsumerGroups(boolean consumerGroups) {
+		if (consumerGroups == this.consumerGroups) {
+			return this;
+		}
+		return new MessageIndexPolicy(none, all, properties, consumerGroups);
+	}
+
+	/**
+	 * @return true if messages posted to the queue are also written to the
+	 *         inbox partitions consumer groups read
+	 */
+	public boolean hasConsumerGroups() {
+		return consumerGroups;
+	}
+
+	/**
+	 * @param message
+	 * @return true if any of the message's properties are indexed
+	 */
+	public boolean indexes(Message message) {
+		if (none) {
+			return false;
+		}
+		if (all || (properties != null)) {
+			return true;
+		}
+		return message.isIndexed();
+	}
+
+	/**
+	 * @param property
+	 *            a property of a message this policy indexes
+	 * @return true if the property is indexed
+	 */
+	public boolean indexes(String property) {
+		if (none) {
+			return false;
+		}
+		if (properties == null) {
+			return true;
+		}
+		return properties.contains(property);
+	}
+
+	/**
+	 * @param property
+	 *            a property name from a query, which may be a path into a
+	 *            nested value
+	 * @return true if filters on the property can be answered from the index
+	 */
+	public boolean isSearchable(String property) {
+		if ((properties == null) || (property == null)) {
+			return !none;
+		}
+		int i = property.indexOf('.');
+		return properties.contains(i < 0 ? property : property.substring(0,
+				i));
+	}
+
+	@Override
+	public String toString() {
+		if (none) {
+			return NONE;
+		}
+		if (all) {
+			return ALL;
+		}
+		return properties != null ? properties.toString() : "indexed messages";
+	}
+
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import java.util.UUID;
+
+/**
+ * Cache of which message properties each queue indexes, so posting doesn't
+ * read the queue's indexed_properties every time. The queue manager
+ * invalidates a queue whenever its properties are updated.
+ * 
+ */
+public interface MessageIndexPolicyCache {
+
+  /**
+   * Get the index policy of a queue
+   * 
+   * @param applicationId
+   *          The application id
+   * @param queueId
+   *          The queue id
+   * @return The policy, or null if it isn't cached
+   */
+  public MessageIndexPolicy get(UUID applicationId, UUID queueId);
+
+  /**
+   * Get the number of invalidations made so far. Read it before reading the
+   * policy of a queue and pass it to {@link #put}, so a policy read before an
+   * invalidation isn't cached after it
+   * 
+   * @return The invalidation count
+   */
+  public long getInvalidationCount();
+
+  /**
+   * Cache the index policy of a queue, unless the cache has been invalidated
+   * since it was read
+   * 
+   * @param applicationId
+   *          The application id
+   * @param queueId
+   *          The queue id
+   * @param policy
+   *          The policy
+   * @param invalidationCount
+   *          The invalidation count from before the policy was read
+   */
+  public void put(UUID applicationId, UUID queueId, MessageIndexPolicy policy, long invalidationCount);
+
+  /**
+   * Remove the index policy of a queue from the cache
+   * 
+   * @param applicationId
+   *          The application id
+   * @param queueId
+   *          The queue id
+   */
+  public void invalidate(UUID applicationId, UUID queueId);
+
+}
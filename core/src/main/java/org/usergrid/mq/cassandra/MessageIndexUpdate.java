@@ -50,7 +50,7 @@ public class MessageIndexUpdate {
 	public static final boolean FULLTEXT = false;
 
 	final Message message;
-	final Map<String, List<Map.Entry<String, Object>>> propertyEntryList;
+	private Map<String, List<Map.Entry<String, Object>>> propertyEntryList;
 
 	public static final StringSerializer se = new StringSerializer();
 	public static final ByteBufferSerializer be = new ByteBufferSerializer();
@@ -61,8 +61,15 @@ public class MessageIndexUpdate {
 
 	public MessageIndexUpdate(Message message) {
 		this.message = message;
+	}
 
-		if (message.isIndexed()) {
+	/**
+	 * The index entries of the message's properties, worked out the first time
+	 * the message is posted to a queue that indexes it. Fanning out to
+	 * subscribers can get here from several threads.
+	 */
+	private synchronized Map<String, List<Map.Entry<String, Object>>> getPropertyEntryList() {
+		if (propertyEntryList == null) {
 			propertyEntryList = new HashMap<String, List<Map.Entry<String, Object>>>();
 
 			for (Map.Entry<String, Object> property : message.getProperties()
@@ -78,19 +85,27 @@ public class MessageIndexUpdate {
 
 				}
 			}
-
-		} else {
-			propertyEntryList = null;
 		}
+		return propertyEntryList;
 	}
 
 	public void addToMutation(Mutator<ByteBuffer> batch, UUID queueId,
 			long shard_ts, long timestamp) {
+		addToMutation(batch, queueId, shard_ts, timestamp,
+				MessageIndexPolicy.DEFAULT);
+	}
 
-		if (propertyEntryList != null) {
-			for (Entry<String, List<Entry<String, Object>>> property : propertyEntryList
+	public void addToMutation(Mutator<ByteBuffer> batch, UUID queueId,
+			long shard_ts, long timestamp, MessageIndexPolicy policy) {
+
+		if (policy.indexes(message)) {
+			for (Entry<String, List<Entry<String, Object>>> property : getPropertyEntryList()
 					.entrySet()) {
 
+				if (!policy.indexes(property.getKey())) {
+					continue;
+				}
+
 				for (Map.Entry<String, Object> indexEntry : property.getValue()) {
 
 					if (validIndexableValue(indexEntry.getValue())) {
@@ -16,6 +16,15 @@
 package org.usergrid.mq.cassandra;
 
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.serializers.BytesArraySerializer;
@@ -29,9 +38,12 @@ import org.slf4j.LoggerFactory;
 import org.usergrid.locking.LockManager;
 import org.usergrid.mq.QueueManager;
 import org.usergrid.mq.QueueManagerFactory;
+import org.usergrid.mq.cassandra.io.ConsumerLeases;
 import org.usergrid.persistence.cassandra.CassandraService;
 import org.usergrid.persistence.cassandra.CounterUtils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class QueueManagerFactoryImpl implements QueueManagerFactory {
 
 	public static final Logger logger = LoggerFactory
@@ -43,6 +55,24 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
 	private CounterUtils counterUtils;
 	private LockManager lockManager;
 
+	private int postBatchMutations = QueueManagerImpl.DEFAULT_POST_BATCH_MUTATIONS;
+	private long postBatchBytes = QueueManagerImpl.DEFAULT_POST_BATCH_BYTES;
+	private int postConcurrency = 0;
+	private ExecutorService postExecutor;
+	private QueueNotifier queueNotifier;
+	private long maxWait = QueueManagerImpl.DEFAULT_MAX_WAIT;
+	private int maxWaiters = QueueManagerImpl.DEFAULT_MAX_WAITERS;
+	private Semaphore waiters;
+	private QueueSubscriberCache subscriberCache;
+	private int fanoutConcurrency = 0;
+	private int fanoutBatchSize = QueueManagerImpl.DEFAULT_FANOUT_BATCH_SIZE;
+	private ExecutorService fanoutExecutor;
+	private long redeliveryDelay = QueueManagerImpl.DEFAULT_REDELIVERY_DELAY;
+	private final ConcurrentMap<UUID, Long> redeliveries = new ConcurrentHashMap<UUID, Long>();
+	private ScheduledExecutorService redeliveryScheduler;
+	private MessageIndexPolicyCache indexPolicyCache;
+	private ConsumerLeases consumerLeases;
+
 	public static final StringSerializer se = new StringSerializer();
 	public static final ByteBufferSerializer be = new ByteBufferSerializer();
 	public static final UUIDSerializer ue = new UUIDSerializer();
@@ -65,6 +95,66 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
 		this.lockManager = lockManager;
 	}
 
+	/**
+	 * Start looking for deliveries to subscribers to retry, every redelivery
+	 * delay, when they're delivered after posts return
+	 */
+	public synchronized void init() {
+		if ((fanoutConcurrency <= 0) || (redeliveryScheduler != null)) {
+			return;
+		}
+		long delay = Math.max(1, redeliveryDelay);
+		redeliveryScheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+						.setDaemon(true).setNameFormat("queue-redelivery-%d")
+						.build());
+		redeliveryScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					redeliver();
+				} catch (Exception e) {
+					logger.error("Unable to look for deliveries to retry", e);
+				}
+			}
+		}, delay, delay, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void destroy() {
+		if (redeliveryScheduler != null) {
+			redeliveryScheduler.shutdownNow();
+			redeliveryScheduler = null;
+		}
+		if (fanoutExecutor != null) {
+			fanoutExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Retry, on the fan-out executor, the deliveries that have been pending
+	 * for longer than the redelivery delay in each application that recorded
+	 * any
+	 */
+	void redeliver() throws Exception {
+		final long before = System.currentTimeMillis() - redeliveryDelay;
+		for (final UUID applicationId : QueueManagerImpl
+				.getDeliveryApplications(cass)) {
+			getFanoutExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						((QueueManagerImpl) getQueueManager(applicationId))
+								.redeliver(before);
+					} catch (Exception e) {
+						logger.error(
+								"Unable to retry pending deliveries of application "
+										+ applicationId, e);
+					}
+				}
+			});
+		}
+	}
+
 	@Override
 	public String getImpementationDescription() throws Exception {
 		return IMPLEMENTATION_DESCRIPTION;
@@ -74,11 +164,204 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
 	public QueueManager getQueueManager(UUID applicationId) {
 	    QueueManagerImpl qm = new QueueManagerImpl();
 	    qm.init(cass, counterUtils, lockManager, applicationId);
+	    qm.setPostBatching(postBatchMutations, postBatchBytes, getPostExecutor());
+	    qm.setQueueNotifier(queueNotifier, maxWait, getWaiters());
+	    qm.setSubscriberFanout(subscriberCache, getFanoutExecutor(), fanoutBatchSize);
+	    qm.setRedelivery(redeliveries, redeliveryDelay);
+	    qm.setIndexPolicyCache(indexPolicyCache);
+	    qm.setConsumerLeases(getConsumerLeases());
 	    return qm;
 		//return applicationContext.getAutowireCapableBeanFactory()
 		//		.createBean(QueueManagerImpl.class)
 		//		.init(this, cass, counterUtils, applicationId);
 	}
 
+	public int getPostBatchMutations() {
+		return postBatchMutations;
+	}
+
+	/**
+	 * @param postBatchMutations
+	 *            the number of mutations at which a chunk of a multi-message
+	 *            post gets written
+	 */
+	public void setPostBatchMutations(int postBatchMutations) {
+		this.postBatchMutations = postBatchMutations;
+	}
+
+	public long getPostBatchBytes() {
+		return postBatchBytes;
+	}
+
+	/**
+	 * @param postBatchBytes
+	 *            the serialized message size at which a chunk of a
+	 *            multi-message post gets written
+	 */
+	public void setPostBatchBytes(long postBatchBytes) {
+		this.postBatchBytes = postBatchBytes;
+	}
+
+	public int getPostConcurrency() {
+		return postConcurrency;
+	}
+
+	/**
+	 * @param postConcurrency
+	 *            the number of threads writing chunks of multi-message posts
+	 *            in parallel, 0 writes them on the posting thread
+	 */
+	public void setPostConcurrency(int postConcurrency) {
+		this.postConcurrency = postConcurrency;
+	}
+
+	public QueueNotifier getQueueNotifier() {
+		return queueNotifier;
+	}
+
+	/**
+	 * @param queueNotifier
+	 *            wakes up reads that wait for messages, reads return
+	 *            immediately if it isn't set. LocalQueueNotifier only wakes
+	 *            them for posts made on this node, for a cluster wrap it in a
+	 *            HazelcastQueueNotifier.
+	 */
+	public void setQueueNotifier(QueueNotifier queueNotifier) {
+		this.queueNotifier = queueNotifier;
+	}
+
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * @param maxWait
+	 *            the longest a read may wait for messages to be posted, in
+	 *            milliseconds
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public int getMaxWaiters() {
+		return maxWaiters;
+	}
+
+	/**
+	 * @param maxWaiters
+	 *            the number of reads that may wait for messages at once, the
+	 *            reads past it return immediately
+	 */
+	public void setMaxWaiters(int maxWaiters) {
+		this.maxWaiters = maxWaiters;
+	}
+
+	public QueueSubscriberCache getSubscriberCache() {
+		return subscriberCache;
+	}
+
+	/**
+	 * @param subscriberCache
+	 *            caches the subscribers of each queue, subscribers are read on
+	 *            every post if it isn't set
+	 */
+	public void setSubscriberCache(QueueSubscriberCache subscriberCache) {
+		this.subscriberCache = subscriberCache;
+	}
+
+	public int getFanoutConcurrency() {
+		return fanoutConcurrency;
+	}
+
+	/**
+	 * @param fanoutConcurrency
+	 *            the number of threads delivering posted messages to
+	 *            subscribers after the post returns, 0 delivers them on the
+	 *            posting thread. Needs the Queue_Deliveries column family.
+	 */
+	public void setFanoutConcurrency(int fanoutConcurrency) {
+		this.fanoutConcurrency = fanoutConcurrency;
+	}
+
+	public int getFanoutBatchSize() {
+		return fanoutBatchSize;
+	}
+
+	/**
+	 * @param fanoutBatchSize
+	 *            the number of subscribers each delivery writes to
+	 */
+	public void setFanoutBatchSize(int fanoutBatchSize) {
+		this.fanoutBatchSize = fanoutBatchSize;
+	}
+
+	public long getRedeliveryDelay() {
+		return redeliveryDelay;
+	}
+
+	/**
+	 * @param redeliveryDelay
+	 *            how long a delivery to subscribers may be pending before
+	 *            it's retried, and how often they're looked for, in
+	 *            milliseconds
+	 */
+	public void setRedeliveryDelay(long redeliveryDelay) {
+		this.redeliveryDelay = redeliveryDelay;
+	}
+
+	public MessageIndexPolicyCache getIndexPolicyCache() {
+		return indexPolicyCache;
+	}
+
+	/**
+	 * @param indexPolicyCache
+	 *            caches which message properties each queue indexes, the
+	 *            policy is read on every post if it isn't set
+	 */
+	public void setIndexPolicyCache(MessageIndexPolicyCache indexPolicyCache) {
+		this.indexPolicyCache = indexPolicyCache;
+	}
+
+	private synchronized Semaphore getWaiters() {
+		if (waiters == null) {
+			waiters = new Semaphore(Math.max(0, maxWaiters));
+		}
+		return waiters;
+	}
+
+	private synchronized ConsumerLeases getConsumerLeases() {
+		if (consumerLeases == null) {
+			consumerLeases = new ConsumerLeases(cass, lockManager);
+		}
+		return consumerLeases;
+	}
+
+	private synchronized ExecutorService getFanoutExecutor() {
+		if ((fanoutExecutor == null) && (fanoutConcurrency > 0)) {
+			// bounded queue, when deliveries fall that far behind the posting
+			// thread delivers itself rather than dropping them
+			fanoutExecutor = new ThreadPoolExecutor(fanoutConcurrency,
+					fanoutConcurrency, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(fanoutConcurrency * 100),
+					new ThreadFactoryBuilder().setDaemon(true)
+							.setNameFormat("queue-fanout-%d").build(),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return fanoutExecutor;
+	}
+
+	private synchronized ExecutorService getPostExecutor() {
+		if ((postExecutor == null) && (postConcurrency > 0)) {
+			// bounded queue, when it's full the posting thread writes the
+			// chunk itself
+			postExecutor = new ThreadPoolExecutor(postConcurrency,
+					postConcurrency, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(postConcurrency * 10),
+					new ThreadFactoryBuilder().setDaemon(true)
+							.setNameFormat("queue-post-writer-%d").build(),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return postExecutor;
+	}
 
 }
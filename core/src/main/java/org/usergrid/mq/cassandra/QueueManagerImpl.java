@@ -19,7 +19,9 @@ import static me.prettyprint.hector.api.factory.HFactory.createColumn;
 import static me.prettyprint.hector.api.factory.HFactory.createCounterSliceQuery;
 import static me.prettyprint.hector.api.factory.HFactory.createMutator;
 import static me.prettyprint.hector.api.factory.HFactory.createSliceQuery;
+import static org.usergrid.mq.Queue.QUEUE_CONSUMER_GROUPS;
 import static org.usergrid.mq.Queue.QUEUE_CREATED;
+import static org.usergrid.mq.Queue.QUEUE_INDEXED_PROPERTIES;
 import static org.usergrid.mq.Queue.QUEUE_MODIFIED;
 import static org.usergrid.mq.Queue.QUEUE_NEWEST;
 import static org.usergrid.mq.Queue.QUEUE_OLDEST;
@@ -33,7 +35,10 @@ import static org.usergrid.mq.cassandra.CassandraMQUtils.addMessageToMutator;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.addQueueToMutator;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.deserializeMessage;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.deserializeQueue;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getMessagePartition;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueuePartitionRowKey;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueueShardRowKey;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.serializeMessage;
 import static org.usergrid.mq.cassandra.QueueIndexUpdate.indexValueCode;
 import static org.usergrid.mq.cassandra.QueueIndexUpdate.toIndexableValue;
 import static org.usergrid.mq.cassandra.QueueIndexUpdate.validIndexableValue;
@@ -42,6 +47,7 @@ import static org.usergrid.mq.cassandra.QueuesCF.COUNTERS;
 import static org.usergrid.mq.cassandra.QueuesCF.MESSAGE_PROPERTIES;
 import static org.usergrid.mq.cassandra.QueuesCF.PROPERTY_INDEX;
 import static org.usergrid.mq.cassandra.QueuesCF.PROPERTY_INDEX_ENTRIES;
+import static org.usergrid.mq.cassandra.QueuesCF.QUEUE_DELIVERIES;
 import static org.usergrid.mq.cassandra.QueuesCF.QUEUE_DICTIONARIES;
 import static org.usergrid.mq.cassandra.QueuesCF.QUEUE_INBOX;
 import static org.usergrid.mq.cassandra.QueuesCF.QUEUE_PROPERTIES;
@@ -51,14 +57,17 @@ import static org.usergrid.persistence.Schema.DICTIONARY_COUNTERS;
 import static org.usergrid.persistence.cassandra.ApplicationCF.APPLICATION_AGGREGATE_COUNTERS;
 import static org.usergrid.persistence.cassandra.CassandraPersistenceUtils.batchExecute;
 import static org.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
+import static org.usergrid.persistence.cassandra.CassandraService.MANAGEMENT_APPLICATION_ID;
 import static org.usergrid.persistence.cassandra.CassandraService.RETRY_COUNT;
 import static org.usergrid.utils.CompositeUtils.setEqualityFlag;
 import static org.usergrid.utils.CompositeUtils.setGreaterThanEqualityFlag;
 import static org.usergrid.utils.ConversionUtils.bytebuffer;
+import static org.usergrid.utils.ConversionUtils.getBoolean;
 import static org.usergrid.utils.IndexUtils.getKeyValueList;
 import static org.usergrid.utils.MapUtils.emptyMapWithKeys;
 import static org.usergrid.utils.NumberUtils.roundLong;
 import static org.usergrid.utils.UUIDUtils.getTimestampInMicros;
+import static org.usergrid.utils.UUIDUtils.getTimestampInMillis;
 import static org.usergrid.utils.UUIDUtils.newTimeUUID;
 
 import java.nio.ByteBuffer;
@@ -72,6 +81,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 
 import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.serializers.BytesArraySerializer;
@@ -97,7 +113,9 @@ import me.prettyprint.hector.api.query.SliceQuery;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.usergrid.locking.Lock;
 import org.usergrid.locking.LockManager;
+import org.usergrid.locking.exception.UGLockException;
 import org.usergrid.mq.CounterQuery;
 import org.usergrid.mq.Message;
 import org.usergrid.mq.Query;
@@ -111,6 +129,7 @@ import org.usergrid.mq.QueueResults;
 import org.usergrid.mq.QueueSet;
 import org.usergrid.mq.QueueSet.QueueInfo;
 import org.usergrid.mq.cassandra.QueueIndexUpdate.QueueIndexEntry;
+import org.usergrid.mq.cassandra.io.ConsumerLeases;
 import org.usergrid.mq.cassandra.io.FilterSearch;
 import org.usergrid.mq.cassandra.io.ConsumerTransaction;
 import org.usergrid.mq.cassandra.io.EndSearch;
@@ -125,6 +144,7 @@ import org.usergrid.persistence.cassandra.CassandraPersistenceUtils;
 import org.usergrid.persistence.cassandra.CassandraService;
 import org.usergrid.persistence.cassandra.CounterUtils;
 import org.usergrid.persistence.cassandra.CounterUtils.AggregateCounterSelection;
+import org.usergrid.persistence.exceptions.QueueException;
 import org.usergrid.persistence.exceptions.TransactionNotFoundException;
 
 import com.fasterxml.uuid.UUIDComparator;
@@ -137,15 +157,63 @@ public class QueueManagerImpl implements QueueManager {
   public static final String DICTIONARY_MESSAGE_INDEXES = "message_indexes";
 
   public static final int QUEUE_SHARD_INTERVAL = 1000 * 60 * 60 * 24;
+
+  /**
+   * Partitions of a queue's inbox a message is also written to, the most a
+   * consumer group can be split into
+   */
+  public static final int QUEUE_PARTITIONS = 16;
   public static final int INDEX_ENTRY_LIST_COUNT = 1000;
 
   public static final int DEFAULT_SEARCH_COUNT = 10000;
   public static final int ALL_COUNT = 100000000;
 
+  public static final int DEFAULT_POST_BATCH_MUTATIONS = 2000;
+  public static final long DEFAULT_POST_BATCH_BYTES = 1024 * 1024;
+  public static final long DEFAULT_MAX_WAIT = 30000;
+  public static final int DEFAULT_MAX_WAITERS = 50;
+  public static final int DEFAULT_FANOUT_BATCH_SIZE = 100;
+  public static final long DEFAULT_REDELIVERY_DELAY = 60000;
+
+  public static final int DELIVERY_SHARDS = 16;
+  public static final int DELIVERY_TTL = 60 * 60 * 24;
+  public static final int REDELIVERY_COUNT = 100;
+
+  /**
+   * The row of the management application listing the applications with
+   * deliveries recorded
+   */
+  static final ByteBuffer DELIVERY_APPLICATIONS_ROW = bytebuffer(key("deliveries", "applications"));
+
+  /**
+   * Most mutations the queue level update of a post adds: oldest, newest,
+   * created and modified, the subscriber entry and the queue counter
+   */
+  static final int QUEUE_UPDATE_MUTATIONS = 7;
+
+  /**
+   * Mutations a chunk of a post needs to record its pending delivery to
+   * subscribers
+   */
+  static final int DELIVERY_MUTATIONS = 1;
+
   private UUID applicationId;
   private CassandraService cass;
   private CounterUtils counterUtils;
   private LockManager lockManager;
+  private int postBatchMutations = DEFAULT_POST_BATCH_MUTATIONS;
+  private long postBatchBytes = DEFAULT_POST_BATCH_BYTES;
+  private ExecutorService postExecutor;
+  private QueueNotifier notifier;
+  private long maxWait = DEFAULT_MAX_WAIT;
+  private Semaphore waiters;
+  private QueueSubscriberCache subscriberCache;
+  private ExecutorService fanoutExecutor;
+  private int fanoutBatchSize = DEFAULT_FANOUT_BATCH_SIZE;
+  private MessageIndexPolicyCache indexPolicies;
+  private ConcurrentMap<UUID, Long> redeliveries;
+  private long redeliveryDelay = DEFAULT_REDELIVERY_DELAY;
+  private ConsumerLeases consumerLeases;
 
   public static final StringSerializer se = new StringSerializer();
   public static final ByteBufferSerializer be = new ByteBufferSerializer();
@@ -166,6 +234,153 @@ public class QueueManagerImpl implements QueueManager {
     return this;
   }
 
+  /**
+   * Set how multi-message posts are split up and executed
+   * 
+   * @param postBatchMutations
+   *          the mutation count at which a chunk of messages is written
+   * @param postBatchBytes
+   *          the serialized message size at which a chunk of messages is
+   *          written
+   * @param postExecutor
+   *          executor to write chunks in parallel on, or null to write them
+   *          on the posting thread
+   */
+  public QueueManagerImpl setPostBatching(int postBatchMutations, long postBatchBytes, ExecutorService postExecutor) {
+    this.postBatchMutations = Math.max(1, postBatchMutations);
+    this.postBatchBytes = Math.max(1, postBatchBytes);
+    this.postExecutor = postExecutor;
+    return this;
+  }
+
+  /**
+   * Set how long polling reads are woken up
+   * 
+   * @param notifier
+   *          notified of every post, or null to ignore the wait of queries.
+   *          Only posts it is told about wake a reader, so a reader waiting on
+   *          a node other than the posting one needs a notifier that
+   *          broadcasts them, like HazelcastQueueNotifier.
+   * @param maxWait
+   *          the longest a read may wait for messages, in milliseconds
+   * @param waiters
+   *          permits for the reads that may wait at once, shared by the
+   *          queue managers of every application. A read that can't get one
+   *          returns what's in the queue right away.
+   */
+  public QueueManagerImpl setQueueNotifier(QueueNotifier notifier, long maxWait, Semaphore waiters) {
+    this.notifier = notifier;
+    this.maxWait = maxWait;
+    this.waiters = waiters;
+    return this;
+  }
+
+  /**
+   * Set how posts are delivered to the subscribers of a queue
+   * 
+   * @param subscriberCache
+   *          caches the subscribers of each queue, or null to read them on
+   *          every post
+   * @param fanoutExecutor
+   *          executor to deliver messages to subscribers on once the post
+   *          returns, or null to deliver them on the posting thread. Posts
+   *          delivered on it are recorded in the deliveries column family
+   *          until every subscriber has them.
+   * @param fanoutBatchSize
+   *          the number of subscribers each delivery writes to
+   */
+  public QueueManagerImpl setSubscriberFanout(QueueSubscriberCache subscriberCache, ExecutorService fanoutExecutor,
+      int fanoutBatchSize) {
+    this.subscriberCache = subscriberCache;
+    this.fanoutExecutor = fanoutExecutor;
+    this.fanoutBatchSize = Math.max(1, fanoutBatchSize);
+    return this;
+  }
+
+  /**
+   * Set how deliveries to subscribers that didn't finish are retried
+   * 
+   * @param redeliveries
+   *          when each application last recorded that it has deliveries to
+   *          retry, shared by the queue managers, or null to never retry them
+   * @param redeliveryDelay
+   *          how long a delivery may be pending before it's retried, and how
+   *          often the deliveries are looked for, in milliseconds
+   */
+  public QueueManagerImpl setRedelivery(ConcurrentMap<UUID, Long> redeliveries, long redeliveryDelay) {
+    this.redeliveries = redeliveries;
+    this.redeliveryDelay = Math.max(1, redeliveryDelay);
+    return this;
+  }
+
+  /**
+   * Set where the message index policies of queues are cached
+   * 
+   * @param indexPolicies
+   *          cache shared by the queue managers, or null to read a queue's
+   *          policy on every post
+   */
+  public QueueManagerImpl setIndexPolicyCache(MessageIndexPolicyCache indexPolicies) {
+    this.indexPolicies = indexPolicies;
+    return this;
+  }
+
+  /**
+   * Set the leases on the partitions of consumer groups
+   * 
+   * @param consumerLeases
+   *          leases shared by the queue managers, or null to only keep them
+   *          for this queue manager
+   */
+  public QueueManagerImpl setConsumerLeases(ConsumerLeases consumerLeases) {
+    this.consumerLeases = consumerLeases;
+    return this;
+  }
+
+  private synchronized ConsumerLeases getConsumerLeases() {
+    if (consumerLeases == null) {
+      consumerLeases = new ConsumerLeases(cass, lockManager);
+    }
+    return consumerLeases;
+  }
+
+  /**
+   * Get which message properties a queue indexes, and if it has consumer
+   * groups
+   */
+  public MessageIndexPolicy getMessageIndexPolicy(UUID queueId) {
+    long invalidationCount = 0;
+    if (indexPolicies != null) {
+      MessageIndexPolicy policy = indexPolicies.get(applicationId, queueId);
+      if (policy != null) {
+        return policy;
+      }
+      invalidationCount = indexPolicies.getInvalidationCount();
+    }
+
+    MessageIndexPolicy policy = readMessageIndexPolicy(queueId);
+
+    if (indexPolicies != null) {
+      indexPolicies.put(applicationId, queueId, policy, invalidationCount);
+    }
+    return policy;
+  }
+
+  private MessageIndexPolicy readMessageIndexPolicy(UUID queueId) {
+    SliceQuery<UUID, String, ByteBuffer> q = createSliceQuery(cass.getApplicationKeyspace(applicationId), ue, se, be);
+    q.setColumnFamily(QUEUE_PROPERTIES.getColumnFamily());
+    q.setKey(queueId);
+    q.setColumnNames(QUEUE_INDEXED_PROPERTIES, QUEUE_CONSUMER_GROUPS);
+    Queue queue = deserializeQueue(q.execute().get().getColumns());
+
+    MessageIndexPolicy policy = MessageIndexPolicy.DEFAULT;
+    if (queue != null) {
+      policy = MessageIndexPolicy.fromValue(queue.getProperties().get(QUEUE_INDEXED_PROPERTIES)).withConsumerGroups(
+          getBoolean(queue.getProperties().get(QUEUE_CONSUMER_GROUPS)));
+    }
+    return policy;
+  }
+
   @Override
   public Message getMessage(UUID messageId) {
     SliceQuery<UUID, String, ByteBuffer> q = createSliceQuery(cass.getApplicationKeyspace(applicationId), ue, se, be);
@@ -182,46 +397,106 @@ public class QueueManagerImpl implements QueueManager {
       MessageIndexUpdate indexUpdate, long timestamp) {
 
     queuePath = normalizeQueuePath(queuePath);
-    UUID queueId = getQueueId(queuePath);
 
     message.sync();
 
     addMessageToMutator(batch, message, timestamp);
 
+    if (indexUpdate == null) {
+      indexUpdate = new MessageIndexUpdate(message);
+    }
+
+    batchAddMessagesToQueue(batch, queuePath, Collections.singletonList(message),
+        Collections.singletonList(indexUpdate), timestamp);
+
+    return message;
+  }
+
+  /**
+   * Add already written messages to a queue's inbox and indexes. The queue
+   * level columns and the queue counter are updated once for all of the
+   * messages.
+   */
+  private void batchAddMessagesToQueue(Mutator<ByteBuffer> batch, String queuePath, List<Message> messages,
+      List<MessageIndexUpdate> indexUpdates, long timestamp) {
+
+    UUID queueId = getQueueId(queuePath);
+    MessageIndexPolicy indexPolicy = getMessageIndexPolicy(queueId);
+
+    for (int i = 0; i < messages.size(); i++) {
+      batchAddMessageToQueue(batch, queueId, messages.get(i), indexUpdates.get(i), indexPolicy, timestamp);
+    }
+
+    batchUpdateQueue(batch, queuePath, queueId, messages, timestamp);
+  }
+
+  /**
+   * Add a message to a queue's inbox, the inbox partition it belongs to if
+   * the queue has consumer groups, and its indexes, and count it
+   */
+  private void batchAddMessageToQueue(Mutator<ByteBuffer> batch, UUID queueId, Message message,
+      MessageIndexUpdate indexUpdate, MessageIndexPolicy indexPolicy, long timestamp) {
+
     long shard_ts = roundLong(message.getTimestamp(), QUEUE_SHARD_INTERVAL);
 
     logger.debug("Adding message with id '{}' to queue '{}'", message.getUuid(), queueId);
 
     batch.addInsertion(getQueueShardRowKey(queueId, shard_ts), QUEUE_INBOX.getColumnFamily(),
         createColumn(message.getUuid(), ByteBuffer.allocate(0), timestamp, ue, be));
+    if (indexPolicy.hasConsumerGroups()) {
+      batch.addInsertion(
+          getQueuePartitionRowKey(queueId, getMessagePartition(message.getUuid(), QUEUE_PARTITIONS), shard_ts),
+          QUEUE_INBOX.getColumnFamily(), createColumn(message.getUuid(), ByteBuffer.allocate(0), timestamp, ue, be));
+    }
+
+    indexUpdate.addToMutation(batch, queueId, shard_ts, timestamp, indexPolicy);
+
+    counterUtils.addMessageCounterMutations(batch, applicationId, queueId, message, timestamp);
+  }
+
+  /**
+   * Update the queue level columns and the queue counter for messages added
+   * to a queue. Adds at most {@link #QUEUE_UPDATE_MUTATIONS} mutations.
+   */
+  private void batchUpdateQueue(Mutator<ByteBuffer> batch, String queuePath, UUID queueId, List<Message> messages,
+      long timestamp) {
+
+    Message oldest = null;
+    Message newest = null;
 
-    long oldest_ts = Long.MAX_VALUE - getTimestampInMicros(message.getUuid());
+    for (Message message : messages) {
+      long ts = getTimestampInMicros(message.getUuid());
+      if ((oldest == null) || (ts < getTimestampInMicros(oldest.getUuid()))) {
+        oldest = message;
+      }
+      if ((newest == null) || (ts > getTimestampInMicros(newest.getUuid()))) {
+        newest = message;
+      }
+    }
+
+    if (oldest == null) {
+      return;
+    }
+
+    long oldest_ts = Long.MAX_VALUE - getTimestampInMicros(oldest.getUuid());
     batch.addInsertion(bytebuffer(queueId), QUEUE_PROPERTIES.getColumnFamily(),
-        createColumn(QUEUE_OLDEST, message.getUuid(), oldest_ts, se, ue));
+        createColumn(QUEUE_OLDEST, oldest.getUuid(), oldest_ts, se, ue));
 
-    long newest_ts = getTimestampInMicros(message.getUuid());
+    long newest_ts = getTimestampInMicros(newest.getUuid());
     batch.addInsertion(bytebuffer(queueId), QUEUE_PROPERTIES.getColumnFamily(),
-        createColumn(QUEUE_NEWEST, message.getUuid(), newest_ts, se, ue));
+        createColumn(QUEUE_NEWEST, newest.getUuid(), newest_ts, se, ue));
 
     batch.addInsertion(bytebuffer(getQueueId("/")), QUEUE_SUBSCRIBERS.getColumnFamily(),
         createColumn(queuePath, queueId, timestamp, se, ue));
 
-    counterUtils.batchIncrementQueueCounter(batch, getQueueId("/"), queuePath, 1L, timestamp, applicationId);
-
-    if (indexUpdate == null) {
-      indexUpdate = new MessageIndexUpdate(message);
-    }
-    indexUpdate.addToMutation(batch, queueId, shard_ts, timestamp);
-
-    counterUtils.addMessageCounterMutations(batch, applicationId, queueId, message, timestamp);
+    counterUtils.batchIncrementQueueCounter(batch, getQueueId("/"), queuePath, messages.size(), timestamp,
+        applicationId);
 
     batch.addInsertion(bytebuffer(queueId), QUEUE_PROPERTIES.getColumnFamily(),
         createColumn(QUEUE_CREATED, timestamp / 1000, Long.MAX_VALUE - timestamp, se, le));
 
     batch.addInsertion(bytebuffer(queueId), QUEUE_PROPERTIES.getColumnFamily(),
         createColumn(QUEUE_MODIFIED, timestamp / 1000, timestamp, se, le));
-
-    return message;
   }
 
   @Override
@@ -235,44 +510,598 @@ public class QueueManagerImpl implements QueueManager {
 
     batchPostToQueue(batch, queuePath, message, indexUpdate, timestamp);
 
+    List<String> subscriberQueuePaths = getAllSubscriberQueuePaths(queuePath);
+    List<Message> messages = Collections.singletonList(message);
+    List<DeliveryPage> pages = batchAddDeliveries(batch, queuePath, subscriberQueuePaths, messages, timestamp);
+
     batchExecute(batch, RETRY_COUNT);
 
-    String firstSubscriberQueuePath = null;
+    notifyQueue(queuePath);
+
+    fanOut(queuePath, pages, messages, Collections.singletonList(indexUpdate), timestamp);
+
+    return message;
+  }
+
+  @Override
+  public List<Message> postToQueue(String queuePath, List<Message> messages) {
+
+    if ((messages == null) || (messages.size() < 2)) {
+      if (messages != null) {
+        for (Message message : messages) {
+          postToQueue(queuePath, message);
+        }
+      }
+      return messages;
+    }
+
+    // Can't do this as one big batch operation because it will
+    // time out, so split the messages into chunks bounded by mutation
+    // count and size which get written and fanned out independently
+
+    queuePath = normalizeQueuePath(queuePath);
+
+    List<String> subscriberQueuePaths = getAllSubscriberQueuePaths(queuePath);
+
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (PostChunk chunk : buildPostChunks(cass.getApplicationKeyspace(applicationId), queuePath, messages,
+        cass.createTimestamp())) {
+      futures.add(submitChunk(chunk, queuePath, subscriberQueuePaths));
+    }
+
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted posting messages to queue " + queuePath, e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new RuntimeException("Unable to post messages to queue " + queuePath, e.getCause());
+      }
+    }
+
+    return messages;
+  }
+
+  /**
+   * Split the messages of a post into chunks with all of the mutations that
+   * write them to the queue. A chunk is closed once it reaches the size
+   * limit, or before the next message could take it over the mutation limit,
+   * going by the most mutations a message has needed so far. Only a single
+   * message needing more than the limit makes a bigger chunk.
+   */
+  List<PostChunk> buildPostChunks(Keyspace ko, String queuePath, List<Message> messages, long timestamp) {
+
+    UUID queueId = getQueueId(queuePath);
+    MessageIndexPolicy indexPolicy = getMessageIndexPolicy(queueId);
+
+    List<PostChunk> chunks = new ArrayList<PostChunk>();
+    PostChunk chunk = null;
+    long chunkBytes = 0;
+    int messageMutations = 0;
+
+    for (Message message : messages) {
+      if (chunk == null) {
+        chunk = new PostChunk(createMutator(ko, be), timestamp);
+        chunkBytes = 0;
+      }
+
+      message.sync();
+
+      int pending = chunk.batch.getPendingMutationCount();
+
+      Map<ByteBuffer, ByteBuffer> columns = serializeMessage(message);
+      addMessageToMutator(chunk.batch, message, columns, timestamp);
+      chunkBytes += getSerializedSize(columns);
+
+      MessageIndexUpdate indexUpdate = new MessageIndexUpdate(message);
+      batchAddMessageToQueue(chunk.batch, queueId, message, indexUpdate, indexPolicy, timestamp);
+
+      chunk.messages.add(message);
+      chunk.indexUpdates.add(indexUpdate);
+
+      pending = chunk.batch.getPendingMutationCount() - pending;
+      messageMutations = Math.max(messageMutations, pending);
+
+      int reserved = messageMutations + QUEUE_UPDATE_MUTATIONS + DELIVERY_MUTATIONS;
+      if ((chunk.batch.getPendingMutationCount() + reserved > postBatchMutations) || (chunkBytes >= postBatchBytes)) {
+        batchUpdateQueue(chunk.batch, queuePath, queueId, chunk.messages, timestamp);
+        chunks.add(chunk);
+        chunk = null;
+      }
+    }
+
+    if (chunk != null) {
+      batchUpdateQueue(chunk.batch, queuePath, queueId, chunk.messages, timestamp);
+      chunks.add(chunk);
+    }
+
+    return chunks;
+  }
+
+  /**
+   * Messages of a post written to the queue in one batch
+   */
+  static class PostChunk {
+    final Mutator<ByteBuffer> batch;
+    final long timestamp;
+    final List<Message> messages = new ArrayList<Message>();
+    final List<MessageIndexUpdate> indexUpdates = new ArrayList<MessageIndexUpdate>();
+
+    PostChunk(Mutator<ByteBuffer> batch, long timestamp) {
+      this.batch = batch;
+      this.timestamp = timestamp;
+    }
+  }
+
+  /**
+   * Write a chunk of messages to the queue, on the post executor if there is
+   * one, and then hand them off to be delivered to its subscribers
+   */
+  private Future<Void> submitChunk(final PostChunk chunk, final String queuePath,
+      final List<String> subscriberQueuePaths) {
+
+    FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        List<DeliveryPage> pages = batchAddDeliveries(chunk.batch, queuePath, subscriberQueuePaths, chunk.messages,
+            chunk.timestamp);
+
+        batchExecute(chunk.batch, RETRY_COUNT);
+
+        notifyQueue(queuePath);
+
+        fanOut(queuePath, pages, chunk.messages, chunk.indexUpdates, chunk.timestamp);
+        return null;
+      }
+    });
+
+    if (postExecutor != null) {
+      postExecutor.execute(task);
+    } else {
+      task.run();
+    }
+    return task;
+  }
+
+  /**
+   * Split the subscribers of a post into the pages that are delivered at
+   * once. When they're delivered after the post returns, each page's delivery
+   * is recorded in the batch that writes the messages, in one row, so that a
+   * page that fails or is cut short by the node going down gets retried
+   * without sending the messages to the pages that got them.
+   */
+  private List<DeliveryPage> batchAddDeliveries(Mutator<ByteBuffer> batch, String queuePath,
+      List<String> subscriberQueuePaths, List<Message> messages, long timestamp) {
+
+    List<DeliveryPage> pages = new ArrayList<DeliveryPage>();
+    if (subscriberQueuePaths.isEmpty()) {
+      return pages;
+    }
+
+    List<UUID> messageIds = null;
+    ByteBuffer rowKey = null;
+    if (fanoutExecutor != null) {
+      messageIds = new ArrayList<UUID>();
+      for (Message message : messages) {
+        messageIds.add(message.getUuid());
+      }
+      rowKey = getDeliveryRowKey(newTimeUUID());
+      registerDeliveries();
+    }
+
+    for (int i = 0; i < subscriberQueuePaths.size(); i += fanoutBatchSize) {
+      List<String> subscribers = subscriberQueuePaths.subList(i,
+          Math.min(i + fanoutBatchSize, subscriberQueuePaths.size()));
+
+      UUID deliveryId = null;
+      if (rowKey != null) {
+        deliveryId = newTimeUUID();
+        Delivery delivery = new Delivery(queuePath, timestamp, messageIds, subscribers.get(0),
+            subscribers.get(subscribers.size() - 1));
+        HColumn<UUID, ByteBuffer> column = createColumn(deliveryId, delivery.toByteBuffer(), timestamp, ue, be);
+        column.setTtl(DELIVERY_TTL);
+        batch.addInsertion(rowKey, QUEUE_DELIVERIES.getColumnFamily(), column);
+      }
+
+      pages.add(new DeliveryPage(subscribers, rowKey, deliveryId));
+    }
+
+    return pages;
+  }
+
+  /**
+   * Deliver messages already written to a queue to its subscribers. With a
+   * fan-out executor, the pages of subscribers are delivered in parallel
+   * after the post returns. The record of a page's delivery is removed once
+   * it's been written, a failed page is logged and left for
+   * {@link #redeliver(long)} to retry.
+   */
+  private void fanOut(final String queuePath, List<DeliveryPage> pages, final List<Message> messages,
+      final List<MessageIndexUpdate> indexUpdates, final long timestamp) {
+
+    for (final DeliveryPage page : pages) {
+      if (fanoutExecutor == null) {
+        addMessagesToSubscribers(page.subscribers, messages, indexUpdates, timestamp);
+        continue;
+      }
+
+      fanoutExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            addMessagesToSubscribers(page.subscribers, messages, indexUpdates, timestamp);
+          } catch (Exception e) {
+            logger.error("Unable to deliver " + messages.size() + " messages from queue " + queuePath + " to "
+                + page.subscribers.size() + " subscribers, delivery " + page.deliveryId + " will be retried", e);
+            return;
+          }
+          if (page.deliveryId != null) {
+            deleteDelivery(page.rowKey, page.deliveryId);
+          }
+        }
+      });
+    }
+  }
+
+  private void deleteDelivery(ByteBuffer rowKey, UUID deliveryId) {
+    try {
+      Mutator<ByteBuffer> batch = createMutator(cass.getApplicationKeyspace(applicationId), be);
+      batch.addDeletion(rowKey, QUEUE_DELIVERIES.getColumnFamily(), deliveryId, ue, cass.createTimestamp());
+      batchExecute(batch, RETRY_COUNT);
+    } catch (Exception e) {
+      // it'll be delivered again, which only adds messages already there
+      logger.error("Unable to remove finished delivery " + deliveryId, e);
+    }
+  }
+
+  /**
+   * Record that this application has deliveries pending, so that the
+   * scheduled redelivery looks at it until they have expired. Each node
+   * writes it at most once per redelivery delay.
+   */
+  private void registerDeliveries() {
+    if (redeliveries == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    Long last = redeliveries.get(applicationId);
+    if (last == null) {
+      if (redeliveries.putIfAbsent(applicationId, now) != null) {
+        return;
+      }
+    } else if ((now - last < redeliveryDelay) || !redeliveries.replace(applicationId, last, now)) {
+      return;
+    }
+
+    try {
+      Mutator<ByteBuffer> batch = createMutator(cass.getApplicationKeyspace(MANAGEMENT_APPLICATION_ID), be);
+      HColumn<UUID, ByteBuffer> column = createColumn(applicationId, ByteBuffer.allocate(0), cass.createTimestamp(),
+          ue, be);
+      // outlive the deliveries recorded until this node writes it again
+      column.setTtl(DELIVERY_TTL + (int) (redeliveryDelay / 1000) + 1);
+      batch.addInsertion(DELIVERY_APPLICATIONS_ROW, QUEUE_DELIVERIES.getColumnFamily(), column);
+      batchExecute(batch, RETRY_COUNT);
+    } catch (RuntimeException e) {
+      redeliveries.remove(applicationId, now);
+      throw e;
+    }
+  }
+
+  /**
+   * Get the applications that recorded deliveries to subscribers in the
+   * last day, which may have some to retry
+   */
+  public static List<UUID> getDeliveryApplications(CassandraService cass) throws Exception {
+    Keyspace ko = cass.getApplicationKeyspace(MANAGEMENT_APPLICATION_ID);
+    List<UUID> applicationIds = new ArrayList<UUID>();
+
+    UUID start = null;
     while (true) {
+      List<HColumn<ByteBuffer, ByteBuffer>> columns = cass.getColumns(ko, QUEUE_DELIVERIES,
+          DELIVERY_APPLICATIONS_ROW, start, null, REDELIVERY_COUNT, false);
+      for (HColumn<ByteBuffer, ByteBuffer> column : columns) {
+        UUID applicationId = ue.fromByteBuffer(column.getName());
+        if (!applicationId.equals(start)) {
+          applicationIds.add(applicationId);
+        }
+      }
+      if (columns.size() < REDELIVERY_COUNT) {
+        return applicationIds;
+      }
+      start = ue.fromByteBuffer(columns.get(columns.size() - 1).getName());
+    }
+  }
 
-      QueueSet subscribers = getSubscribers(queuePath, firstSubscriberQueuePath, 1000);
+  /**
+   * Deliver the messages of deliveries recorded before the given time to the
+   * current subscribers of their queue in the delivery's page, and remove the
+   * records. Each record is claimed first, so of the nodes that find it only
+   * one retries it. Messages are delivered at least once, so a subscriber of
+   * the page that got them the first time counts them again.
+   */
+  void redeliver(long before) throws Exception {
+    Keyspace ko = cass.getApplicationKeyspace(applicationId);
+    UUID finish = newTimeUUID(before);
 
-      if (subscribers.getQueues().isEmpty()) {
-        break;
+    for (int shard = 0; shard < DELIVERY_SHARDS; shard++) {
+      ByteBuffer rowKey = getDeliveryRowKey(shard);
+      List<HColumn<ByteBuffer, ByteBuffer>> columns = cass.getColumns(ko, QUEUE_DELIVERIES, rowKey, null, finish,
+          REDELIVERY_COUNT, false);
+
+      for (HColumn<ByteBuffer, ByteBuffer> column : columns) {
+        UUID deliveryId = claimDelivery(ko, rowKey, ue.fromByteBuffer(column.getName()));
+        if (deliveryId == null) {
+          continue;
+        }
+
+        Delivery delivery = Delivery.fromByteBuffer(column.getValue());
+
+        List<Message> messages = new ArrayList<Message>();
+        List<MessageIndexUpdate> indexUpdates = new ArrayList<MessageIndexUpdate>();
+        for (UUID messageId : delivery.messageIds) {
+          Message message = getMessage(messageId);
+          if (message != null) {
+            messages.add(message);
+            indexUpdates.add(new MessageIndexUpdate(message));
+          }
+        }
+
+        List<String> subscribers = getSubscriberPage(delivery);
+
+        logger.info("Retrying delivery {} of {} messages from queue {} to {} subscribers", new Object[] {
+            deliveryId, messages.size(), delivery.queuePath, subscribers.size() });
+
+        if (!messages.isEmpty()) {
+          addMessagesToSubscribers(subscribers, messages, indexUpdates, delivery.timestamp);
+        }
+        deleteDelivery(rowKey, deliveryId);
       }
+    }
+  }
 
-      batch = createMutator(cass.getApplicationKeyspace(applicationId), be);
-      for (QueueInfo q : subscribers.getQueues()) {
-        batchPostToQueue(batch, q.getPath(), message, indexUpdate, timestamp);
+  /**
+   * Claim a delivery for this node to retry. Under the delivery's lock, the
+   * record is moved to a new column named for now, so other nodes don't see
+   * it as due until the redelivery delay has passed again, which is the
+   * lease this node has to retry it in. If it isn't retried by then, the
+   * next node to look claims it.
+   * 
+   * @return the claimed delivery's new id, or null if another node claimed
+   *         or finished it
+   */
+  private UUID claimDelivery(Keyspace ko, ByteBuffer rowKey, UUID deliveryId) throws Exception {
+    Lock lock = lockManager.createLock(applicationId, "deliveries", deliveryId.toString());
 
-        firstSubscriberQueuePath = q.getPath();
+    try {
+      lock.lock();
+
+      HColumn<UUID, ByteBuffer> current = cass.getColumn(ko, QUEUE_DELIVERIES, rowKey, deliveryId, ue, be);
+      if (current == null) {
+        return null;
       }
+
+      UUID claimId = newTimeUUID();
+      long timestamp = cass.createTimestamp();
+      HColumn<UUID, ByteBuffer> claimed = createColumn(claimId, current.getValue(), timestamp, ue, be);
+      claimed.setTtl(DELIVERY_TTL);
+
+      Mutator<ByteBuffer> batch = createMutator(ko, be);
+      batch.addInsertion(rowKey, QUEUE_DELIVERIES.getColumnFamily(), claimed);
+      batch.addDeletion(rowKey, QUEUE_DELIVERIES.getColumnFamily(), deliveryId, ue, timestamp);
       batchExecute(batch, RETRY_COUNT);
 
-      if (!subscribers.hasMore()) {
-        break;
+      return claimId;
+
+    } catch (UGLockException e) {
+      logger.error("Unable to acquire lock", e);
+      throw new QueueException("Unable to acquire lock", e);
+    } finally {
+      try {
+        lock.unlock();
+      } catch (UGLockException e) {
+        logger.error("Unable to release lock", e);
+        throw new QueueException("Unable to release lock", e);
       }
     }
+  }
 
-    return message;
+  /**
+   * The current subscribers of a delivery's queue that fall in its page
+   */
+  private List<String> getSubscriberPage(Delivery delivery) {
+    List<String> subscribers = new ArrayList<String>();
+    for (String subscriberQueuePath : getAllSubscriberQueuePaths(delivery.queuePath)) {
+      if ((subscriberQueuePath.compareTo(delivery.firstSubscriber) >= 0)
+          && (subscriberQueuePath.compareTo(delivery.lastSubscriber) <= 0)) {
+        subscribers.add(subscriberQueuePath);
+      }
+    }
+    return subscribers;
   }
 
-  @Override
-  public List<Message> postToQueue(String queuePath, List<Message> messages) {
+  static ByteBuffer getDeliveryRowKey(UUID deliveryId) {
+    return getDeliveryRowKey((deliveryId.hashCode() & Integer.MAX_VALUE) % DELIVERY_SHARDS);
+  }
 
-    // Can't do this as one big batch operation because it will
-    // time out
+  static ByteBuffer getDeliveryRowKey(int shard) {
+    return bytebuffer(key("deliveries", shard));
+  }
 
-    for (Message message : messages) {
-      postToQueue(queuePath, message);
+  /**
+   * A page of the subscribers of a post, and where its delivery is recorded
+   * if it is
+   */
+  static class DeliveryPage {
+    final List<String> subscribers;
+    final ByteBuffer rowKey;
+    final UUID deliveryId;
+
+    DeliveryPage(List<String> subscribers, ByteBuffer rowKey, UUID deliveryId) {
+      this.subscribers = subscribers;
+      this.rowKey = rowKey;
+      this.deliveryId = deliveryId;
     }
+  }
 
-    return messages;
+  /**
+   * The messages of a post still to be delivered to a page of the
+   * subscribers of its queue, the ones from the first to the last subscriber
+   * queue path
+   */
+  static class Delivery {
+    final String queuePath;
+    final long timestamp;
+    final List<UUID> messageIds;
+    final String firstSubscriber;
+    final String lastSubscriber;
+
+    Delivery(String queuePath, long timestamp, List<UUID> messageIds, String firstSubscriber, String lastSubscriber) {
+      this.queuePath = queuePath;
+      this.timestamp = timestamp;
+      this.messageIds = messageIds;
+      this.firstSubscriber = firstSubscriber;
+      this.lastSubscriber = lastSubscriber;
+    }
+
+    ByteBuffer toByteBuffer() {
+      ByteBuffer first = se.toByteBuffer(firstSubscriber);
+      ByteBuffer last = se.toByteBuffer(lastSubscriber);
+      ByteBuffer path = se.toByteBuffer(queuePath);
+      ByteBuffer bytes = ByteBuffer.allocate(8 + 4 + (messageIds.size() * 16) + 4 + first.remaining() + 4
+          + last.remaining() + path.remaining());
+      bytes.putLong(timestamp);
+      bytes.putInt(messageIds.size());
+      for (UUID messageId : messageIds) {
+        bytes.putLong(messageId.getMostSignificantBits());
+        bytes.putLong(messageId.getLeastSignificantBits());
+      }
+      bytes.putInt(first.remaining());
+      bytes.put(first);
+      bytes.putInt(last.remaining());
+      bytes.put(last);
+      bytes.put(path);
+      bytes.flip();
+      return bytes;
+    }
+
+    static Delivery fromByteBuffer(ByteBuffer bytes) {
+      bytes = bytes.duplicate();
+      long timestamp = bytes.getLong();
+      int count = bytes.getInt();
+      List<UUID> messageIds = new ArrayList<UUID>(count);
+      for (int i = 0; i < count; i++) {
+        messageIds.add(new UUID(bytes.getLong(), bytes.getLong()));
+      }
+      String firstSubscriber = readString(bytes);
+      String lastSubscriber = readString(bytes);
+      return new Delivery(se.fromByteBuffer(bytes), timestamp, messageIds, firstSubscriber, lastSubscriber);
+    }
+
+    private static String readString(ByteBuffer bytes) {
+      int length = bytes.getInt();
+      ByteBuffer string = bytes.duplicate();
+      string.limit(string.position() + length);
+      bytes.position(string.limit());
+      return se.fromByteBuffer(string);
+    }
+  }
+
+  private void addMessagesToSubscribers(List<String> subscriberQueuePaths, List<Message> messages,
+      List<MessageIndexUpdate> indexUpdates, long timestamp) {
+
+    Mutator<ByteBuffer> batch = createMutator(cass.getApplicationKeyspace(applicationId), be);
+    List<String> pending = new ArrayList<String>();
+    for (String subscriberQueuePath : subscriberQueuePaths) {
+      batchAddMessagesToQueue(batch, subscriberQueuePath, messages, indexUpdates, timestamp);
+      pending.add(subscriberQueuePath);
+      if (batch.getPendingMutationCount() >= postBatchMutations) {
+        batchExecute(batch, RETRY_COUNT);
+        notifyQueues(pending);
+        batch = createMutator(cass.getApplicationKeyspace(applicationId), be);
+      }
+    }
+    if (batch.getPendingMutationCount() > 0) {
+      batchExecute(batch, RETRY_COUNT);
+      notifyQueues(pending);
+    }
+  }
+
+  /**
+   * Wake up the readers waiting on a queue, once messages posted to it have
+   * been written
+   */
+  private void notifyQueue(String queuePath) {
+    if (notifier != null) {
+      notifier.messagesPosted(applicationId, getQueueId(queuePath));
+    }
+  }
+
+  private void notifyQueues(List<String> queuePaths) {
+    for (String queuePath : queuePaths) {
+      notifyQueue(queuePath);
+    }
+    queuePaths.clear();
+  }
+
+  /**
+   * All of a queue's subscribers, from the subscriber cache if they're in it
+   */
+  private List<String> getAllSubscriberQueuePaths(String queuePath) {
+    UUID queueId = getQueueId(queuePath);
+    long invalidationCount = 0;
+    if (subscriberCache != null) {
+      List<String> cached = subscriberCache.get(applicationId, queueId);
+      if (cached != null) {
+        return cached;
+      }
+      invalidationCount = subscriberCache.getInvalidationCount();
+    }
+
+    List<String> paths = new ArrayList<String>();
+    String firstSubscriberQueuePath = null;
+    while (true) {
+
+      QueueSet subscribers = getSubscribers(queuePath, firstSubscriberQueuePath, 1000);
+
+      for (QueueInfo q : subscribers.getQueues()) {
+        paths.add(q.getPath());
+        firstSubscriberQueuePath = q.getPath();
+      }
+
+      if (subscribers.getQueues().isEmpty() || !subscribers.hasMore()) {
+        break;
+      }
+    }
+
+    paths = Collections.unmodifiableList(paths);
+    if (subscriberCache != null) {
+      subscriberCache.put(applicationId, queueId, paths, invalidationCount);
+    }
+    return paths;
+  }
+
+  private void invalidateSubscribers(UUID publisherQueueId) {
+    if (subscriberCache != null) {
+      subscriberCache.invalidate(applicationId, publisherQueueId);
+    }
+  }
+
+  private static long getSerializedSize(Map<ByteBuffer, ByteBuffer> columns) {
+    long size = 0;
+    if (columns != null) {
+      for (Map.Entry<ByteBuffer, ByteBuffer> column : columns.entrySet()) {
+        size += column.getKey().remaining();
+        if (column.getValue() != null) {
+          size += column.getValue().remaining();
+        }
+      }
+    }
+    return size;
   }
 
   static TreeSet<UUID> add(TreeSet<UUID> a, UUID uuid, boolean reversed, int limit) {
@@ -367,12 +1196,19 @@ public class QueueManagerImpl implements QueueManager {
     QueueSearch search = null;
 
     if (query.hasFilterPredicates()) {
-      search = new FilterSearch(ko);
+      search = new FilterSearch(ko, getMessageIndexPolicy(getQueueId(normalizeQueuePath(queuePath))));
     }
     
     else if (query.getPosition() == LAST || query.getPosition() == CONSUMER) {
       if (query.getTimeout() > 0) {
-        search = new ConsumerTransaction(applicationId, ko, lockManager, cass);
+        // only queues with consumer groups write the inbox partitions
+        if ((query.getPartitions() > 1)
+            && !getMessageIndexPolicy(getQueueId(normalizeQueuePath(queuePath))).hasConsumerGroups()) {
+          throw new IllegalArgumentException(String.format(
+              "Queue %s must have %s set to be read by a consumer group split into partitions", queuePath,
+              QUEUE_CONSUMER_GROUPS));
+        }
+        search = new ConsumerTransaction(applicationId, ko, lockManager, cass, getConsumerLeases());
       } else {
         search = new NoTransactionSearch(ko);
       }
@@ -386,7 +1222,21 @@ public class QueueManagerImpl implements QueueManager {
       throw new IllegalArgumentException("You must specify a valid position or query");
     }
 
-    return search.getResults(queuePath, query);
+    long wait = Math.min(query.getWait(), maxWait);
+    if ((wait <= 0) || (notifier == null) || (waiters == null)) {
+      return search.getResults(queuePath, query);
+    }
+
+    // every waiting read holds a request thread, past the limit don't wait
+    if (!waiters.tryAcquire()) {
+      return search.getResults(queuePath, query);
+    }
+
+    try {
+      return waitForResults(search, queuePath, query, wait);
+    } finally {
+      waiters.release();
+    }
 
     // UUID searchConsumerId = null;
     //
@@ -562,6 +1412,39 @@ public class QueueManagerImpl implements QueueManager {
 
   }
 
+  /**
+   * Long poll the queue, reading it again each time messages are posted to it
+   * until the read returns messages or the wait elapses. The waiter is
+   * registered before every read so a post made during the read isn't missed.
+   */
+  private QueueResults waitForResults(QueueSearch search, String queuePath, QueueQuery query, long wait) {
+    UUID queueId = getQueueId(normalizeQueuePath(queuePath));
+    long deadline = System.currentTimeMillis() + wait;
+
+    while (true) {
+      QueueNotifier.Waiter waiter = notifier.register(applicationId, queueId);
+      try {
+        QueueResults results = search.getResults(queuePath, query);
+
+        long remaining = deadline - System.currentTimeMillis();
+        if (((results.getMessages() != null) && !results.getMessages().isEmpty()) || (remaining <= 0)) {
+          return results;
+        }
+
+        try {
+          if (!waiter.await(remaining)) {
+            return results;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return results;
+        }
+      } finally {
+        waiter.release();
+      }
+    }
+  }
+
   @Override
   public QueueSet subscribeToQueue(String publisherQueuePath, String subscriberQueuePath) {
 
@@ -591,6 +1474,8 @@ public class QueueManagerImpl implements QueueManager {
 
     batchExecute(batch, RETRY_COUNT);
 
+    invalidateSubscribers(publisherQueueId);
+
     return new QueueSet().addQueue(subscriberQueuePath, subscriberQueueId);
 
   }
@@ -634,6 +1519,8 @@ public class QueueManagerImpl implements QueueManager {
 
     batchExecute(batch, RETRY_COUNT);
 
+    invalidateSubscribers(publisherQueueId);
+
     return new QueueSet().addQueue(subscriberQueuePath, subscriberQueueId);
   }
 
@@ -732,6 +1619,8 @@ public class QueueManagerImpl implements QueueManager {
 
     batchExecute(batch, RETRY_COUNT);
 
+    invalidateSubscribers(publisherQueueId);
+
     return queues;
   }
 
@@ -770,6 +1659,8 @@ public class QueueManagerImpl implements QueueManager {
 
     batchExecute(batch, RETRY_COUNT);
 
+    invalidateSubscribers(publisherQueueId);
+
     return queues;
   }
 
@@ -808,6 +1699,10 @@ public class QueueManagerImpl implements QueueManager {
 
     batchExecute(batch, RETRY_COUNT);
 
+    for (QueueInfo publisher : queues.getQueues()) {
+      invalidateSubscribers(publisher.getUuid());
+    }
+
     return queues;
   }
 
@@ -846,6 +1741,10 @@ public class QueueManagerImpl implements QueueManager {
 
     batchExecute(batch, RETRY_COUNT);
 
+    for (QueueInfo publisher : queues.getQueues()) {
+      invalidateSubscribers(publisher.getUuid());
+    }
+
     return queues;
   }
 
@@ -1075,9 +1974,79 @@ public class QueueManagerImpl implements QueueManager {
 
     batchExecute(batch, RETRY_COUNT);
 
+    if (indexPolicies != null) {
+      indexPolicies.invalidate(applicationId, queue.getUuid());
+    }
+
+    if (getBoolean(queue.getProperties().get(QUEUE_CONSUMER_GROUPS))) {
+      try {
+        addInboxPartitions(queue.getUuid());
+      } catch (Exception e) {
+        throw new QueueException("Unable to add the messages of queue " + queuePath + " to its consumer groups", e);
+      }
+    }
+
     return queue;
   }
 
+  /**
+   * Write the messages already in a queue's inbox to the inbox partitions
+   * they belong to, so its consumer groups read them like the messages
+   * posted after it got groups. Posts write the partitions themselves once
+   * they see the queue's policy, writing a message twice does no harm.
+   */
+  private void addInboxPartitions(UUID queueId) throws Exception {
+    Keyspace ko = cass.getApplicationKeyspace(applicationId);
+
+    ColumnSlice<String, UUID> bounds = createSliceQuery(ko, ue, se, ue).setKey(queueId)
+        .setColumnNames(QUEUE_OLDEST, QUEUE_NEWEST).setColumnFamily(QUEUE_PROPERTIES.getColumnFamily()).execute()
+        .get();
+    HColumn<String, UUID> oldest = bounds.getColumnByName(QUEUE_OLDEST);
+    HColumn<String, UUID> newest = bounds.getColumnByName(QUEUE_NEWEST);
+    if ((oldest == null) || (newest == null)) {
+      return;
+    }
+
+    // one partition column per inbox column, a page is written in one batch
+    int count = Math.max(2, postBatchMutations);
+    long start_ts_shard = roundLong(getTimestampInMillis(oldest.getValue()), QUEUE_SHARD_INTERVAL);
+    long finish_ts_shard = roundLong(getTimestampInMillis(newest.getValue()), QUEUE_SHARD_INTERVAL);
+
+    for (long shard_ts = start_ts_shard; shard_ts <= finish_ts_shard; shard_ts += QUEUE_SHARD_INTERVAL) {
+      ByteBuffer rowKey = getQueueShardRowKey(queueId, shard_ts);
+      UUID start = null;
+
+      while (true) {
+        List<HColumn<UUID, ByteBuffer>> columns = createSliceQuery(ko, be, ue, be)
+            .setColumnFamily(QUEUE_INBOX.getColumnFamily()).setKey(rowKey).setRange(start, null, false, count)
+            .execute().get().getColumns();
+
+        Mutator<ByteBuffer> batch = createMutator(ko, be);
+        long timestamp = cass.createTimestamp();
+        int added = 0;
+        for (HColumn<UUID, ByteBuffer> column : columns) {
+          UUID messageId = column.getName();
+          // the first column of a page is the last of the previous one
+          if (messageId.equals(start)) {
+            continue;
+          }
+          batch.addInsertion(
+              getQueuePartitionRowKey(queueId, getMessagePartition(messageId, QUEUE_PARTITIONS), shard_ts),
+              QUEUE_INBOX.getColumnFamily(), createColumn(messageId, ByteBuffer.allocate(0), timestamp, ue, be));
+          added++;
+        }
+        if (added > 0) {
+          batchExecute(batch, RETRY_COUNT);
+        }
+
+        if (columns.size() < count) {
+          break;
+        }
+        start = columns.get(columns.size() - 1).getName();
+      }
+    }
+  }
+
   @Override
   public Queue updateQueue(String queuePath, Map<String, Object> properties) {
     return updateQueue(queuePath, new Queue(properties));
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import java.util.UUID;
+
+/**
+ * Wakes up readers that are long polling a queue when messages are posted to
+ * it. The queue manager notifies it after the messages have been written, so
+ * a reader that registers before it reads the queue can't miss them.
+ * 
+ */
+public interface QueueNotifier {
+
+  /**
+   * Start listening for messages posted to a queue. The waiter must be
+   * released once the caller is done with it.
+   * 
+   * @param applicationId
+   *          The application id
+   * @param queueId
+   *          The queue id
+   * @return A waiter that is signalled by every later notification of the
+   *         queue
+   */
+  public Waiter register(UUID applicationId, UUID queueId);
+
+  /**
+   * Signal the waiters of a queue that messages were posted to it
+   * 
+   * @param applicationId
+   *          The application id
+   * @param queueId
+   *          The queue id
+   */
+  public void messagesPosted(UUID applicationId, UUID queueId);
+
+  public interface Waiter {
+
+    /**
+     * Block until messages are posted to the queue after the waiter was
+     * registered, or until the timeout elapses
+     * 
+     * @param timeout
+     *          The number of milliseconds to wait
+     * @return true if messages were posted, false if the wait timed out
+     * @throws InterruptedException
+     */
+    public boolean await(long timeout) throws InterruptedException;
+
+    /**
+     * Stop listening to the queue
+     */
+    public void release();
+
+  }
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Cache of the paths of the queues subscribed to a queue, so posting to a
+ * topic doesn't read its subscribers every time. The queue manager invalidates
+ * a publisher queue whenever subscribers are added to or removed from it.
+ * 
+ */
+public interface QueueSubscriberCache {
+
+  /**
+   * Get the subscribers of a queue
+   * 
+   * @param applicationId
+   *          The application id
+   * @param publisherQueueId
+   *          The publisher queue id
+   * @return The subscriber queue paths, or null if they aren't cached
+   */
+  public List<String> get(UUID applicationId, UUID publisherQueueId);
+
+  /**
+   * Get the number of invalidations made so far. Read it before reading the
+   * subscribers of a queue and pass it to {@link #put}, so subscribers read
+   * before an invalidation aren't cached after it
+   * 
+   * @return The invalidation count
+   */
+  public long getInvalidationCount();
+
+  /**
+   * Cache the subscribers of a queue, unless the cache has been invalidated
+   * since they were read
+   * 
+   * @param applicationId
+   *          The application id
+   * @param publisherQueueId
+   *          The publisher queue id
+   * @param subscriberQueuePaths
+   *          All of the subscriber queue paths, which must not be modified
+   *          once cached
+   * @param invalidationCount
+   *          The invalidation count from before the subscribers were read
+   */
+  public void put(UUID applicationId, UUID publisherQueueId, List<String> subscriberQueuePaths,
+      long invalidationCount);
+
+  /**
+   * Remove the subscribers of a queue from the cache
+   * 
+   * @param applicationId
+   *          The application id
+   * @param publisherQueueId
+   *          The publisher queue id
+   */
+  public void invalidate(UUID applicationId, UUID publisherQueueId);
+
+}
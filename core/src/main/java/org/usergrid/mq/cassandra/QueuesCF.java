@@ -39,6 +39,12 @@ public enum QueuesCF implements CFEnum {
 	QUEUE_SUBSCRIBERS("Queue_Subscribers", "BytesType"),
 
 	QUEUE_SUBSCRIPTIONS("Queue_Subscriptions", "BytesType"),
+
+	/**
+	 * Time based UUID list of posts still being delivered to subscribers.
+	 * The value has the queue and the ids of the posted messages
+	 */
+	QUEUE_DELIVERIES("Queue_Deliveries", "UUIDType"),
 	
 	/**
 	 * Time based UUID list of future timeouts for messages.
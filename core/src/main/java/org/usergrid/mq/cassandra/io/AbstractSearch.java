@@ -22,6 +22,7 @@ import static me.prettyprint.hector.api.factory.HFactory.createSliceQuery;
 import static org.usergrid.mq.Queue.QUEUE_NEWEST;
 import static org.usergrid.mq.Queue.QUEUE_OLDEST;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.deserializeMessage;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueuePartitionRowKey;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueueShardRowKey;
 import static org.usergrid.mq.cassandra.QueueManagerImpl.ALL_COUNT;
 import static org.usergrid.mq.cassandra.QueueManagerImpl.QUEUE_SHARD_INTERVAL;
@@ -248,6 +249,109 @@ public abstract class AbstractSearch implements QueueSearch {
     return results;
   }
 
+  /**
+   * Get a list of UUIDs in the given partitions of the queue inbox that can
+   * be read for the client, in order. Each time shard of the partitions is
+   * read in one query.
+   * 
+   * @param queueId
+   *          The queue id to read
+   * @param bounds
+   *          The bounds to use when reading
+   * @param inboxPartitions
+   *          The inbox partitions to read
+   * 
+   * @return
+   */
+  protected List<UUID> getQueuePartitionRange(UUID queueId, QueueBounds bounds, SearchParam params,
+      List<Integer> inboxPartitions) {
+
+    if (bounds == null) {
+      logger.error("Necessary queue bounds not found");
+      throw new QueueException("Neccessary queue bounds not found");
+    }
+
+    UUID finish_uuid = params.reversed ? bounds.getOldest() : bounds.getNewest();
+
+    List<UUID> results = new ArrayList<UUID>(params.limit);
+
+    UUID start = params.startId;
+
+    if (start == null) {
+      start = params.reversed ? bounds.getNewest() : bounds.getOldest();
+    }
+
+    if ((start == null) || (finish_uuid == null)) {
+      return results;
+    }
+
+    long start_ts_shard = roundLong(getTimestampInMillis(start), QUEUE_SHARD_INTERVAL);
+
+    long finish_ts_shard = roundLong(getTimestampInMillis(finish_uuid), QUEUE_SHARD_INTERVAL);
+
+    long current_ts_shard = start_ts_shard;
+    if (params.reversed) {
+      current_ts_shard = finish_ts_shard;
+    }
+
+    while ((current_ts_shard >= start_ts_shard) && (current_ts_shard <= finish_ts_shard)) {
+
+      UUID slice_start = MIN_TIME_UUID;
+      UUID slice_end = MAX_TIME_UUID;
+
+      if (current_ts_shard == start_ts_shard) {
+        slice_start = start;
+      }
+
+      if (current_ts_shard == finish_ts_shard) {
+        slice_end = finish_uuid;
+      }
+
+      List<ByteBuffer> keys = new ArrayList<ByteBuffer>(inboxPartitions.size());
+      for (int partition : inboxPartitions) {
+        keys.add(getQueuePartitionRowKey(queueId, partition, current_ts_shard));
+      }
+
+      Rows<ByteBuffer, UUID, ByteBuffer> rows = createMultigetSliceQuery(ko, be, ue, be)
+          .setColumnFamily(QUEUE_INBOX.getColumnFamily()).setKeys(keys)
+          .setRange(slice_start, slice_end, params.reversed, params.limit + 1).execute().get();
+
+      // each row is read far enough to hold the first ids of the shard
+      List<UUID> ids = new ArrayList<UUID>();
+      for (Row<ByteBuffer, UUID, ByteBuffer> row : rows) {
+        for (HColumn<UUID, ByteBuffer> column : row.getColumnSlice().getColumns()) {
+          // skip the first one, we've already read it
+          if (params.skipFirst && params.startId.equals(column.getName())) {
+            continue;
+          }
+          ids.add(column.getName());
+        }
+      }
+
+      if (params.reversed) {
+        UUIDUtils.sortReversed(ids);
+      } else {
+        UUIDUtils.sort(ids);
+      }
+
+      for (UUID id : ids) {
+        results.add(id);
+
+        if (results.size() >= params.limit) {
+          return results;
+        }
+      }
+
+      if (params.reversed) {
+        current_ts_shard -= QUEUE_SHARD_INTERVAL;
+      } else {
+        current_ts_shard += QUEUE_SHARD_INTERVAL;
+      }
+    }
+
+    return results;
+  }
+
   /**
    * Get the bounds for the queue
    * 
@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra.io;
+
+import static me.prettyprint.hector.api.factory.HFactory.createColumn;
+import static me.prettyprint.hector.api.factory.HFactory.createMultigetSliceQuery;
+import static me.prettyprint.hector.api.factory.HFactory.createMutator;
+import static me.prettyprint.hector.api.factory.HFactory.createSliceQuery;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getPartitionLeaseId;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueueClientTransactionKey;
+import static org.usergrid.mq.cassandra.QueuesCF.CONSUMER_QUEUE_TIMEOUTS;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.UUIDSerializer;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.beans.Row;
+import me.prettyprint.hector.api.beans.Rows;
+import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.SliceQuery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.locking.Lock;
+import org.usergrid.locking.LockManager;
+import org.usergrid.locking.exception.UGLockException;
+import org.usergrid.mq.cassandra.CassandraMQUtils;
+import org.usergrid.persistence.cassandra.CassandraService;
+import org.usergrid.persistence.exceptions.QueueException;
+import org.usergrid.utils.UUIDUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Leases on the partitions of a consumer group. A lease is a time uuid
+ * column naming its expiration, with the holder as its value, in its own row
+ * of the consumer timeouts column family next to the partitions'
+ * transaction rows. The distributed lock is only taken to claim or renew a
+ * lease, readers share the leases their instance holds through local locks.
+ * An instance is one holder, the queue managers of a JVM share one.
+ * 
+ */
+public class ConsumerLeases {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConsumerLeases.class);
+
+  public static final long DEFAULT_LEASE_DURATION = 30000;
+
+  private static final UUIDSerializer ue = new UUIDSerializer();
+  private static final ByteBufferSerializer be = new ByteBufferSerializer();
+
+  /**
+   * Identifies the leases held by this instance
+   */
+  private final UUID holderId = UUIDUtils.newTimeUUID();
+
+  private final CassandraService cass;
+  private final LockManager lockManager;
+  private final long leaseDuration;
+  private final Cache<String, Group> groups;
+
+  public ConsumerLeases(CassandraService cass, LockManager lockManager) {
+    this(cass, lockManager, DEFAULT_LEASE_DURATION);
+  }
+
+  public ConsumerLeases(CassandraService cass, LockManager lockManager, long leaseDuration) {
+    this.cass = cass;
+    this.lockManager = lockManager;
+    this.leaseDuration = leaseDuration;
+    // the leases of a group nobody reads here have long expired, a read
+    // doesn't take anywhere near that long
+    groups = CacheBuilder.newBuilder().expireAfterAccess(Math.max(1, leaseDuration) * 10, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Get a partition of the consumer group for exclusive use by the calling
+   * thread. While this instance holds fewer leases than there are
+   * partitions, it claims a free partition on each call, so a single reader
+   * ends up reading all of them. Otherwise it takes the leases it holds in turn, and waits for
+   * one of them if they're all being read.
+   * 
+   * @param applicationId
+   * @param queueId
+   * @param consumerId
+   *          The consumer group id
+   * @param partitions
+   *          The number of partitions in the group
+   * @return The lease, which must be released, or null if every partition is
+   *         leased to another consumer
+   */
+  public Lease acquire(UUID applicationId, UUID queueId, UUID consumerId, int partitions) {
+    Group group = getGroup(applicationId, queueId, consumerId, partitions);
+
+    long now = System.currentTimeMillis();
+    if ((group.leases.size() < group.partitions) && (now >= group.nextScan)) {
+      Lease lease = claimFreePartition(group);
+      if (lease != null) {
+        return lease;
+      }
+      // nothing free, look again once other holders had a chance to let go
+      group.nextScan = now + getScanInterval();
+    }
+
+    List<Lease> held = new ArrayList<Lease>(group.leases);
+    if (held.isEmpty()) {
+      return null;
+    }
+
+    int first = group.next.getAndIncrement() & Integer.MAX_VALUE;
+    for (int i = 0; i < held.size(); i++) {
+      Lease lease = held.get((first + i) % held.size());
+      if (lease.lock.tryLock()) {
+        if (ensureValid(lease)) {
+          return lease;
+        }
+        lease.lock.unlock();
+      }
+    }
+
+    Lease lease = held.get(first % held.size());
+    lease.lock.lock();
+    if (ensureValid(lease)) {
+      return lease;
+    }
+    lease.lock.unlock();
+    return null;
+  }
+
+  private Group getGroup(UUID applicationId, UUID queueId, UUID consumerId, int partitions) {
+    String key = applicationId + ":" + queueId + ":" + consumerId + ":" + partitions;
+    Group group = groups.getIfPresent(key);
+    if (group == null) {
+      group = new Group(applicationId, cass.getApplicationKeyspace(applicationId), queueId, consumerId, partitions);
+      Group existing = groups.asMap().putIfAbsent(key, group);
+      if (existing != null) {
+        group = existing;
+      }
+    }
+    return group;
+  }
+
+  /**
+   * How often an instance looks for free partitions when it has found none,
+   * and how long it leaves a partition it gave up for other consumers
+   */
+  private long getScanInterval() {
+    return Math.max(1, leaseDuration / 10);
+  }
+
+  /**
+   * Make sure a lease we hold locally is still ours, renewing it once most
+   * of it has been used up. Drops the lease from the group if it was lost.
+   * 
+   * Of several leases, one due for renewal is given up instead, and not
+   * claimed again for a scan interval, so other holders get a chance at it. If nobody takes it, it's claimed again after that.
+   */
+  private boolean ensureValid(Lease lease) {
+    Group group = lease.group;
+    if (!group.leases.contains(lease)) {
+      return false;
+    }
+
+    long now = System.currentTimeMillis();
+    if (now < lease.expires - leaseDuration / 3) {
+      return true;
+    }
+
+    if (group.leases.size() > 1) {
+      group.released.put(lease.partition, now + getScanInterval());
+      group.leases.remove(lease);
+      deleteLease(lease);
+      logger.info("Gave up lease on partition {} of consumer {}", lease.partition, group.consumerId);
+      return false;
+    }
+
+    UUID leaseId = writeLease(group, lease.partition, now);
+    if (leaseId != null) {
+      lease.leaseId = leaseId;
+      lease.expires = now + leaseDuration;
+      return true;
+    }
+
+    logger.info("Lost lease on partition {} of consumer {}", lease.partition, group.consumerId);
+    group.leases.remove(lease);
+    return false;
+  }
+
+  /**
+   * Claim a partition that isn't leased, or whose lease has expired
+   */
+  private Lease claimFreePartition(Group group) {
+    List<Integer> candidates = new ArrayList<Integer>();
+    List<ByteBuffer> keys = new ArrayList<ByteBuffer>(group.partitions);
+
+    for (int i = 0; i < group.partitions; i++) {
+      keys.add(getLeaseKey(group, i));
+    }
+
+    // a lock free read to find candidates, we recheck under the lock
+    Rows<ByteBuffer, UUID, UUID> rows = createMultigetSliceQuery(group.ko, be, ue, ue)
+        .setColumnFamily(CONSUMER_QUEUE_TIMEOUTS.getColumnFamily()).setKeys(keys).setRange(null, null, true, 1)
+        .execute().get();
+
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < group.partitions; i++) {
+      if (group.isHeldLocally(i) || group.isReleased(i, now)) {
+        continue;
+      }
+      Row<ByteBuffer, UUID, UUID> row = rows.getByKey(keys.get(i));
+      List<HColumn<UUID, UUID>> columns = row != null ? row.getColumnSlice().getColumns() : null;
+      if ((columns == null) || columns.isEmpty() || isAvailable(columns.get(0), now)) {
+        candidates.add(i);
+      }
+    }
+
+    for (int partition : candidates) {
+      // another thread here may have claimed or given it up meanwhile. Only
+      // one of them may write the lease, the other would replace the column
+      // the first one holds
+      synchronized (group) {
+        now = System.currentTimeMillis();
+        if (group.isHeldLocally(partition) || group.isReleased(partition, now)) {
+          continue;
+        }
+        UUID leaseId = writeLease(group, partition, now);
+        if (leaseId == null) {
+          continue;
+        }
+        Lease lease = new Lease(group, partition, leaseId, now + leaseDuration);
+        lease.lock.lock();
+        group.leases.add(lease);
+        logger.info("Leased partition {} of consumer {}", partition, group.consumerId);
+        return lease;
+      }
+    }
+
+    return null;
+  }
+
+  private boolean isAvailable(HColumn<UUID, UUID> lease, long now) {
+    return holderId.equals(lease.getValue()) || (UUIDUtils.getTimestampInMillis(lease.getName()) <= now);
+  }
+
+  /**
+   * Write a new expiration for the lease if it's free, expired or already
+   * ours
+   * 
+   * @return the new lease column name, or null if someone else holds the
+   *         lease
+   */
+  private UUID writeLease(Group group, int partition, long now) {
+    UUID leaseId = getPartitionLeaseId(group.consumerId, partition);
+    ByteBuffer key = getLeaseKey(group, partition);
+
+    Lock lock = lockManager.createLock(group.applicationId, group.queueId.toString(), leaseId.toString());
+
+    try {
+      lock.lock();
+
+      SliceQuery<ByteBuffer, UUID, UUID> q = createSliceQuery(group.ko, be, ue, ue);
+      q.setColumnFamily(CONSUMER_QUEUE_TIMEOUTS.getColumnFamily());
+      q.setKey(key);
+      q.setRange(null, null, true, 10);
+
+      List<HColumn<UUID, UUID>> current = q.execute().get().getColumns();
+
+      if (!current.isEmpty() && !isAvailable(current.get(0), now)) {
+        return null;
+      }
+
+      UUID expiration = UUIDUtils.newTimeUUID(now + leaseDuration);
+
+      Mutator<ByteBuffer> mutator = createMutator(group.ko, be);
+      long timestamp = cass.createTimestamp();
+      mutator.addInsertion(key, CONSUMER_QUEUE_TIMEOUTS.getColumnFamily(),
+          createColumn(expiration, holderId, timestamp, ue, ue));
+      for (HColumn<UUID, UUID> old : current) {
+        mutator.addDeletion(key, CONSUMER_QUEUE_TIMEOUTS.getColumnFamily(), old.getName(), ue, timestamp);
+      }
+      mutator.execute();
+
+      return expiration;
+
+    } catch (UGLockException e) {
+      logger.error("Unable to acquire lock", e);
+      throw new QueueException("Unable to acquire lock", e);
+    } finally {
+      try {
+        lock.unlock();
+      } catch (UGLockException e) {
+        logger.error("Unable to release lock", e);
+        throw new QueueException("Unable to release lock", e);
+      }
+    }
+  }
+
+  /**
+   * Remove our lease column, so the partition is free right away
+   */
+  private void deleteLease(Lease lease) {
+    Mutator<ByteBuffer> mutator = createMutator(lease.group.ko, be);
+    mutator.addDeletion(getLeaseKey(lease.group, lease.partition), CONSUMER_QUEUE_TIMEOUTS.getColumnFamily(),
+        lease.leaseId, ue, cass.createTimestamp());
+    mutator.execute();
+  }
+
+  private static ByteBuffer getLeaseKey(Group group, int partition) {
+    return getQueueClientTransactionKey(group.queueId, getPartitionLeaseId(group.consumerId, partition));
+  }
+
+  /**
+   * The partitions of a consumer group this instance holds leases on
+   */
+  private static class Group {
+    private final UUID applicationId;
+    private final Keyspace ko;
+    private final UUID queueId;
+    private final UUID consumerId;
+    private final int partitions;
+    private final List<Lease> leases = new CopyOnWriteArrayList<Lease>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile long nextScan;
+
+    /**
+     * Partitions given up, until when they're left for others
+     */
+    private final ConcurrentMap<Integer, Long> released = new ConcurrentHashMap<Integer, Long>();
+
+    private Group(UUID applicationId, Keyspace ko, UUID queueId, UUID consumerId, int partitions) {
+      this.applicationId = applicationId;
+      this.ko = ko;
+      this.queueId = queueId;
+      this.consumerId = consumerId;
+      this.partitions = partitions;
+    }
+
+    private boolean isHeldLocally(int partition) {
+      for (Lease lease : leases) {
+        if (lease.partition == partition) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean isReleased(int partition, long now) {
+      Long until = released.get(partition);
+      if (until == null) {
+        return false;
+      }
+      if (now < until) {
+        return true;
+      }
+      released.remove(partition, until);
+      return false;
+    }
+  }
+
+  /**
+   * A lease on one partition of a consumer group, held by the calling thread
+   * until released
+   */
+  public static class Lease {
+    private final Group group;
+    private final int partition;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile UUID leaseId;
+    private volatile long expires;
+
+    private Lease(Group group, int partition, UUID leaseId, long expires) {
+      this.group = group;
+      this.partition = partition;
+      this.leaseId = leaseId;
+      this.expires = expires;
+    }
+
+    public int getPartition() {
+      return partition;
+    }
+
+    /**
+     * @return the consumer id the partition's position and transactions are
+     *         kept under
+     */
+    public UUID getPartitionConsumerId() {
+      return CassandraMQUtils.getPartitionConsumerId(group.consumerId, partition);
+    }
+
+    public void release() {
+      lock.unlock();
+    }
+  }
+}
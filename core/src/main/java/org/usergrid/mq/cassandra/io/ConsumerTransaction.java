@@ -19,8 +19,11 @@ import static me.prettyprint.hector.api.factory.HFactory.createColumn;
 import static me.prettyprint.hector.api.factory.HFactory.createMutator;
 import static me.prettyprint.hector.api.factory.HFactory.createSliceQuery;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.getConsumerId;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getInboxPartitions;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getPartitionConsumerId;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueueClientTransactionKey;
 import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueueId;
+import static org.usergrid.mq.cassandra.QueueManagerImpl.QUEUE_PARTITIONS;
 import static org.usergrid.mq.cassandra.QueuesCF.CONSUMER_QUEUE_TIMEOUTS;
 
 import java.nio.ByteBuffer;
@@ -58,6 +61,7 @@ public class ConsumerTransaction extends NoTransactionSearch {
   private static final Logger logger = LoggerFactory.getLogger(ConsumerTransaction.class);
   private static final int MAX_READ = 10000;
   private LockManager lockManager;
+  private ConsumerLeases leases;
   private UUID applicationId;
   protected CassandraService cass;
 
@@ -66,10 +70,21 @@ public class ConsumerTransaction extends NoTransactionSearch {
    * @param cassTimestamp
    */
   public ConsumerTransaction(UUID applicationId, Keyspace ko, LockManager lockManager, CassandraService cass) {
+    this(applicationId, ko, lockManager, cass, new ConsumerLeases(cass, lockManager));
+  }
+
+  /**
+   * @param leases
+   *          the leases on the partitions of consumer groups, which must
+   *          outlive the transaction to keep the partitions they hold
+   */
+  public ConsumerTransaction(UUID applicationId, Keyspace ko, LockManager lockManager, CassandraService cass,
+      ConsumerLeases leases) {
     super(ko);
     this.applicationId = applicationId;
     this.lockManager = lockManager;
     this.cass = cass;
+    this.leases = leases;
   }
 
   /**
@@ -95,21 +110,30 @@ public class ConsumerTransaction extends NoTransactionSearch {
 
     UUID queueId = getQueueId(queuePath);
     UUID consumerId = getConsumerId(queueId, query);
-    ByteBuffer key = getQueueClientTransactionKey(queueId, consumerId);
 
     // read the original transaction, if it's not there, then we can't possibly
-    // extend it
-    SliceQuery<ByteBuffer, UUID, UUID> q = createSliceQuery(ko, be, ue, ue);
-    q.setColumnFamily(CONSUMER_QUEUE_TIMEOUTS.getColumnFamily());
-    q.setKey(key);
-    q.setColumnNames(transactionId);
-
-    HColumn<UUID, UUID> col = q.execute().get().getColumnByName(transactionId);
+    // extend it. With partitions it can be in any one of their rows
+    HColumn<UUID, UUID> col = null;
+    for (UUID readerId : getReaderIds(consumerId, query)) {
+      SliceQuery<ByteBuffer, UUID, UUID> q = createSliceQuery(ko, be, ue, ue);
+      q.setColumnFamily(CONSUMER_QUEUE_TIMEOUTS.getColumnFamily());
+      q.setKey(getQueueClientTransactionKey(queueId, readerId));
+      q.setColumnNames(transactionId);
+
+      col = q.execute().get().getColumnByName(transactionId);
+
+      if (col != null) {
+        consumerId = readerId;
+        break;
+      }
+    }
 
     if (col == null) {
       throw new TransactionNotFoundException(String.format("No transaction with id %s exists", transactionId));
     }
 
+    ByteBuffer key = getQueueClientTransactionKey(queueId, consumerId);
+
     UUID origTrans = col.getName();
     UUID messageId = col.getValue();
 
@@ -148,7 +172,24 @@ public class ConsumerTransaction extends NoTransactionSearch {
     UUID queueId = getQueueId(queuePath);
     UUID consumerId = getConsumerId(queueId, query);
 
-    deleteTransaction(queueId, consumerId, transactionId);
+    for (UUID readerId : getReaderIds(consumerId, query)) {
+      deleteTransaction(queueId, readerId, transactionId);
+    }
+  }
+
+  /**
+   * Get the ids transactions of the consumer may be kept under, one per
+   * partition for partitioned consumers
+   */
+  private List<UUID> getReaderIds(UUID consumerId, QueueQuery query) {
+    if (query.getPartitions() <= 1) {
+      return Collections.singletonList(consumerId);
+    }
+    List<UUID> readerIds = new ArrayList<UUID>(query.getPartitions());
+    for (int i = 0; i < query.getPartitions(); i++) {
+      readerIds.add(getPartitionConsumerId(consumerId, i));
+    }
+    return readerIds;
   }
 
   /**
@@ -186,6 +227,16 @@ public class ConsumerTransaction extends NoTransactionSearch {
           query.getLimit(DEFAULT_READ), MAX_READ));
     }
 
+    if (query.getPartitions() > QUEUE_PARTITIONS) {
+      throw new IllegalArgumentException(String.format(
+          "You specified %d partitions, you cannot split a consumer into more than %d partitions",
+          query.getPartitions(), QUEUE_PARTITIONS));
+    }
+
+    if (query.getPartitions() > 1) {
+      return getPartitionResults(queuePath, queueId, consumerId, query);
+    }
+
     QueueResults results = null;
 
     Lock lock = lockManager.createLock(applicationId, queueId.toString(), consumerId.toString());
@@ -194,98 +245,151 @@ public class ConsumerTransaction extends NoTransactionSearch {
 
       lock.lock();
 
-      long startTime = System.currentTimeMillis();
-
-      UUID startTimeUUID = UUIDUtils.newTimeUUID(startTime, 0);
+      results = readTransactional(queuePath, queueId, consumerId, consumerId, query, -1);
 
-      QueueBounds bounds = getQueueBounds(queueId);
-      
-      //queue has never been written to
-      if(bounds == null){
-        return createResults(new ArrayList<Message>(0), queuePath, queueId, consumerId);
+    } catch (UGLockException e) {
+      logger.error("Unable to acquire lock", e);
+      throw new QueueException("Unable to acquire lock", e);
+    } finally {
+      try {
+        lock.unlock();
+      } catch (UGLockException e) {
+        logger.error("Unable to release lock", e);
+        throw new QueueException("Unable to release lock", e);
       }
+    }
 
-      // with transactional reads, we can't read into the future, set the bounds
-      // to be now
-      bounds = new QueueBounds(bounds.getOldest(), startTimeUUID);
+    return results;
 
-      SearchParam params = getParams(queueId, consumerId, query);
+  }
 
-      List<UUID> ids = getQueueRange(queueId, bounds, params);
+  /**
+   * Read from one partition of a consumer group. The partition is leased to
+   * this JVM, so no distributed lock is needed unless the lease has to be
+   * claimed or renewed.
+   */
+  protected QueueResults getPartitionResults(String queuePath, UUID queueId, UUID consumerId, QueueQuery query) {
+    ConsumerLeases.Lease lease = leases.acquire(applicationId, queueId, consumerId, query.getPartitions());
 
-      // get a list of ids from the consumer.
+    // every partition is taken by other consumers
+    if (lease == null) {
+      return createResults(new ArrayList<Message>(0), queuePath, queueId, consumerId);
+    }
 
-      List<TransactionPointer> pointers = getConsumerIds(queueId, consumerId, params, startTimeUUID);
+    try {
+      return readTransactional(queuePath, queueId, lease.getPartitionConsumerId(), consumerId, query,
+          lease.getPartition());
+    } finally {
+      lease.release();
+    }
+  }
 
-      TransactionPointer pointer = null;
+  /**
+   * Read the next messages for the consumer, including messages whose
+   * transactions have timed out, and start transactions on them. The caller
+   * must have exclusive access to the consumer.
+   * 
+   * @param queuePath
+   * @param queueId
+   * @param readerId
+   *          The consumer id the position and transactions are kept under
+   * @param consumerId
+   *          The consumer id to return in the results
+   * @param query
+   * @param partition
+   *          The partition of the consumer group to read, or -1 to read all
+   *          messages. A partition only reads its own rows of the inbox.
+   * @return
+   */
+  private QueueResults readTransactional(String queuePath, UUID queueId, UUID readerId, UUID consumerId,
+      QueueQuery query, int partition) {
 
-      int lastTransactionIndex = -1;
+    long startTime = System.currentTimeMillis();
 
-      for (int i = 0; i < pointers.size(); i++) {
+    UUID startTimeUUID = UUIDUtils.newTimeUUID(startTime, 0);
 
-        pointer = pointers.get(i);
+    QueueBounds bounds = getQueueBounds(queueId);
 
-        int insertIndex = Collections.binarySearch(ids, pointer.expiration);
+    //queue has never been written to
+    if(bounds == null){
+      return createResults(new ArrayList<Message>(0), queuePath, queueId, consumerId);
+    }
 
-        // we're done, this message goes at the end, no point in continuing
-        // since
-        // we have our full result set
-        if (insertIndex <= params.limit * -1 - 1) {
-          break;
-        }
+    // with transactional reads, we can't read into the future, set the bounds
+    // to be now
+    bounds = new QueueBounds(bounds.getOldest(), startTimeUUID);
 
-        // get the insertion index into the set
-        insertIndex = (insertIndex + 1) * -1;
+    SearchParam params = getParams(queueId, readerId, query);
 
-        ids.add(insertIndex, pointer.targetMessage);
+    List<UUID> ids = null;
 
-        lastTransactionIndex = i;
+    if (partition < 0) {
+      ids = getQueueRange(queueId, bounds, params);
+    } else {
+      ids = getQueuePartitionRange(queueId, bounds, params,
+          getInboxPartitions(partition, query.getPartitions(), QUEUE_PARTITIONS));
+    }
 
-      }
+    // get a list of ids from the consumer.
 
-      // now we've merge the results, trim them to size;
-      if (ids.size() > params.limit) {
-        ids = ids.subList(0, params.limit);
-      }
+    List<TransactionPointer> pointers = getConsumerIds(queueId, readerId, params, startTimeUUID);
 
-      // load the messages
-      List<Message> messages = loadMessages(ids, params.reversed);
+    TransactionPointer pointer = null;
 
-      // write our future timeouts for all these messages
-      writeTransactions(messages, query.getTimeout() + startTime, queueId, consumerId);
+    int lastTransactionIndex = -1;
 
-      // remove all read transaction pointers
-      deleteTransactionPointers(pointers, lastTransactionIndex + 1, queueId, consumerId);
+    for (int i = 0; i < pointers.size(); i++) {
 
-      // return the results
-      results = createResults(messages, queuePath, queueId, consumerId);
+      pointer = pointers.get(i);
 
-      UUID lastReadTransactionPointer = lastTransactionIndex == -1 ? null
-          : pointers.get(lastTransactionIndex).expiration;
+      int insertIndex = Collections.binarySearch(ids, pointer.expiration);
 
-      UUID lastId = messages.size() == 0 ? null : messages.get(messages.size() - 1).getUuid();
+      // we're done, this message goes at the end, no point in continuing
+      // since
+      // we have our full result set
+      if (insertIndex <= params.limit * -1 - 1) {
+        break;
+      }
 
-      // our last read id will either be the last read transaction pointer, or
-      // the
-      // last read messages uuid, whichever is greater
-      UUID lastReadId = UUIDUtils.max(lastReadTransactionPointer, lastId);
+      // get the insertion index into the set
+      insertIndex = (insertIndex + 1) * -1;
 
-      writeClientPointer(queueId, consumerId, lastReadId);
+      ids.add(insertIndex, pointer.targetMessage);
+
+      lastTransactionIndex = i;
 
-    } catch (UGLockException e) {
-      logger.error("Unable to acquire lock", e);
-      throw new QueueException("Unable to acquire lock", e);
-    } finally {
-      try {
-        lock.unlock();
-      } catch (UGLockException e) {
-        logger.error("Unable to release lock", e);
-        throw new QueueException("Unable to release lock", e);
-      }
     }
 
-    return results;
+    // now we've merge the results, trim them to size;
+    if (ids.size() > params.limit) {
+      ids = ids.subList(0, params.limit);
+    }
 
+    // load the messages
+    List<Message> messages = loadMessages(ids, params.reversed);
+
+    // write our future timeouts for all these messages
+    writeTransactions(messages, query.getTimeout() + startTime, queueId, readerId);
+
+    // remove all read transaction pointers
+    deleteTransactionPointers(pointers, lastTransactionIndex + 1, queueId, readerId);
+
+    // return the results
+    QueueResults results = createResults(messages, queuePath, queueId, consumerId);
+
+    UUID lastReadTransactionPointer = lastTransactionIndex == -1 ? null
+        : pointers.get(lastTransactionIndex).expiration;
+
+    UUID lastId = messages.size() == 0 ? null : messages.get(messages.size() - 1).getUuid();
+
+    // our last read id will either be the last read transaction pointer, or
+    // the
+    // last read messages uuid, whichever is greater
+    UUID lastReadId = UUIDUtils.max(lastReadTransactionPointer, lastId);
+
+    writeClientPointer(queueId, readerId, lastReadId);
+
+    return results;
   }
 
   /**
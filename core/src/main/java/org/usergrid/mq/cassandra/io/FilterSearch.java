@@ -46,6 +46,7 @@ import org.usergrid.mq.QueryProcessor;
 import org.usergrid.mq.QueryProcessor.QuerySlice;
 import org.usergrid.mq.QueueQuery;
 import org.usergrid.mq.QueueResults;
+import org.usergrid.mq.cassandra.MessageIndexPolicy;
 import org.usergrid.persistence.cassandra.CassandraService;
 
 import com.fasterxml.uuid.UUIDComparator;
@@ -60,11 +61,23 @@ public class FilterSearch extends NoTransactionSearch {
 
   private static final Logger logger = LoggerFactory.getLogger(FilterSearch.class);
 
+  private final MessageIndexPolicy indexPolicy;
+
   /**
    * 
    */
   public FilterSearch(Keyspace ko) {
+    this(ko, MessageIndexPolicy.DEFAULT);
+  }
+
+  /**
+   * @param indexPolicy
+   *          which properties the queue indexes, filters on others are
+   *          rejected rather than silently matching nothing
+   */
+  public FilterSearch(Keyspace ko, MessageIndexPolicy indexPolicy) {
     super(ko);
+    this.indexPolicy = indexPolicy;
   }
 
   /*
@@ -79,6 +92,13 @@ public class FilterSearch extends NoTransactionSearch {
     QueryProcessor qp = new QueryProcessor(query);
     List<QuerySlice> slices = qp.getSlices();
 
+    for (QuerySlice slice : slices) {
+      if (!indexPolicy.isSearchable(slice.getPropertyName())) {
+        throw new IllegalArgumentException("Property " + slice.getPropertyName() + " isn't indexed in queue "
+            + queuePath + ", which indexes " + indexPolicy);
+      }
+    }
+
     long limit = query.getLimit();
 
     UUID queueId = getQueueId(queuePath);
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of creating many items in a collection at once. Each item is
+ * either created or fails on its own, so the results hold the entity or the
+ * error for every item, by its position in the request.
+ */
+public class BulkCreateResults {
+
+	private final Entity[] entities;
+	private final Exception[] errors;
+
+	public BulkCreateResults(int size) {
+		entities = new Entity[size];
+		errors = new Exception[size];
+	}
+
+	public int size() {
+		return entities.length;
+	}
+
+	public Entity getEntity(int i) {
+		return entities[i];
+	}
+
+	public void setEntity(int i, Entity entity) {
+		entities[i] = entity;
+		errors[i] = null;
+	}
+
+	public Exception getError(int i) {
+		return errors[i];
+	}
+
+	public void setError(int i, Exception error) {
+		entities[i] = null;
+		errors[i] = error;
+	}
+
+	/**
+	 * @return the created entities in request order, without the items that
+	 *         failed or weren't created
+	 */
+	public List<Entity> getEntities() {
+		List<Entity> created = new ArrayList<Entity>(entities.length);
+		for (Entity entity : entities) {
+			if (entity != null) {
+				created.add(entity);
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * @return the errors of the items that failed, keyed by their position
+	 */
+	public Map<Integer, Exception> getErrors() {
+		Map<Integer, Exception> failed = new LinkedHashMap<Integer, Exception>();
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] != null) {
+				failed.put(i, errors[i]);
+			}
+		}
+		return failed;
+	}
+
+	public boolean hasErrors() {
+		for (Exception error : errors) {
+			if (error != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
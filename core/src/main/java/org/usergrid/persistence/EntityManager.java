@@ -179,6 +179,22 @@ public interface EntityManager {
     public Results get(List<UUID> entityIds, Results.Level resultsLevel)
             throws Exception;
 
+    /**
+     * Retrieves a set of Entities, loading only the specified properties
+     * along with the core entity properties.
+     *
+     * @param entityIds
+     *            a list of entity UUIDs.
+     * @param resultsLevel
+     * @param propertyNames
+     *            the properties to load, or null to load all properties.
+     * @return a list of entity objects.
+     *
+     * @throws Exception
+     */
+    public Results get(List<UUID> entityIds, Results.Level resultsLevel,
+            Set<String> propertyNames) throws Exception;
+
     /**
      * Retrieves a set of Entitues cast to the specified class type.
      * 
@@ -339,6 +355,23 @@ public interface EntityManager {
     public Map<Object, Object> getDictionaryAsMap(EntityRef entityRef,
             String dictionaryName) throws Exception;
 
+    /**
+     * Gets the element names of dictionaries of many entities at once, in a
+     * single read for all of them rather than one per entity and dictionary.
+     * 
+     * @param entityRefs
+     *            the entities
+     * @param dictionaryNames
+     *            the dictionaries to read from each entity
+     * @return the elements of each dictionary by dictionary name, by entity
+     *         id, with an empty set for an empty dictionary
+     * @throws Exception
+     *             the exception
+     */
+    public Map<UUID, Map<String, Set<Object>>> getDictionariesAsSets(
+            List<? extends EntityRef> entityRefs, String... dictionaryNames)
+            throws Exception;
+
     public Object getDictionaryElementValue(EntityRef entityRef,
             String dictionaryName, String elementName) throws Exception;
 
@@ -467,6 +500,27 @@ public interface EntityManager {
             String collectionName, String itemType,
             Map<String, Object> properties) throws Exception;
 
+    /**
+     * Creates many items in the specified collection belonging to the
+     * specified entity. The items are written in batches in parallel rather
+     * than one at a time, and each one is created or fails on its own.
+     * 
+     * @param entityRef
+     *            the owner of the collection
+     * @param collectionName
+     *            the collection name
+     * @param itemType
+     *            the type of the items
+     * @param items
+     *            the properties of each item
+     * @return the entity or error for each item
+     * @throws Exception
+     *             the exception
+     */
+    public BulkCreateResults createItemsInCollection(EntityRef entityRef,
+            String collectionName, String itemType,
+            List<Map<String, Object>> items) throws Exception;
+
     /**
      * Removes an entity to the specified collection belonging to the specified
      * entity.
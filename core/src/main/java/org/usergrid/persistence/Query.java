@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -96,6 +97,7 @@ public class Query {
     protected Long startTime;
     protected Long finishTime;
     protected boolean pad;
+    protected boolean metadata = true;
     protected CounterResolution resolution = CounterResolution.ALL;
     protected List<Identifier> users;
     protected List<Identifier> groups;
@@ -135,6 +137,7 @@ public class Query {
             finishTime = q.finishTime;
             resolution = q.resolution;
             pad = q.pad;
+            metadata = q.metadata;
             rootOperand = q.rootOperand;
             users = q.users != null ? new ArrayList<Identifier>(q.users) : null;
             groups = q.groups != null ? new ArrayList<Identifier>(q.groups)
@@ -219,6 +222,7 @@ public class Query {
         Long startTime = null;
         Long finishTime = null;
         Boolean pad = null;
+        Boolean metadata = null;
         CounterResolution resolution = null;
         List<Identifier> users = null;
         List<Identifier> groups = null;
@@ -257,6 +261,8 @@ public class Query {
 
         pad = firstBoolean(params.get("pad"));
 
+        metadata = firstBoolean(params.get("metadata"));
+
         for (Entry<String, List<String>> param : params.entrySet()) {
             Identifier identifier = Identifier.from(param.getKey());
             if ((param.getValue() == null) || (param.getValue().size() == 0) || identifier.isUUID()) {
@@ -351,6 +357,11 @@ public class Query {
             q.setPad(pad);
         }
 
+        if (metadata != null) {
+            q = newQueryIfNull(q);
+            q.setMetadata(metadata);
+        }
+
         if (users != null) {
             q = newQueryIfNull(q);
             q.setUsers(users);
@@ -594,6 +605,40 @@ public class Query {
         return selectSubjects;
     }
 
+    /**
+     * Get the top level entity properties needed to evaluate the select
+     * clause and sort the results of this query, so that entities can be
+     * loaded with just those columns.
+     *
+     * @return the property names, or null if all properties are needed
+     */
+    public Set<String> getSelectProperties() {
+        if (selectSubjects.isEmpty()) {
+            return null;
+        }
+        if ((selectSubjects.size() == 1)
+                && selectSubjects.containsKey(PROPERTY_UUID)) {
+            return null;
+        }
+
+        Set<String> properties = new TreeSet<String>(
+                String.CASE_INSENSITIVE_ORDER);
+        for (Entry<String, String> select : selectSubjects.entrySet()) {
+            String path = mergeSelectResults ? select.getValue() : select
+                    .getKey();
+            if (isBlank(path)) {
+                return null;
+            }
+            path = path.trim();
+            int i = path.indexOf('.');
+            properties.add(i < 0 ? path : path.substring(0, i));
+        }
+        for (SortPredicate sort : sortPredicates) {
+            properties.add(sort.getPropertyName());
+        }
+        return properties;
+    }
+
     public void setMergeSelectResults(boolean mergeSelectResults) {
         this.mergeSelectResults = mergeSelectResults;
     }
@@ -959,6 +1004,18 @@ public class Query {
         this.pad = pad;
     }
 
+    /**
+     * @return false if the entities returned shouldn't have the links to
+     *         their connections and collections in their metadata
+     */
+    public boolean isMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(boolean metadata) {
+        this.metadata = metadata;
+    }
+
     public void setResolution(CounterResolution resolution) {
         this.resolution = resolution;
     }
@@ -50,6 +50,9 @@ public interface RelationManager {
 	public Entity createItemInCollection(String collectionName,
 			String itemType, Map<String, Object> properties) throws Exception;
 
+	public BulkCreateResults createItemsInCollection(String collectionName,
+			String itemType, List<Map<String, Object>> items) throws Exception;
+
 	public void removeFromCollection(String collectionName, EntityRef itemRef)
 			throws Exception;
 
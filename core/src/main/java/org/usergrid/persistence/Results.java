@@ -38,6 +38,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 import me.prettyprint.hector.api.beans.DynamicComposite;
 import me.prettyprint.hector.api.beans.AbstractComposite.ComponentEquality;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 import org.usergrid.persistence.query.ir.QuerySlice.RangeValue;
@@ -1167,6 +1168,11 @@ public class Results implements Iterable<Entity> {
         return this;
     }
 
+    @JsonIgnore
+    public Map<UUID, Map<String, Object>> getMetadata() {
+        return metadata;
+    }
+
     public void setMetadata(Map<UUID, Map<String, Object>> metadata) {
         this.metadata = metadata;
     }
@@ -74,6 +74,7 @@ import org.usergrid.persistence.schema.PropertyInfo;
 import org.usergrid.utils.InflectionUtils;
 import org.usergrid.utils.JsonUtils;
 import org.usergrid.utils.MapUtils;
+import org.usergrid.utils.PropertyCodecUtils;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -248,6 +249,8 @@ public class Schema {
 
     private static Schema instance;
 
+    private static volatile boolean binaryPropertyEncoding = false;
+
     boolean initialized = false;
 
     public Schema() {
@@ -267,6 +270,22 @@ public class Schema {
         }
     }
 
+    /**
+     * Writes property values in the {@link PropertyCodecUtils} encoding
+     * instead of Smile. Both are always read, but nodes without the binary
+     * encoding can't read the columns it writes, so only turn it on once every
+     * node can read them.
+     * 
+     * @param binaryPropertyEncoding
+     */
+    public static void setBinaryPropertyEncoding(boolean binaryPropertyEncoding) {
+        Schema.binaryPropertyEncoding = binaryPropertyEncoding;
+    }
+
+    public static boolean isBinaryPropertyEncoding() {
+        return binaryPropertyEncoding;
+    }
+
     public static Schema getDefaultSchema() {
         if (instance == null) {
             synchronized (initLock) {
@@ -1902,7 +1921,12 @@ public class Schema {
             if (Schema.getDefaultSchema().isPropertyEncrypted(entityType, propertyName)) {
               bytes = decrypt(bytes);
             }
-            propertyValue = Schema.deserializePropertyValueFromJsonBinary(bytes);
+            if (PropertyCodecUtils.isEncoded(bytes)) {
+                propertyValue = PropertyCodecUtils.decode(bytes);
+            } else {
+                // written as Smile before the binary encoding
+                propertyValue = Schema.deserializePropertyValueFromJsonBinary(bytes);
+            }
         }
         return propertyValue;
     }
@@ -1915,7 +1939,12 @@ public class Schema {
         } else if (PROPERTY_TYPE.equals(propertyName)) {
             bytes = bytebuffer(string(propertyValue));
         } else {
-            bytes = Schema.serializePropertyValueToJsonBinary(toJsonNode(propertyValue));
+            if (binaryPropertyEncoding) {
+                bytes = PropertyCodecUtils.encode(propertyValue);
+            }
+            if (bytes == null) {
+                bytes = Schema.serializePropertyValueToJsonBinary(toJsonNode(propertyValue));
+            }
             if (Schema.getDefaultSchema().isPropertyEncrypted(entityType, propertyName)) {
               bytes.rewind();
               bytes = encrypt(bytes);
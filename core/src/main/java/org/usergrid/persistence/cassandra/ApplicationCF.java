@@ -103,6 +103,13 @@ public enum ApplicationCF implements CFEnum {
 	 */
 	ENTITY_COUNTERS("Entity_Counters", "BytesType", COUNTERTYPE.getClassName()),
 
+	/**
+	 * Approximate entry counts of the collection property indexes, see
+	 * {@link IndexStatistics}
+	 */
+	ENTITY_INDEX_STATS("Entity_Index_Stats", "BytesType", COUNTERTYPE
+			.getClassName()),
+
 	;
 	public final static String DEFAULT_DYNAMIC_COMPOSITE_ALIASES = "(a=>AsciiType,b=>BytesType,i=>IntegerType,x=>LexicalUUIDType,l=>LongType,t=>TimeUUIDType,s=>UTF8Type,u=>UUIDType,A=>AsciiType(reversed=true),B=>BytesType(reversed=true),I=>IntegerType(reversed=true),X=>LexicalUUIDType(reversed=true),L=>LongType(reversed=true),T=>TimeUUIDType(reversed=true),S=>UTF8Type(reversed=true),U=>UUIDType(reversed=true))";
 
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import java.util.UUID;
+
+/**
+ * Cache of what a principal is granted within an application, keyed by
+ * application and principal id. The values are whatever the authorizing realm
+ * builds from the roles and permissions it reads, this side only cares about
+ * invalidating them. The entity manager invalidates a principal when its own
+ * roles or permissions change, and the whole application when a role or group
+ * changes, since that can change what any of its users are granted
+ * 
+ */
+public interface AuthorizationCache {
+
+    /**
+     * Get what a principal was granted
+     * 
+     * @param applicationId
+     *            The application id
+     * @param principalId
+     *            The user id, or null for the application's guests
+     * @return The cached grants, or null if they aren't cached
+     */
+    public Object get(UUID applicationId, UUID principalId);
+
+    /**
+     * Cache what a principal is granted
+     * 
+     * @param applicationId
+     *            The application id
+     * @param principalId
+     *            The user id, or null for the application's guests
+     * @param grants
+     *            The grants, which must not be modified once cached
+     */
+    public void put(UUID applicationId, UUID principalId, Object grants);
+
+    /**
+     * Remove a principal's grants from the cache
+     * 
+     * @param applicationId
+     *            The application id
+     * @param principalId
+     *            The user id, or null for the application's guests
+     */
+    public void invalidate(UUID applicationId, UUID principalId);
+
+    /**
+     * Remove the grants of every principal in an application from the cache
+     * 
+     * @param applicationId
+     *            The application id
+     */
+    public void invalidateApplication(UUID applicationId);
+
+}
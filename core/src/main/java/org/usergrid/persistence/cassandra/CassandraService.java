@@ -45,12 +45,16 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import me.prettyprint.cassandra.connection.HConnectionManager;
 import me.prettyprint.cassandra.model.ConfigurableConsistencyLevel;
+import me.prettyprint.cassandra.model.QuorumAllConsistencyLevelPolicy;
 import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.serializers.BytesArraySerializer;
 import me.prettyprint.cassandra.serializers.DynamicCompositeSerializer;
@@ -89,6 +93,8 @@ import org.usergrid.persistence.IndexBucketLocator;
 import org.usergrid.persistence.IndexBucketLocator.IndexType;
 import org.usergrid.utils.JsonUtils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class CassandraService {
 
   public static String SYSTEM_KEYSPACE = "Usergrid";
@@ -132,6 +138,24 @@ public class CassandraService {
 
   private Map<String, String> accessMap;
 
+  /**
+   * Number of threads used to read index buckets in parallel. 0 reads all
+   * buckets with a single multiget on the calling thread
+   */
+  private int indexBucketConcurrency = 0;
+
+  /**
+   * Number of bucket rows to read in each parallel multiget
+   */
+  private int indexBucketGroupSize = 1;
+
+  /**
+   * Max time in milliseconds a query will wait for its parallel bucket reads
+   */
+  private long indexBucketTimeout = 10000;
+
+  private ExecutorService indexBucketExecutor;
+
   public static final StringSerializer se = new StringSerializer();
   public static final ByteBufferSerializer be = new ByteBufferSerializer();
   public static final UUIDSerializer ue = new UUIDSerializer();
@@ -141,6 +165,8 @@ public class CassandraService {
 
   public static final UUID NULL_ID = new UUID(0, 0);
 
+  private static final ConsistencyLevelPolicy QUORUM_POLICY = new QuorumAllConsistencyLevelPolicy();
+
   public CassandraService(Properties properties, Cluster cluster, CassandraHostConfigurator cassandraHostConfigurator,
       LockManager lockManager) {
     this.properties = properties;
@@ -160,6 +186,24 @@ public class CassandraService {
     accessMap.put("password", properties.getProperty("cassandra.password"));
     systemKeyspace = HFactory.createKeyspace(SYSTEM_KEYSPACE, cluster, consistencyLevelPolicy,
         ON_FAIL_TRY_ALL_AVAILABLE, accessMap);
+
+    if (indexBucketConcurrency > 0) {
+      // bounded queue, when it's full the querying thread performs the read
+      // itself
+      indexBucketExecutor = new ThreadPoolExecutor(indexBucketConcurrency, indexBucketConcurrency, 0L,
+          TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(indexBucketConcurrency * 10),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("index-bucket-reader-%d").build(),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+  }
+
+  /**
+   * Stop the index bucket readers when the context is closed
+   */
+  public void destroy() {
+    if (indexBucketExecutor != null) {
+      indexBucketExecutor.shutdown();
+    }
   }
 
   public Cluster getCluster() {
@@ -209,6 +253,38 @@ public class CassandraService {
     this.consistencyLevelPolicy = consistencyLevelPolicy;
   }
 
+  public int getIndexBucketConcurrency() {
+    return indexBucketConcurrency;
+  }
+
+  public void setIndexBucketConcurrency(int indexBucketConcurrency) {
+    this.indexBucketConcurrency = indexBucketConcurrency;
+  }
+
+  public int getIndexBucketGroupSize() {
+    return indexBucketGroupSize;
+  }
+
+  public void setIndexBucketGroupSize(int indexBucketGroupSize) {
+    this.indexBucketGroupSize = Math.max(1, indexBucketGroupSize);
+  }
+
+  public long getIndexBucketTimeout() {
+    return indexBucketTimeout;
+  }
+
+  public void setIndexBucketTimeout(long indexBucketTimeout) {
+    this.indexBucketTimeout = indexBucketTimeout;
+  }
+
+  /**
+   * @return The shared executor for parallel index bucket reads, or null if
+   *         bucket reads should not be parallelized
+   */
+  public ExecutorService getIndexBucketExecutor() {
+    return indexBucketExecutor;
+  }
+
   /**
    * @param applicationId
    * @return keyspace for application UUID
@@ -230,12 +306,15 @@ public class CassandraService {
   }
 
   public Keyspace getKeyspace(String keyspace, UUID prefix) {
+    return getKeyspace(keyspace, prefix, consistencyLevelPolicy);
+  }
+
+  private Keyspace getKeyspace(String keyspace, UUID prefix, ConsistencyLevelPolicy policy) {
     Keyspace ko = null;
     if (USE_VIRTUAL_KEYSPACES && (prefix != null)) {
-      ko = createVirtualKeyspace(keyspace, prefix, ue, cluster, consistencyLevelPolicy, ON_FAIL_TRY_ALL_AVAILABLE,
-          accessMap);
+      ko = createVirtualKeyspace(keyspace, prefix, ue, cluster, policy, ON_FAIL_TRY_ALL_AVAILABLE, accessMap);
     } else {
-      ko = HFactory.createKeyspace(keyspace, cluster, consistencyLevelPolicy, ON_FAIL_TRY_ALL_AVAILABLE, accessMap);
+      ko = HFactory.createKeyspace(keyspace, cluster, policy, ON_FAIL_TRY_ALL_AVAILABLE, accessMap);
     }
     return ko;
   }
@@ -246,6 +325,20 @@ public class CassandraService {
     return ko;
   }
 
+  /**
+   * Get the keyspace of an application at QUORUM for reads and writes,
+   * whatever cassandra.readcl and cassandra.writecl are set to. For
+   * operations that are only correct if every read sees the writes that
+   * finished before it
+   * 
+   * @param applicationId
+   * @return
+   */
+  public Keyspace getQuorumApplicationKeyspace(UUID applicationId) {
+    assert applicationId != null;
+    return getKeyspace(keyspaceForApplication(applicationId), prefixForApplication(applicationId), QUORUM_POLICY);
+  }
+
   /**
    * The Usergrid_Applications keyspace directly
    * 
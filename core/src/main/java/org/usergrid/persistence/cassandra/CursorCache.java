@@ -4,7 +4,6 @@ import static java.lang.Integer.parseInt;
 import static org.apache.commons.codec.binary.Base64.decodeBase64;
 import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
 import static org.apache.commons.lang.StringUtils.split;
-import static org.usergrid.utils.ConversionUtils.bytes;
 
 import java.nio.ByteBuffer;
 import java.util.HashMap;
@@ -14,11 +13,25 @@ import java.util.Map.Entry;
 /**
  * Internal cursor parsing
  * 
+ * A cursor is a version byte followed by an entry per slice, each the varint
+ * of the slice hash and the varint length of the slice cursor followed by its
+ * bytes, encoded with a single pass of URL safe base64. Parsed cursors are
+ * views of the decoded bytes, nothing is copied.
+ * 
+ * Cursors in the previous text format are still parsed, so clients can keep
+ * paging across an upgrade.
+ * 
  * @author tnine
  * 
  */
 public class CursorCache {
 
+  /**
+   * The first byte of a binary cursor. Text cursors start with a digit or a
+   * minus sign
+   */
+  static final byte VERSION = 1;
+
   private Map<Integer, ByteBuffer> cursors = new HashMap<Integer, ByteBuffer>();
 
   /**
@@ -32,7 +45,46 @@ public class CursorCache {
       return;
     }
 
-    String decoded = new String(decodeBase64(cursorString));
+    byte[] decoded = decodeBase64(cursorString);
+
+    if (decoded.length == 0) {
+      return;
+    }
+
+    if (decoded[0] == VERSION) {
+      parse(decoded);
+    } else {
+      parseText(new String(decoded));
+    }
+
+  }
+
+  private void parse(byte[] decoded) {
+    ByteBuffer buffer = ByteBuffer.wrap(decoded);
+    buffer.position(1);
+
+    while (buffer.hasRemaining()) {
+      int sliceHash = decodeZigZag(readVarint(buffer));
+      int length = readVarint(buffer);
+
+      if ((length < 0) || (length > buffer.remaining())) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+
+      ByteBuffer cursorBytes = buffer.slice();
+      cursorBytes.limit(length);
+      cursors.put(sliceHash, cursorBytes);
+
+      buffer.position(buffer.position() + length);
+    }
+  }
+
+  /**
+   * Parse the previous format, hash:base64(bytes)|... base64 encoded again
+   * 
+   * @param decoded
+   */
+  private void parseText(String decoded) {
 
     // nothing to do
     if (decoded.indexOf(':') < 0) {
@@ -96,34 +148,84 @@ public class CursorCache {
       return null;
     }
 
-    StringBuffer buff = new StringBuffer();
-
-    int nullCount = 0;
-    ByteBuffer value = null;
+    int size = 1;
+    boolean complete = true;
 
     for (Entry<Integer, ByteBuffer> entry : cursors.entrySet()) {
-      value = entry.getValue();
+      int length = entry.getValue().remaining();
 
-      buff.append(entry.getKey());
-      buff.append(":");
-      buff.append(encodeBase64URLSafeString(bytes(value)));
-      buff.append("|");
+      size += varintSize(encodeZigZag(entry.getKey()));
+      size += varintSize(length);
+      size += length;
 
-      // this range was empty, mark it as a null
-      if (value.remaining() == 0) {
-        nullCount++;
+      // an empty range marks the slice as complete
+      if (length > 0) {
+        complete = false;
       }
-
     }
 
     // all cursors are complete, return null
-    if (nullCount == cursors.size()) {
+    if (complete) {
       return null;
     }
 
-    // trim off the last pipe
-    buff.setLength(buff.length() - 1);
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.put(VERSION);
+
+    for (Entry<Integer, ByteBuffer> entry : cursors.entrySet()) {
+      writeVarint(buffer, encodeZigZag(entry.getKey()));
+      writeVarint(buffer, entry.getValue().remaining());
+      buffer.put(entry.getValue().duplicate());
+    }
+
+    return encodeBase64URLSafeString(buffer.array());
+  }
+
+  /**
+   * Slice hashes are as often negative as positive, zig zag them so both
+   * are short varints
+   */
+  private static int encodeZigZag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static int decodeZigZag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private static void writeVarint(ByteBuffer buffer, int value) {
+    while ((value & ~0x7f) != 0) {
+      buffer.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static int readVarint(ByteBuffer buffer) {
+    int value = 0;
+
+    for (int shift = 0; shift < 32; shift += 7) {
+      if (!buffer.hasRemaining()) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+
+      byte b = buffer.get();
+      value |= (b & 0x7f) << shift;
+
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
 
-    return encodeBase64URLSafeString(buff.toString().getBytes());
+    throw new IllegalArgumentException("Invalid cursor");
   }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Read-through cache of deserialized entity properties, keyed by application
+ * and entity id. The entity manager populates it from reads of the entity
+ * properties row and invalidates it whenever it writes to that row.
+ * 
+ * A read that started before a write can finish after the write's
+ * invalidation, so every invalidation bumps a generation of the entity. A
+ * reader gets the generation before it reads the row and the properties it
+ * read are only cached if the generation hasn't changed since.
+ * 
+ */
+public interface EntityCache {
+
+    /**
+     * Get the cached properties of an entity
+     * 
+     * @param applicationId
+     *            The application id
+     * @param entityId
+     *            The entity id
+     * @return A copy of the cached properties that the caller may modify, or
+     *         null if the entity isn't cached
+     */
+    public Map<String, Object> get(UUID applicationId, UUID entityId);
+
+    /**
+     * Get the generation of an entity, before reading the properties to cache
+     * 
+     * @param applicationId
+     *            The application id
+     * @param entityId
+     *            The entity id
+     * @return The generation to pass to
+     *         {@link #put(UUID, UUID, long, Map, long)}
+     */
+    public long getGeneration(UUID applicationId, UUID entityId);
+
+    /**
+     * Cache the properties of an entity, unless it was invalidated since the
+     * properties were read
+     * 
+     * @param applicationId
+     *            The application id
+     * @param entityId
+     *            The entity id
+     * @param generation
+     *            The generation of the entity before the properties were read
+     * @param properties
+     *            The deserialized properties
+     * @param size
+     *            The size in bytes of the serialized columns the properties
+     *            were read from
+     */
+    public void put(UUID applicationId, UUID entityId, long generation,
+            Map<String, Object> properties, long size);
+
+    /**
+     * Remove an entity from the cache and bump its generation
+     * 
+     * @param applicationId
+     *            The application id
+     * @param entityId
+     *            The entity id
+     */
+    public void invalidate(UUID applicationId, UUID entityId);
+
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Identifies an entity within an application in the {@link EntityCache}
+ * 
+ */
+public class EntityCacheKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UUID applicationId;
+    private final UUID entityId;
+
+    public EntityCacheKey(UUID applicationId, UUID entityId) {
+        this.applicationId = applicationId;
+        this.entityId = entityId;
+    }
+
+    public UUID getApplicationId() {
+        return applicationId;
+    }
+
+    public UUID getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result
+                + ((applicationId == null) ? 0 : applicationId.hashCode());
+        result = prime * result
+                + ((entityId == null) ? 0 : entityId.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EntityCacheKey)) {
+            return false;
+        }
+        EntityCacheKey other = (EntityCacheKey) obj;
+        if (applicationId == null ? other.applicationId != null
+                : !applicationId.equals(other.applicationId)) {
+            return false;
+        }
+        if (entityId == null ? other.entityId != null : !entityId
+                .equals(other.entityId)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return applicationId + "/" + entityId;
+    }
+
+}
@@ -33,11 +33,15 @@ import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.serializers.BytesArraySerializer;
 import me.prettyprint.cassandra.serializers.DynamicCompositeSerializer;
@@ -92,6 +96,8 @@ ApplicationContextAware {
     public static final DynamicCompositeSerializer dce = new DynamicCompositeSerializer();
     public static final LongSerializer le = new LongSerializer();
 
+    public static final int DEFAULT_BULK_CREATE_BATCH_MUTATIONS = 2000;
+
     ApplicationContext applicationContext;
 
     CassandraService cass;
@@ -99,6 +105,10 @@ ApplicationContextAware {
 
     private boolean skipAggregateCounters;
 
+    private int bulkCreateConcurrency = 0;
+    private int bulkCreateBatchMutations = DEFAULT_BULK_CREATE_BATCH_MUTATIONS;
+    private ExecutorService bulkCreateExecutor;
+
     private LoadingCache<UUID, EntityManager> entityManagers = CacheBuilder.newBuilder()
             .maximumSize(100)
             .build(
@@ -407,4 +417,44 @@ ApplicationContextAware {
         this.counterUtils = counterUtils;
     }
 
+    public int getBulkCreateConcurrency() {
+        return bulkCreateConcurrency;
+    }
+
+    /**
+     * @param bulkCreateConcurrency
+     *            the number of threads creating slices of the items of bulk
+     *            collection posts, 0 creates them on the posting thread
+     */
+    public void setBulkCreateConcurrency(int bulkCreateConcurrency) {
+        this.bulkCreateConcurrency = bulkCreateConcurrency;
+    }
+
+    public int getBulkCreateBatchMutations() {
+        return bulkCreateBatchMutations;
+    }
+
+    /**
+     * @param bulkCreateBatchMutations
+     *            the number of mutations at which the items being created by
+     *            a bulk collection post get written
+     */
+    public void setBulkCreateBatchMutations(int bulkCreateBatchMutations) {
+        this.bulkCreateBatchMutations = bulkCreateBatchMutations;
+    }
+
+    synchronized ExecutorService getBulkCreateExecutor() {
+        if ((bulkCreateExecutor == null) && (bulkCreateConcurrency > 0)) {
+            // bounded queue, when it's full the posting thread creates the
+            // slice itself
+            bulkCreateExecutor = new ThreadPoolExecutor(bulkCreateConcurrency,
+                    bulkCreateConcurrency, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(bulkCreateConcurrency * 10),
+                    new ThreadFactoryBuilder().setDaemon(true)
+                            .setNameFormat("bulk-create-%d").build(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return bulkCreateExecutor;
+    }
+
 }
@@ -17,14 +17,15 @@ package org.usergrid.persistence.cassandra;
 
 import static java.lang.String.CASE_INSENSITIVE_ORDER;
 import static java.util.Arrays.asList;
+import static me.prettyprint.hector.api.factory.HFactory.createColumn;
 import static me.prettyprint.hector.api.factory.HFactory.createCounterSliceQuery;
 import static me.prettyprint.hector.api.factory.HFactory.createIndexedSlicesQuery;
 import static me.prettyprint.hector.api.factory.HFactory.createMutator;
 import static org.apache.commons.lang.StringUtils.capitalize;
 import static org.apache.commons.lang.StringUtils.isBlank;
-import static org.usergrid.locking.LockHelper.getUniqueUpdateLock;
 import static org.usergrid.persistence.Results.fromEntities;
 import static org.usergrid.persistence.Results.Level.REFS;
+import static org.usergrid.persistence.Schema.COLLECTION_GROUPS;
 import static org.usergrid.persistence.Schema.COLLECTION_ROLES;
 import static org.usergrid.persistence.Schema.COLLECTION_USERS;
 import static org.usergrid.persistence.Schema.DICTIONARY_COLLECTIONS;
@@ -124,13 +125,13 @@ import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
-import org.usergrid.locking.Lock;
 import org.usergrid.mq.Message;
 import org.usergrid.mq.QueueManager;
 import org.usergrid.mq.cassandra.QueueManagerFactoryImpl;
 import org.usergrid.persistence.AggregateCounter;
 import org.usergrid.persistence.AggregateCounterSet;
 import org.usergrid.persistence.AssociatedEntityRef;
+import org.usergrid.persistence.BulkCreateResults;
 import org.usergrid.persistence.CollectionRef;
 import org.usergrid.persistence.ConnectedEntityRef;
 import org.usergrid.persistence.ConnectionRef;
@@ -189,6 +190,17 @@ public class EntityManagerImpl implements EntityManager {
     public static final String APPLICATION_COLLECTION = "application.collection.";
     public static final String APPLICATION_ENTITIES = "application.entities";
     public static final long ONE_COUNT = 1L;
+
+    /**
+     * Seconds a unique property claim lasts if its batch never replaces it
+     */
+    private static final int UNIQUE_CLAIM_TTL = 30;
+
+    /**
+     * Most columns read from a unique row when claiming it
+     */
+    private static final int UNIQUE_CLAIM_COUNT = 100;
+
     @Resource
     private EntityManagerFactoryImpl emf;
     @Resource
@@ -196,6 +208,8 @@ public class EntityManagerImpl implements EntityManager {
     @Resource
 	private IndexBucketLocator indexBucketLocator;
 
+	private IndexStatistics indexStatistics;
+
 	private UUID applicationId;
 
     private Application application;
@@ -203,6 +217,10 @@ public class EntityManagerImpl implements EntityManager {
 	private CassandraService cass;
     @Resource
 	private CounterUtils counterUtils;
+    @Resource
+	private EntityCache entityCache;
+    @Resource
+	private AuthorizationCache authorizationCache;
 
     private boolean skipAggregateCounters;
 
@@ -224,6 +242,7 @@ public class EntityManagerImpl implements EntityManager {
 		this.skipAggregateCounters = skipAggregateCounters;
 		qmf = (QueueManagerFactoryImpl) getApplicationContext().getBean("queueManagerFactory");
 		indexBucketLocator = (IndexBucketLocator) getApplicationContext().getBean("indexBucketLocator");
+		indexStatistics = (IndexStatistics) getApplicationContext().getBean("indexStatistics");
         // prime the application entity for the EM
         try {
             getApplication();
@@ -241,6 +260,10 @@ public class EntityManagerImpl implements EntityManager {
         return emf.applicationContext;
     }
 
+    EntityManagerFactoryImpl getEntityManagerFactory() {
+        return emf;
+    }
+
 	@Override
 	public EntityRef getApplicationRef() {
 		return ref(TYPE_APPLICATION, applicationId);
@@ -350,46 +373,30 @@ public class EntityManagerImpl implements EntityManager {
 				}
 			}
 
-			if (!isPropertyValueUniqueForEntity(entity.getUuid(),
-					entity.getType(), propertyName, propertyValue)) {
+			// the claim is written just before the batch, so the batch's
+			// permanent unique column replaces it
+			if (!claimUniqueProperty(entity.getUuid(), entity.getType(),
+					propertyName, propertyValue, timestamp - 1)) {
 				throw new DuplicateUniquePropertyExistsException(
 						entity.getType(), propertyName, propertyValue);
 			}
 
 			if (propertyName.equals(defaultSchema.aliasProperty(
 					entity.getType()))) {
-			  Lock lock = getUniqueUpdateLock(cass.getLockManager(), applicationId, propertyValue, entity.getType(), propertyName);
-			  
-			  try{
-  				lock.lock();
-  				deleteAliasesForEntity(batch, entity.getUuid(), timestamp-1);
-  				createAlias(batch, applicationId, entity, entity.getType(),
-  						string(propertyValue), timestamp);
-			  }finally{
-			    lock.unlock();
-			  }
+				deleteAliasesForEntity(batch, entity.getUuid(), timestamp - 1);
+				createAlias(batch, applicationId, entity, entity.getType(),
+						string(propertyValue), timestamp);
 			}
 
 			/**
-			 * Unique property, load the old value and remove it, check if it's not a duplicate
+			 * Unique property, remove the old value and write the new one, the
+			 * claim above already checked it's not a duplicate
 			 */
 			if(defaultSchema.getEntityInfo(entity.getType()).isPropertyUnique(propertyName)){
-			  
-			    Lock lock = getUniqueUpdateLock(cass.getLockManager(),applicationId, propertyValue,
-                        entity.getType(), propertyName);
-
-			    try {
-            lock.lock();
-            
-            String collectionName = Schema.defaultCollectionName(entity.getType());
-
-            uniquePropertyDelete(batch, collectionName, entity.getType(), propertyName, propertyValue, entity.getUuid(), timestamp-1);
-            uniquePropertyWrite(batch, collectionName, propertyName, propertyValue, entity.getUuid(), timestamp);
-          } finally {
-            lock.unlock();
-          }
+			  String collectionName = Schema.defaultCollectionName(entity.getType());
 
-			    
+			  uniquePropertyDelete(batch, collectionName, entity.getType(), propertyName, propertyValue, entity.getUuid(), timestamp-1);
+			  uniquePropertyWrite(batch, collectionName, propertyName, propertyValue, entity.getUuid(), timestamp);
 			}
 		}
 
@@ -607,21 +614,11 @@ public class EntityManagerImpl implements EntityManager {
 		String collectionName = defaultCollectionName(entityType);
 
 
-    Lock lock = getUniqueUpdateLock(cass.getLockManager(), applicationId, propertyValue, entityType, propertyName);
-    List<HColumn<ByteBuffer, ByteBuffer>> cols = null;
-    
-    try {
-      lock.lock();
+		Object key = createUniqueIndexKey(collectionName, propertyName, propertyValue);
 
-      Object key = createUniqueIndexKey(collectionName, propertyName, propertyValue);
-
-      cols = cass.getColumns(cass.getApplicationKeyspace(applicationId),
-          ENTITY_UNIQUE, key, null, null, 2, false);
-
-    } finally {
-
-      lock.unlock();
-    }
+		List<HColumn<ByteBuffer, ByteBuffer>> cols = cass.getColumns(
+				cass.getApplicationKeyspace(applicationId), ENTITY_UNIQUE, key,
+				null, null, 2, false);
 
 		//No columns at all, it's unique
 		if(cols.size() == 0){
@@ -650,6 +647,214 @@ public class EntityManagerImpl implements EntityManager {
 		return false;
 	}
 
+	/**
+	 * Claim the value of a unique property for the entity without a lock.
+	 *
+	 * If the entity already holds the value, or the property isn't unique,
+	 * there's nothing to claim. If another entity holds it, the claim fails.
+	 * Otherwise a claim column named by the entity and holding a new time
+	 * uuid is written to the value's unique row with a ttl, and the row is
+	 * read back. The earliest live claim wins, and losers remove their claim.
+	 * The winner's claim is replaced by the permanent unique column when its
+	 * batch is executed. If the claim expires first, e.g. the batch failed,
+	 * the value is free again.
+	 *
+	 * The earliest claim could have lost if it was still being written when a
+	 * later claimer read the row and saw only itself. So a claim that sees
+	 * later claims made before its own write finished gives up as well. Both
+	 * lose, and the callers can retry.
+	 *
+	 * Claims are written and read back at QUORUM, whatever the configured
+	 * consistency levels are. At a lower level two claimers could each read
+	 * replicas that only have their own claim, and both would win.
+	 *
+	 * Claims made on different nodes are ordered by their time uuids, so the
+	 * clocks of the nodes must be kept in sync, e.g. with NTP, to well within
+	 * the time it takes to write a claim and read the row back. Uniqueness
+	 * depends on it: a node whose clock is further behind than that can make
+	 * a claim that looks earlier than one that has already won, and both
+	 * entities then hold the value.
+	 *
+	 * @param entityId
+	 * @param entityType
+	 * @param propertyName
+	 * @param propertyValue
+	 * @param timestamp
+	 *            the timestamp of the claim, less than the timestamp of the
+	 *            permanent column
+	 * @return true if the entity holds the value
+	 * @throws Exception
+	 */
+	boolean claimUniqueProperty(UUID entityId, String entityType,
+			String propertyName, Object propertyValue, long timestamp)
+			throws Exception {
+
+		if (!getDefaultSchema().isPropertyUnique(entityType, propertyName)) {
+			return true;
+		}
+
+		if (propertyValue == null) {
+			return true;
+		}
+
+		Keyspace ko = cass.getQuorumApplicationKeyspace(applicationId);
+		Object key = createUniqueIndexKey(defaultCollectionName(entityType),
+				propertyName, propertyValue);
+
+		List<HColumn<ByteBuffer, ByteBuffer>> cols = cass.getColumns(ko,
+				ENTITY_UNIQUE, key, null, null, UNIQUE_CLAIM_COUNT, false);
+
+		for (HColumn<ByteBuffer, ByteBuffer> col : cols) {
+			if (entityId.equals(ue.fromByteBuffer(col.getName()))) {
+				return true;
+			}
+		}
+
+		for (HColumn<ByteBuffer, ByteBuffer> col : cols) {
+			// claims expire, a column without a ttl is held by its entity
+			if (col.getTtl() == 0) {
+				return false;
+			}
+		}
+
+		UUID claim = newTimeUUID();
+
+		Mutator<ByteBuffer> m = createMutator(ko, be);
+		HColumn<ByteBuffer, ByteBuffer> claimColumn = createColumn(
+				bytebuffer(entityId), bytebuffer(claim), timestamp, be, be);
+		claimColumn.setTtl(UNIQUE_CLAIM_TTL);
+		m.addInsertion(bytebuffer(key), ENTITY_UNIQUE.toString(), claimColumn);
+		batchExecute(m, CassandraService.RETRY_COUNT);
+
+		long written = System.currentTimeMillis();
+
+		cols = cass.getColumns(ko, ENTITY_UNIQUE, key, null, null,
+				UNIQUE_CLAIM_COUNT, false);
+
+		boolean claimed = false;
+		boolean won = true;
+
+		for (HColumn<ByteBuffer, ByteBuffer> col : cols) {
+			if (entityId.equals(ue.fromByteBuffer(col.getName()))) {
+				claimed = true;
+				continue;
+			}
+
+			if ((col.getTtl() == 0) || (col.getValue().remaining() != 16)) {
+				won = false;
+				break;
+			}
+
+			UUID other = ue.fromByteBuffer(col.getValue());
+
+			// earlier claim, or a later one that may not have seen ours
+			if ((UUIDUtils.compare(other, claim) < 0)
+					|| (getTimestampInMillis(other) <= written)) {
+				won = false;
+				break;
+			}
+		}
+
+		if (claimed && won) {
+			return true;
+		}
+
+		m = createMutator(ko, be);
+		addDeleteToMutator(m, ENTITY_UNIQUE, key, entityId, timestamp);
+		batchExecute(m, CassandraService.RETRY_COUNT);
+
+		return false;
+	}
+
+	/**
+	 * Remove the unique property claims of an entity that won't be created
+	 * @param entityId
+	 * @param entityType
+	 * @param properties
+	 * @param timestamp
+	 *            the timestamp of the claims
+	 * @throws Exception
+	 */
+	void releaseUniqueClaims(UUID entityId, String entityType,
+			Map<String, Object> properties, long timestamp) throws Exception {
+
+		String collectionName = defaultCollectionName(entityType);
+		Mutator<ByteBuffer> m = createMutator(
+				cass.getApplicationKeyspace(applicationId), be);
+
+		for (Map.Entry<String, Object> property : properties.entrySet()) {
+			if ((property.getValue() != null)
+					&& getDefaultSchema().isPropertyUnique(entityType,
+							property.getKey())) {
+				Object key = createUniqueIndexKey(collectionName,
+						property.getKey(), property.getValue());
+				addDeleteToMutator(m, ENTITY_UNIQUE, key, entityId, timestamp);
+			}
+		}
+
+		batchExecute(m, CassandraService.RETRY_COUNT);
+	}
+
+	/**
+	 * Get the unique values of an update that the entity doesn't hold yet.
+	 * The update claims them, and only those claims may be released if it
+	 * fails, since releasing a value the entity already holds would delete
+	 * its permanent unique column.
+	 *
+	 * @param entity
+	 * @param properties
+	 *            the updated properties
+	 * @return the unique properties whose values would be claimed
+	 * @throws Exception
+	 */
+	private Map<String, Object> getUnheldUniqueValues(EntityRef entity,
+			Map<String, Object> properties) throws Exception {
+
+		Map<String, Object> unheld = new HashMap<String, Object>();
+
+		for (Map.Entry<String, Object> property : properties.entrySet()) {
+			if ((property.getValue() == null)
+					|| !getDefaultSchema().isPropertyUnique(entity.getType(),
+							property.getKey())) {
+				continue;
+			}
+
+			Object held = getProperty(entity, property.getKey());
+			if (!property.getValue().equals(held)) {
+				unheld.put(property.getKey(), property.getValue());
+			}
+		}
+
+		return unheld;
+	}
+
+	/**
+	 * Release the unique value claims of an update that failed, so the values
+	 * aren't blocked until the claims expire
+	 *
+	 * @param entity
+	 * @param claims
+	 *            the values the update claimed
+	 * @param timestampUuid
+	 *            the timestamp of the update
+	 */
+	private void releaseFailedClaims(EntityRef entity,
+			Map<String, Object> claims, UUID timestampUuid) {
+
+		if (claims.isEmpty()) {
+			return;
+		}
+
+		try {
+			releaseUniqueClaims(entity.getUuid(), entity.getType(), claims,
+					getTimestampInMicros(timestampUuid) - 1);
+		} catch (Exception e) {
+			logger.error("Unable to release unique values of "
+					+ entity.getUuid() + ", they're free once the claims expire",
+					e);
+		}
+	}
+
 	/**
 	 * Add this unique index to the delete
 	 * @param m
@@ -697,7 +902,7 @@ public class EntityManagerImpl implements EntityManager {
 	 * @param value
 	 * @return
 	 */
-	private Object createUniqueIndexKey(String collectionName, String propertyName, Object value){
+	Object createUniqueIndexKey(String collectionName, String propertyName, Object value){
 	    return key(applicationId, collectionName, propertyName, value);
 	}
 
@@ -965,15 +1170,33 @@ public class EntityManagerImpl implements EntityManager {
 
 		batchExecute(m, CassandraService.RETRY_COUNT);
 
+		if (entity != null) {
+			invalidateCachedEntity(entity.getUuid());
+		}
+
 		return entity;
 	}
 
-	@SuppressWarnings("unchecked")
   @Metered(group = "core", name = "EntityManager_batchCreate")
 	public <A extends Entity> A batchCreate(Mutator<ByteBuffer> m,
 			String entityType, Class<A> entityClass,
 			Map<String, Object> properties, UUID importId, UUID timestampUuid)
 			throws Exception {
+		return batchCreate(m, entityType, entityClass, properties, importId,
+				timestampUuid, true);
+	}
+
+	/**
+	 * @param countEntity
+	 *            false if the caller adds the collection counter increments
+	 *            itself, once the batch has been written, with
+	 *            {@link #batchIncrementEntityCollection}
+	 */
+	@SuppressWarnings("unchecked")
+	<A extends Entity> A batchCreate(Mutator<ByteBuffer> m,
+			String entityType, Class<A> entityClass,
+			Map<String, Object> properties, UUID importId, UUID timestampUuid,
+			boolean countEntity) throws Exception {
 
 		String eType = Schema.normalizeEntityType(entityType);
 
@@ -1138,7 +1361,7 @@ public class EntityManagerImpl implements EntityManager {
 		}
 
 		A entity = EntityFactory.newEntity(itemId, eType, entityClass);
-		logger.info("Entity created of type {}", entity.getClass().getName());
+		logger.debug("Entity created of type {}", entity.getClass().getName());
 
 		if (Event.ENTITY_TYPE.equals(eType)) {
 			Event event = (Event) entity.toTypedEntity();
@@ -1149,97 +1372,82 @@ public class EntityManagerImpl implements EntityManager {
 				}
 			}
 			Message message = storeEventAsMessage(m, event, timestamp);
-			incrementEntityCollection("events", timestamp);
+			if (countEntity) {
+				batchIncrementEntityCollection(m, "events", ONE_COUNT,
+						timestamp);
+			}
 
 			entity.setUuid(message.getUuid());
 			return entity;
 		}
 
 		String aliasName = schema.aliasProperty(entityType);
-		logger.info("Alias property is {}", aliasName);
-		for (String prop_name : properties.keySet()) {
-
-			Object propertyValue = properties.get(prop_name);
-
-			if (propertyValue == null) {
-				continue;
-			}
-
-			if (!is_application
-					&& !isPropertyValueUniqueForEntity(applicationId,
-							entityType, prop_name, propertyValue)) {
-				throw new DuplicateUniquePropertyExistsException(entityType,
-						prop_name, propertyValue);
-			}
-
-			if (User.ENTITY_TYPE.equals(entityType) && "me".equals(prop_name)) {
-				throw new DuplicateUniquePropertyExistsException(entityType,
-						prop_name, propertyValue);
-			}
-
-			if (!Schema.isAssociatedEntityType(entityType)
-					&& prop_name.equals(aliasName)) {
-				String aliasValue = propertyValue.toString().toLowerCase()
-						.trim();
-				logger.info("Alias property value for {} is {}", aliasName,
-						aliasValue);
-				createAlias(m, applicationId, ref(entityType, itemId), entityType,
-						aliasValue, timestamp);
-			}
-
-			 /**
-       * Unique property, load the old value and remove it, check if it's not a duplicate
-       */
-      if (schema.getEntityInfo(entity.getType()).isPropertyUnique(prop_name)) {
-        /**
-         * Only lock on the target values. We don't want lock contention if
-         * another node is trying to set the property do a different value
-         */
-        Lock lock = getUniqueUpdateLock(cass.getLockManager(), applicationId, propertyValue, entityType, prop_name);
-
-        try {
-          lock.lock();
+		logger.debug("Alias property is {}", aliasName);
+		try {
+			for (String prop_name : properties.keySet()) {
 
-          String collectionName = Schema.defaultCollectionName(entityType);
+				Object propertyValue = properties.get(prop_name);
 
-          uniquePropertyWrite(m, collectionName, prop_name, propertyValue, itemId, timestamp);
+				if (propertyValue == null) {
+					continue;
+				}
 
-        } finally {
-          lock.unlock();
-        }
+				if (User.ENTITY_TYPE.equals(entityType) && "me".equals(prop_name)) {
+					throw new DuplicateUniquePropertyExistsException(entityType,
+							prop_name, propertyValue);
+				}
 
-      }
+				if (!Schema.isAssociatedEntityType(entityType)
+						&& prop_name.equals(aliasName)) {
+					String aliasValue = propertyValue.toString().toLowerCase()
+							.trim();
+					logger.debug("Alias property value for {} is {}", aliasName,
+							aliasValue);
+					createAlias(m, applicationId, ref(entityType, itemId), entityType,
+							aliasValue, timestamp);
+				}
 
-			entity.setProperty(prop_name, propertyValue);
+				entity.setProperty(prop_name, propertyValue);
 
-			batchSetProperty(m, entity, prop_name, propertyValue, true, true,
-					timestampUuid);
+				batchSetProperty(m, entity, prop_name, propertyValue, true, true,
+						timestampUuid);
 
+			}
+		} catch (DuplicateUniquePropertyExistsException e) {
+			// free the values this entity already claimed
+			releaseUniqueClaims(itemId, entityType, properties, timestamp - 1);
+			throw e;
 		}
 
-		if (!is_application) {
-			incrementEntityCollection(collection_name, timestamp);
+		if (!is_application && countEntity) {
+			batchIncrementEntityCollection(m, collection_name, ONE_COUNT,
+					timestamp);
 		}
 
 		return entity;
 	}
 
-	private void incrementEntityCollection(String collection_name,
-			long cassandraTimestamp) {
-		try {
-			incrementAggregateCounters(null, null, null,
-					new String(APPLICATION_COLLECTION + collection_name), ONE_COUNT,
-					cassandraTimestamp);
-		} catch (Exception e) {
-			logger.error("Unable to increment counter application.collection."
-					+ collection_name, e);
-		}
-		try {
-			incrementAggregateCounters(null, null, null,
-                    APPLICATION_ENTITIES, ONE_COUNT, cassandraTimestamp);
-		} catch (Exception e) {
-			logger.error("Unable to increment counter application.entities", e);
+	/**
+	 * Add the application.collection and application.entities counter
+	 * increments to the batch, so they're written with the entity rather than
+	 * in batches of their own
+	 *
+	 * @param m
+	 * @param collection_name
+	 * @param value
+	 * @param cassandraTimestamp
+	 */
+	void batchIncrementEntityCollection(Mutator<ByteBuffer> m,
+			String collection_name, long value, long cassandraTimestamp) {
+		if (skipAggregateCounters) {
+			return;
 		}
+		counterUtils.batchIncrementAggregateCounters(m, applicationId, null,
+				null, null, null, APPLICATION_COLLECTION + collection_name,
+				value, cassandraTimestamp / 1000, cassandraTimestamp);
+		counterUtils.batchIncrementAggregateCounters(m, applicationId, null,
+				null, null, null, APPLICATION_ENTITIES, value,
+				cassandraTimestamp / 1000, cassandraTimestamp);
 	}
 
 	public void decrementEntityCollection(String collection_name) {
@@ -1251,18 +1459,14 @@ public class EntityManagerImpl implements EntityManager {
   	public void decrementEntityCollection(String collection_name,
 			long cassandraTimestamp) {
 		try {
-			incrementAggregateCounters(null, null, null,
-					APPLICATION_COLLECTION + collection_name, -ONE_COUNT,
+			Mutator<ByteBuffer> m = createMutator(
+					cass.getApplicationKeyspace(applicationId), be);
+			batchIncrementEntityCollection(m, collection_name, -ONE_COUNT,
 					cassandraTimestamp);
+			batchExecute(m, CassandraService.RETRY_COUNT);
 		} catch (Exception e) {
-			logger.error("Unable to decrement counter application.collection."
-					+ collection_name, e);
-		}
-		try {
-			incrementAggregateCounters(null, null, null,
-                    APPLICATION_ENTITIES, -ONE_COUNT, cassandraTimestamp);
-		} catch (Exception e) {
-			logger.error("Unable to decrement counter application.entities", e);
+			logger.error("Unable to decrement counters application.collection."
+					+ collection_name + " and application.entities", e);
 		}
 	}
 
@@ -1341,6 +1545,7 @@ public class EntityManagerImpl implements EntityManager {
 			String... propertyNames) throws Exception {
 
 		List<HColumn<String, ByteBuffer>> results = null;
+		long generation = 0;
 		if ((propertyNames != null) && (propertyNames.length > 0)) {
 			Set<String> column_names = new TreeSet<String>(
 					CASE_INSENSITIVE_ORDER);
@@ -1356,12 +1561,22 @@ public class EntityManagerImpl implements EntityManager {
 					cass.getApplicationKeyspace(applicationId),
 					ENTITY_PROPERTIES, key(entityId), column_names, se, be);
 		} else {
+			Map<String, Object> cached = getCachedEntity(entityId);
+			if (cached != null) {
+				return new DynamicEntity((String) cached.get(PROPERTY_TYPE),
+						(UUID) cached.get(PROPERTY_UUID), cached);
+			}
+
+			generation = getCacheGeneration(entityId);
 			results = cass.getAllColumns(
 					cass.getApplicationKeyspace(applicationId),
 					ENTITY_PROPERTIES, key(entityId));
 		}
 
 		Map<String, Object> entityProperties = deserializeEntityProperties(results);
+		if ((propertyNames == null) || (propertyNames.length == 0)) {
+			cacheEntity(entityId, generation, entityProperties, results);
+		}
 		if (entityProperties == null) {
 			return null;
 		}
@@ -1393,12 +1608,17 @@ public class EntityManagerImpl implements EntityManager {
 			Class<A> entityClass) throws Exception {
 
 		Object entity_key = key(entityId);
-		Map<String, Object> results = null;
+		Map<String, Object> results = getCachedEntity(entityId);
 
 		// if (entityType == null) {
-		results = deserializeEntityProperties(cass.getAllColumns(
-				cass.getApplicationKeyspace(applicationId), ENTITY_PROPERTIES,
-				entity_key));
+		if (results == null) {
+			long generation = getCacheGeneration(entityId);
+			List<HColumn<String, ByteBuffer>> columns = cass.getAllColumns(
+					cass.getApplicationKeyspace(applicationId),
+					ENTITY_PROPERTIES, entity_key);
+			results = deserializeEntityProperties(columns);
+			cacheEntity(entityId, generation, results, columns);
+		}
 		// } else {
 		// Set<String> columnNames = Schema.getPropertyNames(entityType);
 		// results = getColumns(getApplicationKeyspace(applicationId),
@@ -1450,6 +1670,30 @@ public class EntityManagerImpl implements EntityManager {
   @Metered(group="core", name="EntityManager_getEntities")
 	public <A extends Entity> List<A> getEntities(List<UUID> entityIds,
 			String entityType, Class<A> entityClass) throws Exception {
+		return getEntities(entityIds, entityType, entityClass, null);
+	}
+
+	/**
+	 * Gets the specified list of entities, loading only the given properties
+	 * plus the core entity properties. Columns outside the projection are
+	 * never deserialized and, when the entity type's schema declares every
+	 * requested property, are not read from Cassandra at all.
+	 *
+	 * @param entityIds
+	 *            the entity ids
+	 * @param entityType
+	 *            the entity type, may be null
+	 * @param entityClass
+	 *            the entity class
+	 * @param propertyNames
+	 *            the properties to load, or null to load all properties
+	 * @return entities
+	 * @throws Exception
+	 *             the exception
+	 */
+	public <A extends Entity> List<A> getEntities(List<UUID> entityIds,
+			String entityType, Class<A> entityClass, Set<String> propertyNames)
+			throws Exception {
 
 		List<A> entities = new ArrayList<A>();
 
@@ -1459,22 +1703,64 @@ public class EntityManagerImpl implements EntityManager {
 
 		Map<UUID, A> resultSet = new LinkedHashMap<UUID, A>();
 
+		Map<UUID, Map<String, Object>> cached = new HashMap<UUID, Map<String, Object>>();
+		Map<UUID, Long> generations = new HashMap<UUID, Long>();
+		List<UUID> uncachedIds = new ArrayList<UUID>(entityIds.size());
+
+		for (UUID entityId : entityIds) {
+			Map<String, Object> properties = getCachedEntity(entityId);
+			if (properties != null) {
+				cached.put(entityId, properties);
+			} else {
+				generations.put(entityId, getCacheGeneration(entityId));
+				uncachedIds.add(entityId);
+			}
+		}
+
 		Rows<UUID, String, ByteBuffer> results = null;
 
-		// if (entityType == null) {
-		results = cass.getRows(cass.getApplicationKeyspace(applicationId),
-				ENTITY_PROPERTIES, entityIds, ue, se, be);
-		// } else {
-		// Set<String> columnNames = Schema.getPropertyNames(entityType);
-		// results = getRows(getApplicationKeyspace(applicationId),
-		// EntityCF.PROPERTIES,
-		// entityIds, columnNames, ue, se, be);
-		// }
+		Set<String> projection = null;
+		Set<String> columnNames = null;
+		if (propertyNames != null) {
+			projection = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+			projection.addAll(propertyNames);
+			projection.add(PROPERTY_UUID);
+			projection.add(PROPERTY_TYPE);
+			projection.add(PROPERTY_CREATED);
+			projection.add(PROPERTY_MODIFIED);
+			columnNames = getSchemaColumnNames(entityType, projection);
+		}
+
+		if (!uncachedIds.isEmpty()) {
+			if (columnNames != null) {
+				results = cass.getRows(
+						cass.getApplicationKeyspace(applicationId),
+						ENTITY_PROPERTIES, uncachedIds, columnNames, ue, se, be);
+			} else {
+				results = cass.getRows(
+						cass.getApplicationKeyspace(applicationId),
+						ENTITY_PROPERTIES, uncachedIds, ue, se, be);
+			}
+		}
 
-		if (results != null) {
+		if ((results != null) || !cached.isEmpty()) {
 			for (UUID key : entityIds) {
-				Map<String, Object> properties = deserializeEntityProperties(results
-						.getByKey(key));
+				Map<String, Object> properties = cached.get(key);
+
+				if ((properties == null) && (results != null)) {
+					Row<UUID, String, ByteBuffer> row = results.getByKey(key);
+					if (projection == null) {
+						properties = deserializeEntityProperties(row);
+						if (properties != null) {
+							cacheEntity(key, generations.get(key), properties,
+									row.getColumnSlice().getColumns());
+						}
+					} else if ((row != null)
+							&& (row.getColumnSlice() != null)) {
+						properties = deserializeEntityProperties(projectColumns(
+								row.getColumnSlice().getColumns(), projection));
+					}
+				}
 
 				if (properties == null) {
 					logger.error("Error deserializing entity with key "
@@ -1510,6 +1796,190 @@ public class EntityManagerImpl implements EntityManager {
 		return entities;
 	}
 
+	/**
+	 * Resolve a projection to the exact column names to slice, which is only
+	 * possible when the entity type's schema declares every property since
+	 * column names are stored in the case they were written with.
+	 *
+	 * @param entityType
+	 *            the entity type, may be null
+	 * @param projection
+	 *            the case insensitive set of properties to load
+	 * @return the column names or null if full rows have to be read
+	 */
+	private Set<String> getSchemaColumnNames(String entityType,
+			Set<String> projection) {
+		if (entityType == null) {
+			return null;
+		}
+		Set<String> schemaNames = getDefaultSchema().getPropertyNames(
+				entityType);
+		if (schemaNames == null) {
+			return null;
+		}
+		Set<String> columnNames = new LinkedHashSet<String>();
+		for (String propertyName : projection) {
+			if (!getDefaultSchema().hasProperty(entityType, propertyName)) {
+				return null;
+			}
+			for (String schemaName : schemaNames) {
+				if (schemaName.equalsIgnoreCase(propertyName)) {
+					columnNames.add(schemaName);
+				}
+			}
+			columnNames.add(propertyName);
+		}
+		return columnNames;
+	}
+
+	/**
+	 * Filter the columns of an entity row down to a projection so that only
+	 * those values get deserialized.
+	 *
+	 * @param columns
+	 *            the columns
+	 * @param projection
+	 *            the case insensitive set of properties to keep
+	 * @return the projected columns
+	 */
+	private static List<HColumn<String, ByteBuffer>> projectColumns(
+			List<HColumn<String, ByteBuffer>> columns, Set<String> projection) {
+		List<HColumn<String, ByteBuffer>> projected = new ArrayList<HColumn<String, ByteBuffer>>(
+				projection.size());
+		for (HColumn<String, ByteBuffer> column : columns) {
+			if (projection.contains(column.getName())) {
+				projected.add(column);
+			}
+		}
+		return projected;
+	}
+
+	/**
+	 * Get the properties of an entity from the entity cache
+	 *
+	 * @param entityId
+	 *            the entity id
+	 * @return the properties or null if the entity isn't cached
+	 */
+	private Map<String, Object> getCachedEntity(UUID entityId) {
+		if (entityCache == null) {
+			return null;
+		}
+		return entityCache.get(applicationId, entityId);
+	}
+
+	/**
+	 * Get the generation of an entity in the entity cache, before reading its
+	 * properties row
+	 *
+	 * @param entityId
+	 *            the entity id
+	 * @return the generation to cache the properties read with
+	 */
+	private long getCacheGeneration(UUID entityId) {
+		if (entityCache == null) {
+			return 0;
+		}
+		return entityCache.getGeneration(applicationId, entityId);
+	}
+
+	/**
+	 * Add an entity read from the entity properties row to the entity cache,
+	 * unless it was written since the read began
+	 *
+	 * @param entityId
+	 *            the entity id
+	 * @param generation
+	 *            the generation of the entity before the row was read
+	 * @param properties
+	 *            the deserialized properties
+	 * @param columns
+	 *            the columns the properties were deserialized from
+	 */
+	private void cacheEntity(UUID entityId, long generation,
+			Map<String, Object> properties,
+			List<HColumn<String, ByteBuffer>> columns) {
+		if ((entityCache == null) || (properties == null)
+				|| (columns == null)) {
+			return;
+		}
+
+		long size = 0;
+		for (HColumn<String, ByteBuffer> column : columns) {
+			size += column.getName().length();
+			if (column.getValue() != null) {
+				size += column.getValue().remaining();
+			}
+		}
+
+		entityCache.put(applicationId, entityId, generation, properties, size);
+	}
+
+	/**
+	 * Remove an entity from the entity cache. Writes invalidate after the
+	 * mutation is executed, and the invalidation keeps a read that started
+	 * before then from caching the old properties. The batch methods leave it
+	 * to whoever executes the batch.
+	 *
+	 * @param entityId
+	 *            the entity id
+	 */
+	void invalidateCachedEntity(UUID entityId) {
+		if (entityCache == null) {
+			return;
+		}
+		entityCache.invalidate(applicationId, entityId);
+	}
+
+	/**
+	 * Remove what a user is granted from the authorization cache, after a
+	 * change to the user's own roles or permissions
+	 *
+	 * @param userId
+	 *            the user id
+	 */
+	private void invalidateAuthorization(UUID userId) {
+		if (authorizationCache == null) {
+			return;
+		}
+		authorizationCache.invalidate(applicationId, userId);
+	}
+
+	/**
+	 * Remove what every principal in the application is granted from the
+	 * authorization cache, after a change to a role or group that any of them
+	 * might have
+	 */
+	private void invalidateAuthorizations() {
+		if (authorizationCache == null) {
+			return;
+		}
+		authorizationCache.invalidateApplication(applicationId);
+	}
+
+	/**
+	 * Users get roles through their roles collection and the groups they're
+	 * in, and groups through their roles collection, so adding to or removing
+	 * from those changes what users are granted
+	 */
+	private void invalidateAuthorizations(EntityRef ownerRef,
+			String collectionName, EntityRef itemRef) {
+		if ((ownerRef == null) || applicationId.equals(ownerRef.getUuid())) {
+			return;
+		}
+		if (COLLECTION_USERS.equals(collectionName)) {
+			invalidateAuthorization(itemRef.getUuid());
+		} else if (COLLECTION_GROUPS.equals(collectionName)) {
+			invalidateAuthorization(ownerRef.getUuid());
+		} else if (COLLECTION_ROLES.equals(collectionName)) {
+			if (User.ENTITY_TYPE.equals(ownerRef.getType())) {
+				invalidateAuthorization(ownerRef.getUuid());
+			} else {
+				invalidateAuthorizations();
+			}
+		}
+	}
+
   @Metered(group="core",name="EntityManager_getPropertyNames")
 	public Set<String> getPropertyNames(EntityRef entity) throws Exception {
 
@@ -1728,6 +2198,98 @@ public class EntityManagerImpl implements EntityManager {
 				dictionaryName).keySet());
 	}
 
+	@Override
+	@Metered(group = "core", name = "EntityManager_getDictionariesAsSets")
+	public Map<UUID, Map<String, Set<Object>>> getDictionariesAsSets(
+			List<? extends EntityRef> entityRefs, String... dictionaryNames)
+			throws Exception {
+
+		Map<UUID, Map<String, Set<Object>>> dictionaries = new LinkedHashMap<UUID, Map<String, Set<Object>>>();
+		if ((entityRefs == null) || (dictionaryNames == null)) {
+			return dictionaries;
+		}
+
+		// schema dictionaries and others are in different column families,
+		// so the rows are read with a multiget for each
+		Map<ByteBuffer, DictionaryRow> schemaRows = new LinkedHashMap<ByteBuffer, DictionaryRow>();
+		Map<ByteBuffer, DictionaryRow> otherRows = new LinkedHashMap<ByteBuffer, DictionaryRow>();
+
+		for (EntityRef entityRef : entityRefs) {
+			entityRef = validate(entityRef, false);
+			if ((entityRef == null)
+					|| dictionaries.containsKey(entityRef.getUuid())) {
+				continue;
+			}
+
+			Map<String, Set<Object>> sets = new LinkedHashMap<String, Set<Object>>();
+			dictionaries.put(entityRef.getUuid(), sets);
+
+			for (String dictionaryName : dictionaryNames) {
+				Set<Object> set = new LinkedHashSet<Object>();
+				sets.put(dictionaryName, set);
+
+				ByteBuffer key = bytebuffer(key(entityRef.getUuid(),
+						dictionaryName));
+				if (getDefaultSchema().hasDictionary(entityRef.getType(),
+						dictionaryName)) {
+					schemaRows.put(key, new DictionaryRow(getDefaultSchema()
+							.getDictionaryKeyType(entityRef.getType(),
+									dictionaryName), set));
+				} else {
+					otherRows.put(key, new DictionaryRow(null, set));
+				}
+			}
+		}
+
+		readDictionaryRows(ENTITY_DICTIONARIES, schemaRows);
+		readDictionaryRows(ENTITY_COMPOSITE_DICTIONARIES, otherRows);
+
+		return dictionaries;
+	}
+
+	private void readDictionaryRows(ApplicationCF dictionaryCf,
+			Map<ByteBuffer, DictionaryRow> rows) throws Exception {
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		Rows<ByteBuffer, ByteBuffer, ByteBuffer> results = cass.getRows(
+				cass.getApplicationKeyspace(applicationId), dictionaryCf,
+				new ArrayList<ByteBuffer>(rows.keySet()), be, be, be);
+
+		for (Row<ByteBuffer, ByteBuffer, ByteBuffer> result : results) {
+			DictionaryRow row = rows.get(result.getKey());
+			if (row == null) {
+				continue;
+			}
+			for (HColumn<ByteBuffer, ByteBuffer> column : result
+					.getColumnSlice().getColumns()) {
+				Object name = null;
+				if (row.keyType != null) {
+					name = object(row.keyType, column.getName());
+				} else {
+					name = CompositeUtils.deserialize(column.getName());
+				}
+				if (name != null) {
+					row.elements.add(name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Where the elements of a dictionary row read for many entities go
+	 */
+	private static class DictionaryRow {
+		final Class<?> keyType;
+		final Set<Object> elements;
+
+		DictionaryRow(Class<?> keyType, Set<Object> elements) {
+			this.keyType = keyType;
+			this.elements = elements;
+		}
+	}
+
 	/**
 	 * Update properties.
 	 *
@@ -1755,9 +2317,18 @@ public class EntityManagerImpl implements EntityManager {
 		UUID timestampUuid = newTimeUUID();
 		properties.put(PROPERTY_MODIFIED, getTimestampInMillis(timestampUuid));
 
-		batchUpdateProperties(m, entity, properties, timestampUuid);
+		Map<String, Object> claims = getUnheldUniqueValues(entity, properties);
 
-		batchExecute(m, CassandraService.RETRY_COUNT);
+		try {
+			batchUpdateProperties(m, entity, properties, timestampUuid);
+
+			batchExecute(m, CassandraService.RETRY_COUNT);
+		} catch (Exception e) {
+			releaseFailedClaims(entity, claims, timestampUuid);
+			throw e;
+		}
+
+		invalidateCachedEntity(entityId);
 	}
 
   @Metered(group="core",name="EntityManager_deleteEntity")
@@ -1814,7 +2385,8 @@ public class EntityManagerImpl implements EntityManager {
 		//decrease entity count
 		if(!TYPE_APPLICATION.equals(entity.getType())) {
 			String collection_name = Schema.defaultCollectionName(entity.getType());
-			decrementEntityCollection(collection_name);
+			batchIncrementEntityCollection(m, collection_name, -ONE_COUNT,
+					timestamp);
 		}
 
 
@@ -1837,6 +2409,15 @@ public class EntityManagerImpl implements EntityManager {
 
 		batchExecute(m, CassandraService.RETRY_COUNT);
 
+		invalidateCachedEntity(entityId);
+
+		if (User.ENTITY_TYPE.equals(entity.getType())) {
+			invalidateAuthorization(entityId);
+		} else if (Group.ENTITY_TYPE.equals(entity.getType())
+				|| TYPE_ROLE.equals(entity.getType())) {
+			invalidateAuthorizations();
+		}
+
 	}
 
 	@Override
@@ -2231,6 +2812,14 @@ public class EntityManagerImpl implements EntityManager {
 		return Results.fromEntities(results);
 	}
 
+	@Override
+	public Results get(List<UUID> entityIds, Results.Level resultsLevel,
+			Set<String> propertyNames) throws Exception {
+		List<? extends Entity> results = getEntities(entityIds, null, null,
+				propertyNames);
+		return Results.fromEntities(results);
+	}
+
 	@Override
 	public Results get(List<UUID> entityIds,
 			Class<? extends Entity> entityClass, Results.Level resultsLevel)
@@ -2252,13 +2841,30 @@ public class EntityManagerImpl implements EntityManager {
 
 	public Results loadEntities(Results results, Results.Level resultsLevel,
 			Map<UUID, UUID> associatedMap, int count) throws Exception {
+		return loadEntities(results, resultsLevel, associatedMap, count, null,
+				null);
+	}
+
+	/**
+	 * Load the entities of a result set, limited to the given properties when
+	 * a projection is supplied (such as from a query's select clause).
+	 * Projections are ignored for linked properties.
+	 */
+	public Results loadEntities(Results results, Results.Level resultsLevel,
+			Map<UUID, UUID> associatedMap, int count, String entityType,
+			Set<String> propertyNames) throws Exception {
 
 		results = results.trim(count);
 		if (resultsLevel.ordinal() <= results.getLevel().ordinal()) {
 			return results;
 		}
 
-		results.setEntities(getEntities(results.getIds(), null,null));
+		if (resultsLevel == Results.Level.LINKED_PROPERTIES) {
+			propertyNames = null;
+		}
+
+		results.setEntities(getEntities(results.getIds(), entityType, null,
+				propertyNames));
 
 		if (resultsLevel == Results.Level.LINKED_PROPERTIES) {
 			List<Entity> entities = results.getEntities();
@@ -2348,9 +2954,20 @@ public class EntityManagerImpl implements EntityManager {
 				entity.getType(), propertyName, propertyValue);
 
 		entity.setProperty(propertyName, propertyValue);
-		batch = batchSetProperty(batch, entity, propertyName, propertyValue,
-				override, false, timestampUuid);
-		batchExecute(batch, CassandraService.RETRY_COUNT);
+
+		Map<String, Object> claims = getUnheldUniqueValues(entity,
+				Collections.singletonMap(propertyName, propertyValue));
+
+		try {
+			batch = batchSetProperty(batch, entity, propertyName,
+					propertyValue, override, false, timestampUuid);
+			batchExecute(batch, CassandraService.RETRY_COUNT);
+		} catch (Exception e) {
+			releaseFailedClaims(entity, claims, timestampUuid);
+			throw e;
+		}
+
+		invalidateCachedEntity(entity.getUuid());
 
 	}
 
@@ -2625,6 +3242,8 @@ public class EntityManagerImpl implements EntityManager {
 		batchCreateRole(batch, null, roleName, roleTitle, inactivity, null,
 				timestampUuid);
 		batchExecute(batch, CassandraService.RETRY_COUNT);
+		invalidateCachedEntity(roleRef(roleName).getUuid());
+		invalidateAuthorizations();
 		return get(roleRef(roleName));
 	}
 
@@ -2640,6 +3259,7 @@ public class EntityManagerImpl implements EntityManager {
 				getRolePermissionsKey(roleName), permission,
 				ByteBuffer.allocate(0), timestamp);
 		batchExecute(batch, CassandraService.RETRY_COUNT);
+		invalidateAuthorizations();
 	}
 
 	@Override
@@ -2656,6 +3276,7 @@ public class EntityManagerImpl implements EntityManager {
 					ByteBuffer.allocate(0), timestamp);
 		}
 		batchExecute(batch, CassandraService.RETRY_COUNT);
+		invalidateAuthorizations();
 	}
 
 	@Override
@@ -2670,6 +3291,7 @@ public class EntityManagerImpl implements EntityManager {
 				ApplicationCF.ENTITY_DICTIONARIES,
 				getRolePermissionsKey(roleName), permission, timestamp);
 		batchExecute(batch, CassandraService.RETRY_COUNT);
+		invalidateAuthorizations();
 	}
 
 	@Override
@@ -2689,6 +3311,7 @@ public class EntityManagerImpl implements EntityManager {
 		removeFromDictionary(getApplicationRef(), DICTIONARY_ROLETIMES,
 				roleName);
 		delete(roleRef(roleName));
+		invalidateAuthorizations();
 	}
 
 	public CollectionRef memberRef(UUID groupId, UUID userId) {
@@ -2710,6 +3333,8 @@ public class EntityManagerImpl implements EntityManager {
 		batchCreateRole(batch, groupId, roleName, null, inactivity, null,
 				timestampUuid);
 		batchExecute(batch, CassandraService.RETRY_COUNT);
+		invalidateCachedEntity(roleRef(groupId, roleName).getUuid());
+		invalidateAuthorizations();
 		return get(roleRef(groupId, roleName));
 	}
 
@@ -2725,6 +3350,7 @@ public class EntityManagerImpl implements EntityManager {
 				getRolePermissionsKey(groupId, roleName), permission,
 				ByteBuffer.allocate(0), timestamp);
 		batchExecute(batch, CassandraService.RETRY_COUNT);
+		invalidateAuthorizations();
 	}
 
 	@Override
@@ -2740,6 +3366,7 @@ public class EntityManagerImpl implements EntityManager {
 						getRolePermissionsKey(groupId, roleName), permission,
 						timestamp);
 		batchExecute(batch, CassandraService.RETRY_COUNT);
+		invalidateAuthorizations();
 	}
 
 	@Override
@@ -2759,6 +3386,7 @@ public class EntityManagerImpl implements EntityManager {
 		cass.deleteRow(cass.getApplicationKeyspace(applicationId),
 				ApplicationCF.ENTITY_DICTIONARIES,
 				getIdForGroupIdAndRoleName(groupId, roleName));
+		invalidateAuthorizations();
 	}
 
 	@Override
@@ -2806,6 +3434,7 @@ public class EntityManagerImpl implements EntityManager {
 			throws Exception {
 		permission = permission.toLowerCase();
 		addToDictionary(userRef(userId), DICTIONARY_PERMISSIONS, permission);
+		invalidateAuthorization(userId);
 	}
 
 	@Override
@@ -2814,6 +3443,7 @@ public class EntityManagerImpl implements EntityManager {
 		permission = permission.toLowerCase();
 		removeFromDictionary(userRef(userId), DICTIONARY_PERMISSIONS,
 				permission);
+		invalidateAuthorization(userId);
 	}
 
 	@Override
@@ -2946,15 +3576,21 @@ public class EntityManagerImpl implements EntityManager {
 	@Override
 	public Entity addToCollection(EntityRef entityRef, String collectionName,
 			EntityRef itemRef) throws Exception {
-		return getRelationManager(entityRef).addToCollection(collectionName,
-				itemRef);
+		Entity entity = getRelationManager(entityRef).addToCollection(
+				collectionName, itemRef);
+		invalidateAuthorizations(entityRef, collectionName, itemRef);
+		return entity;
 	}
 
 	@Override
 	public Entity addToCollections(List<EntityRef> ownerEntities,
 			String collectionName, EntityRef itemRef) throws Exception {
-		return getRelationManager(itemRef).addToCollections(ownerEntities,
-				collectionName);
+		Entity entity = getRelationManager(itemRef).addToCollections(
+				ownerEntities, collectionName);
+		for (EntityRef ownerRef : ownerEntities) {
+			invalidateAuthorizations(ownerRef, collectionName, itemRef);
+		}
+		return entity;
 	}
 
 	@Override
@@ -2965,11 +3601,20 @@ public class EntityManagerImpl implements EntityManager {
 				collectionName, itemType, properties);
 	}
 
+	@Override
+	public BulkCreateResults createItemsInCollection(EntityRef entityRef,
+			String collectionName, String itemType,
+			List<Map<String, Object>> items) throws Exception {
+		return getRelationManager(entityRef).createItemsInCollection(
+				collectionName, itemType, items);
+	}
+
 	@Override
 	public void removeFromCollection(EntityRef entityRef,
 			String collectionName, EntityRef itemRef) throws Exception {
 		getRelationManager(entityRef).removeFromCollection(collectionName,
 				itemRef);
+		invalidateAuthorizations(entityRef, collectionName, itemRef);
 	}
 
 	@Override
@@ -3222,6 +3867,17 @@ public class EntityManagerImpl implements EntityManager {
 		return indexBucketLocator;
 	}
 
+	/**
+	 * @return the indexStatistics
+	 */
+	public IndexStatistics getIndexStatistics() {
+		return indexStatistics;
+	}
+
+	void setAuthorizationCache(AuthorizationCache authorizationCache) {
+		this.authorizationCache = authorizationCache;
+	}
+
 
   @SuppressWarnings("unchecked")
   @Override
@@ -3253,12 +3909,14 @@ public class EntityManagerImpl implements EntityManager {
   public void grantGroupPermission(UUID groupId, String permission) throws Exception {
     permission = permission.toLowerCase();
     addToDictionary(groupRef(groupId), DICTIONARY_PERMISSIONS, permission);
+    invalidateAuthorizations();
   }
 
   @Override
   public void revokeGroupPermission(UUID groupId, String permission) throws Exception {
     permission = permission.toLowerCase();
     removeFromDictionary(groupRef(groupId), DICTIONARY_PERMISSIONS, permission);
+    invalidateAuthorizations();
   }
 
 }
@@ -16,16 +16,29 @@
 package org.usergrid.persistence.cassandra;
 
 import static org.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.PriorityQueue;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import com.yammer.metrics.Metrics;
 import com.yammer.metrics.annotation.Metered;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
 import me.prettyprint.hector.api.beans.HColumn;
 
 import org.apache.cassandra.config.ConfigurationException;
@@ -56,6 +69,44 @@ public class IndexBucketScanner {
     private final int count;
     private final String[] indexPath;
     private final IndexType indexType;
+
+    /**
+     * The max number of columns to read from a single bucket in one call
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Latency of each read against the bucket rows
+     */
+    private static final Timer BUCKET_READS = Metrics.newTimer(new MetricName(
+            "core", "IndexBucketScanner", "IndexBucketScanner_bucketRead"),
+            TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+
+    /**
+     * The number of timers the bucket reads are split over
+     */
+    static final int BUCKET_TIMERS = 16;
+
+    /**
+     * Latency of the reads of the buckets, by the bucket's position in the
+     * locator's list modulo {@link #BUCKET_TIMERS}, so a slow replica shows up
+     * as a slow bucket without a timer for every bucket
+     */
+    private static final Timer[] BUCKET_READS_BY_BUCKET = new Timer[BUCKET_TIMERS];
+
+    static {
+        for (int i = 0; i < BUCKET_TIMERS; i++) {
+            BUCKET_READS_BY_BUCKET[i] = Metrics.newTimer(new MetricName(
+                    "core", "IndexBucketScanner",
+                    "IndexBucketScanner_bucketRead", "bucket" + i),
+                    TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static final Meter BUCKET_TIMEOUTS = Metrics.newMeter(
+            new MetricName("core", "IndexBucketScanner",
+                    "IndexBucketScanner_bucketTimeout"), "timeouts",
+            TimeUnit.SECONDS);
     
     
     
@@ -78,12 +129,12 @@ public class IndexBucketScanner {
     
     /**
      * Search the collection index using all the buckets for the given
-     * collection
+     * collection. Each bucket row is read a page at a time and the pages are
+     * merged in column order, so we only ever hold one page per bucket in
+     * memory and stop reading as soon as we have count columns. With a bucket
+     * executor, every read is made on it and the query fails if they haven't
+     * all completed within the configured timeout
      * 
-     * @param indexKey
-     * @param slice
-     * @param count
-     * @param collectionName
      * @return
      * @throws Exception
      */
@@ -91,57 +142,408 @@ public class IndexBucketScanner {
     public List<HColumn<ByteBuffer, ByteBuffer>> load()
             throws Exception {
 
-
         List<String> keys = indexBucketLocator.getBuckets(applicationId, indexType,
                 indexPath);
 
-        List<Object> cassKeys = new ArrayList<Object>(keys.size());
+        final int pageSize = Math.max(1, Math.min(count, PAGE_SIZE));
 
-        for (String bucket : keys) {
-            cassKeys.add(key(keyPrefix, bucket));
-        }
+        ExecutorService executor = getExecutor();
+        int groupSize = getGroupSize();
+        long deadline = System.currentTimeMillis() + getTimeout();
 
-        Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> results = cass
-                .multiGetColumns(cass.getApplicationKeyspace(applicationId),
-                        columnFamily, cassKeys, start, finish, count,
-                        reversed);
+        List<BucketCursor> cursors = new ArrayList<BucketCursor>(keys.size());
 
-        // List<HColumn<ByteBuffer, ByteBuffer>> cols = new
-        // ArrayList<HColumn<ByteBuffer, ByteBuffer>>();
+        for (int i = 0; i < keys.size(); i++) {
+            cursors.add(new BucketCursor(key(keyPrefix, keys.get(i)), i,
+                    pageSize, executor, deadline));
+        }
 
         final Comparator<ByteBuffer> comparator = reversed ? new DynamicCompositeReverseComparator(columnFamily) : new DynamicCompositeForwardComparator(columnFamily);
 
-        TreeSet<HColumn<ByteBuffer, ByteBuffer>> resultsTree = new TreeSet<HColumn<ByteBuffer, ByteBuffer>>(
-                new Comparator<HColumn<ByteBuffer, ByteBuffer>>() {
+        PriorityQueue<BucketCursor> heads = new PriorityQueue<BucketCursor>(
+                Math.max(1, cursors.size()), new Comparator<BucketCursor>() {
 
                     @Override
-                    public int compare(HColumn<ByteBuffer, ByteBuffer> first,
-                            HColumn<ByteBuffer, ByteBuffer> second) {
-
-                        return comparator.compare(first.getName(),
-                                second.getName());
+                    public int compare(BucketCursor first, BucketCursor second) {
+                        return comparator.compare(first.peek().getName(),
+                                second.peek().getName());
                     }
 
                 });
 
-        //TODO Todd Nine, this is O(n), and n will get quite large as our buckets expand.  We'll want to implement paging on row keys to limit in memory size 
-        for (List<HColumn<ByteBuffer, ByteBuffer>> cols : results.values()) {
+        try {
+            if (executor == null || cursors.size() <= groupSize) {
+                readBuckets(cursors, pageSize);
+                addCursors(heads, cursors);
+            } else {
+                readBucketsParallel(executor, heads, cursors, groupSize,
+                        pageSize, deadline);
+            }
+
+            List<HColumn<ByteBuffer, ByteBuffer>> merged = new ArrayList<HColumn<ByteBuffer, ByteBuffer>>(
+                    Math.min(count, pageSize * Math.max(1, heads.size())));
+
+            ByteBuffer last = null;
+
+            while (merged.size() < count && !heads.isEmpty()) {
+                BucketCursor cursor = heads.poll();
+                HColumn<ByteBuffer, ByteBuffer> col = cursor.next();
 
-            for (HColumn<ByteBuffer, ByteBuffer> col : cols) {
-                resultsTree.add(col);
+                // the same column can live in more than one bucket, only keep
+                // the first one we see
+                if (last == null || comparator.compare(last, col.getName()) != 0) {
+                    merged.add(col);
+                    last = col.getName();
+                }
 
-                // trim if we're over size
-                if (resultsTree.size() > count) {
-                    resultsTree.remove(resultsTree.last());
+                if (cursor.hasNext()) {
+                    heads.add(cursor);
                 }
             }
 
+            return merged;
+        } finally {
+            // drops the next pages we didn't get to
+            for (BucketCursor cursor : cursors) {
+                cursor.cancel();
+            }
+        }
+
+    }
+
+    /**
+     * Read the first page of each of the given bucket rows in a single
+     * multiget
+     * 
+     * @param cursors
+     * @param pageSize
+     * @throws Exception
+     */
+    private void readBuckets(List<BucketCursor> cursors, int pageSize)
+            throws Exception {
+        List<Object> bucketKeys = new ArrayList<Object>(cursors.size());
+
+        for (BucketCursor cursor : cursors) {
+            bucketKeys.add(cursor.key);
         }
 
-        return new ArrayList<HColumn<ByteBuffer, ByteBuffer>>(resultsTree);
+        long started = System.nanoTime();
+        Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> results;
+
+        try {
+            results = multiGetColumns(bucketKeys, pageSize);
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            BUCKET_READS.update(elapsed, TimeUnit.NANOSECONDS);
+            for (BucketCursor cursor : cursors) {
+                cursor.timer.update(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
 
+        for (BucketCursor cursor : cursors) {
+            cursor.setPage(results.get(cursor.rowKey), null);
+        }
     }
-    
+
+    /**
+     * Read the first page of every bucket row on the given executor, in groups
+     * of groupSize rows. Buckets are added to the merge as their reads
+     * complete. If all reads haven't completed by the deadline the query fails
+     * 
+     * @param executor
+     * @param heads
+     * @param cursors
+     * @param groupSize
+     * @param pageSize
+     * @param deadline
+     * @throws Exception
+     */
+    private void readBucketsParallel(ExecutorService executor,
+            PriorityQueue<BucketCursor> heads, List<BucketCursor> cursors,
+            int groupSize, final int pageSize, long deadline) throws Exception {
+
+        CompletionService<List<BucketCursor>> completion = new ExecutorCompletionService<List<BucketCursor>>(
+                executor);
+
+        List<Future<List<BucketCursor>>> futures = new ArrayList<Future<List<BucketCursor>>>();
+
+        try {
+            for (int i = 0; i < cursors.size(); i += groupSize) {
+                final List<BucketCursor> group = cursors.subList(i,
+                        Math.min(i + groupSize, cursors.size()));
+
+                futures.add(completion
+                        .submit(new Callable<List<BucketCursor>>() {
+
+                            @Override
+                            public List<BucketCursor> call() throws Exception {
+                                readBuckets(group, pageSize);
+                                return group;
+                            }
+                        }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                Future<List<BucketCursor>> done = completion.poll(
+                        Math.max(0, remaining), TimeUnit.MILLISECONDS);
+
+                if (done == null) {
+                    throw timeout(cursors.size());
+                }
+
+                try {
+                    addCursors(heads, done.get());
+                } catch (ExecutionException e) {
+                    throw unwrap(e);
+                }
+            }
+        } finally {
+            // no-op for completed reads, drops any reads still queued
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private void addCursors(PriorityQueue<BucketCursor> heads,
+            List<BucketCursor> cursors) throws Exception {
+        for (BucketCursor cursor : cursors) {
+            if (cursor.hasNext()) {
+                heads.add(cursor);
+            }
+        }
+    }
+
+    private TimeoutException timeout(int buckets) {
+        BUCKET_TIMEOUTS.mark();
+        return new TimeoutException(String.format(
+                "Timed out after %d ms reading %d index buckets",
+                getTimeout(), buckets));
+    }
+
+    /**
+     * Read the first columns of the slice from each of the bucket rows
+     * 
+     * @param bucketKeys
+     * @param count
+     * @return the columns by row key
+     * @throws Exception
+     */
+    protected Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> multiGetColumns(
+            List<Object> bucketKeys, int count) throws Exception {
+        return cass.multiGetColumns(cass.getApplicationKeyspace(applicationId),
+                columnFamily, bucketKeys, start, finish, count, reversed);
+    }
+
+    /**
+     * Read the columns of the slice from a single bucket row, starting at and
+     * including the given column
+     * 
+     * @param rowKey
+     * @param first
+     * @param count
+     * @return
+     * @throws Exception
+     */
+    protected List<HColumn<ByteBuffer, ByteBuffer>> getColumns(
+            ByteBuffer rowKey, ByteBuffer first, int count) throws Exception {
+        return cass.getColumns(cass.getApplicationKeyspace(applicationId),
+                columnFamily, rowKey, first, finish, count, reversed);
+    }
+
+    /**
+     * @return the executor to read buckets and next pages on, or null to read
+     *         them on the querying thread
+     */
+    protected ExecutorService getExecutor() {
+        return cass.getIndexBucketExecutor();
+    }
+
+    /**
+     * @return the number of buckets read by each multiget
+     */
+    protected int getGroupSize() {
+        return cass.getIndexBucketGroupSize();
+    }
+
+    /**
+     * @return the max time in milliseconds a query waits on its reads
+     */
+    protected long getTimeout() {
+        return cass.getIndexBucketTimeout();
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+            return (Exception) e.getCause();
+        }
+        return e;
+    }
+
+    private static Timer getBucketTimer(int bucket) {
+        return BUCKET_READS_BY_BUCKET[bucket % BUCKET_TIMERS];
+    }
+
+    /**
+     * Iterates the columns of a single bucket row. Holds at most one page of
+     * columns. With an executor, the next page is read on it once half of the
+     * current one has been consumed, otherwise it's read when the current one
+     * has been consumed
+     */
+    private class BucketCursor {
+
+        private final Object key;
+        private final ByteBuffer rowKey;
+        private final Timer timer;
+        private final int pageSize;
+        private final ExecutorService executor;
+        private final long deadline;
+        private List<HColumn<ByteBuffer, ByteBuffer>> page;
+        private int index = 0;
+        private boolean exhausted = true;
+        private Future<List<HColumn<ByteBuffer, ByteBuffer>>> nextPage;
+
+        private BucketCursor(Object key, int bucket, int pageSize,
+                ExecutorService executor, long deadline) {
+            this.key = key;
+            this.rowKey = bytebuffer(key);
+            this.timer = getBucketTimer(bucket);
+            this.pageSize = pageSize;
+            this.executor = executor;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Start iterating a page read from the row
+         * 
+         * @param next
+         *            the page
+         * @param lastName
+         *            the last column of the previous page, which the page
+         *            starts with, or null for the first page
+         */
+        private void setPage(List<HColumn<ByteBuffer, ByteBuffer>> next,
+                ByteBuffer lastName) {
+            int expected = lastName == null ? pageSize : pageSize + 1;
+
+            exhausted = next == null || next.size() < expected;
+
+            page = next;
+            index = 0;
+
+            if (lastName != null && page != null && !page.isEmpty()
+                    && lastName.equals(page.get(0).getName())) {
+                index = 1;
+            }
+        }
+
+        /**
+         * Returns true if there is another column in this bucket. Loads the
+         * next page if required
+         * 
+         * @return
+         * @throws Exception
+         */
+        private boolean hasNext() throws Exception {
+            if (page != null && index < page.size()) {
+                return true;
+            }
+
+            if (exhausted) {
+                return false;
+            }
+
+            ByteBuffer lastName = page.get(page.size() - 1).getName();
+
+            if (nextPage == null) {
+                setPage(readPage(lastName), lastName);
+            } else {
+                setPage(awaitNextPage(), lastName);
+            }
+
+            return page != null && index < page.size();
+        }
+
+        /**
+         * The current head of this bucket. Only valid after hasNext returns
+         * true
+         * 
+         * @return
+         */
+        private HColumn<ByteBuffer, ByteBuffer> peek() {
+            return page.get(index);
+        }
+
+        private HColumn<ByteBuffer, ByteBuffer> next() {
+            HColumn<ByteBuffer, ByteBuffer> col = page.get(index++);
+
+            if (executor != null && nextPage == null && !exhausted
+                    && index * 2 >= page.size()) {
+                final ByteBuffer lastName = page.get(page.size() - 1)
+                        .getName();
+
+                nextPage = executor
+                        .submit(new Callable<List<HColumn<ByteBuffer, ByteBuffer>>>() {
+
+                            @Override
+                            public List<HColumn<ByteBuffer, ByteBuffer>> call()
+                                    throws Exception {
+                                return readPage(lastName);
+                            }
+                        });
+            }
+
+            return col;
+        }
+
+        /**
+         * Read the page following the given column. The start is inclusive,
+         * so it reads one extra and the column we've already seen is dropped
+         */
+        private List<HColumn<ByteBuffer, ByteBuffer>> readPage(
+                ByteBuffer lastName) throws Exception {
+            long started = System.nanoTime();
+
+            try {
+                return getColumns(rowKey, lastName, pageSize + 1);
+            } finally {
+                long elapsed = System.nanoTime() - started;
+                BUCKET_READS.update(elapsed, TimeUnit.NANOSECONDS);
+                timer.update(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private List<HColumn<ByteBuffer, ByteBuffer>> awaitNextPage()
+                throws Exception {
+            Future<List<HColumn<ByteBuffer, ByteBuffer>>> future = nextPage;
+            nextPage = null;
+
+            long remaining = deadline - System.currentTimeMillis();
+
+            try {
+                return future.get(Math.max(0, remaining),
+                        TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                throw timeout(1);
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        /**
+         * Drop the read of the next page if it hasn't started
+         */
+        private void cancel() {
+            if (nextPage != null) {
+                nextPage.cancel(false);
+                nextPage = null;
+            }
+        }
+    }
+
     private static abstract class DynamicCompositeComparator implements Comparator<ByteBuffer>{
         protected final AbstractType dynamicComposite;
         
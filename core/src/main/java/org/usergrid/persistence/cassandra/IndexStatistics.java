@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static me.prettyprint.hector.api.factory.HFactory.createCounterColumn;
+import static me.prettyprint.hector.api.factory.HFactory.createMultigetSliceCounterQuery;
+import static org.usergrid.persistence.cassandra.ApplicationCF.ENTITY_INDEX_STATS;
+import static org.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.beans.CounterRow;
+import me.prettyprint.hector.api.beans.HCounterColumn;
+import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.MultigetSliceCounterQuery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.persistence.query.ir.QuerySlice;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Approximate statistics of the collection property indexes, used to pick the
+ * most selective slice of a query.
+ *
+ * Every entry added to or removed from an index increments or decrements one
+ * of {@link #BUCKETS} counters of the index, picked by a hash of the entry's
+ * value. The sum of the counters is the number of entries in the index, the
+ * counter of a value is an upper bound of the number of entries with that
+ * value, and the number of counters in use estimates the number of distinct
+ * values.
+ *
+ * The counters of an index are spread over {@link #SHARDS} rows, each update
+ * going to a random one, so a busy collection doesn't make every index write
+ * contend on a single counter row. The rows are summed when they're read.
+ *
+ * The counter updates go in the same batch as the index writes, and a batch
+ * that fails is executed again. A counter update that was applied before the
+ * failure is then applied twice, since counters can't be written
+ * idempotently, so the counts drift with every failed write and never
+ * recover. That's fine for picking a slice, where only the relative size of
+ * the estimates matters, but they're not exact counts.
+ *
+ * Statistics are read at most once per ttl per index on each node. They're
+ * off by default, since every index write then also writes a counter to the
+ * Entity_Index_Stats column family, which has to exist first.
+ *
+ */
+public class IndexStatistics {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(IndexStatistics.class);
+
+    /**
+     * The number of counters per index
+     */
+    public static final int BUCKETS = 64;
+
+    /**
+     * The number of rows the counters of an index are spread over
+     */
+    public static final int SHARDS = 16;
+
+    /**
+     * Returned by estimates when there are no statistics
+     */
+    public static final long UNKNOWN = -1;
+
+    private static final StringSerializer se = new StringSerializer();
+    private static final ByteBufferSerializer be = new ByteBufferSerializer();
+
+    private static final Random random = new Random();
+
+    private final CassandraService cass;
+    private final boolean enabled;
+    private final Cache<String, Stats> cache;
+
+    /**
+     *
+     * @param cass
+     * @param enabled
+     *            False to neither maintain nor read statistics
+     * @param ttlSeconds
+     *            How long statistics read from Cassandra are used
+     */
+    public IndexStatistics(CassandraService cass, boolean enabled,
+            long ttlSeconds) {
+        this.cass = cass;
+        this.enabled = enabled;
+        this.cache = CacheBuilder.newBuilder().maximumSize(10000)
+                .expireAfterWrite(Math.max(1, ttlSeconds), TimeUnit.SECONDS)
+                .build();
+
+        if (!enabled) {
+            logger.info("Index statistics are disabled");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add an index entry to the statistics of an index
+     *
+     * @param batch
+     * @param indexName
+     *            The index row key without the bucket
+     * @param value
+     *            The indexed value
+     */
+    public void batchAddEntry(Mutator<ByteBuffer> batch, Object indexName,
+            Object value) {
+        batchUpdate(batch, indexName, value, 1);
+    }
+
+    /**
+     * Remove an index entry from the statistics of an index
+     *
+     * @param batch
+     * @param indexName
+     *            The index row key without the bucket
+     * @param value
+     *            The indexed value
+     */
+    public void batchRemoveEntry(Mutator<ByteBuffer> batch, Object indexName,
+            Object value) {
+        batchUpdate(batch, indexName, value, -1);
+    }
+
+    private void batchUpdate(Mutator<ByteBuffer> batch, Object indexName,
+            Object value, long delta) {
+        if (!enabled || (value == null)) {
+            return;
+        }
+
+        HCounterColumn<String> c = createCounterColumn(
+                String.valueOf(bucket(value)), delta);
+        batch.addCounter(bytebuffer(key(indexName, random.nextInt(SHARDS))),
+                ENTITY_INDEX_STATS.toString(), c);
+    }
+
+    /**
+     * Get the statistics of an index
+     *
+     * @param applicationId
+     * @param indexName
+     *            The index row key without the bucket
+     * @return The statistics, or null if the index has no statistics
+     * @throws Exception
+     */
+    public Stats getStats(UUID applicationId, Object indexName)
+            throws Exception {
+        if (!enabled) {
+            return null;
+        }
+
+        String cacheKey = applicationId + "/" + indexName;
+
+        Stats stats = cache.getIfPresent(cacheKey);
+
+        if (stats == null) {
+            List<ByteBuffer> keys = new ArrayList<ByteBuffer>(SHARDS);
+            for (int shard = 0; shard < SHARDS; shard++) {
+                keys.add(bytebuffer(key(indexName, shard)));
+            }
+
+            MultigetSliceCounterQuery<ByteBuffer, String> q = createMultigetSliceCounterQuery(
+                    cass.getApplicationKeyspace(applicationId), be, se);
+            q.setColumnFamily(ENTITY_INDEX_STATS.toString());
+            q.setKeys(keys);
+            q.setRange(null, null, false, BUCKETS);
+
+            // an entry can be added in one shard and removed in another, so
+            // only the sums are meaningful
+            long[] counts = new long[BUCKETS];
+            for (CounterRow<ByteBuffer, String> row : q.execute().get()) {
+                for (HCounterColumn<String> column : row.getColumnSlice()
+                        .getColumns()) {
+                    try {
+                        int bucket = Integer.parseInt(column.getName());
+                        if ((bucket >= 0) && (bucket < BUCKETS)) {
+                            counts[bucket] += column.getValue();
+                        }
+                    } catch (NumberFormatException e) {
+                        logger.warn("Unexpected index statistics column {}",
+                                column.getName());
+                    }
+                }
+            }
+
+            stats = new Stats(counts);
+            cache.put(cacheKey, stats);
+        }
+
+        return stats.getEntries() > 0 ? stats : null;
+    }
+
+    /**
+     * The counter of a value. Strings of numbers and of numbers in other
+     * types hash the same, since values read back from the index entries
+     * ledger aren't always of the type they were written as
+     *
+     * @param value
+     * @return
+     */
+    static int bucket(Object value) {
+        int h = value instanceof ByteBuffer ? value.hashCode() : value
+                .toString().hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return (h & 0x7fffffff) % BUCKETS;
+    }
+
+    /**
+     * The counters of an index
+     */
+    public static class Stats {
+
+        private final long[] counts;
+        private final long entries;
+        private final int used;
+
+        public Stats(long[] counts) {
+            this.counts = counts;
+
+            long entries = 0;
+            int used = 0;
+            for (long count : counts) {
+                // deletes of entries written before statistics were kept can
+                // take counters below zero
+                if (count > 0) {
+                    entries += count;
+                    used++;
+                }
+            }
+
+            this.entries = entries;
+            this.used = used;
+        }
+
+        /**
+         * @return The number of entries in the index
+         */
+        public long getEntries() {
+            return entries;
+        }
+
+        /**
+         * Linear counting estimate of the number of distinct values. This
+         * saturates at a few hundred values
+         *
+         * @return
+         */
+        public long getDistinctValues() {
+            if (used == 0) {
+                return 0;
+            }
+
+            double empty = Math.max(counts.length - used, 0.5)
+                    / counts.length;
+            long distinct = Math.round(-counts.length * Math.log(empty));
+
+            return Math.max(used, Math.min(entries, distinct));
+        }
+
+        /**
+         * @return The number of entries with a value, or an upper bound of it
+         */
+        public long getEntries(Object value) {
+            return Math.max(0, counts[bucket(value)]);
+        }
+
+        /**
+         * Estimate the number of entries in a slice
+         *
+         * @param slice
+         * @return
+         */
+        public long estimate(QuerySlice slice) {
+            if (slice.isEquals()) {
+                long count = getEntries(slice.getStart().getValue());
+
+                // once most counters are in use the counter of a value is
+                // shared by many values
+                if (used > (counts.length / 2)) {
+                    count = Math.min(count,
+                            Math.max(1, entries / getDistinctValues()));
+                }
+
+                return count;
+            }
+
+            // no order is kept, guess that a range is a third of the index
+            // per bound
+            long count = entries;
+            if (slice.getStart() != null) {
+                count /= 3;
+            }
+            if (slice.getFinish() != null) {
+                count /= 3;
+            }
+
+            return Math.max(1, count);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * In memory {@link AuthorizationCache} bounded by the number of cached
+ * principals. A max size of 0 disables caching.
+ * 
+ * Like {@link LocalEntityCache}, this cache only sees invalidations from
+ * writes made on this node. For a cluster, either wrap it with
+ * org.usergrid.clustering.hazelcast.HazelcastAuthorizationCache, or keep the
+ * ttl short. Changes that don't go through the entity manager's role and
+ * permission methods, such as editing a role entity directly, are only picked
+ * up when the ttl expires
+ * 
+ */
+public class LocalAuthorizationCache implements AuthorizationCache {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(LocalAuthorizationCache.class);
+
+    private final Cache<EntityCacheKey, Object> cache;
+
+    /**
+     * 
+     * @param maxSize
+     *            The max number of principals cached
+     * @param ttlSeconds
+     *            How long grants stay in the cache after they're read. 0 or
+     *            less to never expire
+     */
+    public LocalAuthorizationCache(long maxSize, long ttlSeconds) {
+        if (maxSize <= 0) {
+            logger.info("Authorization cache is disabled");
+            cache = null;
+            return;
+        }
+
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maxSize);
+
+        if (ttlSeconds > 0) {
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+        }
+
+        cache = builder.build();
+    }
+
+    @Override
+    public Object get(UUID applicationId, UUID principalId) {
+        if (cache == null) {
+            return null;
+        }
+
+        return cache.getIfPresent(new EntityCacheKey(applicationId,
+                principalId));
+    }
+
+    @Override
+    public void put(UUID applicationId, UUID principalId, Object grants) {
+        if (cache == null || grants == null) {
+            return;
+        }
+
+        cache.put(new EntityCacheKey(applicationId, principalId), grants);
+    }
+
+    @Override
+    public void invalidate(UUID applicationId, UUID principalId) {
+        if (cache == null) {
+            return;
+        }
+
+        cache.invalidate(new EntityCacheKey(applicationId, principalId));
+    }
+
+    @Override
+    public void invalidateApplication(UUID applicationId) {
+        if (cache == null) {
+            return;
+        }
+
+        // role changes are rare next to reads, a scan is fine
+        Iterator<EntityCacheKey> keys = cache.asMap().keySet().iterator();
+        while (keys.hasNext()) {
+            if (applicationId.equals(keys.next().getApplicationId())) {
+                keys.remove();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * In memory {@link EntityCache} bounded by the serialized size of the cached
+ * entities. Least recently used entities are evicted first. A max size of 0
+ * disables caching.
+ * 
+ * This cache is local to the node, it will only see invalidations from writes
+ * made on this node. For a cluster, either wrap it with
+ * org.usergrid.clustering.hazelcast.HazelcastEntityCache, or set a ttl to bound
+ * how stale an entry can get.
+ * 
+ * Generations are kept per stripe of entities rather than per entity, so an
+ * invalidation can also keep a read of another entity in the same stripe
+ * from being cached. That read just goes to cassandra again next time.
+ * 
+ */
+public class LocalEntityCache implements EntityCache {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(LocalEntityCache.class);
+
+    /**
+     * Rough per entry overhead of the key, map and cache bookkeeping
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    static final int GENERATION_STRIPES = 4096;
+
+    private final Cache<EntityCacheKey, CachedEntity> cache;
+
+    private final AtomicLongArray generations = new AtomicLongArray(
+            GENERATION_STRIPES);
+
+    /**
+     * 
+     * @param maxBytes
+     *            The max total serialized size of cached entities
+     * @param ttlSeconds
+     *            How long an entity stays in the cache after it's read. Must
+     *            be positive when the cache is enabled
+     */
+    public LocalEntityCache(long maxBytes, long ttlSeconds) {
+        if (maxBytes <= 0) {
+            logger.info("Entity cache is disabled");
+            cache = null;
+            return;
+        }
+
+        // a missed invalidation would never be corrected
+        if (ttlSeconds <= 0) {
+            throw new IllegalArgumentException(
+                    "Entity cache ttl must be positive, not " + ttlSeconds);
+        }
+
+        cache = CacheBuilder.newBuilder().maximumWeight(maxBytes)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .weigher(new Weigher<EntityCacheKey, CachedEntity>() {
+
+                    @Override
+                    public int weigh(EntityCacheKey key, CachedEntity value) {
+                        return value.size;
+                    }
+                }).build();
+    }
+
+    @Override
+    public Map<String, Object> get(UUID applicationId, UUID entityId) {
+        if (cache == null) {
+            return null;
+        }
+
+        CachedEntity cached = cache.getIfPresent(new EntityCacheKey(
+                applicationId, entityId));
+
+        if (cached == null) {
+            return null;
+        }
+
+        return copyProperties(cached.properties);
+    }
+
+    @Override
+    public long getGeneration(UUID applicationId, UUID entityId) {
+        if (cache == null) {
+            return 0;
+        }
+
+        return generations.get(stripe(new EntityCacheKey(applicationId,
+                entityId)));
+    }
+
+    @Override
+    public void put(UUID applicationId, UUID entityId, long generation,
+            Map<String, Object> properties, long size) {
+        if (cache == null || properties == null) {
+            return;
+        }
+
+        EntityCacheKey key = new EntityCacheKey(applicationId, entityId);
+        int stripe = stripe(key);
+
+        if (generations.get(stripe) != generation) {
+            return;
+        }
+
+        cache.put(key, new CachedEntity(copyProperties(properties),
+                (int) Math.min(Integer.MAX_VALUE, size + ENTRY_OVERHEAD)));
+
+        // an invalidation between the check and the put may have missed the
+        // entry, it bumped the generation before removing it so check again
+        if (generations.get(stripe) != generation) {
+            cache.invalidate(key);
+        }
+    }
+
+    @Override
+    public void invalidate(UUID applicationId, UUID entityId) {
+        if (cache == null) {
+            return;
+        }
+
+        EntityCacheKey key = new EntityCacheKey(applicationId, entityId);
+        generations.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    private static int stripe(EntityCacheKey key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    /**
+     * Copy the properties, including any nested maps or lists, so callers
+     * can't modify what's in the cache
+     * 
+     * @param properties
+     * @return
+     */
+    private static Map<String, Object> copyProperties(
+            Map<String, Object> properties) {
+        Map<String, Object> copy = new TreeMap<String, Object>(
+                String.CASE_INSENSITIVE_ORDER);
+
+        for (Entry<String, Object> entry : properties.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>(
+                    map.size());
+            for (Entry<Object, Object> entry : map.entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return copy;
+        }
+
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> copy = new ArrayList<Object>(list.size());
+            for (Object element : list) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+
+        return value;
+    }
+
+    private static class CachedEntity {
+        private final Map<String, Object> properties;
+        private final int size;
+
+        private CachedEntity(Map<String, Object> properties, int size) {
+            this.properties = properties;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.prettyprint.hector.api.mutation.Mutator;
+
+/**
+ * A mutator to build one item of a batch on, so an item that fails while
+ * it's being built leaves nothing behind in the batch. The mutations are
+ * made on a mutator of their own, which fails them the same way the batch
+ * would, and are added to the batch once the whole item has been built.
+ *
+ * Only the add methods are recorded, anything that would execute right away
+ * is refused.
+ */
+class MutationRecorder implements InvocationHandler {
+
+    private final Mutator<ByteBuffer> mutations;
+
+    private final Mutator<ByteBuffer> mutator;
+
+    private final List<Method> methods = new ArrayList<Method>();
+
+    private final List<Object[]> arguments = new ArrayList<Object[]>();
+
+    /**
+     * @param mutations
+     *            an empty mutator the mutations are made on while they're
+     *            recorded, never executed
+     */
+    @SuppressWarnings("unchecked")
+    MutationRecorder(Mutator<ByteBuffer> mutations) {
+        this.mutations = mutations;
+        mutator = (Mutator<ByteBuffer>) Proxy.newProxyInstance(
+                Mutator.class.getClassLoader(),
+                new Class<?>[] { Mutator.class }, this);
+    }
+
+    /**
+     * @return the mutator to build the item on
+     */
+    Mutator<ByteBuffer> getMutator() {
+        return mutator;
+    }
+
+    /**
+     * Forget the mutations recorded so far, to build the next item
+     */
+    void clear() {
+        mutations.discardPendingMutations();
+        methods.clear();
+        arguments.clear();
+    }
+
+    /**
+     * Add the recorded mutations to a batch
+     *
+     * @param batch
+     */
+    void addTo(Mutator<ByteBuffer> batch) {
+        for (int i = 0; i < methods.size(); i++) {
+            try {
+                methods.get(i).invoke(batch, arguments.get(i));
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("Unable to add mutation to batch",
+                        e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Unable to add mutation to batch",
+                        e);
+            }
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+        String name = method.getName();
+
+        if (name.startsWith("add")) {
+            try {
+                method.invoke(mutations, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            methods.add(method);
+            arguments.add(args);
+            return proxy;
+        }
+
+        if (name.equals("getPendingMutationCount")) {
+            return mutations.getPendingMutationCount();
+        }
+        if (name.equals("discardPendingMutations")) {
+            clear();
+            return proxy;
+        }
+
+        if (method.getDeclaringClass() == Object.class) {
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return "MutationRecorder(" + mutations + ")";
+        }
+
+        throw new UnsupportedOperationException(name
+                + " can't be used while building an item of a batch");
+    }
+
+}
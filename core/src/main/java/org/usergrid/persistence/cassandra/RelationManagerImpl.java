@@ -97,6 +97,11 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import me.prettyprint.cassandra.model.IndexedSlicesQuery;
 import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
@@ -104,6 +109,7 @@ import me.prettyprint.cassandra.serializers.LongSerializer;
 import me.prettyprint.cassandra.serializers.StringSerializer;
 import me.prettyprint.cassandra.serializers.UUIDSerializer;
 import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.beans.AbstractComposite.Component;
 import me.prettyprint.hector.api.beans.AbstractComposite.ComponentEquality;
 import me.prettyprint.hector.api.beans.DynamicComposite;
 import me.prettyprint.hector.api.beans.HColumn;
@@ -122,12 +128,17 @@ import org.usergrid.persistence.IndexBucketLocator.IndexType;
 import org.usergrid.persistence.Results.Level;
 import org.usergrid.persistence.cassandra.GeoIndexManager.EntityLocationRef;
 import org.usergrid.persistence.cassandra.IndexUpdate.IndexEntry;
+import org.usergrid.persistence.entities.Event;
 import org.usergrid.persistence.entities.Group;
 import org.usergrid.persistence.query.ir.AllNode;
 import org.usergrid.persistence.query.ir.QuerySlice;
 import org.usergrid.persistence.query.ir.SearchVisitor;
 import org.usergrid.persistence.query.ir.SliceNode;
 import org.usergrid.persistence.query.ir.WithinNode;
+import org.usergrid.persistence.query.ir.result.FilterIterator.Filter;
+import org.usergrid.persistence.query.ir.result.ResultIterator;
+import org.usergrid.persistence.query.ir.result.ScanColumn;
+import org.usergrid.persistence.query.ir.result.ScanIterator;
 import org.usergrid.persistence.schema.CollectionInfo;
 import org.usergrid.utils.IndexUtils;
 import org.usergrid.utils.MapUtils;
@@ -443,6 +454,9 @@ public class RelationManagerImpl implements RelationManager {
                         index_key, entry.getIndexComposite(),
                         indexUpdate.getTimestamp());
 
+                em.getIndexStatistics().batchRemoveEntry(
+                        indexUpdate.getBatch(), index_name, entry.getValue());
+
                 if (collection != null) {
                     if (collection.hasSubkeys()) {
                         List<String[]> combos = collection
@@ -505,6 +519,9 @@ public class RelationManagerImpl implements RelationManager {
                         index_key, indexEntry.getIndexComposite(), null,
                         indexUpdate.getTimestamp());
 
+                em.getIndexStatistics().batchAddEntry(indexUpdate.getBatch(),
+                        index_name, indexEntry.getValue());
+
                 // Add subkey indexes
 
                 if (collection != null) {
@@ -689,17 +706,37 @@ public class RelationManagerImpl implements RelationManager {
     public Mutator<ByteBuffer> batchAddToCollection(Mutator<ByteBuffer> batch,
             String collectionName, Entity entity, UUID timestampUuid)
             throws Exception {
+        return batchAddToCollection(batch, collectionName, entity,
+                timestampUuid, false);
+    }
+
+    /**
+     * @param skipRead
+     *            true if the entity is new and can't have any dictionary
+     *            values to index yet
+     */
+    Mutator<ByteBuffer> batchAddToCollection(Mutator<ByteBuffer> batch,
+            String collectionName, Entity entity, UUID timestampUuid,
+            boolean skipRead) throws Exception {
         List<UUID> ids = new ArrayList<UUID>(1);
         ids.add(headEntity.getUuid());
         return batchAddToCollections(batch, headEntity.getType(), ids,
-                collectionName, entity, timestampUuid);
+                collectionName, entity, timestampUuid, skipRead);
     }
 
-    @SuppressWarnings("unchecked")
-    @Metered(group="core",name="RelationManager_batchAddToCollections")
     public Mutator<ByteBuffer> batchAddToCollections(Mutator<ByteBuffer> batch,
             String ownerType, List<UUID> ownerIds, String collectionName,
             Entity entity, UUID timestampUuid) throws Exception {
+        return batchAddToCollections(batch, ownerType, ownerIds,
+                collectionName, entity, timestampUuid, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Metered(group="core",name="RelationManager_batchAddToCollections")
+    Mutator<ByteBuffer> batchAddToCollections(Mutator<ByteBuffer> batch,
+            String ownerType, List<UUID> ownerIds, String collectionName,
+            Entity entity, UUID timestampUuid, boolean skipRead)
+            throws Exception {
 
         long timestamp = getTimestampInMicros(timestampUuid);
 
@@ -798,7 +835,8 @@ public class RelationManagerImpl implements RelationManager {
 
         // Add set property indexes
 
-        Set<String> dictionaryNames = em.getDictionaryNames(entity);
+        Set<String> dictionaryNames = skipRead ? new TreeSet<String>()
+                : em.getDictionaryNames(entity);
 
         for (String dictionaryName : dictionaryNames) {
             boolean has_dictionary = schema.hasDictionary(
@@ -834,6 +872,16 @@ public class RelationManagerImpl implements RelationManager {
         return batch;
     }
 
+    /**
+     * Remove a collection membership from the entity cache after the batch
+     * that created it again is executed
+     */
+    private void invalidateMembership(EntityRef ownerRef,
+            String collectionName, EntityRef itemRef) {
+        em.invalidateCachedEntity(new SimpleCollectionRef(ownerRef,
+                collectionName, itemRef).getUuid());
+    }
+
     /**
      * Batch remove from collection.
      *
@@ -2000,6 +2048,275 @@ public class RelationManagerImpl implements RelationManager {
         return r;
     }
 
+    /**
+     * Turn the columns read from a composite index into one scan column per
+     * entry, keeping the column name so the scan can be resumed from it.
+     * Unlike getIndexResults duplicate entries are kept, so the caller can
+     * tell a short read from the end of the range.
+     *
+     * @param columns
+     *            the index columns
+     * @param connectionType
+     *            the connection type
+     * @param entityType
+     *            the entity type
+     * @return
+     */
+    private List<ScanColumn> getScanColumns(
+            List<HColumn<ByteBuffer, ByteBuffer>> columns,
+            String connectionType, String entityType) {
+
+        List<ScanColumn> scanColumns = new ArrayList<ScanColumn>(
+                columns.size());
+
+        for (HColumn<ByteBuffer, ByteBuffer> column : columns) {
+
+            List<Object> objects = DynamicComposite.fromByteBuffer(column
+                    .getName().duplicate());
+            UUID connectedEntityId = (UUID) objects.get(2);
+
+            String cType = connectionType;
+            String eType = entityType;
+
+            if ((connectionType == null) || (entityType == null)) {
+                if (connectionType != null) {
+                    eType = StringUtils.ifString(objects.get(3));
+                } else if (entityType != null) {
+                    cType = StringUtils.ifString(objects.get(3));
+                } else {
+                    cType = StringUtils.ifString(objects.get(3));
+                    eType = StringUtils.ifString(objects.get(4));
+                }
+            }
+
+            Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+
+            if (cType != null) {
+                metadata.put(PROPERTY_CONNECTION, cType);
+            }
+
+            ByteBuffer v = column.getValue();
+            if ((v != null) && (v.remaining() >= 16)) {
+                metadata.put(PROPERTY_ASSOCIATED, uuid(v));
+            }
+
+            scanColumns.add(new ScanColumn(ref(eType, connectedEntityId),
+                    metadata, column.getName()));
+        }
+
+        return scanColumns;
+    }
+
+    /**
+     * Check the index entries ledger of an entity for a value in the range of
+     * a slice
+     *
+     * @param entityId
+     * @param entryName
+     *            The top level property of the slice
+     * @param path
+     *            The rest of the property path of the slice, or an empty
+     *            string
+     * @param slice
+     * @return true if the entity has an indexed value in the slice
+     * @throws Exception
+     */
+    private boolean hasIndexEntry(UUID entityId, String entryName,
+            String path, QuerySlice slice) throws Exception {
+
+        return !getIndexEntries(entityId, path, entryStart(entryName, slice),
+                entryFinish(entryName, slice)).isEmpty();
+    }
+
+    /**
+     * Check the index entries ledger of an entity for a value in the part of
+     * a slice's range that was read before its cursor
+     *
+     * @param entityId
+     * @param entryName
+     *            The top level property of the slice
+     * @param path
+     *            The rest of the property path of the slice, or an empty
+     *            string
+     * @param slice
+     * @param cursor
+     *            The cursor of the slice, composite(value_code, value,
+     *            entity_id)
+     * @return true if an earlier page of the slice returned the entity
+     * @throws Exception
+     */
+    private boolean hasIndexEntryBefore(UUID entityId, String entryName,
+            String path, QuerySlice slice, DynamicComposite cursor)
+            throws Exception {
+
+        // the ledger is read in ascending order. The value of the cursor is
+        // included, the entity's entry for it may be before the cursor too
+        DynamicComposite value = new DynamicComposite(entryName);
+        copyComponent(cursor, 0, value);
+        copyComponent(cursor, 1, value);
+
+        List<DynamicComposite> entries = slice.isReversed() ? getIndexEntries(
+                entityId, path, value, entryFinish(entryName, slice))
+                : getIndexEntries(entityId, path, entryStart(entryName, slice),
+                        setEqualityFlag(value,
+                                ComponentEquality.GREATER_THAN_EQUAL));
+
+        for (DynamicComposite entry : entries) {
+            if (!entry.getComponent(1).getBytes()
+                    .equals(cursor.getComponent(0).getBytes())
+                    || !entry.getComponent(2).getBytes()
+                            .equals(cursor.getComponent(1).getBytes())) {
+                return true;
+            }
+
+            // the entries for the value of the cursor are in entity id order
+            int c = ScanColumn.compare(entityId, (UUID) cursor.get(2));
+            if (slice.isReversed() ? c > 0 : c < 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void copyComponent(DynamicComposite from, int index,
+            DynamicComposite to) {
+        Component component = from.getComponent(index);
+        to.addComponent(component.getValue(), component.getSerializer(),
+                component.getComparator());
+    }
+
+    private static DynamicComposite entryStart(String entryName,
+            QuerySlice slice) {
+        DynamicComposite start = new DynamicComposite(entryName);
+        if (slice.getStart() != null) {
+            start.add(slice.getStart().getCode());
+            start.add(slice.getStart().getValue());
+            if (!slice.getStart().isInclusive()) {
+                setEqualityFlag(start, ComponentEquality.GREATER_THAN_EQUAL);
+            }
+        }
+        return start;
+    }
+
+    private static DynamicComposite entryFinish(String entryName,
+            QuerySlice slice) {
+        DynamicComposite finish = new DynamicComposite(entryName);
+        if (slice.getFinish() != null) {
+            finish.add(slice.getFinish().getCode());
+            finish.add(slice.getFinish().getValue());
+        }
+        if ((slice.getFinish() == null) || slice.getFinish().isInclusive()) {
+            setEqualityFlag(finish, ComponentEquality.GREATER_THAN_EQUAL);
+        }
+        return finish;
+    }
+
+    /**
+     * Read the index entries of an entity between two ledger columns
+     *
+     * @param entityId
+     * @param path
+     *            The rest of the property path of the entries, or an empty
+     *            string
+     * @param start
+     * @param finish
+     * @return the entries for the path,
+     *         composite(entryName, value_code, value, timestamp, obj_path)
+     * @throws Exception
+     */
+    private List<DynamicComposite> getIndexEntries(UUID entityId, String path,
+            DynamicComposite start, DynamicComposite finish) throws Exception {
+
+        List<HColumn<ByteBuffer, ByteBuffer>> entries = cass.getColumns(
+                cass.getApplicationKeyspace(applicationId),
+                ENTITY_INDEX_ENTRIES, entityId, start, finish,
+                INDEX_ENTRY_LIST_COUNT, false);
+
+        List<DynamicComposite> matches = new ArrayList<DynamicComposite>();
+
+        for (HColumn<ByteBuffer, ByteBuffer> entry : entries) {
+            DynamicComposite composite = DynamicComposite
+                    .fromByteBuffer(entry.getName().duplicate());
+            String entryPath = composite.size() > 4 ? (String) composite
+                    .get(4) : null;
+            if (path.equals(entryPath != null ? entryPath : "")) {
+                matches.add(composite);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Get a filter that checks single entities against a slice by reading
+     * their own index entries, which are the same whether they're searched
+     * for in a collection or a connection.
+     *
+     * @param slice
+     * @return the filter, or null for extended properties, which are kept in
+     *         the ledger of the extension entity, not the member
+     */
+    private Filter indexEntryVerifier(final QuerySlice slice) {
+        String propertyName = slice.getPropertyName();
+
+        if (propertyName.startsWith(TYPE_MEMBER + ".")) {
+            return null;
+        }
+
+        // nested values are kept in the ledger under their top level
+        // property, with the rest of their path
+        int dot = propertyName.indexOf('.');
+        final String entryName = dot < 0 ? propertyName : propertyName
+                .substring(0, dot);
+        final String path = dot < 0 ? "" : propertyName.substring(dot + 1);
+
+        return new Filter() {
+
+            @Override
+            public boolean accept(ScanColumn column) throws Exception {
+                return hasIndexEntry(column.getUuid(), entryName, path, slice);
+            }
+        };
+    }
+
+    /**
+     * Get a filter for a range that isn't in uuid order and is resumed from a
+     * cursor. It accepts the entities with an entry before the cursor, which
+     * an earlier page returned, so they aren't returned again for another of
+     * their values.
+     *
+     * @param slice
+     * @return the filter, or null if the slice can't repeat entities across
+     *         pages, or its entries aren't in the ledger of the member
+     */
+    private Filter readBeforeCursor(final QuerySlice slice) {
+        String propertyName = slice.getPropertyName();
+        ByteBuffer cursor = slice.getCursor();
+
+        if (slice.isEquals() || (cursor == null) || (cursor.remaining() == 0)
+                || propertyName.startsWith(TYPE_MEMBER + ".")) {
+            return null;
+        }
+
+        int dot = propertyName.indexOf('.');
+        final String entryName = dot < 0 ? propertyName : propertyName
+                .substring(0, dot);
+        final String path = dot < 0 ? "" : propertyName.substring(dot + 1);
+        final DynamicComposite position = DynamicComposite
+                .fromByteBuffer(cursor.duplicate());
+
+        return new Filter() {
+
+            @Override
+            public boolean accept(ScanColumn column) throws Exception {
+                return hasIndexEntryBefore(column.getUuid(), entryName, path,
+                        slice, position);
+            }
+        };
+    }
+
     /**
      * Search index.
      *
@@ -2136,9 +2453,9 @@ public class RelationManagerImpl implements RelationManager {
 
 
     private List<HColumn<ByteBuffer, ByteBuffer>> searchIndex(Object indexKey,
-            QuerySlice slice, int count) throws Exception {
+            QuerySlice slice, ByteBuffer cursor, int count) throws Exception {
 
-        Object start = getStart(slice);
+        Object start = getStart(slice, cursor);
 
         Object finish = getFinish(slice);
 
@@ -2165,16 +2482,19 @@ public class RelationManagerImpl implements RelationManager {
      *
      * @param indexKey
      * @param slice
+     * @param cursor
+     *            the column to start at, or null to start at the start of the
+     *            slice
      * @param count
      * @param collectionName
      * @return
      * @throws Exception
      */
     private List<HColumn<ByteBuffer, ByteBuffer>> searchIndexBuckets(
-            Object indexKey, QuerySlice slice, int count, String collectionName)
-            throws Exception {
+            Object indexKey, QuerySlice slice, ByteBuffer cursor, int count,
+            String collectionName) throws Exception {
 
-        Object start = getStart(slice);
+        Object start = getStart(slice, cursor);
 
         Object finish = getFinish(slice);
 
@@ -2195,11 +2515,11 @@ public class RelationManagerImpl implements RelationManager {
 
     }
 
-    private Object getStart(QuerySlice slice) {
+    private Object getStart(QuerySlice slice, ByteBuffer cursor) {
         Object start = null;
 
-        if (slice.getCursor() != null) {
-            start = slice.getCursor();
+        if (cursor != null) {
+            start = cursor;
         } else if (slice.getStart() != null) {
             start = new DynamicComposite(slice.getStart().getCode(), slice
                     .getStart().getValue());
@@ -2393,6 +2713,12 @@ public class RelationManagerImpl implements RelationManager {
 
         batchExecute(batch, CassandraService.RETRY_COUNT);
 
+        invalidateMembership(headEntity, collectionName, itemEntity);
+        if (collection.getLinkedCollection() != null) {
+            invalidateMembership(itemEntity, collection.getLinkedCollection(),
+                    headEntity);
+        }
+
         return itemEntity;
     }
 
@@ -2431,6 +2757,10 @@ public class RelationManagerImpl implements RelationManager {
 
         batchExecute(batch, CassandraService.RETRY_COUNT);
 
+        for (EntityRef owner : owners) {
+            invalidateMembership(owner, collectionName, itemEntity);
+        }
+
         return null;
     }
 
@@ -2493,6 +2823,267 @@ public class RelationManagerImpl implements RelationManager {
         return itemEntity;
     }
 
+    /**
+     * Creates the items in slices, on the bulk create executor if there is
+     * one. Each slice builds its items into shared batches that are written
+     * once they reach the batch mutation limit, so an item's entity, alias,
+     * unique value, index and collection membership mutations go out together
+     * with those of the items around it instead of in batches of their own.
+     */
+    @Override
+    @Metered(group="core",name="RelationManager_createItemsInCollection")
+    public BulkCreateResults createItemsInCollection(
+            final String collectionName, String itemType,
+            final List<Map<String, Object>> items) throws Exception {
+
+        final BulkCreateResults results = new BulkCreateResults(items.size());
+        if (items.isEmpty()) {
+            return results;
+        }
+
+        final boolean applicationOwned = headEntity.getUuid().equals(
+                applicationId);
+        if (applicationOwned) {
+            if (itemType.equals(TYPE_ENTITY)) {
+                itemType = singularize(collectionName);
+            }
+            if (itemType.startsWith(TYPE_ENTITY)
+                    || itemType.startsWith("entities")) {
+                throw new IllegalArgumentException("Invalid entity type");
+            }
+        }
+
+        // roles and events aren't stored as plain entities, so they're
+        // created one at a time
+        if ((applicationOwned && itemType.equals(TYPE_ROLE))
+                || (headEntity.getType().equals(Group.ENTITY_TYPE) && collectionName
+                        .equals(COLLECTION_ROLES))
+                || Event.ENTITY_TYPE.equals(Schema.normalizeEntityType(itemType))) {
+            for (int i = 0; i < items.size(); i++) {
+                try {
+                    results.setEntity(i, createItemInCollection(
+                            collectionName, itemType, items.get(i)));
+                } catch (Exception e) {
+                    results.setError(i, e);
+                }
+            }
+            return results;
+        }
+
+        final CollectionInfo collection = applicationOwned ? null
+                : getDefaultSchema().getCollection(headEntity.getType(),
+                        collectionName);
+        if ((collection != null) && !collection.getType().equals(itemType)) {
+            return results;
+        }
+
+        final Entity linkedOwner = (collection != null)
+                && (collection.getLinkedCollection() != null) ? getHeadEntity()
+                : null;
+
+        EntityManagerFactoryImpl emf = em.getEntityManagerFactory();
+        ExecutorService executor = emf.getBulkCreateExecutor();
+        final int batchMutations = emf.getBulkCreateBatchMutations();
+
+        int sliceSize = items.size();
+        if (executor != null) {
+            int concurrency = emf.getBulkCreateConcurrency();
+            sliceSize = (items.size() + concurrency - 1) / concurrency;
+        }
+
+        final String type = itemType;
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for (int start = 0; start < items.size(); start += sliceSize) {
+            final int from = start;
+            final int to = Math.min(start + sliceSize, items.size());
+
+            FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    createSlice(collectionName, type, applicationOwned,
+                            collection, linkedOwner, items, from, to,
+                            batchMutations, results);
+                    return null;
+                }
+            });
+
+            if (executor != null) {
+                executor.execute(task);
+            } else {
+                task.run();
+            }
+            futures.add(task);
+        }
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted creating items in collection "
+                        + collectionName, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw new RuntimeException("Unable to create items in collection "
+                        + collectionName, e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Create a slice of the items of a bulk create. Each item is built on a
+     * mutator of its own and only added to the shared batch once it's been
+     * built, so an item that fails is recorded in the results and leaves
+     * nothing in the batch for the others. A batch that can't be written
+     * fails only its own items. The collection counters are incremented once
+     * a batch is written, so items never written aren't counted.
+     */
+    private void createSlice(String collectionName, String itemType,
+            boolean applicationOwned, CollectionInfo collection,
+            Entity linkedOwner, List<Map<String, Object>> items, int from,
+            int to, int batchMutations, BulkCreateResults results)
+            throws Exception {
+
+        Mutator<ByteBuffer> batch = null;
+        Map<Integer, PendingItem> pending = new LinkedHashMap<Integer, PendingItem>();
+        MutationRecorder itemMutations = new MutationRecorder(createMutator(
+                cass.getApplicationKeyspace(applicationId), be));
+
+        for (int i = from; i < to; i++) {
+            if (batch == null) {
+                batch = createMutator(cass.getApplicationKeyspace(applicationId), be);
+                pending.clear();
+            }
+
+            PendingItem item = new PendingItem(items.get(i), newTimeUUID());
+            Entity itemEntity = null;
+
+            itemMutations.clear();
+            try {
+                if (!applicationOwned) {
+                    item.properties = getDefaultSchema().cleanUpdatedProperties(
+                            itemType, item.properties, true);
+                }
+                itemEntity = batchCreateItem(itemMutations.getMutator(),
+                        collectionName, itemType, collection, linkedOwner,
+                        item);
+            } catch (Exception e) {
+                results.setError(i, e);
+                continue;
+            }
+
+            if (itemEntity == null) {
+                continue;
+            }
+
+            itemMutations.addTo(batch);
+            results.setEntity(i, itemEntity);
+            pending.put(i, item);
+
+            if (batch.getPendingMutationCount() >= batchMutations) {
+                executeBatch(batch, itemType, pending, results);
+                batch = null;
+            }
+        }
+
+        if ((batch != null) && (batch.getPendingMutationCount() > 0)) {
+            executeBatch(batch, itemType, pending, results);
+        }
+    }
+
+    /**
+     * Write a batch of a bulk create and count its items in the collection.
+     * If the write fails, its items are recorded as failed in the results and
+     * their unique value claims are released.
+     */
+    private void executeBatch(Mutator<ByteBuffer> batch, String itemType,
+            Map<Integer, PendingItem> pending, BulkCreateResults results) {
+
+        try {
+            batchExecute(batch, CassandraService.RETRY_COUNT);
+        } catch (Exception e) {
+            logger.error("Unable to write " + pending.size() + " items of type "
+                    + itemType, e);
+
+            for (Entry<Integer, PendingItem> failed : pending.entrySet()) {
+                UUID itemId = results.getEntity(failed.getKey()).getUuid();
+                results.setError(failed.getKey(), e);
+                try {
+                    em.releaseUniqueClaims(itemId, itemType,
+                            failed.getValue().properties,
+                            getTimestampInMicros(failed.getValue().timestampUuid) - 1);
+                } catch (Exception re) {
+                    logger.error("Unable to release unique values of " + itemId
+                            + ", they're free once the claims expire", re);
+                }
+            }
+            return;
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        try {
+            Mutator<ByteBuffer> counters = createMutator(
+                    cass.getApplicationKeyspace(applicationId), be);
+            em.batchIncrementEntityCollection(counters, Schema
+                    .defaultCollectionName(Schema.normalizeEntityType(itemType)),
+                    pending.size(), cass.createTimestamp());
+            if (counters.getPendingMutationCount() > 0) {
+                batchExecute(counters, CassandraService.RETRY_COUNT);
+            }
+        } catch (Exception e) {
+            logger.error("Unable to count " + pending.size() + " items of type "
+                    + itemType, e);
+        }
+    }
+
+    /**
+     * An item of a bulk create that's in the batch being built
+     */
+    private static class PendingItem {
+        Map<String, Object> properties;
+        final UUID timestampUuid;
+
+        PendingItem(Map<String, Object> properties, UUID timestampUuid) {
+            this.properties = properties;
+            this.timestampUuid = timestampUuid;
+        }
+    }
+
+    /**
+     * Add an item and its collection membership to the batch, without the
+     * collection counters
+     */
+    private Entity batchCreateItem(Mutator<ByteBuffer> batch,
+            String collectionName, String itemType, CollectionInfo collection,
+            Entity linkedOwner, PendingItem item) throws Exception {
+
+        Entity itemEntity = em.batchCreate(batch, itemType, null,
+                item.properties, null, item.timestampUuid, false);
+
+        if ((itemEntity == null) || headEntity.getUuid().equals(applicationId)) {
+            return itemEntity;
+        }
+
+        batchAddToCollection(batch, collectionName, itemEntity,
+                item.timestampUuid, true);
+
+        if (linkedOwner != null) {
+            getRelationManager(itemEntity).batchAddToCollection(batch,
+                    collection.getLinkedCollection(), linkedOwner,
+                    item.timestampUuid);
+        }
+
+        return itemEntity;
+    }
+
     @Override
     @Metered(group="core",name="RelationManager_removeFromCollection")
     public void removeFromCollection(String collectionName, EntityRef itemRef)
@@ -2638,8 +3229,9 @@ public class RelationManagerImpl implements RelationManager {
                 results.setQuery(query);
             }
 
-            return em.loadEntities(results, query.getResultsLevel(),
-                    query.getLimit());
+            return em.loadEntities(results, query.getResultsLevel(), null,
+                    query.getLimit(), collection.getType(),
+                    query.getSelectProperties());
         }
 
         // we have something to search with, visit our tree and evaluate the
@@ -2667,7 +3259,8 @@ public class RelationManagerImpl implements RelationManager {
         }
 
         results = em.loadEntities(results, query.getResultsLevel(), ids,
-                query.getLimit());
+                query.getLimit(), collection.getType(),
+                query.getSelectProperties());
 
         if (results != null) {
             results.setQuery(query);
@@ -2923,8 +3516,9 @@ public class RelationManagerImpl implements RelationManager {
                                     connectedEntityType, null)), false);
 
             Results results = Results.fromConnections(connections);
-            results = em.loadEntities(results, query.getResultsLevel(),
-                    query.getLimit());
+            results = em.loadEntities(results, query.getResultsLevel(), null,
+                    query.getLimit(), connectedEntityType,
+                    query.getSelectProperties());
 
             return results;
 
@@ -2948,8 +3542,9 @@ public class RelationManagerImpl implements RelationManager {
             return null;
         }
 
-        results = em.loadEntities(results, query.getResultsLevel(),
-                query.getLimit());
+        results = em.loadEntities(results, query.getResultsLevel(), null,
+                query.getLimit(), connectedEntityType,
+                query.getSelectProperties());
 
         if (results != null) {
             results.setQuery(query);
@@ -3059,7 +3654,7 @@ public class RelationManagerImpl implements RelationManager {
     }
 
     /**
-     * Simple search visitor that performs all the joining
+     * Search visitor that scans the collection indexes
      *
      * @author tnine
      *
@@ -3082,99 +3677,115 @@ public class RelationManagerImpl implements RelationManager {
          * (non-Javadoc)
          *
          * @see
-         * org.usergrid.persistence.query.ir.NodeVisitor#visit(org.usergrid.
-         * persistence.query.ir.SliceNode)
+         * org.usergrid.persistence.query.ir.SearchVisitor#scanSlice(org.usergrid
+         * .persistence.query.ir.SliceNode,
+         * org.usergrid.persistence.query.ir.QuerySlice, boolean)
          */
         @Override
-        public void visit(SliceNode node) throws Exception {
+        protected ResultIterator scanSlice(SliceNode node,
+                final QuerySlice slice, boolean probe) throws Exception {
 
             // check if we have sub keys for equality clauses at this node
             // level. If so we can just use them as a row key for faster seek
-
-            Results results = null;
-
-            int limit = query.getLimit() + 1;
-
-            Level resultsLevel = query.getResultsLevel();
-
             Object subKey = getCFKeyForSubkey(collection, node);
 
-            for (QuerySlice slice : node.getAllSlices()) {
-
-                // NOTE we explicitly do not append the slice value here. This
-                // is done in the searchIndex method below
-                Object indexKey = subKey == null ? key(headEntity.getUuid(),
-                        collection.getName()) : key(headEntity.getUuid(),
-                        collection.getName(), subKey);
-
-                // update the cursor and order before we perform the slice
-                // operation. Should be done after subkeying since this can
-                // change the hash value of the slice
-                queryProcessor.applyCursorAndSort(slice);
-
-                List<HColumn<ByteBuffer, ByteBuffer>> columns = null;
-
-                //nothing left to search for this range
-                if (slice.isComplete()) {
-                    columns = new ArrayList<HColumn<ByteBuffer, ByteBuffer>>();
-                }
-                //perform the search
-                else {
-                    columns = searchIndexBuckets(indexKey, slice, limit,
-                            collection.getName());
-                }
-
-                Results r = getIndexResults(columns, true,
-                        query.getConnectionType(), collection.getType(),
-                        resultsLevel);
-
-                if (r.size() > query.getLimit()) {
-                    r.setCursorToLastResult();
-                }
-
-                // we've hit the last element in the index in a page. I.E 40
-                // elements at 10 page size 4 times. Our cursor needs
-                // to be max so we don't get any results in the next page call
-                else {
-                    r.setCursorMax();
-                }
-
-                queryProcessor.updateCursor(slice, r.getCursor());
-
-                r = r.excludeCursorMetadataAttribute();
-
-                if (results != null) {
-                    results.and(r);
-                } else {
-                    results = r;
-                }
-            }
-
-            this.results.push(results);
+            // NOTE we explicitly do not append the slice value here. This
+            // is done in the searchIndex method below
+            final Object indexKey = subKey == null ? key(headEntity.getUuid(),
+                    collection.getName()) : key(headEntity.getUuid(),
+                    collection.getName(), subKey);
+
+            ScanIterator iterator = new ScanIterator(
+                    new ScanIterator.Scanner() {
+
+                        @Override
+                        public List<ScanColumn> scan(ByteBuffer start,
+                                int count) throws Exception {
+                            return getScanColumns(
+                                    searchIndexBuckets(indexKey, slice, start,
+                                            count, collection.getName()),
+                                    query.getConnectionType(),
+                                    collection.getType());
+                        }
+                    }, probe ? null : slice.getCursor(), probe ? PROBE_PAGE_SIZE
+                            : query.getLimit() + 1, slice.isEquals(),
+                    slice.isReversed());
 
+            return probe ? iterator : iterator.withCursor(queryProcessor,
+                    slice).withReadBefore(readBeforeCursor(slice));
         }
 
-      public void visit(AllNode node) throws Exception {
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * org.usergrid.persistence.query.ir.SearchVisitor#estimate(org.usergrid
+         * .persistence.query.ir.SliceNode,
+         * org.usergrid.persistence.query.ir.QuerySlice)
+         */
+        @Override
+        protected long estimate(SliceNode node, QuerySlice slice)
+                throws Exception {
+            IndexStatistics.Stats stats = em.getIndexStatistics().getStats(
+                    applicationId,
+                    key(headEntity.getUuid(), collection.getName(),
+                            slice.getPropertyName()));
 
-        String collectionName = collection.getName();
+            return stats == null ? UNKNOWN : stats.estimate(slice);
+        }
 
-        List<UUID> ids = cass.getIdList(
-                cass.getApplicationKeyspace(applicationId),
-                key(headEntity.getUuid(), DICTIONARY_COLLECTIONS, collectionName),
-                query.getStartResult(),
-                null,
-                query.getLimit() + 1,
-                query.isReversed(),
-                indexBucketLocator,
-                applicationId,
-                collectionName);
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * org.usergrid.persistence.query.ir.SearchVisitor#verifier(org.usergrid
+         * .persistence.query.ir.SliceNode,
+         * org.usergrid.persistence.query.ir.QuerySlice)
+         */
+        @Override
+        protected Filter verifier(SliceNode node, QuerySlice slice)
+                throws Exception {
+            return indexEntryVerifier(slice);
+        }
 
-        Results results = Results.fromIdList(ids, collection.getType());
+        @Override
+        public void visit(AllNode node) throws Exception {
+
+            final String collectionName = collection.getName();
+
+            ScanIterator iterator = new ScanIterator(
+                    new ScanIterator.Scanner() {
+
+                        @Override
+                        public List<ScanColumn> scan(ByteBuffer start,
+                                int count) throws Exception {
+                            List<UUID> ids = cass.getIdList(cass
+                                    .getApplicationKeyspace(applicationId),
+                                    key(headEntity.getUuid(),
+                                            DICTIONARY_COLLECTIONS,
+                                            collectionName),
+                                    start != null ? uuid(start) : probing ? null
+                                            : query.getStartResult(), null,
+                                    count, query.isReversed(),
+                                    indexBucketLocator, applicationId,
+                                    collectionName);
+
+                            List<ScanColumn> columns = new ArrayList<ScanColumn>(
+                                    ids.size());
+                            for (UUID id : ids) {
+                                columns.add(new ScanColumn(ref(
+                                        collection.getType(), id), null,
+                                        bytebuffer(id)));
+                            }
+                            return columns;
+                        }
+                    }, null, probing ? PROBE_PAGE_SIZE : query.getLimit() + 1,
+                    true, query.isReversed());
 
-        this.results.push(results);
-      }
+            results.push(iterator);
+        }
 
-      /*
+        /*
          * (non-Javadoc)
          *
          * @see
@@ -3191,13 +3802,13 @@ public class RelationManagerImpl implements RelationManager {
                     node.getDistance(), null, query.getLimit(), false,
                     query.getResultsLevel());
 
-            results.push(r);
+            results.push(iterate(r));
         }
 
     }
 
     /**
-     * Simple search visitor that performs all the joining
+     * Search visitor that scans the connection indexes
      *
      * @author tnine
      *
@@ -3220,73 +3831,50 @@ public class RelationManagerImpl implements RelationManager {
          * (non-Javadoc)
          *
          * @see
-         * org.usergrid.persistence.query.ir.NodeVisitor#visit(org.usergrid.
-         * persistence.query.ir.SliceNode)
+         * org.usergrid.persistence.query.ir.SearchVisitor#scanSlice(org.usergrid
+         * .persistence.query.ir.SliceNode,
+         * org.usergrid.persistence.query.ir.QuerySlice, boolean)
          */
         @Override
-        public void visit(SliceNode node) throws Exception {
-
-            Results results = null;
-
-            int limit = query.getLimit() + 1;
-
-            Level resultsLevel = query.getResultsLevel();
-
-            for (QuerySlice slice : node.getAllSlices()) {
-
-                // update the cursor and order before we perform the slice
-                // operation
-                queryProcessor.applyCursorAndSort(slice);
-
-                List<HColumn<ByteBuffer, ByteBuffer>> columns = searchIndex(
-                        key(connection.getIndexId(), INDEX_CONNECTIONS), slice,
-                        limit);
-
-                Results r = getIndexResults(columns, true,
-                        connection.getConnectionType(),
-                        connection.getConnectedEntityType(), resultsLevel);
-
-                if (r.size() > query.getLimit()) {
-                    r.setCursorToLastResult();
-                }
-
-                if (r.getCursor() != null) {
-                    // TODO Todd finish this
-                    // queryProcessor.updateCursor(slice, r.getCursor());
-                }
-
-                r = r.excludeCursorMetadataAttribute();
+        protected ResultIterator scanSlice(SliceNode node,
+                final QuerySlice slice, boolean probe) throws Exception {
+
+            final Object indexKey = key(connection.getIndexId(),
+                    INDEX_CONNECTIONS);
+
+            // TODO Todd finish this, the cursors of connection searches
+            // aren't returned to the caller yet
+            ScanIterator iterator = new ScanIterator(
+                    new ScanIterator.Scanner() {
+
+                        @Override
+                        public List<ScanColumn> scan(ByteBuffer start,
+                                int count) throws Exception {
+                            return getScanColumns(
+                                    searchIndex(indexKey, slice, start, count),
+                                    connection.getConnectionType(),
+                                    connection.getConnectedEntityType());
+                        }
+                    }, probe ? null : slice.getCursor(), probe ? PROBE_PAGE_SIZE
+                            : query.getLimit() + 1, slice.isEquals(),
+                    slice.isReversed());
 
-                if (results != null) {
-                    results.and(r);
-                } else {
-                    results = r;
-                }
-            }
-            //
-            // String prop = f.getPropertyName();
-            // Object startValue = f.getStartValue();
-            // Object finishValue = f.getFinishValue();
-            //
-            // Results r = searchConnections(
-            // new ConnectionRefImpl(
-            // headEntity,
-            // new ConnectedEntityRefImpl(
-            // ConnectionRefImpl.CONNECTION_ENTITY_CONNECTION_TYPE,
-            // ConnectionRefImpl.CONNECTION_ENTITY_TYPE,
-            // null)), prop, startValue, finishValue,
-            // query.getStartResult(), f.getCursor(), search_count,
-            // query.isReversed(), Level.IDS);
-            //
-            // if (results != null) {
-            // results.and(r);
-            // } else {
-            // results = r;
-            // }
-            // }
-
-            this.results.push(results);
+            return probe ? iterator : iterator
+                    .withReadBefore(readBeforeCursor(slice));
+        }
 
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * org.usergrid.persistence.query.ir.SearchVisitor#verifier(org.usergrid
+         * .persistence.query.ir.SliceNode,
+         * org.usergrid.persistence.query.ir.QuerySlice)
+         */
+        @Override
+        protected Filter verifier(SliceNode node, QuerySlice slice)
+                throws Exception {
+            return indexEntryVerifier(slice);
         }
 
         /*
@@ -3305,7 +3893,7 @@ public class RelationManagerImpl implements RelationManager {
                     node.getDistance(), null, query.getLimit(), false,
                     query.getResultsLevel());
 
-            results.push(r);
+            results.push(iterate(r));
         }
 
       @Override
@@ -1,27 +1,95 @@
 package org.usergrid.persistence.query.ir;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.UUID;
 
+import org.usergrid.persistence.EntityRef;
 import org.usergrid.persistence.Query;
 import org.usergrid.persistence.Results;
+import org.usergrid.persistence.Results.Level;
+import org.usergrid.persistence.Schema;
+import org.usergrid.persistence.SimpleEntityRef;
 import org.usergrid.persistence.cassandra.QueryProcessor;
+import org.usergrid.persistence.query.ir.result.FilterIterator;
+import org.usergrid.persistence.query.ir.result.FilterIterator.Filter;
+import org.usergrid.persistence.query.ir.result.IntersectionIterator;
+import org.usergrid.persistence.query.ir.result.ProbeSet;
+import org.usergrid.persistence.query.ir.result.ResultIterator;
+import org.usergrid.persistence.query.ir.result.ScanColumn;
+import org.usergrid.persistence.query.ir.result.StaticIterator;
+import org.usergrid.persistence.query.ir.result.SubtractionIterator;
+import org.usergrid.persistence.query.ir.result.UnionIterator;
 
 /**
- * Simple search visitor that performs all the joining in memory for results.
- * 
- * Subclasses will want to implement visiting SliceNode and WithinNode to actually perform the search on the 
- * Cassandra indexes.  This class can perform joins on all index entries that conform to the Results object
- * 
+ * Search visitor that turns the query tree into a tree of
+ * {@link ResultIterator}s. Nothing is read until the results are pulled from
+ * the root iterator, and then only as many index entries as are needed for a
+ * page of results.
+ *
+ * Iterators over equality slices and id lists are in uuid order, so AND, OR
+ * and NOT of them are evaluated as streaming merges. Otherwise the entities of
+ * one side are checked against the other by looking up their index entries
+ * directly. Only nodes that can't be checked this way, like geo searches, are
+ * read as a probe.
+ *
+ * When there are statistics for the indexes, the most selective slice drives,
+ * and slices that are much larger than it are verified one entity at a time
+ * instead of scanned. Slices the results are sorted by, and slices with a
+ * cursor from a previous page, always drive.
+ *
+ * Subclasses implement scanning a slice, and visiting the AllNode and
+ * WithinNode to actually perform the search on the Cassandra indexes.
+ *
  * @author tnine
- * 
+ *
  */
 public abstract class SearchVisitor implements NodeVisitor {
 
+    /**
+     * The number of index entries read at a time by probes
+     */
+    protected static final int PROBE_PAGE_SIZE = 1000;
+
+    /**
+     * Returned by estimates when there are no statistics
+     */
+    protected static final long UNKNOWN = -1;
+
+    /**
+     * What verifying a single entity against a slice costs, in index entries
+     * scanned
+     */
+    protected static final long VERIFY_COST = 10;
+
+    /**
+     * Accepts every entity
+     */
+    private static final Filter ACCEPT_ALL = new Filter() {
+
+        @Override
+        public boolean accept(ScanColumn column) {
+            return true;
+        }
+    };
+
     protected Query query;
 
     protected QueryProcessor queryProcessor;
 
-    protected Stack<Results> results = new Stack<Results>();
+    protected Stack<ResultIterator> results = new Stack<ResultIterator>();
+
+    /**
+     * True while building an iterator that's only used as a probe. Probes
+     * read their ranges from the start and don't save cursors
+     */
+    protected boolean probing;
 
     /**
      * @param query
@@ -32,73 +100,589 @@ public abstract class SearchVisitor implements NodeVisitor {
     }
 
     /**
-     * Return the results if they exist, null otherwise
-     * 
+     * Pull a page of results from the root iterator and save the cursors of
+     * the slices it read. Return the results if they exist, null otherwise
+     *
+     * @return
+     * @throws Exception
+     */
+    public Results getResults() throws Exception {
+        if (results.isEmpty()) {
+            return null;
+        }
+
+        ResultIterator iterator = results.pop();
+
+        int limit = query.getLimit();
+
+        List<ScanColumn> columns = new ArrayList<ScanColumn>(limit + 1);
+
+        ScanColumn column = null;
+
+        while ((columns.size() < limit)
+                && ((column = iterator.next()) != null)) {
+            columns.add(column);
+        }
+
+        // include the next result without consuming it, so callers can tell
+        // there's another page
+        column = iterator.peek();
+        if (column != null) {
+            columns.add(column);
+        }
+
+        iterator.finalizeCursor();
+
+        return toResults(columns);
+    }
+
+    /**
+     * Scan a single slice of a slice node
+     *
+     * @param node
+     * @param slice
+     *            The slice, with the cursor and sort of the query applied
+     * @param probe
+     *            True to read from the start of the slice and not save a
+     *            cursor
+     * @return
+     * @throws Exception
+     */
+    protected abstract ResultIterator scanSlice(SliceNode node,
+            QuerySlice slice, boolean probe) throws Exception;
+
+    /**
+     * Estimate the number of entities in a slice. Return {@link #UNKNOWN} if
+     * there are no statistics for it
+     *
+     * @param node
+     * @param slice
+     * @return
+     * @throws Exception
+     */
+    protected long estimate(SliceNode node, QuerySlice slice) throws Exception {
+        return UNKNOWN;
+    }
+
+    /**
+     * Get a filter that checks single entities against a slice without
+     * scanning it. Return null if the slice can't be checked this way
+     *
+     * @param node
+     * @param slice
      * @return
+     * @throws Exception
+     */
+    protected Filter verifier(SliceNode node, QuerySlice slice)
+            throws Exception {
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.usergrid.persistence.query.ir.NodeVisitor#visit(org.usergrid.
+     * persistence.query.ir.SliceNode)
      */
-    public Results getResults() {
-        return results.isEmpty() ? null : results.pop();
+    @Override
+    public void visit(SliceNode node) throws Exception {
+
+        // the slices of a node are ANDed together. The most selective slice
+        // drives, the others are merged with it when they're in the same
+        // order, verified one entity at a time when they're much larger, and
+        // probed otherwise
+        List<QuerySlice> slices = new ArrayList<QuerySlice>();
+        final Map<QuerySlice, Long> estimates = new IdentityHashMap<QuerySlice, Long>();
+
+        for (QuerySlice slice : node.getAllSlices()) {
+            // update the cursor and order before we perform the slice
+            // operation
+            queryProcessor.applyCursorAndSort(slice);
+
+            slices.add(slice);
+            estimates.put(slice, estimate(node, slice));
+        }
+
+        Collections.sort(slices, new Comparator<QuerySlice>() {
+
+            @Override
+            public int compare(QuerySlice first, QuerySlice second) {
+                // a slice we're paging through or sorting by has to keep
+                // driving
+                int c = Boolean.valueOf(isPinned(second)).compareTo(
+                        isPinned(first));
+                if (c != 0) {
+                    return c;
+                }
+
+                c = compareEstimates(estimates.get(first),
+                        estimates.get(second));
+                if (c != 0) {
+                    return c;
+                }
+
+                // without statistics, equality slices are the smaller ones
+                return Boolean.valueOf(second.isEquals()).compareTo(
+                        first.isEquals());
+            }
+        });
+
+        QuerySlice driver = slices.get(0);
+        ResultIterator iterator = scanSlice(node, driver, probing);
+        long candidates = estimates.get(driver);
+
+        List<QuerySlice> probes = new ArrayList<QuerySlice>();
+        List<Filter> filters = new ArrayList<Filter>();
+
+        for (QuerySlice slice : slices.subList(1, slices.size())) {
+            long estimate = estimates.get(slice);
+            Filter filter = verifier(node, slice);
+
+            if ((filter != null) && isVerifyCheaper(candidates, estimate)) {
+                filters.add(filter);
+                continue;
+            }
+
+            ResultIterator scan = scanSlice(node, slice, probing);
+
+            if (isMergeable(iterator, scan)) {
+                iterator = new IntersectionIterator(iterator, scan);
+                candidates = minEstimate(candidates, estimate);
+            } else if (filter != null) {
+                filters.add(filter);
+            } else {
+                probes.add(slice);
+            }
+        }
+
+        for (QuerySlice slice : probes) {
+            iterator = new IntersectionIterator(iterator, new ProbeSet(
+                    scanSlice(node, slice, true)));
+        }
+
+        // verify last, against the fewest candidates
+        for (Filter filter : filters) {
+            iterator = new FilterIterator(iterator, filter);
+        }
+
+        results.push(iterator);
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see org.usergrid.persistence.query.ir.NodeVisitor#visit(org.usergrid.
      * persistence.query.ir.AndNode)
      */
     @Override
     public void visit(AndNode node) throws Exception {
-        node.getLeft().visit(this);
-        node.getRight().visit(this);
+        QueryNode left = node.getLeft();
+        QueryNode right = node.getRight();
+
+        // a and not b is everything in a that isn't in b, there's no need to
+        // read every entity for the NOT
+        if (right instanceof NotNode) {
+            results.push(subtract(iterate(left),
+                    ((NotNode) right).getChild()));
+            return;
+        }
+
+        if (left instanceof NotNode) {
+            results.push(subtract(iterate(right),
+                    ((NotNode) left).getChild()));
+            return;
+        }
+
+        long leftEstimate = estimate(left);
+        long rightEstimate = estimate(right);
+
+        // a side we're paging through or sorting by has to keep driving,
+        // otherwise drive with the smaller side
+        if (!isPinned(left)
+                && (isPinned(right) || (compareEstimates(rightEstimate,
+                        leftEstimate) < 0))) {
+            QueryNode temp = left;
+            left = right;
+            right = temp;
+
+            long tempEstimate = leftEstimate;
+            leftEstimate = rightEstimate;
+            rightEstimate = tempEstimate;
+        }
+
+        ResultIterator leftIterator = iterate(left);
+        Filter filter = verifier(right);
 
-        Results right = results.pop();
-        Results left = results.pop();
+        if ((filter != null) && isVerifyCheaper(leftEstimate, rightEstimate)) {
+            results.push(new FilterIterator(leftIterator, filter));
+            return;
+        }
 
-        left.and(right);
+        ResultIterator rightIterator = iterate(right);
 
-        results.push(left);
+        if (isMergeable(leftIterator, rightIterator)) {
+            results.push(new IntersectionIterator(leftIterator, rightIterator));
+        } else if (filter != null) {
+            results.push(new FilterIterator(leftIterator, filter));
+        } else {
+            results.push(new IntersectionIterator(leftIterator, new ProbeSet(
+                    probe(right))));
+        }
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see org.usergrid.persistence.query.ir.NodeVisitor#visit(org.usergrid.
      * persistence.query.ir.NotNode)
      */
     @Override
     public void visit(NotNode node) throws Exception {
-      node.getChild().visit(this);
-      Results not = results.pop();
-
-      node.getAllNode().visit(this);
-      Results parent = results.pop();
-      parent.subtract(not);
-
-      results.push(parent);
+        results.push(subtract(iterate(node.getAllNode()), node.getChild()));
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see org.usergrid.persistence.query.ir.NodeVisitor#visit(org.usergrid.
      * persistence.query.ir.OrNode)
      */
     @Override
     public void visit(OrNode node) throws Exception {
-        node.getLeft().visit(this);
-        node.getRight().visit(this);
+        ResultIterator left = iterate(node.getLeft());
+        ResultIterator right = iterate(node.getRight());
+
+        // sides that can't be merged are read one after the other. The right
+        // side leaves out what the left side matches by looking it up, so
+        // entities aren't repeated on later pages either
+        if (!isMergeable(left, right)) {
+            right = exclude(right, node.getLeft());
+        }
 
-        Results right = results.pop();
-        Results left = results.pop();
+        results.push(new UnionIterator(left, right));
+    }
+
+    /**
+     * Remove the entities matching a node from an iterator
+     *
+     * @param keep
+     * @param remove
+     * @return
+     * @throws Exception
+     */
+    protected ResultIterator subtract(ResultIterator keep, QueryNode remove)
+            throws Exception {
+        ResultIterator removeIterator = iterate(remove);
+
+        if (isMergeable(keep, removeIterator)) {
+            return new SubtractionIterator(keep, removeIterator);
+        }
+
+        return exclude(keep, remove);
+    }
 
-      if (left != null) {
-        if (right != null) {
-          left.merge(right);
+    /**
+     * Remove the entities matching a node from an iterator without merging,
+     * by checking them one at a time or against a probe of the node
+     *
+     * @param keep
+     * @param remove
+     * @return
+     * @throws Exception
+     */
+    protected ResultIterator exclude(ResultIterator keep, QueryNode remove)
+            throws Exception {
+        Filter filter = verifier(remove);
+        if (filter != null) {
+            return new FilterIterator(keep, not(filter));
         }
-        results.push(left);
-      } else {
-        results.push(right);
-      }
+
+        return new SubtractionIterator(keep, new ProbeSet(probe(remove)));
+    }
+
+    /**
+     * Build the iterator of a node. This doesn't read anything
+     *
+     * @param node
+     * @return
+     * @throws Exception
+     */
+    protected ResultIterator iterate(QueryNode node) throws Exception {
+        node.visit(this);
+        return results.pop();
+    }
+
+    /**
+     * Build an iterator of a node that reads from the start of its ranges and
+     * doesn't save cursors
+     *
+     * @param node
+     * @return
+     * @throws Exception
+     */
+    protected ResultIterator probe(QueryNode node) throws Exception {
+        boolean wasProbing = probing;
+        probing = true;
+        try {
+            return iterate(node);
+        } finally {
+            probing = wasProbing;
+        }
+    }
+
+    /**
+     * @return true if both iterators are in the same uuid order
+     */
+    protected static boolean isMergeable(ResultIterator first,
+            ResultIterator second) {
+        return first.isUuidOrdered() && second.isUuidOrdered()
+                && (first.isReversed() == second.isReversed());
+    }
+
+    /**
+     * Estimate the number of entities matching a node
+     *
+     * @param node
+     * @return The estimate, or {@link #UNKNOWN}
+     * @throws Exception
+     */
+    protected long estimate(QueryNode node) throws Exception {
+        if (node instanceof SliceNode) {
+            long estimate = UNKNOWN;
+            for (QuerySlice slice : ((SliceNode) node).getAllSlices()) {
+                estimate = minEstimate(estimate,
+                        estimate((SliceNode) node, slice));
+            }
+            return estimate;
+        }
+
+        if (node instanceof AndNode) {
+            return minEstimate(estimate(((AndNode) node).getLeft()),
+                    estimate(((AndNode) node).getRight()));
+        }
+
+        if (node instanceof OrNode) {
+            long left = estimate(((OrNode) node).getLeft());
+            long right = estimate(((OrNode) node).getRight());
+            return (left == UNKNOWN) || (right == UNKNOWN) ? UNKNOWN : left
+                    + right;
+        }
+
+        return UNKNOWN;
+    }
+
+    /**
+     * Get a filter that checks single entities against a node by looking up
+     * their index entries, without scanning the node's slices
+     *
+     * @param node
+     * @return The filter, or null if some part of the node can't be checked
+     *         this way
+     * @throws Exception
+     */
+    protected Filter verifier(QueryNode node) throws Exception {
+        if (node instanceof SliceNode) {
+            List<Filter> filters = new ArrayList<Filter>();
+            for (QuerySlice slice : ((SliceNode) node).getAllSlices()) {
+                Filter filter = verifier((SliceNode) node, slice);
+                if (filter == null) {
+                    return null;
+                }
+                filters.add(filter);
+            }
+            return and(filters);
+        }
+
+        if (node instanceof AndNode) {
+            Filter left = verifier(((AndNode) node).getLeft());
+            Filter right = verifier(((AndNode) node).getRight());
+            return (left == null) || (right == null) ? null : and(Arrays
+                    .asList(left, right));
+        }
+
+        if (node instanceof OrNode) {
+            Filter left = verifier(((OrNode) node).getLeft());
+            Filter right = verifier(((OrNode) node).getRight());
+            return (left == null) || (right == null) ? null : or(left, right);
+        }
+
+        if (node instanceof NotNode) {
+            Filter child = verifier(((NotNode) node).getChild());
+            return child == null ? null : not(child);
+        }
+
+        // the candidates are already members, and geo searches can't be
+        // checked one entity at a time
+        return node instanceof AllNode ? ACCEPT_ALL : null;
+    }
+
+    private static Filter and(final List<Filter> filters) {
+        return new Filter() {
+
+            @Override
+            public boolean accept(ScanColumn column) throws Exception {
+                for (Filter filter : filters) {
+                    if (!filter.accept(column)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    private static Filter or(final Filter left, final Filter right) {
+        return new Filter() {
+
+            @Override
+            public boolean accept(ScanColumn column) throws Exception {
+                return left.accept(column) || right.accept(column);
+            }
+        };
+    }
+
+    private static Filter not(final Filter filter) {
+        return new Filter() {
+
+            @Override
+            public boolean accept(ScanColumn column) throws Exception {
+                return !filter.accept(column);
+            }
+        };
+    }
+
+    /**
+     * @return true if the position of a slice in a previous page has to be
+     *         kept, or the results are sorted by it
+     */
+    protected boolean isPinned(QuerySlice slice) {
+        queryProcessor.applyCursorAndSort(slice);
+        return (slice.getCursor() != null)
+                || queryProcessor.hasSort(slice.getPropertyName());
+    }
+
+    /**
+     * @return true if any slice of the node is pinned
+     */
+    protected boolean isPinned(QueryNode node) {
+        if (node instanceof SliceNode) {
+            for (QuerySlice slice : ((SliceNode) node).getAllSlices()) {
+                if (isPinned(slice)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (node instanceof BooleanNode) {
+            return isPinned(((BooleanNode) node).getLeft())
+                    || isPinned(((BooleanNode) node).getRight());
+        }
+
+        if (node instanceof NotNode) {
+            return isPinned(((NotNode) node).getChild());
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if checking every candidate reads less than scanning the
+     *         slices
+     */
+    protected static boolean isVerifyCheaper(long candidates, long estimate) {
+        return (candidates != UNKNOWN) && (estimate != UNKNOWN)
+                && (candidates * VERIFY_COST < estimate);
+    }
+
+    /**
+     * Compare estimates, unknown estimates are larger than all others
+     */
+    protected static int compareEstimates(long first, long second) {
+        if (first == second) {
+            return 0;
+        }
+        if (first == UNKNOWN) {
+            return 1;
+        }
+        if (second == UNKNOWN) {
+            return -1;
+        }
+        return first < second ? -1 : 1;
+    }
+
+    protected static long minEstimate(long first, long second) {
+        return compareEstimates(first, second) <= 0 ? first : second;
+    }
+
+    /**
+     * Iterate the entities of results that were already loaded
+     *
+     * @param r
+     * @return
+     */
+    protected ResultIterator iterate(Results r) {
+        List<ScanColumn> columns = new ArrayList<ScanColumn>();
+
+        if (r != null) {
+            List<EntityRef> refs = r.getRefs();
+            List<UUID> ids = r.getIds();
+            Map<UUID, Map<String, Object>> metadata = r.getMetadata();
+
+            for (int i = 0; (ids != null) && (i < ids.size()); i++) {
+                UUID id = ids.get(i);
+                EntityRef ref = (refs != null) && (i < refs.size()) ? refs
+                        .get(i) : new SimpleEntityRef(id);
+                columns.add(new ScanColumn(ref, metadata != null ? metadata
+                        .get(id) : null, null));
+            }
+        }
+
+        return new StaticIterator(columns);
+    }
+
+    /**
+     * Turn the entities pulled from the root iterator into results at the
+     * requested level, up to references
+     *
+     * @param columns
+     * @return
+     */
+    protected Results toResults(List<ScanColumn> columns) {
+        if (columns.isEmpty()) {
+            return new Results();
+        }
+
+        Results r = null;
+
+        if (query.getResultsLevel() == Level.IDS) {
+            List<UUID> ids = new ArrayList<UUID>(columns.size());
+            for (ScanColumn column : columns) {
+                ids.add(column.getUuid());
+            }
+            r = Results.fromIdList(ids);
+        } else {
+            List<EntityRef> refs = new ArrayList<EntityRef>(columns.size());
+            for (ScanColumn column : columns) {
+                refs.add(column.getRef());
+            }
+            r = Results.fromRefList(refs);
+        }
+
+        for (ScanColumn column : columns) {
+            if (column.getMetadata() == null) {
+                continue;
+            }
+            for (Map.Entry<String, Object> entry : column.getMetadata()
+                    .entrySet()) {
+                if (!Schema.PROPERTY_CURSOR.equals(entry.getKey())) {
+                    r.setMetadata(column.getUuid(), entry.getKey(),
+                            entry.getValue());
+                }
+            }
+        }
+
+        return r;
     }
 
 }
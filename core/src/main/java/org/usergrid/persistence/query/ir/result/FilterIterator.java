@@ -0,0 +1,79 @@
+package org.usergrid.persistence.query.ir.result;
+
+/**
+ * Returns the entities of an iterator that pass a filter, in the order of the
+ * iterator. Used to verify the candidates of a selective slice against the
+ * other slices of a query, instead of scanning those slices.
+ *
+ * Candidates are checked one at a time, so the iterator is never read past
+ * the results returned and its cursor stays exact.
+ *
+ */
+public class FilterIterator implements ResultIterator {
+
+    /**
+     * Checks a single entity
+     */
+    public interface Filter {
+
+        /**
+         * @param column
+         * @return true if the entity should be returned
+         * @throws Exception
+         */
+        public boolean accept(ScanColumn column) throws Exception;
+    }
+
+    private final ResultIterator source;
+    private final Filter filter;
+
+    /**
+     * The last column that passed, so peeking doesn't check it again
+     */
+    private ScanColumn accepted;
+
+    public FilterIterator(ResultIterator source, Filter filter) {
+        this.source = source;
+        this.filter = filter;
+    }
+
+    @Override
+    public ScanColumn peek() throws Exception {
+        ScanColumn column = null;
+
+        while ((column = source.peek()) != null) {
+            if ((column == accepted) || filter.accept(column)) {
+                accepted = column;
+                return column;
+            }
+            source.next();
+        }
+
+        return null;
+    }
+
+    @Override
+    public ScanColumn next() throws Exception {
+        ScanColumn column = peek();
+        if (column != null) {
+            source.next();
+        }
+        return column;
+    }
+
+    @Override
+    public boolean isUuidOrdered() {
+        return source.isUuidOrdered();
+    }
+
+    @Override
+    public boolean isReversed() {
+        return source.isReversed();
+    }
+
+    @Override
+    public void finalizeCursor() throws Exception {
+        source.finalizeCursor();
+    }
+
+}
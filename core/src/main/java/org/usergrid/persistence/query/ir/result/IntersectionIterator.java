@@ -0,0 +1,108 @@
+package org.usergrid.persistence.query.ir.result;
+
+/**
+ * The entities of one iterator that are also in another. Two iterators in the
+ * same uuid order are merged, otherwise each entity of the left iterator is
+ * tested against a {@link ProbeSet} of the right one. Entities are returned in
+ * the order of the left iterator.
+ *
+ */
+public class IntersectionIterator implements ResultIterator {
+
+    private final ResultIterator left;
+    private final ResultIterator right;
+    private final ProbeSet probe;
+
+    /**
+     * Merge two iterators with the same uuid order
+     *
+     * @param left
+     * @param right
+     */
+    public IntersectionIterator(ResultIterator left, ResultIterator right) {
+        this.left = left;
+        this.right = right;
+        this.probe = null;
+    }
+
+    /**
+     * Keep the entities of the left iterator that are in the probe set
+     *
+     * @param left
+     * @param probe
+     */
+    public IntersectionIterator(ResultIterator left, ProbeSet probe) {
+        this.left = left;
+        this.right = null;
+        this.probe = probe;
+    }
+
+    @Override
+    public ScanColumn peek() throws Exception {
+        while (true) {
+            ScanColumn l = left.peek();
+            if (l == null) {
+                return null;
+            }
+
+            if (probe != null) {
+                if (probe.contains(l.getUuid())) {
+                    return l;
+                }
+                left.next();
+                continue;
+            }
+
+            ScanColumn r = right.peek();
+            if (r == null) {
+                return null;
+            }
+
+            int compare = ScanColumn.compare(l.getUuid(), r.getUuid());
+            if (compare == 0) {
+                return l;
+            }
+
+            // skip whichever side is behind, it can't match anything on the
+            // other side
+            if ((compare < 0) != left.isReversed()) {
+                left.next();
+            } else {
+                right.next();
+            }
+        }
+    }
+
+    @Override
+    public ScanColumn next() throws Exception {
+        ScanColumn column = peek();
+        if (column != null) {
+            left.next();
+            if (right != null) {
+                right.next();
+            }
+        }
+        return column;
+    }
+
+    @Override
+    public boolean isUuidOrdered() {
+        return left.isUuidOrdered();
+    }
+
+    @Override
+    public boolean isReversed() {
+        return left.isReversed();
+    }
+
+    @Override
+    public void finalizeCursor() throws Exception {
+        left.finalizeCursor();
+        // probes always read from the start, only merged iterators have a
+        // position
+        if (right != null) {
+            right.finalizeCursor();
+        }
+    }
+
+}
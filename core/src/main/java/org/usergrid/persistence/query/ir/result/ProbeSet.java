@@ -0,0 +1,54 @@
+package org.usergrid.persistence.query.ir.result;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Membership tests against an iterator that isn't in uuid order. The iterator
+ * is only read as far as needed to find an id, and the ids read are kept so
+ * it's never read twice.
+ *
+ * Every id read is held in memory, so this is only for nodes that can't be
+ * checked by looking up an entity's index entries directly, like geo searches,
+ * whose results are already limited to a page.
+ *
+ */
+public class ProbeSet {
+
+    private final ResultIterator probe;
+    private final Set<UUID> seen = new HashSet<UUID>();
+    private boolean exhausted;
+
+    /**
+     * @param probe
+     *            An iterator that reads its range from the start and doesn't
+     *            save a cursor
+     */
+    public ProbeSet(ResultIterator probe) {
+        this.probe = probe;
+    }
+
+    public boolean contains(UUID id) throws Exception {
+        if (seen.contains(id)) {
+            return true;
+        }
+
+        while (!exhausted) {
+            ScanColumn column = probe.next();
+            if (column == null) {
+                exhausted = true;
+                break;
+            }
+
+            seen.add(column.getUuid());
+
+            if (id.equals(column.getUuid())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
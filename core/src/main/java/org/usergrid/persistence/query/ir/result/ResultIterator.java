@@ -0,0 +1,48 @@
+package org.usergrid.persistence.query.ir.result;
+
+/**
+ * A lazily evaluated stream of the entities matching a node of the query
+ * tree. Iterators only read from cassandra as entities are pulled from them,
+ * so a query stops reading once it has its page of results.
+ *
+ */
+public interface ResultIterator {
+
+    /**
+     * Get the next entity without consuming it
+     *
+     * @return The next entity, or null if there are no more
+     * @throws Exception
+     */
+    public ScanColumn peek() throws Exception;
+
+    /**
+     * Consume the next entity
+     *
+     * @return The next entity, or null if there are no more
+     * @throws Exception
+     */
+    public ScanColumn next() throws Exception;
+
+    /**
+     * @return true if entities are returned in uuid order, in which case two
+     *         iterators with the same direction can be merged without
+     *         buffering either of them
+     */
+    public boolean isUuidOrdered();
+
+    /**
+     * @return true if uuid ordered entities are returned in descending order
+     */
+    public boolean isReversed();
+
+    /**
+     * Save the position of the first entity that hasn't been consumed as the
+     * cursor of the slices this iterator reads, so the next page of the query
+     * starts from it
+     *
+     * @throws Exception
+     */
+    public void finalizeCursor() throws Exception;
+
+}
@@ -0,0 +1,72 @@
+package org.usergrid.persistence.query.ir.result;
+
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.cassandra.db.marshal.UUIDType;
+import org.usergrid.persistence.EntityRef;
+
+/**
+ * A single entity produced by a {@link ResultIterator}, along with the index
+ * column it was read from so the scan can be resumed from it
+ *
+ */
+public class ScanColumn {
+
+    private final EntityRef ref;
+    private final Map<String, Object> metadata;
+    private final ByteBuffer cursor;
+
+    /**
+     * @param ref
+     *            The entity
+     * @param metadata
+     *            The metadata of the entity read from the index, may be null
+     * @param cursor
+     *            The column the entity was read from, or null if the entity
+     *            wasn't read from a scan that can be resumed
+     */
+    public ScanColumn(EntityRef ref, Map<String, Object> metadata,
+            ByteBuffer cursor) {
+        this.ref = ref;
+        this.metadata = metadata;
+        this.cursor = cursor;
+    }
+
+    public UUID getUuid() {
+        return ref.getUuid();
+    }
+
+    public EntityRef getRef() {
+        return ref;
+    }
+
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+
+    public ByteBuffer getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Compare two ids the same way cassandra orders UUIDType columns, which is
+     * the order equality slices and id lists are returned in
+     *
+     * @param first
+     * @param second
+     * @return
+     */
+    public static int compare(UUID first, UUID second) {
+        return UUIDType.instance.compare(bytebuffer(first), bytebuffer(second));
+    }
+
+    @Override
+    public String toString() {
+        return "ScanColumn [uuid=" + getUuid() + "]";
+    }
+
+}
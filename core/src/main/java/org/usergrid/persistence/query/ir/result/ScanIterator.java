@@ -0,0 +1,218 @@
+package org.usergrid.persistence.query.ir.result;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.usergrid.persistence.cassandra.QueryProcessor;
+import org.usergrid.persistence.query.ir.QuerySlice;
+import org.usergrid.persistence.query.ir.result.FilterIterator.Filter;
+
+/**
+ * Reads a range of columns a page at a time, only reading the next page once
+ * the current one has been consumed. If the range is a query slice, the
+ * position of the first entity that wasn't consumed becomes the cursor of the
+ * slice.
+ *
+ */
+public class ScanIterator implements ResultIterator {
+
+    /**
+     * Reads the columns of a range
+     */
+    public interface Scanner {
+
+        /**
+         * Read one column per index entry, in range order
+         *
+         * @param start
+         *            The column to start at, inclusive, or null to start at
+         *            the beginning of the range
+         * @param count
+         *            The max number of columns to read
+         * @return
+         * @throws Exception
+         */
+        public List<ScanColumn> scan(ByteBuffer start, int count)
+                throws Exception;
+    }
+
+    private final Scanner scanner;
+    private final int pageSize;
+    private final boolean uuidOrdered;
+    private final boolean reversed;
+
+    private QueryProcessor queryProcessor;
+    private QuerySlice slice;
+
+    private ByteBuffer start;
+    private List<ScanColumn> page;
+    private int index;
+    private boolean more;
+    private UUID last;
+
+    /**
+     * The uuids returned so far, when the range isn't in uuid order and an
+     * entity's entries for different values needn't be next to each other
+     */
+    private final Set<UUID> returned;
+
+    /**
+     * Accepts the entities with an entry before the start of a resumed range,
+     * which an earlier page already returned
+     */
+    private Filter readBefore;
+
+    /**
+     * The index of the column in the page that was last checked against
+     * readBefore, so each column is only looked up once
+     */
+    private int checked = -1;
+
+    /**
+     * @param scanner
+     *            Reads the range
+     * @param start
+     *            The column to start at, null for the start of the range, or
+     *            an empty buffer if the range has already been read to its end
+     * @param pageSize
+     *            The number of columns to read at a time
+     * @param uuidOrdered
+     *            True if the range returns columns in uuid order
+     * @param reversed
+     *            True if the range is read in descending order
+     */
+    public ScanIterator(Scanner scanner, ByteBuffer start, int pageSize,
+            boolean uuidOrdered, boolean reversed) {
+        this.scanner = scanner;
+        this.start = start;
+        this.pageSize = Math.max(1, pageSize);
+        this.uuidOrdered = uuidOrdered;
+        this.reversed = reversed;
+        this.more = (start == null) || (start.remaining() > 0);
+        this.returned = uuidOrdered ? null : new HashSet<UUID>();
+    }
+
+    /**
+     * Save the position of this iterator as the cursor of the slice once the
+     * query has its results
+     *
+     * @param queryProcessor
+     * @param slice
+     * @return
+     */
+    public ScanIterator withCursor(QueryProcessor queryProcessor,
+            QuerySlice slice) {
+        this.queryProcessor = queryProcessor;
+        this.slice = slice;
+        return this;
+    }
+
+    /**
+     * Skip the entities an earlier page of the range already returned. Only
+     * needed when the range isn't in uuid order and is resumed from a cursor,
+     * since entities returned on this page are remembered anyway
+     *
+     * @param readBefore
+     *            Accepts the entities with an entry before the start
+     * @return
+     */
+    public ScanIterator withReadBefore(Filter readBefore) {
+        this.readBefore = readBefore;
+        return this;
+    }
+
+    @Override
+    public ScanColumn peek() throws Exception {
+        while (true) {
+            if ((page == null) || (index >= page.size())) {
+                if (!more) {
+                    return null;
+                }
+                load();
+                continue;
+            }
+
+            ScanColumn column = page.get(index);
+
+            // the same entity can have more than one entry in the range, for
+            // one value or several, only return it once
+            if (((last != null) && last.equals(column.getUuid()))
+                    || ((returned != null) && returned.contains(column
+                            .getUuid()))) {
+                index++;
+                continue;
+            }
+
+            if ((readBefore != null) && (checked != index)) {
+                checked = index;
+                if (readBefore.accept(column)) {
+                    index++;
+                    continue;
+                }
+            }
+
+            return column;
+        }
+    }
+
+    @Override
+    public ScanColumn next() throws Exception {
+        ScanColumn column = peek();
+        if (column != null) {
+            index++;
+            last = column.getUuid();
+            if (returned != null) {
+                returned.add(last);
+            }
+        }
+        return column;
+    }
+
+    private void load() throws Exception {
+        boolean first = page == null;
+
+        if (!first) {
+            start = page.get(page.size() - 1).getCursor();
+        }
+
+        // the start is inclusive, so read one more column than a page after
+        // the first and skip the column we ended the last page on
+        int count = first ? pageSize : pageSize + 1;
+
+        page = scanner.scan(start, count);
+        index = 0;
+        checked = -1;
+        more = page.size() >= count;
+
+        if (!first && !page.isEmpty() && start.equals(page.get(0).getCursor())) {
+            index = 1;
+        }
+    }
+
+    @Override
+    public boolean isUuidOrdered() {
+        return uuidOrdered;
+    }
+
+    @Override
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    @Override
+    public void finalizeCursor() throws Exception {
+        if (slice == null) {
+            return;
+        }
+
+        ScanColumn next = peek();
+
+        // an empty cursor marks the range as complete
+        queryProcessor.updateCursor(slice,
+                next == null ? ByteBuffer.allocate(0) : next.getCursor());
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.usergrid.persistence.query.ir.result;
+
+import java.util.List;
+
+/**
+ * Iterates entities that were already loaded by a search that can't be
+ * streamed, such as a geo search. There's no position to save in the cursor.
+ *
+ */
+public class StaticIterator implements ResultIterator {
+
+    private final List<ScanColumn> columns;
+    private int index;
+
+    public StaticIterator(List<ScanColumn> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public ScanColumn peek() {
+        return index < columns.size() ? columns.get(index) : null;
+    }
+
+    @Override
+    public ScanColumn next() {
+        ScanColumn column = peek();
+        if (column != null) {
+            index++;
+        }
+        return column;
+    }
+
+    @Override
+    public boolean isUuidOrdered() {
+        return false;
+    }
+
+    @Override
+    public boolean isReversed() {
+        return false;
+    }
+
+    @Override
+    public void finalizeCursor() {
+    }
+
+}
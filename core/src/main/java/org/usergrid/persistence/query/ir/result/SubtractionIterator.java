@@ -0,0 +1,102 @@
+package org.usergrid.persistence.query.ir.result;
+
+/**
+ * The entities of one iterator that aren't in another. Two iterators in the
+ * same uuid order are merged, otherwise each entity is tested against a
+ * {@link ProbeSet} of the entities to remove.
+ *
+ */
+public class SubtractionIterator implements ResultIterator {
+
+    private final ResultIterator keep;
+    private final ResultIterator remove;
+    private final ProbeSet probe;
+
+    /**
+     * Merge two iterators with the same uuid order
+     *
+     * @param keep
+     * @param remove
+     */
+    public SubtractionIterator(ResultIterator keep, ResultIterator remove) {
+        this.keep = keep;
+        this.remove = remove;
+        this.probe = null;
+    }
+
+    /**
+     * Drop the entities of the keep iterator that are in the probe set
+     *
+     * @param keep
+     * @param probe
+     */
+    public SubtractionIterator(ResultIterator keep, ProbeSet probe) {
+        this.keep = keep;
+        this.remove = null;
+        this.probe = probe;
+    }
+
+    @Override
+    public ScanColumn peek() throws Exception {
+        while (true) {
+            ScanColumn k = keep.peek();
+            if (k == null) {
+                return null;
+            }
+
+            boolean removed = false;
+
+            if (probe != null) {
+                removed = probe.contains(k.getUuid());
+            } else {
+                ScanColumn r = remove.peek();
+                int compare = 0;
+
+                // skip the entities to remove that come before this one
+                while ((r != null)
+                        && ((compare = ScanColumn.compare(r.getUuid(),
+                                k.getUuid())) != 0)
+                        && ((compare < 0) != keep.isReversed())) {
+                    remove.next();
+                    r = remove.peek();
+                }
+
+                removed = (r != null) && (compare == 0);
+            }
+
+            if (!removed) {
+                return k;
+            }
+
+            keep.next();
+        }
+    }
+
+    @Override
+    public ScanColumn next() throws Exception {
+        ScanColumn column = peek();
+        if (column != null) {
+            keep.next();
+        }
+        return column;
+    }
+
+    @Override
+    public boolean isUuidOrdered() {
+        return keep.isUuidOrdered();
+    }
+
+    @Override
+    public boolean isReversed() {
+        return keep.isReversed();
+    }
+
+    @Override
+    public void finalizeCursor() throws Exception {
+        keep.finalizeCursor();
+        if (remove != null) {
+            remove.finalizeCursor();
+        }
+    }
+
+}
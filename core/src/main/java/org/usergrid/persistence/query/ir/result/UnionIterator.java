@@ -0,0 +1,80 @@
+package org.usergrid.persistence.query.ir.result;
+
+/**
+ * The entities in either of two iterators. Two iterators in the same uuid
+ * order are merged. Otherwise all of the left iterator is returned before the
+ * right one, and the right iterator must already leave out the entities of
+ * the left one. Remembering what was returned would only hold for one page.
+ *
+ */
+public class UnionIterator implements ResultIterator {
+
+    private final ResultIterator left;
+    private final ResultIterator right;
+    private final boolean merge;
+
+    public UnionIterator(ResultIterator left, ResultIterator right) {
+        this.left = left;
+        this.right = right;
+        this.merge = left.isUuidOrdered() && right.isUuidOrdered()
+                && (left.isReversed() == right.isReversed());
+    }
+
+    @Override
+    public ScanColumn peek() throws Exception {
+        ScanColumn l = left.peek();
+
+        if (merge) {
+            ScanColumn r = right.peek();
+            if ((l == null) || (r == null)) {
+                return l != null ? l : r;
+            }
+            int compare = ScanColumn.compare(l.getUuid(), r.getUuid());
+            return (compare == 0) || ((compare < 0) != left.isReversed()) ? l
+                    : r;
+        }
+
+        return l != null ? l : right.peek();
+    }
+
+    @Override
+    public ScanColumn next() throws Exception {
+        ScanColumn column = peek();
+        if (column == null) {
+            return null;
+        }
+
+        ScanColumn l = left.peek();
+
+        if ((l != null) && l.getUuid().equals(column.getUuid())) {
+            left.next();
+            if (!merge) {
+                return column;
+            }
+        }
+
+        ScanColumn r = right.peek();
+        if ((r != null) && r.getUuid().equals(column.getUuid())) {
+            right.next();
+        }
+
+        return column;
+    }
+
+    @Override
+    public boolean isUuidOrdered() {
+        return merge;
+    }
+
+    @Override
+    public boolean isReversed() {
+        return merge && left.isReversed();
+    }
+
+    @Override
+    public void finalizeCursor() throws Exception {
+        left.finalizeCursor();
+        right.finalizeCursor();
+    }
+
+}
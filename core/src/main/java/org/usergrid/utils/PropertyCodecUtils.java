@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.utils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+/**
+ * Type tagged binary encoding of entity property values.
+ *
+ * A value is a version byte followed by a tag byte and the value: zig zag
+ * varint longs, 8 byte doubles, varint length prefixed UTF-8 strings, 16 byte
+ * UUIDs, and varint counted lists and string keyed maps of the same. Values are
+ * encoded straight from the java objects without building a JSON tree.
+ *
+ * Decoding gives back the same objects reading the Smile encoding of the value
+ * through {@link JsonUtils#normalizeJsonTree(Object)} would, so callers can't
+ * tell the two apart. Anything else, such as dates, beans and big numbers, is
+ * not encoded here and {@link #encode(Object)} returns null so the caller can
+ * fall back to Smile. The version byte can't start a Smile or JSON value, which
+ * is how {@link #isEncoded(ByteBuffer)} tells them apart.
+ */
+public class PropertyCodecUtils {
+
+	public static final byte VERSION = 1;
+
+	static final byte NULL = 0;
+	static final byte FALSE = 1;
+	static final byte TRUE = 2;
+	static final byte LONG = 3;
+	static final byte DOUBLE = 4;
+	static final byte STRING = 5;
+	static final byte UUID_VALUE = 6;
+	static final byte LIST = 7;
+	static final byte MAP = 8;
+
+	/**
+	 * Deeper values are left to Smile
+	 */
+	static final int MAX_DEPTH = 32;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * @param value
+	 * @return the encoded value, or null if the value can't be encoded this way
+	 */
+	public static ByteBuffer encode(Object value) {
+		if (value == null) {
+			return null;
+		}
+
+		int size = sizeOf(value, 0);
+		if (size < 0) {
+			return null;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size + 1);
+		buffer.put(VERSION);
+		write(buffer, value);
+		buffer.rewind();
+		return buffer;
+	}
+
+	/**
+	 * @param bytes
+	 * @return true if the bytes were written by {@link #encode(Object)}
+	 */
+	public static boolean isEncoded(ByteBuffer bytes) {
+		return (bytes != null) && bytes.hasRemaining()
+				&& (bytes.get(bytes.position()) == VERSION);
+	}
+
+	public static Object decode(ByteBuffer bytes) {
+		if (!isEncoded(bytes)) {
+			throw new IllegalArgumentException("Not an encoded property value");
+		}
+
+		ByteBuffer buffer = bytes.duplicate();
+		buffer.get();
+
+		try {
+			Object value = read(buffer, true, true);
+			if (buffer.hasRemaining()) {
+				throw new IllegalArgumentException(
+						"Invalid encoded property value");
+			}
+			return value;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException(
+					"Invalid encoded property value", e);
+		}
+	}
+
+	/**
+	 * Size of the encoded value, or -1 if it can't be encoded
+	 */
+	private static int sizeOf(Object value, int depth) {
+		if (value == null) {
+			return 1;
+		}
+		if (value instanceof String) {
+			int length = utf8Length((String) value);
+			return 1 + varintSize(length) + length;
+		}
+		if ((value instanceof Long) || (value instanceof Integer)
+				|| (value instanceof Short) || (value instanceof Byte)) {
+			return 1 + varintSize(encodeZigZag(((Number) value).longValue()));
+		}
+		if ((value instanceof Double) || (value instanceof Float)) {
+			return 9;
+		}
+		if (value instanceof Boolean) {
+			return 1;
+		}
+		if (value instanceof UUID) {
+			return 17;
+		}
+		if (depth >= MAX_DEPTH) {
+			return -1;
+		}
+		if ((value instanceof Map) && isPlain(value)) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			int size = 1 + varintSize(map.size());
+			for (Entry<?, ?> entry : map.entrySet()) {
+				if (!(entry.getKey() instanceof String)) {
+					return -1;
+				}
+				int length = utf8Length((String) entry.getKey());
+				int valueSize = sizeOf(entry.getValue(), depth + 1);
+				if (valueSize < 0) {
+					return -1;
+				}
+				size += varintSize(length) + length + valueSize;
+			}
+			return size;
+		}
+		if ((value instanceof Collection) && isPlain(value)) {
+			Collection<?> collection = (Collection<?>) value;
+			int size = 1 + varintSize(collection.size());
+			for (Object element : collection) {
+				int elementSize = sizeOf(element, depth + 1);
+				if (elementSize < 0) {
+					return -1;
+				}
+				size += elementSize;
+			}
+			return size;
+		}
+		return -1;
+	}
+
+	/**
+	 * Subclasses elsewhere may have their own JSON mapping, leave those to
+	 * Jackson
+	 */
+	private static boolean isPlain(Object value) {
+		return value.getClass().getName().startsWith("java.util.");
+	}
+
+	private static void write(ByteBuffer buffer, Object value) {
+		if (value == null) {
+			buffer.put(NULL);
+		} else if (value instanceof String) {
+			buffer.put(STRING);
+			writeString(buffer, (String) value);
+		} else if (value instanceof Number) {
+			if ((value instanceof Double) || (value instanceof Float)) {
+				buffer.put(DOUBLE);
+				buffer.putDouble(((Number) value).doubleValue());
+			} else {
+				buffer.put(LONG);
+				writeVarint(buffer, encodeZigZag(((Number) value).longValue()));
+			}
+		} else if (value instanceof Boolean) {
+			buffer.put(((Boolean) value) ? TRUE : FALSE);
+		} else if (value instanceof UUID) {
+			UUID uuid = (UUID) value;
+			buffer.put(UUID_VALUE);
+			buffer.putLong(uuid.getMostSignificantBits());
+			buffer.putLong(uuid.getLeastSignificantBits());
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			buffer.put(MAP);
+			writeVarint(buffer, map.size());
+			for (Entry<?, ?> entry : map.entrySet()) {
+				writeString(buffer, (String) entry.getKey());
+				write(buffer, entry.getValue());
+			}
+		} else {
+			Collection<?> collection = (Collection<?>) value;
+			buffer.put(LIST);
+			writeVarint(buffer, collection.size());
+			for (Object element : collection) {
+				write(buffer, element);
+			}
+		}
+	}
+
+	/**
+	 * Reads a value. normalize follows what normalizeJsonTree does to the
+	 * Smile tree: the top level value, list elements, and the values of maps
+	 * that are the top level value or in a list get UUID strings turned into
+	 * UUIDs and ints turned into longs. Maps nested directly in maps are left
+	 * alone.
+	 */
+	private static Object read(ByteBuffer buffer, boolean normalize,
+			boolean normalizeContainers) {
+		byte tag = buffer.get();
+		switch (tag) {
+		case NULL:
+			return null;
+		case FALSE:
+			return Boolean.FALSE;
+		case TRUE:
+			return Boolean.TRUE;
+		case LONG:
+			long l = decodeZigZag(readVarint(buffer));
+			if (!normalize && (l == (int) l)) {
+				return (int) l;
+			}
+			return l;
+		case DOUBLE:
+			return buffer.getDouble();
+		case STRING:
+			String s = readString(buffer);
+			return normalize ? JsonUtils.normalizeJsonTree(s) : s;
+		case UUID_VALUE:
+			UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+			return normalize ? uuid : uuid.toString();
+		case LIST:
+			int count = readCount(buffer);
+			List<Object> list = new ArrayList<Object>(count);
+			for (int i = 0; i < count; i++) {
+				list.add(read(buffer, normalizeContainers, normalizeContainers));
+			}
+			return list;
+		case MAP:
+			int size = readCount(buffer);
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			for (int i = 0; i < size; i++) {
+				String key = readString(buffer);
+				map.put(key, read(buffer, normalizeContainers, false));
+			}
+			return map;
+		default:
+			throw new IllegalArgumentException("Invalid encoded property value");
+		}
+	}
+
+	private static int readCount(ByteBuffer buffer) {
+		long count = readVarint(buffer);
+		if ((count < 0) || (count > buffer.remaining())) {
+			throw new IllegalArgumentException("Invalid encoded property value");
+		}
+		return (int) count;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = readCount(buffer);
+		String s;
+		if (buffer.hasArray()) {
+			s = new String(buffer.array(), buffer.arrayOffset()
+					+ buffer.position(), length, UTF8);
+			buffer.position(buffer.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			s = new String(bytes, UTF8);
+		}
+		return s;
+	}
+
+	/**
+	 * Unpaired surrogates are written as '?', the same as String.getBytes
+	 */
+	private static void writeString(ByteBuffer buffer, String s) {
+		writeVarint(buffer, utf8Length(s));
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			} else if ((c >= Character.MIN_SURROGATE) && (c <= Character.MAX_SURROGATE)) {
+				if (Character.isHighSurrogate(c) && (i + 1 < length)
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					buffer.put((byte) (0xf0 | (cp >> 18)));
+					buffer.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+					buffer.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+					buffer.put((byte) (0x80 | (cp & 0x3f)));
+				} else {
+					buffer.put((byte) '?');
+				}
+			} else {
+				buffer.put((byte) (0xe0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+
+	private static int utf8Length(String s) {
+		int length = s.length();
+		int size = 0;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				size++;
+			} else if (c < 0x800) {
+				size += 2;
+			} else if ((c >= Character.MIN_SURROGATE) && (c <= Character.MAX_SURROGATE)) {
+				if (Character.isHighSurrogate(c) && (i + 1 < length)
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					size += 4;
+					i++;
+				} else {
+					size++;
+				}
+			} else {
+				size += 3;
+			}
+		}
+		return size;
+	}
+
+	private static long encodeZigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long decodeZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static int varintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7fL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void writeVarint(ByteBuffer buffer, long value) {
+		while ((value & ~0x7fL) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long readVarint(ByteBuffer buffer) {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7f) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("Invalid encoded property value");
+	}
+}
@@ -29,9 +29,8 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.uuid.EthernetAddress;
 import com.fasterxml.uuid.Generators;
@@ -51,8 +50,6 @@ public class UUIDUtils {
     }
   }
 
-  private static ReentrantLock tsLock = new ReentrantLock(true);
-
   public static final UUID MIN_TIME_UUID = UUID.fromString("00000000-0000-1000-8000-000000000000");
 
   public static final UUID MAX_TIME_UUID = UUID.fromString("ffffffff-ffff-1fff-bfff-ffffffffffff");
@@ -63,21 +60,35 @@ public class UUIDUtils {
 	 */
   public static final UUID zeroUUID = new UUID(0, 0);
 
-  private static long timestampMillisNow = System.currentTimeMillis();
+  /**
+   * The last microsecond handed out by {@link #newTimeUUID()}
+   */
+  private static final AtomicLong lastMicros = new AtomicLong(0);
 
-  private static AtomicInteger currentMicrosPoint = new AtomicInteger(0);
   private static AtomicInteger customMicrosPointer = new AtomicInteger(0);
 
+  /**
+   * Node and clock sequence bits, one generator per thread so callers don't
+   * contend on a shared seed
+   */
+  private static final ThreadLocal<Random> nodeRandom = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random();
+    }
+  };
+
   /**
    * Return the "next" UUID in micro second resolution.
    * <b>WARNING</b>: this is designed to return the next unique
-   * timestamped UUID for this JVM. Depending on velocity of the call,
-   * this method may block internally to insure that "now" is kept in sync
-   * with the UUIDs being generated by this call.
+   * timestamped UUID for this JVM. Each call claims the next unused
+   * microsecond with a compare and set, so callers never lock, and the
+   * microseconds are sequential across all threads.
    *
-   * In other words, we will intentionally burn CPU insuring that this
-   * method is not executed more than 10k -1 times per millisecond and
-   * guarantee that those microseconds held within are sequential.
+   * If every microsecond of the current millisecond has been handed out,
+   * the caller yields until the clock moves on, so UUIDs are never ahead of
+   * "now". If the clock goes backwards we keep counting up from the last
+   * UUID rather than waiting for it.
    *
    * If we did not do this, you would get <b>timestamp collision</b> even
    * though the UUIDs will technically be 'unique.'
@@ -85,25 +96,37 @@ public class UUIDUtils {
    * @return
    */
   public static java.util.UUID newTimeUUID() {
-    // get & inc counter, but roll on 1k (because we divide by 10 on retrieval)
-    // if count + currentMicro > 1k, block and roll
-    tsLock.lock();
-    long ts = System.currentTimeMillis();
-    if ( ts > timestampMillisNow ) {
-      timestampMillisNow = ts;
-      currentMicrosPoint.set(0);
-    }
-    int pointer = currentMicrosPoint.getAndIncrement();
-    try {
-      if ( pointer > 990) {
-        TimeUnit.MILLISECONDS.sleep(1L);
+    while (true) {
+      long now = System.currentTimeMillis() * 1000;
+      long last = lastMicros.get();
+      long next = last < now ? now : last + 1;
+
+      // this millisecond is used up
+      if (next == now + 1000) {
+        Thread.yield();
+        continue;
+      }
+
+      if (lastMicros.compareAndSet(last, next)) {
+        return newTimeUUID(next * 10 + kClockOffset, nodeRandom.get());
       }
-    } catch (Exception ex) {
-      ex.printStackTrace();
-    } finally {
-      tsLock.unlock();
     }
-    return newTimeUUID(ts, MICROS[pointer]);
+  }
+
+  /**
+   * Build a time UUID from the timestamp in 100 nanosecond units since the
+   * UUID epoch, with a random clock sequence and multicast node
+   */
+  private static UUID newTimeUUID(long timestamp, Random random) {
+    long msb = (timestamp << 32) | ((timestamp >>> 16) & 0xFFFF0000L) | 0x1000L
+        | ((timestamp >>> 48) & 0x0FFFL);
+
+    long lsb = random.nextLong();
+    lsb &= 0x3FFFFFFFFFFFFFFFL;
+    lsb |= 0x8000000000000000L;
+    lsb |= 0x0000010000000000L;
+
+    return new UUID(msb, lsb);
   }
 
   private final static long kClockOffset = 0x01b21dd213814000L;
@@ -204,15 +227,12 @@ public class UUIDUtils {
    * @return
    */
   public static UUID newTimeUUID(long ts) {
-    tsLock.lock();
-    int pointer = customMicrosPointer.getAndIncrement();
-    try {
-      if ( pointer > 990) {
-        customMicrosPointer.set(0);
-      }
-    } finally {
-      tsLock.unlock();
-    }
+    int pointer;
+    int next;
+    do {
+      pointer = customMicrosPointer.get();
+      next = pointer > 990 ? 0 : pointer + 1;
+    } while (!customMicrosPointer.compareAndSet(pointer, next));
     return newTimeUUID(ts, MICROS[pointer]);
   }
 
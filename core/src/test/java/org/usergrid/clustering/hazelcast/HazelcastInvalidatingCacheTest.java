@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.usergrid.mq.cassandra.LocalMessageIndexPolicyCache;
+import org.usergrid.mq.cassandra.LocalQueueSubscriberCache;
+import org.usergrid.mq.cassandra.MessageIndexPolicy;
+import org.usergrid.mq.cassandra.MessageIndexPolicyCache;
+import org.usergrid.mq.cassandra.QueueSubscriberCache;
+import org.usergrid.persistence.cassandra.AuthorizationCache;
+import org.usergrid.persistence.cassandra.EntityCache;
+import org.usergrid.persistence.cassandra.EntityCacheKey;
+import org.usergrid.persistence.cassandra.LocalAuthorizationCache;
+import org.usergrid.persistence.cassandra.LocalEntityCache;
+import org.usergrid.utils.UUIDUtils;
+
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MessageListener;
+
+/**
+ * Runs every local cache through the same get, put and invalidate checks, by
+ * itself and wrapped for a cluster with the nodes sharing an in memory topic
+ */
+@RunWith(Parameterized.class)
+public class HazelcastInvalidatingCacheTest {
+
+    @Parameters
+    public static Collection<Object[]> caches() {
+        return Arrays.asList(new Object[][] { { new EntityCacheFixture() },
+                { new AuthorizationCacheFixture() },
+                { new QueueSubscriberCacheFixture() },
+                { new MessageIndexPolicyCacheFixture() } });
+    }
+
+    private final CacheFixture<Object, Object> fixture;
+
+    @SuppressWarnings("unchecked")
+    public HazelcastInvalidatingCacheTest(CacheFixture<?, ?> fixture) {
+        this.fixture = (CacheFixture<Object, Object>) fixture;
+    }
+
+    @Test
+    public void getPutInvalidate() {
+        Object cache = fixture.create(100);
+        Object key = fixture.newKey();
+
+        assertFalse(fixture.isCached(cache, key));
+
+        fixture.put(cache, key);
+        assertTrue(fixture.isCached(cache, key));
+        assertFalse(fixture.isCached(cache, fixture.newKey()));
+
+        fixture.invalidate(cache, key);
+        assertFalse(fixture.isCached(cache, key));
+    }
+
+    @Test
+    public void disabled() {
+        Object cache = fixture.create(0);
+        Object key = fixture.newKey();
+
+        fixture.put(cache, key);
+        assertFalse(fixture.isCached(cache, key));
+
+        fixture.invalidate(cache, key);
+    }
+
+    @Test
+    public void invalidationReachesEveryNode() {
+        LocalTopic topic = new LocalTopic();
+        Object local = fixture.create(100);
+        Object otherLocal = fixture.create(100);
+        Object node = wrap(local, topic);
+        Object otherNode = wrap(otherLocal, topic);
+
+        Object key = fixture.newKey();
+        Object otherKey = fixture.newKey();
+        for (Object cache : Arrays.asList(node, otherNode)) {
+            fixture.put(cache, key);
+            fixture.put(cache, otherKey);
+        }
+        assertTrue(fixture.isCached(otherNode, key));
+
+        fixture.invalidate(node, key);
+
+        assertFalse(fixture.isCached(local, key));
+        assertFalse(fixture.isCached(otherLocal, key));
+        assertTrue(fixture.isCached(otherLocal, otherKey));
+    }
+
+    @Test
+    public void destroyStopsListening() {
+        LocalTopic topic = new LocalTopic();
+        Object node = wrap(fixture.create(100), topic);
+        Object otherLocal = fixture.create(100);
+        Object otherNode = wrap(otherLocal, topic);
+
+        ((HazelcastInvalidatingCache<?, ?>) otherNode).destroy();
+
+        Object key = fixture.newKey();
+        fixture.put(otherNode, key);
+        fixture.invalidate(node, key);
+
+        assertTrue(fixture.isCached(otherLocal, key));
+    }
+
+    @Test
+    public void publishFailureStillInvalidatesLocally() {
+        LocalTopic topic = new LocalTopic();
+        topic.failing = true;
+        Object local = fixture.create(100);
+        Object node = wrap(local, topic);
+
+        Object key = fixture.newKey();
+        fixture.put(node, key);
+        fixture.invalidate(node, key);
+
+        assertFalse(fixture.isCached(local, key));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object wrap(Object local, LocalTopic topic) {
+        HazelcastInvalidatingCache wrapper = fixture.wrap(local);
+        wrapper.init(topic);
+        return wrapper;
+    }
+
+    /**
+     * How the tests create and use one kind of cache
+     * 
+     * @param <C>
+     *            the cache interface
+     * @param <K>
+     *            what identifies an entry
+     */
+    public static abstract class CacheFixture<C, K> {
+
+        public abstract C create(long maxSize);
+
+        public abstract HazelcastInvalidatingCache<C, ?> wrap(C local);
+
+        public abstract K newKey();
+
+        public abstract void put(C cache, K key);
+
+        public abstract boolean isCached(C cache, K key);
+
+        public abstract void invalidate(C cache, K key);
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName();
+        }
+    }
+
+    static class EntityCacheFixture extends
+            CacheFixture<EntityCache, EntityCacheKey> {
+
+        @Override
+        public EntityCache create(long maxSize) {
+            return new LocalEntityCache(maxSize * 1024, 60);
+        }
+
+        @Override
+        public HazelcastInvalidatingCache<EntityCache, ?> wrap(EntityCache local) {
+            return new HazelcastEntityCache(local);
+        }
+
+        @Override
+        public EntityCacheKey newKey() {
+            return new EntityCacheKey(UUIDUtils.newTimeUUID(),
+                    UUIDUtils.newTimeUUID());
+        }
+
+        @Override
+        public void put(EntityCache cache, EntityCacheKey key) {
+            Map<String, Object> properties = new TreeMap<String, Object>(
+                    String.CASE_INSENSITIVE_ORDER);
+            properties.put("uuid", key.getEntityId());
+            properties.put("type", "user");
+            cache.put(key.getApplicationId(), key.getEntityId(), cache
+                    .getGeneration(key.getApplicationId(), key.getEntityId()),
+                    properties, 100);
+        }
+
+        @Override
+        public boolean isCached(EntityCache cache, EntityCacheKey key) {
+            return cache.get(key.getApplicationId(), key.getEntityId()) != null;
+        }
+
+        @Override
+        public void invalidate(EntityCache cache, EntityCacheKey key) {
+            cache.invalidate(key.getApplicationId(), key.getEntityId());
+        }
+    }
+
+    static class AuthorizationCacheFixture extends
+            CacheFixture<AuthorizationCache, EntityCacheKey> {
+
+        @Override
+        public AuthorizationCache create(long maxSize) {
+            return new LocalAuthorizationCache(maxSize, 0);
+        }
+
+        @Override
+        public HazelcastInvalidatingCache<AuthorizationCache, ?> wrap(
+                AuthorizationCache local) {
+            return new HazelcastAuthorizationCache(local);
+        }
+
+        @Override
+        public EntityCacheKey newKey() {
+            return new EntityCacheKey(UUIDUtils.newTimeUUID(),
+                    UUIDUtils.newTimeUUID());
+        }
+
+        @Override
+        public void put(AuthorizationCache cache, EntityCacheKey key) {
+            cache.put(key.getApplicationId(), key.getEntityId(), "grants");
+        }
+
+        @Override
+        public boolean isCached(AuthorizationCache cache, EntityCacheKey key) {
+            return cache.get(key.getApplicationId(), key.getEntityId()) != null;
+        }
+
+        @Override
+        public void invalidate(AuthorizationCache cache, EntityCacheKey key) {
+            cache.invalidate(key.getApplicationId(), key.getEntityId());
+        }
+    }
+
+    static class QueueSubscriberCacheFixture extends
+            CacheFixture<QueueSubscriberCache, EntityCacheKey> {
+
+        @Override
+        public QueueSubscriberCache create(long maxSize) {
+            return new LocalQueueSubscriberCache(maxSize, 60);
+        }
+
+        @Override
+        public HazelcastInvalidatingCache<QueueSubscriberCache, ?> wrap(
+                QueueSubscriberCache local) {
+            return new HazelcastQueueSubscriberCache(local);
+        }
+
+        @Override
+        public EntityCacheKey newKey() {
+            return new EntityCacheKey(UUIDUtils.newTimeUUID(),
+                    UUIDUtils.newTimeUUID());
+        }
+
+        @Override
+        public void put(QueueSubscriberCache cache, EntityCacheKey key) {
+            cache.put(key.getApplicationId(), key.getEntityId(),
+                    Arrays.asList("/foo/", "/bar/"),
+                    cache.getInvalidationCount());
+        }
+
+        @Override
+        public boolean isCached(QueueSubscriberCache cache, EntityCacheKey key) {
+            return cache.get(key.getApplicationId(), key.getEntityId()) != null;
+        }
+
+        @Override
+        public void invalidate(QueueSubscriberCache cache, EntityCacheKey key) {
+            cache.invalidate(key.getApplicationId(), key.getEntityId());
+        }
+    }
+
+    static class MessageIndexPolicyCacheFixture extends
+            CacheFixture<MessageIndexPolicyCache, EntityCacheKey> {
+
+        @Override
+        public MessageIndexPolicyCache create(long maxSize) {
+            return new LocalMessageIndexPolicyCache(maxSize, 60);
+        }
+
+        @Override
+        public HazelcastInvalidatingCache<MessageIndexPolicyCache, ?> wrap(
+                MessageIndexPolicyCache local) {
+            return new HazelcastMessageIndexPolicyCache(local);
+        }
+
+        @Override
+        public EntityCacheKey newKey() {
+            return new EntityCacheKey(UUIDUtils.newTimeUUID(),
+                    UUIDUtils.newTimeUUID());
+        }
+
+        @Override
+        public void put(MessageIndexPolicyCache cache, EntityCacheKey key) {
+            cache.put(key.getApplicationId(), key.getEntityId(),
+                    MessageIndexPolicy.fromValue("all"),
+                    cache.getInvalidationCount());
+        }
+
+        @Override
+        public boolean isCached(MessageIndexPolicyCache cache,
+                EntityCacheKey key) {
+            return cache.get(key.getApplicationId(), key.getEntityId()) != null;
+        }
+
+        @Override
+        public void invalidate(MessageIndexPolicyCache cache,
+                EntityCacheKey key) {
+            cache.invalidate(key.getApplicationId(), key.getEntityId());
+        }
+    }
+
+    /**
+     * Delivers what's published to every listener on the calling thread, like
+     * the nodes of a cluster sharing a Hazelcast topic
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static class LocalTopic implements ITopic {
+
+        final List<MessageListener> listeners = new CopyOnWriteArrayList<MessageListener>();
+        boolean failing;
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public void publish(Object message) {
+            if (failing) {
+                throw new IllegalStateException("Not connected");
+            }
+            for (MessageListener listener : listeners) {
+                listener.onMessage(message);
+            }
+        }
+
+        @Override
+        public void addMessageListener(MessageListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeMessageListener(MessageListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public InstanceType getInstanceType() {
+            return InstanceType.TOPIC;
+        }
+
+        @Override
+        public void destroy() {
+            listeners.clear();
+        }
+
+        @Override
+        public Object getId() {
+            return getName();
+        }
+    }
+
+}
@@ -17,9 +17,12 @@ package org.usergrid.mq;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -230,4 +233,43 @@ public class MessagesTest extends AbstractPersistenceTest {
 		}
 	}
 
+	@Test
+	public void testConsumerGroupReadsEarlierMessages() throws Exception {
+
+		UUID applicationId = createApplication("testOrganization",
+				"testConsumerGroupReadsEarlierMessages");
+		assertNotNull(applicationId);
+
+		QueueManager qm = geQueueManagerFactory()
+				.getQueueManager(applicationId);
+
+		Set<UUID> posted = new HashSet<UUID>();
+		for (int i = 0; i < 20; i++) {
+			Message message = new Message();
+			message.setStringProperty("foo", "bar" + i);
+			qm.postToQueue("/foo/groups", message);
+			posted.add(message.getUuid());
+		}
+
+		logger.info("Enabling consumer groups on /foo/groups");
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(Queue.QUEUE_CONSUMER_GROUPS, true);
+		qm.updateQueue("/foo/groups", properties);
+
+		// a single reader claims every partition of the group in turn
+		Set<UUID> read = new HashSet<UUID>();
+		for (int i = 0; i < 8; i++) {
+			QueueQuery query = new QueueQuery().withConsumer("group1")
+					.withPartitions(4).withTimeout(60000);
+			query.setLimit(100);
+			QueueResults messages = qm.getFromQueue("/foo/groups", query);
+			for (Message message : messages.getMessages()) {
+				assertTrue(read.add(message.getUuid()));
+			}
+		}
+
+		assertEquals(posted, read);
+	}
+
 }
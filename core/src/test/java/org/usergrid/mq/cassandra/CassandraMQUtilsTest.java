@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getInboxPartitions;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getMessagePartition;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getPartitionConsumerId;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueuePartitionRowKey;
+import static org.usergrid.mq.cassandra.CassandraMQUtils.getQueueShardRowKey;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.utils.UUIDUtils;
+
+public class CassandraMQUtilsTest {
+
+  @Test
+  public void messagePartitions() {
+    int partitions = 4;
+    int[] counts = new int[partitions];
+
+    for (int i = 0; i < 10000; i++) {
+      UUID id = UUIDUtils.newTimeUUID();
+      int partition = getMessagePartition(id, partitions);
+      assertTrue(partition >= 0 && partition < partitions);
+      assertEquals(partition, getMessagePartition(id, partitions));
+      counts[partition]++;
+    }
+
+    // time uuids created back to back must still spread over the partitions
+    for (int count : counts) {
+      assertTrue(count > 1500);
+    }
+  }
+
+  @Test
+  public void inboxPartitions() {
+    assertEquals(Arrays.asList(1, 5, 9, 13), getInboxPartitions(1, 4, 16));
+    assertEquals(Arrays.asList(2, 5), getInboxPartitions(2, 3, 7));
+
+    // every inbox partition is read by exactly one partition of a group
+    for (int partitions = 1; partitions <= 16; partitions++) {
+      Set<Integer> read = new HashSet<Integer>();
+      for (int partition = 0; partition < partitions; partition++) {
+        List<Integer> inboxPartitions = getInboxPartitions(partition, partitions, 16);
+        assertFalse(inboxPartitions.isEmpty());
+        for (int inboxPartition : inboxPartitions) {
+          assertTrue(read.add(inboxPartition));
+        }
+      }
+      assertEquals(16, read.size());
+    }
+  }
+
+  @Test
+  public void partitionRowKeys() {
+    UUID queueId = UUIDUtils.newTimeUUID();
+
+    assertEquals(getQueuePartitionRowKey(queueId, 3, 1000), getQueuePartitionRowKey(queueId, 3, 1000));
+    assertFalse(getQueuePartitionRowKey(queueId, 3, 1000).equals(getQueuePartitionRowKey(queueId, 4, 1000)));
+    assertFalse(getQueuePartitionRowKey(queueId, 3, 1000).equals(getQueuePartitionRowKey(queueId, 3, 2000)));
+    assertFalse(getQueuePartitionRowKey(queueId, 0, 1000).equals(getQueueShardRowKey(queueId, 1000)));
+  }
+
+  @Test
+  public void partitionConsumerIds() {
+    UUID consumerId = UUIDUtils.newTimeUUID();
+
+    assertEquals(getPartitionConsumerId(consumerId, 1), getPartitionConsumerId(consumerId, 1));
+    assertFalse(getPartitionConsumerId(consumerId, 0).equals(getPartitionConsumerId(consumerId, 1)));
+    assertFalse(consumerId.equals(getPartitionConsumerId(consumerId, 0)));
+  }
+}
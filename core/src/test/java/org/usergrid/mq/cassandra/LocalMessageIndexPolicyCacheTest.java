@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.utils.UUIDUtils;
+
+public class LocalMessageIndexPolicyCacheTest {
+
+  UUID applicationId = UUIDUtils.newTimeUUID();
+  UUID queueId = UUIDUtils.newTimeUUID();
+
+  @Test
+  public void sameQueueInOtherApplication() {
+    LocalMessageIndexPolicyCache cache = new LocalMessageIndexPolicyCache(100, 60);
+    MessageIndexPolicy policy = MessageIndexPolicy.fromValue("all");
+
+    cache.put(applicationId, queueId, policy, cache.getInvalidationCount());
+    assertSame(policy, cache.get(applicationId, queueId));
+
+    assertNull(cache.get(UUIDUtils.newTimeUUID(), queueId));
+  }
+
+  @Test
+  public void readBeforeInvalidationNotCached() {
+    LocalMessageIndexPolicyCache cache = new LocalMessageIndexPolicyCache(100, 60);
+
+    // a post reads the policy, then an update invalidates the queue before
+    // the post caches what it read
+    long invalidationCount = cache.getInvalidationCount();
+    cache.invalidate(applicationId, queueId);
+    cache.put(applicationId, queueId, MessageIndexPolicy.DEFAULT, invalidationCount);
+
+    assertNull(cache.get(applicationId, queueId));
+  }
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.usergrid.mq.cassandra.QueueNotifier.Waiter;
+import org.usergrid.utils.UUIDUtils;
+
+public class LocalQueueNotifierTest {
+
+  UUID applicationId = UUIDUtils.newTimeUUID();
+  UUID queueId = UUIDUtils.newTimeUUID();
+
+  @Test
+  public void awaitTimesOut() throws Exception {
+    LocalQueueNotifier notifier = new LocalQueueNotifier();
+
+    Waiter waiter = notifier.register(applicationId, queueId);
+    // another queue doesn't wake it
+    notifier.messagesPosted(applicationId, UUIDUtils.newTimeUUID());
+    assertFalse(waiter.await(50));
+    waiter.release();
+
+    assertEquals(0, notifier.getWaitingQueueCount());
+  }
+
+  @Test
+  public void postBeforeAwait() throws Exception {
+    LocalQueueNotifier notifier = new LocalQueueNotifier();
+
+    Waiter waiter = notifier.register(applicationId, queueId);
+    notifier.messagesPosted(applicationId, queueId);
+
+    // a post between registering and waiting isn't missed
+    assertTrue(waiter.await(0));
+    waiter.release();
+  }
+
+  @Test
+  public void postWakesWaiters() throws Exception {
+    final LocalQueueNotifier notifier = new LocalQueueNotifier();
+    final CountDownLatch registered = new CountDownLatch(2);
+    final CountDownLatch done = new CountDownLatch(2);
+    final AtomicBoolean woken = new AtomicBoolean(true);
+
+    for (int i = 0; i < 2; i++) {
+      new Thread() {
+        @Override
+        public void run() {
+          Waiter waiter = notifier.register(applicationId, queueId);
+          registered.countDown();
+          try {
+            if (!waiter.await(10000)) {
+              woken.set(false);
+            }
+          } catch (InterruptedException e) {
+            woken.set(false);
+          } finally {
+            waiter.release();
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+
+    assertTrue(registered.await(10, TimeUnit.SECONDS));
+    notifier.messagesPosted(applicationId, queueId);
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(woken.get());
+    assertEquals(0, notifier.getWaitingQueueCount());
+  }
+
+}
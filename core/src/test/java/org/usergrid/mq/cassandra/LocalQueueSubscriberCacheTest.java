@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.utils.UUIDUtils;
+
+public class LocalQueueSubscriberCacheTest {
+
+  UUID applicationId = UUIDUtils.newTimeUUID();
+  UUID queueId = UUIDUtils.newTimeUUID();
+
+  @Test
+  public void getPutInvalidate() {
+    LocalQueueSubscriberCache cache = new LocalQueueSubscriberCache(100, 60);
+    List<String> subscribers = Arrays.asList("/foo/", "/bar/");
+
+    assertNull(cache.get(applicationId, queueId));
+
+    cache.put(applicationId, queueId, subscribers, cache.getInvalidationCount());
+    assertEquals(subscribers, cache.get(applicationId, queueId));
+
+    // same queue id in another application
+    assertNull(cache.get(UUIDUtils.newTimeUUID(), queueId));
+
+    cache.invalidate(applicationId, queueId);
+    assertNull(cache.get(applicationId, queueId));
+  }
+
+  @Test
+  public void readBeforeInvalidationNotCached() {
+    LocalQueueSubscriberCache cache = new LocalQueueSubscriberCache(100, 60);
+
+    // a post reads the subscribers, then a subscribe invalidates the queue
+    // before the post caches what it read
+    long invalidationCount = cache.getInvalidationCount();
+    cache.invalidate(applicationId, queueId);
+    cache.put(applicationId, queueId, Arrays.asList("/foo/"), invalidationCount);
+
+    assertNull(cache.get(applicationId, queueId));
+  }
+
+  @Test
+  public void disabled() {
+    LocalQueueSubscriberCache cache = new LocalQueueSubscriberCache(0, 60);
+
+    cache.put(applicationId, queueId, Arrays.asList("/foo/"), cache.getInvalidationCount());
+    assertNull(cache.get(applicationId, queueId));
+  }
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.usergrid.mq.Message;
+
+public class MessageIndexPolicyTest {
+
+	@Test
+	public void unset() {
+		MessageIndexPolicy policy = MessageIndexPolicy.fromValue(null);
+		assertSame(MessageIndexPolicy.DEFAULT, policy);
+		assertSame(MessageIndexPolicy.DEFAULT, MessageIndexPolicy.fromValue(""));
+
+		// only messages that ask to be indexed are
+		assertFalse(policy.indexes(message(false)));
+		assertTrue(policy.indexes(message(true)));
+		assertTrue(policy.indexes("foo"));
+		assertTrue(policy.isSearchable("foo"));
+	}
+
+	@Test
+	public void none() {
+		for (Object value : new Object[] { "none", "NONE", false,
+				Arrays.asList() }) {
+			MessageIndexPolicy policy = MessageIndexPolicy.fromValue(value);
+			assertFalse(policy.indexes(message(true)));
+			assertFalse(policy.indexes("foo"));
+			assertFalse(policy.isSearchable("foo"));
+		}
+	}
+
+	@Test
+	public void all() {
+		for (Object value : new Object[] { "all", true }) {
+			MessageIndexPolicy policy = MessageIndexPolicy.fromValue(value);
+			assertTrue(policy.indexes(message(false)));
+			assertTrue(policy.indexes("foo"));
+			assertTrue(policy.isSearchable("foo.bar"));
+		}
+	}
+
+	@Test
+	public void named() {
+		for (Object value : new Object[] { "foo, bar",
+				Arrays.asList("foo", "bar") }) {
+			MessageIndexPolicy policy = MessageIndexPolicy.fromValue(value);
+			assertTrue(policy.indexes(message(false)));
+			assertTrue(policy.indexes("foo"));
+			assertTrue(policy.indexes("Bar"));
+			assertFalse(policy.indexes("baz"));
+
+			assertTrue(policy.isSearchable("foo"));
+			assertTrue(policy.isSearchable("bar.baz"));
+			assertFalse(policy.isSearchable("baz"));
+			assertFalse(policy.isSearchable("baz.foo"));
+		}
+	}
+
+	@Test
+	public void consumerGroups() {
+		assertFalse(MessageIndexPolicy.DEFAULT.hasConsumerGroups());
+
+		MessageIndexPolicy policy = MessageIndexPolicy.fromValue("foo")
+				.withConsumerGroups(true);
+		assertTrue(policy.hasConsumerGroups());
+		assertTrue(policy.indexes("foo"));
+		assertFalse(policy.indexes("bar"));
+
+		assertFalse(policy.withConsumerGroups(false).hasConsumerGroups());
+	}
+
+	private static Message message(boolean indexed) {
+		Message message = new Message();
+		message.setIndexed(indexed);
+		return message;
+	}
+
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.mq.Message;
+import org.usergrid.mq.Queue;
+import org.usergrid.persistence.cassandra.CounterUtils;
+import org.usergrid.utils.UUIDUtils;
+
+public class QueueManagerImplTest {
+
+	private static final UUID APPLICATION_ID = new UUID(0, 1);
+	private static final String QUEUE_PATH = "/test/chunks/";
+
+	@Test
+	public void postChunksStayUnderTheMutationLimit() {
+		int limit = 50;
+		List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 100; i++) {
+			Message message = new Message();
+			message.setProperty("foo", "bar" + i);
+			message.setProperty("count", i);
+			messages.add(message);
+		}
+
+		List<QueueManagerImpl.PostChunk> chunks = queueManager(limit)
+				.buildPostChunks(null, QUEUE_PATH, messages,
+						System.currentTimeMillis() * 1000);
+
+		int posted = 0;
+		for (QueueManagerImpl.PostChunk chunk : chunks) {
+			int mutations = chunk.batch.getPendingMutationCount();
+			assertTrue(mutations + " mutations", mutations <= limit);
+			assertTrue(chunk.messages.size() > 1);
+			assertEquals(chunk.messages.size(), chunk.indexUpdates.size());
+			posted += chunk.messages.size();
+		}
+		assertEquals(messages.size(), posted);
+	}
+
+	@Test
+	public void partitionsOnlyWrittenWithConsumerGroups() {
+		Message message = new Message();
+		message.setProperty("foo", "bar");
+		long timestamp = System.currentTimeMillis() * 1000;
+
+		int plain = queueManager(1000, MessageIndexPolicy.fromValue("none"))
+				.buildPostChunks(null, QUEUE_PATH, Arrays.asList(message),
+						timestamp).get(0).batch.getPendingMutationCount();
+
+		int grouped = queueManager(1000,
+				MessageIndexPolicy.fromValue("none").withConsumerGroups(true))
+				.buildPostChunks(null, QUEUE_PATH, Arrays.asList(message),
+						timestamp).get(0).batch.getPendingMutationCount();
+
+		// one more inbox row for the message's partition
+		assertEquals(plain + 1, grouped);
+	}
+
+	@Test
+	public void deliveryRoundTrip() {
+		List<UUID> messageIds = Arrays.asList(UUIDUtils.newTimeUUID(),
+				UUIDUtils.newTimeUUID(), UUIDUtils.newTimeUUID());
+		long timestamp = System.currentTimeMillis() * 1000;
+
+		QueueManagerImpl.Delivery delivery = QueueManagerImpl.Delivery
+				.fromByteBuffer(new QueueManagerImpl.Delivery(QUEUE_PATH,
+						timestamp, messageIds, "/subscribers/a/",
+						"/subscribers/\u00e9/").toByteBuffer());
+
+		assertEquals(QUEUE_PATH, delivery.queuePath);
+		assertEquals(timestamp, delivery.timestamp);
+		assertEquals(messageIds, delivery.messageIds);
+		assertEquals("/subscribers/a/", delivery.firstSubscriber);
+		assertEquals("/subscribers/\u00e9/", delivery.lastSubscriber);
+	}
+
+	@Test
+	public void deliveriesSpreadOverShards() {
+		List<Object> rowKeys = new ArrayList<Object>();
+		for (int shard = 0; shard < QueueManagerImpl.DELIVERY_SHARDS; shard++) {
+			rowKeys.add(QueueManagerImpl.getDeliveryRowKey(shard));
+		}
+
+		List<Object> used = new ArrayList<Object>();
+		for (int i = 0; i < 1000; i++) {
+			Object rowKey = QueueManagerImpl.getDeliveryRowKey(UUIDUtils
+					.newTimeUUID());
+			assertTrue(rowKeys.contains(rowKey));
+			if (!used.contains(rowKey)) {
+				used.add(rowKey);
+			}
+		}
+		assertEquals(rowKeys.size(), used.size());
+	}
+
+	private static QueueManagerImpl queueManager(int postBatchMutations) {
+		// every property is indexed, so each message adds index mutations too
+		return queueManager(postBatchMutations,
+				MessageIndexPolicy.fromValue("all"));
+	}
+
+	private static QueueManagerImpl queueManager(int postBatchMutations,
+			MessageIndexPolicy policy) {
+		MessageIndexPolicyCache indexPolicies = new LocalMessageIndexPolicyCache(
+				100, 0);
+		indexPolicies.put(APPLICATION_ID,
+				Queue.getQueueId(Queue.normalizeQueuePath(QUEUE_PATH)),
+				policy, indexPolicies.getInvalidationCount());
+
+		return new QueueManagerImpl()
+				.init(null, new CounterUtils(), null, APPLICATION_ID)
+				.setPostBatching(postBatchMutations, Long.MAX_VALUE, null)
+				.setIndexPolicyCache(indexPolicies);
+	}
+}
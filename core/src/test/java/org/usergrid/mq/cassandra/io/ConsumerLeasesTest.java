@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.mq.cassandra.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.cassandra.CassandraRunner;
+import org.usergrid.locking.LockManager;
+import org.usergrid.persistence.AbstractPersistenceTest;
+import org.usergrid.persistence.cassandra.CassandraService;
+import org.usergrid.utils.UUIDUtils;
+
+public class ConsumerLeasesTest extends AbstractPersistenceTest {
+
+	// renewed after 2 seconds, free after 3
+	private static final long LEASE_DURATION = 3000;
+
+	private final CassandraService cass = CassandraRunner
+			.getBean(CassandraService.class);
+	private final LockManager lockManager = CassandraRunner
+			.getBean(LockManager.class);
+
+	private final UUID queueId = UUIDUtils.newTimeUUID();
+	private final UUID consumerId = UUIDUtils.newTimeUUID();
+
+	@Test
+	public void claim() throws Exception {
+		UUID applicationId = createApplication("testOrganization",
+				"consumerLeasesClaim");
+		ConsumerLeases first = leases();
+		ConsumerLeases second = leases();
+
+		ConsumerLeases.Lease lease = first.acquire(applicationId, queueId,
+				consumerId, 1);
+		assertNotNull(lease);
+		assertEquals(0, lease.getPartition());
+		lease.release();
+
+		// the holder keeps it, nobody else gets it while it's valid
+		assertNull(second.acquire(applicationId, queueId, consumerId, 1));
+
+		lease = first.acquire(applicationId, queueId, consumerId, 1);
+		assertNotNull(lease);
+		assertEquals(0, lease.getPartition());
+		lease.release();
+	}
+
+	@Test
+	public void renewal() throws Exception {
+		UUID applicationId = createApplication("testOrganization",
+				"consumerLeasesRenewal");
+		ConsumerLeases first = leases();
+		ConsumerLeases second = leases();
+
+		first.acquire(applicationId, queueId, consumerId, 1).release();
+
+		// past the point where it's renewed
+		Thread.sleep(LEASE_DURATION * 2 / 3 + 200);
+		ConsumerLeases.Lease lease = first.acquire(applicationId, queueId,
+				consumerId, 1);
+		assertNotNull(lease);
+		lease.release();
+
+		// past the first expiration, the renewed lease still holds
+		Thread.sleep(LEASE_DURATION / 2);
+		assertNull(second.acquire(applicationId, queueId, consumerId, 1));
+	}
+
+	@Test
+	public void giveUp() throws Exception {
+		UUID applicationId = createApplication("testOrganization",
+				"consumerLeasesGiveUp");
+		ConsumerLeases first = leases();
+		ConsumerLeases second = leases();
+
+		first.acquire(applicationId, queueId, consumerId, 2).release();
+		first.acquire(applicationId, queueId, consumerId, 2).release();
+		assertNull(second.acquire(applicationId, queueId, consumerId, 2));
+
+		// of the two leases due for renewal, one is given up and one renewed
+		Thread.sleep(LEASE_DURATION * 2 / 3 + 200);
+		ConsumerLeases.Lease kept = first.acquire(applicationId, queueId,
+				consumerId, 2);
+		assertNotNull(kept);
+		kept.release();
+
+		// the given up partition is free right away
+		ConsumerLeases.Lease taken = second.acquire(applicationId, queueId,
+				consumerId, 2);
+		assertNotNull(taken);
+		taken.release();
+		assertFalse(kept.getPartition() == taken.getPartition());
+	}
+
+	@Test
+	public void expiredLeaseTakenOver() throws Exception {
+		UUID applicationId = createApplication("testOrganization",
+				"consumerLeasesExpired");
+		ConsumerLeases first = leases();
+		ConsumerLeases second = leases();
+
+		first.acquire(applicationId, queueId, consumerId, 1).release();
+		assertNull(second.acquire(applicationId, queueId, consumerId, 1));
+
+		// the first holder stops reading and its lease runs out
+		Thread.sleep(LEASE_DURATION + 500);
+
+		ConsumerLeases.Lease lease = second.acquire(applicationId, queueId,
+				consumerId, 1);
+		assertNotNull(lease);
+		assertEquals(0, lease.getPartition());
+		lease.release();
+
+		// the first holder finds it lost the lease
+		assertNull(first.acquire(applicationId, queueId, consumerId, 1));
+	}
+
+	@Test
+	public void twoHoldersSplitGroup() throws Exception {
+		UUID applicationId = createApplication("testOrganization",
+				"consumerLeasesSplit");
+		ConsumerLeases first = leases();
+		ConsumerLeases second = leases();
+
+		Set<Integer> firstPartitions = new HashSet<Integer>();
+		Set<Integer> secondPartitions = new HashSet<Integer>();
+
+		// each claims a free partition per read while there are any
+		for (int i = 0; i < 2; i++) {
+			firstPartitions.add(read(first, applicationId, 4));
+		}
+		for (int i = 0; i < 4; i++) {
+			secondPartitions.add(read(second, applicationId, 4));
+		}
+		for (int i = 0; i < 4; i++) {
+			firstPartitions.add(read(first, applicationId, 4));
+		}
+
+		assertEquals(2, firstPartitions.size());
+		assertEquals(2, secondPartitions.size());
+
+		Set<Integer> all = new HashSet<Integer>(firstPartitions);
+		all.addAll(secondPartitions);
+		assertEquals(4, all.size());
+		for (int partition : all) {
+			assertTrue((partition >= 0) && (partition < 4));
+		}
+	}
+
+	private ConsumerLeases leases() {
+		return new ConsumerLeases(cass, lockManager, LEASE_DURATION);
+	}
+
+	private int read(ConsumerLeases leases, UUID applicationId, int partitions) {
+		ConsumerLeases.Lease lease = leases.acquire(applicationId, queueId,
+				consumerId, partitions);
+		assertNotNull(lease);
+		lease.release();
+		return lease.getPartition();
+	}
+}
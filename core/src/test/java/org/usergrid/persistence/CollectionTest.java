@@ -349,6 +349,62 @@ public class CollectionTest extends AbstractPersistenceTest {
 
   }
 
+  @Test
+  public void createItemsInCollection() throws Exception {
+    UUID applicationId = createApplication("testOrganization",
+            "createItemsInCollection");
+    assertNotNull(applicationId);
+
+    EntityManager em = emf.getEntityManager(applicationId);
+    assertNotNull(em);
+
+    Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    properties.put("username", "edanuff");
+    properties.put("email", "ed@anuff.com");
+    assertNotNull(em.create("user", properties));
+
+    properties = new LinkedHashMap<String, Object>();
+    properties.put("path", "group1");
+    Entity group = em.create("group", properties);
+    assertNotNull(group);
+
+    List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+    for (String username : new String[] { "djacobs", "edanuff", "zznate" }) {
+      properties = new LinkedHashMap<String, Object>();
+      properties.put("username", username);
+      properties.put("email", username + "@usergrid.org");
+      items.add(properties);
+    }
+
+    BulkCreateResults created = em.createItemsInCollection(group, "users",
+            "user", items);
+    assertEquals(3, created.size());
+    assertNotNull(created.getEntity(0));
+    assertNull(created.getEntity(1));
+    assertNotNull(created.getError(1));
+    assertNotNull(created.getEntity(2));
+    assertEquals(1, created.getErrors().size());
+
+    // the first item was built again after the second failed, but it's
+    // only counted once
+    assertEquals(new Long(3), em.getEntityCounters(applicationId).get(
+            "application.collection.users"));
+
+    Results r = em.getCollection(group, "users", null, 10,
+            Results.Level.ALL_PROPERTIES, false);
+    assertEquals(2, r.size());
+
+    r = em.searchCollection(group, "users",
+            new Query().addEqualityFilter("username", "zznate"));
+    assertEquals(1, r.size());
+    assertEquals(created.getEntity(2).getUuid(), r.getEntity().getUuid());
+
+    r = em.getCollection(created.getEntity(0), "groups", null, 10,
+            Results.Level.IDS, false);
+    assertEquals(1, r.size());
+    assertEquals(group.getUuid(), r.getId());
+  }
+
   @Test
   public void groupNameSearch() throws Exception {
     UUID applicationId = createApplication("testOrganization",
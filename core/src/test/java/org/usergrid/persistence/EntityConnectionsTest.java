@@ -18,9 +18,11 @@ package org.usergrid.persistence;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import me.prettyprint.cassandra.utils.TimeUUIDUtils;
@@ -83,6 +85,50 @@ public class EntityConnectionsTest extends AbstractPersistenceTest {
 
     }
 
+    @Test
+    public void testConnectionTypesOfManyEntities() throws Exception {
+        UUID applicationId = createApplication(
+                "testOrganization" + UUIDUtils.newTimeUUID(),
+                "testConnectionTypesOfManyEntities");
+        assertNotNull(applicationId);
+
+        EntityManager em = emf.getEntityManager(applicationId);
+        assertNotNull(em);
+
+        List<Entity> users = new ArrayList<Entity>();
+        for (String username : new String[] { "first", "second", "third" }) {
+            User user = new User();
+            user.setUsername(username);
+            user.setEmail(username + "@usergrid.com");
+            users.add(em.create(user));
+        }
+
+        em.createConnection(users.get(0), "likes", users.get(1));
+        em.createConnection(users.get(0), "follows", users.get(2));
+        em.createConnection(users.get(1), "likes", users.get(2));
+
+        Map<UUID, Map<String, Set<Object>>> dictionaries = em
+                .getDictionariesAsSets(users, Schema.DICTIONARY_CONNECTED_TYPES,
+                        Schema.DICTIONARY_CONNECTING_TYPES);
+        assertEquals(3, dictionaries.size());
+
+        for (Entity user : users) {
+            Map<String, Set<Object>> sets = dictionaries.get(user.getUuid());
+            assertNotNull(sets);
+            assertEquals(em.getDictionaryAsSet(user,
+                    Schema.DICTIONARY_CONNECTED_TYPES),
+                    sets.get(Schema.DICTIONARY_CONNECTED_TYPES));
+            assertEquals(em.getDictionaryAsSet(user,
+                    Schema.DICTIONARY_CONNECTING_TYPES),
+                    sets.get(Schema.DICTIONARY_CONNECTING_TYPES));
+        }
+
+        assertEquals(2, dictionaries.get(users.get(0).getUuid())
+                .get(Schema.DICTIONARY_CONNECTED_TYPES).size());
+        assertEquals(0, dictionaries.get(users.get(2).getUuid())
+                .get(Schema.DICTIONARY_CONNECTED_TYPES).size());
+    }
+
     @Test
     public void testEntityConnections() throws Exception {
         logger.info("\n\nEntityConnectionsTest.testEntityConnections\n");
@@ -15,6 +15,8 @@
  ******************************************************************************/
 package org.usergrid.persistence;
 
+import java.util.Set;
+
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -204,4 +206,30 @@ public class QueryTest {
 
     }
 
+    @Test
+    public void selectProperties() throws QueryParseException {
+        assertNull(Query.fromQL("select * where name = 'bob'")
+                .getSelectProperties());
+
+        Query q = new Query();
+        q.addSelect("uuid");
+        assertNull(q.getSelectProperties());
+
+        q = new Query();
+        q.addSelect("name");
+        q.addSelect("address.city");
+        q.addSort("Created");
+        Set<String> properties = q.getSelectProperties();
+        assertEquals(3, properties.size());
+        assertTrue(properties.contains("name"));
+        assertTrue(properties.contains("address"));
+        assertTrue(properties.contains("created"));
+
+        q = new Query();
+        q.addSelect("city", "address.city");
+        properties = q.getSelectProperties();
+        assertEquals(1, properties.size());
+        assertTrue(properties.contains("address"));
+    }
+
 }
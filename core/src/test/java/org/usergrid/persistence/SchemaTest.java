@@ -19,13 +19,18 @@ import static org.usergrid.utils.JsonUtils.mapToFormattedJsonString;
 
 import io.baas.Simple;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.usergrid.persistence.entities.SampleEntity;
+import org.usergrid.utils.PropertyCodecUtils;
 
 public class SchemaTest {
 
@@ -89,4 +94,34 @@ public class SchemaTest {
 				.getEntityJsonSchema("test")));
 	}
 
+	@Test
+	public void testBinaryPropertyEncoding() throws Exception {
+
+		Map<String, Object> value = new LinkedHashMap<String, Object>();
+		value.put("name", "edanuff");
+		value.put("list", Arrays.asList(1L, "two", true));
+
+		boolean binary = Schema.isBinaryPropertyEncoding();
+		try {
+			// written as Smile while the encoding is off
+			Schema.setBinaryPropertyEncoding(false);
+			ByteBuffer legacy = Schema.serializeEntityProperty("thing",
+					"value", value);
+			Assert.assertFalse(PropertyCodecUtils.isEncoded(legacy));
+
+			Schema.setBinaryPropertyEncoding(true);
+			ByteBuffer encoded = Schema.serializeEntityProperty("thing",
+					"value", value);
+			Assert.assertTrue(PropertyCodecUtils.isEncoded(encoded));
+
+			// columns written before the encoding was turned on still read back
+			Assert.assertEquals(value, Schema.deserializeEntityProperty(
+					"thing", "value", legacy));
+			Assert.assertEquals(value, Schema.deserializeEntityProperty(
+					"thing", "value", encoded));
+		} finally {
+			Schema.setBinaryPropertyEncoding(binary);
+		}
+	}
+
 }
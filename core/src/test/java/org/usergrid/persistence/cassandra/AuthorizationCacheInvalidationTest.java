@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.usergrid.persistence.AbstractPersistenceTest;
+import org.usergrid.persistence.Entity;
+
+/**
+ * Checks that the entity manager's role, permission and membership changes
+ * remove what they affect from the authorization cache
+ */
+public class AuthorizationCacheInvalidationTest extends
+        AbstractPersistenceTest {
+
+    private static int applications;
+
+    private EntityManagerImpl em;
+    private LocalAuthorizationCache cache;
+    private UUID applicationId;
+    private Entity user;
+    private Entity otherUser;
+    private Entity group;
+
+    @Before
+    public void setupApplication() throws Exception {
+        applicationId = createApplication("testOrganization",
+                "authorizationCacheInvalidation" + (applications++));
+        em = (EntityManagerImpl) emf.getEntityManager(applicationId);
+
+        cache = new LocalAuthorizationCache(100, 0);
+        em.setAuthorizationCache(cache);
+
+        user = em.create("user", properties("username", "user"));
+        otherUser = em.create("user", properties("username", "other"));
+        group = em.create("group", properties("path", "group"));
+
+        em.createRole("reader", "Reader", 0);
+        em.createGroupRole(group.getUuid(), "member", 0);
+    }
+
+    @Test
+    public void roleChangesInvalidateApplication() throws Exception {
+        cacheAll();
+        em.createRole("writer", "Writer", 0);
+        assertNoneCached();
+
+        cacheAll();
+        em.grantRolePermission("reader", "get:/users/*");
+        assertNoneCached();
+
+        cacheAll();
+        em.grantRolePermissions("reader", Arrays.asList("get:/groups/*"));
+        assertNoneCached();
+
+        cacheAll();
+        em.revokeRolePermission("reader", "get:/users/*");
+        assertNoneCached();
+
+        cacheAll();
+        em.deleteRole("writer");
+        assertNoneCached();
+    }
+
+    @Test
+    public void groupChangesInvalidateApplication() throws Exception {
+        cacheAll();
+        em.createGroupRole(group.getUuid(), "owner", 0);
+        assertNoneCached();
+
+        cacheAll();
+        em.grantGroupRolePermission(group.getUuid(), "member", "get:/users/*");
+        assertNoneCached();
+
+        cacheAll();
+        em.revokeGroupRolePermission(group.getUuid(), "member",
+                "get:/users/*");
+        assertNoneCached();
+
+        cacheAll();
+        em.deleteGroupRole(group.getUuid(), "owner");
+        assertNoneCached();
+
+        cacheAll();
+        em.grantGroupPermission(group.getUuid(), "get:/users/*");
+        assertNoneCached();
+
+        cacheAll();
+        em.revokeGroupPermission(group.getUuid(), "get:/users/*");
+        assertNoneCached();
+    }
+
+    @Test
+    public void userChangesInvalidateUser() throws Exception {
+        cacheAll();
+        em.grantUserPermission(user.getUuid(), "get:/users/*");
+        assertOnlyUserInvalidated();
+
+        cacheAll();
+        em.revokeUserPermission(user.getUuid(), "get:/users/*");
+        assertOnlyUserInvalidated();
+
+        cacheAll();
+        em.addUserToRole(user.getUuid(), "reader");
+        assertOnlyUserInvalidated();
+
+        cacheAll();
+        em.removeUserFromRole(user.getUuid(), "reader");
+        assertOnlyUserInvalidated();
+    }
+
+    @Test
+    public void groupMembershipInvalidatesUser() throws Exception {
+        cacheAll();
+        em.addToCollection(group, "users", user);
+        assertOnlyUserInvalidated();
+
+        cacheAll();
+        em.removeFromCollection(group, "users", user);
+        assertOnlyUserInvalidated();
+    }
+
+    @Test
+    public void deleteInvalidates() throws Exception {
+        cacheAll();
+        em.delete(user);
+        assertOnlyUserInvalidated();
+
+        cacheAll();
+        em.delete(group);
+        assertNoneCached();
+    }
+
+    private void cacheAll() {
+        cache.put(applicationId, user.getUuid(), "user");
+        cache.put(applicationId, otherUser.getUuid(), "other");
+        cache.put(applicationId, null, "guest");
+    }
+
+    private void assertNoneCached() {
+        assertNull(cache.get(applicationId, user.getUuid()));
+        assertNull(cache.get(applicationId, otherUser.getUuid()));
+        assertNull(cache.get(applicationId, null));
+    }
+
+    private void assertOnlyUserInvalidated() {
+        assertNull(cache.get(applicationId, user.getUuid()));
+        assertEquals("other", cache.get(applicationId, otherUser.getUuid()));
+        assertEquals("guest", cache.get(applicationId, null));
+    }
+
+    private static Map<String, Object> properties(String name, Object value) {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put(name, value);
+        return properties;
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.usergrid.persistence.cassandra;
+
+import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+import static org.usergrid.utils.ConversionUtils.bytes;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.utils.UUIDUtils;
+
+/**
+ * @author tnine
+ *
+ */
+public class CursorCacheTest {
+
+    @Test
+    public void roundTrip() {
+        UUID first = UUIDUtils.newTimeUUID();
+        UUID second = UUIDUtils.newTimeUUID();
+
+        CursorCache cache = new CursorCache(null);
+        cache.setNextCursor(12, bytebuffer(first));
+        cache.setNextCursor(-1827391, bytebuffer(second));
+        cache.setNextCursor(Integer.MIN_VALUE, ByteBuffer.allocate(0));
+
+        String cursor = cache.asString();
+
+        CursorCache parsed = new CursorCache(cursor);
+
+        assertEquals(bytebuffer(first), parsed.getCursorBytes(12));
+        assertEquals(bytebuffer(second), parsed.getCursorBytes(-1827391));
+        assertEquals(0, parsed.getCursorBytes(Integer.MIN_VALUE).remaining());
+        assertNull(parsed.getCursorBytes(13));
+
+        // writing a parsed cursor back gives the same cursor
+        assertEquals(cursor, parsed.asString());
+    }
+
+    @Test
+    public void complete() {
+        CursorCache cache = new CursorCache(null);
+        assertNull(cache.asString());
+
+        cache.setNextCursor(12, ByteBuffer.allocate(0));
+        assertNull(cache.asString());
+    }
+
+    @Test
+    public void textFormat() {
+        UUID id = UUIDUtils.newTimeUUID();
+
+        String text = "12:" + encodeBase64URLSafeString(bytes(id))
+                + "|-5:";
+
+        CursorCache parsed = new CursorCache(encodeBase64URLSafeString(text
+                .getBytes()));
+
+        assertEquals(bytebuffer(id), parsed.getCursorBytes(12));
+        assertEquals(0, parsed.getCursorBytes(-5).remaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncated() {
+        CursorCache cache = new CursorCache(null);
+        cache.setNextCursor(12, bytebuffer(UUIDUtils.newTimeUUID()));
+
+        String cursor = cache.asString();
+
+        new CursorCache(cursor.substring(0, cursor.length() - 4));
+    }
+
+}
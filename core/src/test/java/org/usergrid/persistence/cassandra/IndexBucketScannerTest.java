@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.usergrid.persistence.cassandra.CassandraPersistenceUtils.key;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+import static org.usergrid.utils.ConversionUtils.uuid;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import org.apache.cassandra.db.marshal.UUIDType;
+import org.junit.Test;
+import org.usergrid.persistence.IndexBucketLocator;
+import org.usergrid.persistence.IndexBucketLocator.IndexType;
+import org.usergrid.utils.UUIDUtils;
+
+public class IndexBucketScannerTest {
+
+    private static final UUID APPLICATION_ID = new UUID(0, 1);
+    private static final String COLLECTION = "things";
+    private static final Object KEY_PREFIX = key(APPLICATION_ID, COLLECTION);
+
+    private static final IndexBucketLocator LOCATOR = new SimpleIndexBucketLocatorImpl(
+            4);
+
+    @Test
+    public void duplicatesReturnedOnce() throws Exception {
+        Buckets buckets = new Buckets();
+        List<UUID> ids = ids(40);
+
+        for (int i = 0; i < ids.size(); i++) {
+            buckets.add(i % 4, ids.get(i));
+            // every third entity is also in the next bucket
+            if (i % 3 == 0) {
+                buckets.add((i + 1) % 4, ids.get(i));
+            }
+        }
+
+        assertEquals(ids, buckets.scanner(null, 100).loadIds());
+    }
+
+    @Test
+    public void pagesResumeInsideBuckets() throws Exception {
+        Buckets buckets = new Buckets();
+        List<UUID> ids = ids(200);
+
+        for (int i = 0; i < ids.size(); i++) {
+            buckets.add(i % 4, ids.get(i));
+        }
+
+        assertEquals(ids, readPages(buckets, null, 30));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // each bucket read on its own, later pages prefetched
+            assertEquals(ids, readPages(buckets, executor, 30));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void deadlineFailsWaitingPrefetch() throws Exception {
+        Buckets buckets = new Buckets();
+        List<UUID> ids = ids(400);
+
+        // the first bucket has all of the first page, so the query needs its
+        // next page
+        for (int i = 0; i < ids.size(); i++) {
+            buckets.add(i < 200 ? 0 : 1 + (i % 3), ids.get(i));
+        }
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        buckets.blockNextPages = new CountDownLatch(1);
+
+        try {
+            FakeScanner scanner = buckets.scanner(null, 150);
+            scanner.executor = executor;
+            scanner.groupSize = 4;
+            scanner.timeout = 200;
+
+            scanner.load();
+            fail("A page cut short by the deadline must not look complete");
+        } catch (TimeoutException e) {
+            // expected
+        } finally {
+            buckets.blockNextPages.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read every page of the buckets, resuming each from the last column of
+     * the one before like a query cursor does
+     */
+    private static List<UUID> readPages(Buckets buckets,
+            ExecutorService executor, int pageSize) throws Exception {
+        List<UUID> read = new ArrayList<UUID>();
+        UUID cursor = null;
+
+        while (true) {
+            // the cursor column is read again, so ask for one more
+            FakeScanner scanner = buckets.scanner(cursor == null ? null
+                    : bytebuffer(cursor), cursor == null ? pageSize
+                    : pageSize + 1);
+            scanner.executor = executor;
+
+            List<UUID> page = scanner.loadIds();
+            if (cursor != null) {
+                assertEquals(cursor, page.remove(0));
+            }
+            if (page.isEmpty()) {
+                return read;
+            }
+
+            read.addAll(page);
+            cursor = page.get(page.size() - 1);
+        }
+    }
+
+    private static List<UUID> ids(int count) {
+        List<UUID> ids = new ArrayList<UUID>();
+        for (int i = 0; i < count; i++) {
+            ids.add(UUIDUtils.newTimeUUID());
+        }
+        return ids;
+    }
+
+    /**
+     * Bucket rows of an index, each column named by an entity id
+     */
+    private static class Buckets {
+
+        final List<String> bucketIds = LOCATOR.getBuckets(APPLICATION_ID,
+                IndexType.COLLECTION, COLLECTION);
+        final Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> rows = new HashMap<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>>();
+        volatile CountDownLatch blockNextPages;
+
+        void add(int bucket, UUID id) {
+            ByteBuffer rowKey = bytebuffer(key(KEY_PREFIX, bucketIds.get(bucket)));
+
+            List<HColumn<ByteBuffer, ByteBuffer>> row = rows.get(rowKey);
+            if (row == null) {
+                row = new ArrayList<HColumn<ByteBuffer, ByteBuffer>>();
+                rows.put(rowKey, row);
+            }
+
+            // ids are added in order
+            row.add(HFactory.createColumn(bytebuffer(id),
+                    ByteBuffer.allocate(0), ByteBufferSerializer.get(),
+                    ByteBufferSerializer.get()));
+        }
+
+        List<HColumn<ByteBuffer, ByteBuffer>> slice(ByteBuffer rowKey,
+                ByteBuffer first, int count) {
+            List<HColumn<ByteBuffer, ByteBuffer>> slice = new ArrayList<HColumn<ByteBuffer, ByteBuffer>>();
+            List<HColumn<ByteBuffer, ByteBuffer>> row = rows.get(rowKey);
+
+            if (row == null) {
+                return slice;
+            }
+
+            for (HColumn<ByteBuffer, ByteBuffer> column : row) {
+                if (slice.size() == count) {
+                    break;
+                }
+                if ((first == null)
+                        || (UUIDType.instance.compare(column.getName(), first) >= 0)) {
+                    slice.add(column);
+                }
+            }
+
+            return slice;
+        }
+
+        FakeScanner scanner(ByteBuffer start, int count) {
+            return new FakeScanner(this, start, count);
+        }
+    }
+
+    /**
+     * Reads the bucket rows from memory instead of Cassandra
+     */
+    private static class FakeScanner extends IndexBucketScanner {
+
+        final Buckets buckets;
+        final ByteBuffer start;
+        ExecutorService executor;
+        int groupSize = 1;
+        long timeout = 10000;
+
+        FakeScanner(Buckets buckets, ByteBuffer start, int count) {
+            super(null, LOCATOR, ApplicationCF.ENTITY_ID_SETS, APPLICATION_ID,
+                    IndexType.COLLECTION, KEY_PREFIX, start, null, false,
+                    count, COLLECTION);
+            this.buckets = buckets;
+            this.start = start;
+        }
+
+        List<UUID> loadIds() throws Exception {
+            List<UUID> ids = new ArrayList<UUID>();
+            for (HColumn<ByteBuffer, ByteBuffer> column : load()) {
+                ids.add(uuid(column.getName()));
+            }
+            return ids;
+        }
+
+        @Override
+        protected Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> multiGetColumns(
+                List<Object> bucketKeys, int count) {
+            Map<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>> results = new HashMap<ByteBuffer, List<HColumn<ByteBuffer, ByteBuffer>>>();
+            for (Object bucketKey : bucketKeys) {
+                ByteBuffer rowKey = bytebuffer(bucketKey);
+                results.put(rowKey, buckets.slice(rowKey, start, count));
+            }
+            return results;
+        }
+
+        @Override
+        protected List<HColumn<ByteBuffer, ByteBuffer>> getColumns(
+                ByteBuffer rowKey, ByteBuffer first, int count)
+                throws Exception {
+            if (buckets.blockNextPages != null) {
+                buckets.blockNextPages.await();
+            }
+            return buckets.slice(rowKey, first, count);
+        }
+
+        @Override
+        protected ExecutorService getExecutor() {
+            return executor;
+        }
+
+        @Override
+        protected int getGroupSize() {
+            return groupSize;
+        }
+
+        @Override
+        protected long getTimeout() {
+            return timeout;
+        }
+    }
+
+}
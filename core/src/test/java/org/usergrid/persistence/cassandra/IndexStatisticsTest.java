@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import org.junit.Test;
+import org.usergrid.persistence.cassandra.IndexStatistics.Stats;
+import org.usergrid.persistence.query.ir.QuerySlice;
+import org.usergrid.persistence.query.ir.SliceNode;
+
+public class IndexStatisticsTest {
+
+    @Test
+    public void lowCardinality() {
+        long[] counts = new long[IndexStatistics.BUCKETS];
+        add(counts, "active", 9000);
+        add(counts, "inactive", 1000);
+
+        Stats stats = new Stats(counts);
+
+        assertEquals(10000, stats.getEntries());
+        assertEquals(2, stats.getDistinctValues());
+
+        assertEquals(1000, stats.estimate(equals("status", "inactive")));
+        assertEquals(9000, stats.estimate(equals("status", "active")));
+    }
+
+    @Test
+    public void highCardinality() {
+        long[] counts = new long[IndexStatistics.BUCKETS];
+        for (int i = 0; i < 100000; i++) {
+            add(counts, "user" + i + "@example.com", 1);
+        }
+
+        Stats stats = new Stats(counts);
+
+        assertEquals(100000, stats.getEntries());
+
+        long equality = stats.estimate(equals("email", "user5@example.com"));
+        assertTrue(equality < 1000);
+
+        SliceNode node = new SliceNode(0);
+        node.setStart("email", "user5", true);
+        long range = stats.estimate(node.getSlice("email"));
+
+        assertTrue(equality < range);
+        assertTrue(range < stats.getEntries());
+    }
+
+    @Test
+    public void sameBucketForNumberTypes() {
+        assertEquals(IndexStatistics.bucket(5L),
+                IndexStatistics.bucket(BigInteger.valueOf(5)));
+    }
+
+    @Test
+    public void updatesSpreadOverShards() {
+        IndexStatistics statistics = new IndexStatistics(null, true, 60);
+
+        Mutator<ByteBuffer> batch = HFactory.createMutator(null,
+                ByteBufferSerializer.get());
+        for (int i = 0; i < 1000; i++) {
+            statistics.batchAddEntry(batch, "owner:users:status", "active");
+        }
+
+        // one counter row per shard written to
+        int rows = batch.getPendingMutationCount();
+        assertTrue(rows > 1);
+        assertTrue(rows <= IndexStatistics.SHARDS);
+    }
+
+    @Test
+    public void disabledWritesNothing() {
+        IndexStatistics statistics = new IndexStatistics(null, false, 60);
+
+        Mutator<ByteBuffer> batch = HFactory.createMutator(null,
+                ByteBufferSerializer.get());
+        statistics.batchAddEntry(batch, "owner:users:status", "active");
+
+        assertEquals(0, batch.getPendingMutationCount());
+    }
+
+    private static void add(long[] counts, Object value, long count) {
+        counts[IndexStatistics.bucket(value)] += count;
+    }
+
+    private static QuerySlice equals(String property, Object value) {
+        SliceNode node = new SliceNode(0);
+        node.setStart(property, value, true);
+        node.setFinish(property, value, true);
+        return node.getSlice(property);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.utils.UUIDUtils;
+
+public class LocalAuthorizationCacheTest {
+
+    @Test
+    public void invalidatePrincipal() {
+        LocalAuthorizationCache cache = new LocalAuthorizationCache(100, 0);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        UUID userId = UUIDUtils.newTimeUUID();
+        UUID otherUserId = UUIDUtils.newTimeUUID();
+
+        cache.put(appId, userId, "user");
+        cache.put(appId, otherUserId, "other");
+        cache.put(appId, null, "guest");
+
+        assertEquals("user", cache.get(appId, userId));
+        assertEquals("guest", cache.get(appId, null));
+        assertNull(cache.get(UUIDUtils.newTimeUUID(), userId));
+
+        cache.invalidate(appId, userId);
+        assertNull(cache.get(appId, userId));
+        assertEquals("other", cache.get(appId, otherUserId));
+        assertEquals("guest", cache.get(appId, null));
+
+        cache.invalidate(appId, null);
+        assertNull(cache.get(appId, null));
+    }
+
+    @Test
+    public void invalidateApplication() {
+        LocalAuthorizationCache cache = new LocalAuthorizationCache(100, 0);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        UUID otherAppId = UUIDUtils.newTimeUUID();
+        UUID userId = UUIDUtils.newTimeUUID();
+
+        cache.put(appId, userId, "user");
+        cache.put(appId, null, "guest");
+        cache.put(otherAppId, userId, "other app");
+
+        cache.invalidateApplication(appId);
+
+        assertNull(cache.get(appId, userId));
+        assertNull(cache.get(appId, null));
+        assertEquals("other app", cache.get(otherAppId, userId));
+    }
+
+    @Test
+    public void disabled() {
+        LocalAuthorizationCache cache = new LocalAuthorizationCache(0, 0);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        UUID userId = UUIDUtils.newTimeUUID();
+
+        cache.put(appId, userId, "user");
+        assertNull(cache.get(appId, userId));
+
+        cache.invalidateApplication(appId);
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.utils.UUIDUtils;
+
+public class LocalEntityCacheTest {
+
+    @Test
+    public void readThroughAndInvalidate() {
+        LocalEntityCache cache = new LocalEntityCache(1024 * 1024, 60);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        UUID entityId = UUIDUtils.newTimeUUID();
+
+        assertNull(cache.get(appId, entityId));
+
+        cache.put(appId, entityId, cache.getGeneration(appId, entityId),
+                properties("user", entityId), 100);
+
+        Map<String, Object> cached = cache.get(appId, entityId);
+        assertNotNull(cached);
+        assertEquals("user", cached.get("type"));
+
+        // same entity id in another app is a different entry
+        assertNull(cache.get(UUIDUtils.newTimeUUID(), entityId));
+
+        cache.invalidate(appId, entityId);
+        assertNull(cache.get(appId, entityId));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void copiesOnReadAndWrite() {
+        LocalEntityCache cache = new LocalEntityCache(1024 * 1024, 60);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        UUID entityId = UUIDUtils.newTimeUUID();
+
+        Map<String, Object> props = properties("user", entityId);
+        cache.put(appId, entityId, cache.getGeneration(appId, entityId),
+                props, 100);
+
+        // changes to the map we cached, or one we read back, aren't visible
+        props.put("name", "changed");
+        ((List<Object>) props.get("tags")).add("changed");
+
+        Map<String, Object> read = cache.get(appId, entityId);
+        read.put("name", "changed");
+        ((Map<String, Object>) read.get("address")).put("city", "changed");
+
+        Map<String, Object> cached = cache.get(appId, entityId);
+        assertEquals("test", cached.get("name"));
+        assertEquals(1, ((List<Object>) cached.get("tags")).size());
+        assertEquals("Palo Alto",
+                ((Map<String, Object>) cached.get("address")).get("city"));
+
+        // property names stay case insensitive
+        assertEquals("test", cached.get("NAME"));
+    }
+
+    @Test
+    public void evictsBySize() {
+        // room for roughly 10 entities of 1k each
+        LocalEntityCache cache = new LocalEntityCache(10 * 1024, 60);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        List<UUID> ids = new ArrayList<UUID>();
+
+        for (int i = 0; i < 100; i++) {
+            UUID entityId = UUIDUtils.newTimeUUID();
+            ids.add(entityId);
+            cache.put(appId, entityId, cache.getGeneration(appId, entityId),
+                    properties("user", entityId), 1024);
+        }
+
+        int cached = 0;
+        for (UUID entityId : ids) {
+            if (cache.get(appId, entityId) != null) {
+                cached++;
+            }
+        }
+
+        assertEquals(true, cached <= 10);
+        assertNotNull(cache.get(appId, ids.get(ids.size() - 1)));
+    }
+
+    @Test
+    public void readBeforeInvalidateNotCached() {
+        LocalEntityCache cache = new LocalEntityCache(1024 * 1024, 60);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        UUID entityId = UUIDUtils.newTimeUUID();
+
+        // a read starts, a write invalidates, then the read finishes
+        long generation = cache.getGeneration(appId, entityId);
+        cache.invalidate(appId, entityId);
+        cache.put(appId, entityId, generation, properties("user", entityId),
+                100);
+
+        assertNull(cache.get(appId, entityId));
+
+        // the next read caches
+        cache.put(appId, entityId, cache.getGeneration(appId, entityId),
+                properties("user", entityId), 100);
+
+        assertNotNull(cache.get(appId, entityId));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ttlRequired() {
+        new LocalEntityCache(1024 * 1024, 0);
+    }
+
+    @Test
+    public void disabledWithoutTtl() {
+        LocalEntityCache cache = new LocalEntityCache(0, 0);
+
+        UUID appId = UUIDUtils.newTimeUUID();
+        UUID entityId = UUIDUtils.newTimeUUID();
+
+        cache.put(appId, entityId, cache.getGeneration(appId, entityId),
+                properties("user", entityId), 100);
+
+        assertNull(cache.get(appId, entityId));
+    }
+
+    private Map<String, Object> properties(String type, UUID id) {
+        Map<String, Object> props = new TreeMap<String, Object>(
+                String.CASE_INSENSITIVE_ORDER);
+        props.put("uuid", id);
+        props.put("type", type);
+        props.put("name", "test");
+
+        List<Object> tags = new ArrayList<Object>();
+        tags.add("one");
+        props.put("tags", tags);
+
+        Map<String, Object> address = new HashMap<String, Object>();
+        address.put("city", "Palo Alto");
+        props.put("address", address);
+
+        return props;
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static me.prettyprint.hector.api.factory.HFactory.createColumn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+
+import java.nio.ByteBuffer;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import org.junit.Test;
+
+public class MutationRecorderTest {
+
+    private static final ByteBufferSerializer be = new ByteBufferSerializer();
+    private static final StringSerializer se = new StringSerializer();
+
+    @Test
+    public void addsRecordedMutationsToBatch() {
+        MutationRecorder recorder = new MutationRecorder(mutator());
+        Mutator<ByteBuffer> batch = mutator();
+
+        batch.addInsertion(bytebuffer("other"), "Entity_Properties",
+                createColumn("name", "value", se, se));
+
+        Mutator<ByteBuffer> item = recorder.getMutator();
+        item.addInsertion(bytebuffer("item"), "Entity_Properties",
+                createColumn("name", "value", se, se));
+        item.addDeletion(bytebuffer("index"), "Entity_Dictionaries", "old",
+                se, 1L);
+        assertEquals(2, item.getPendingMutationCount());
+        assertEquals(1, batch.getPendingMutationCount());
+
+        recorder.addTo(batch);
+        assertEquals(3, batch.getPendingMutationCount());
+    }
+
+    @Test
+    public void clearForgetsMutations() {
+        MutationRecorder recorder = new MutationRecorder(mutator());
+        Mutator<ByteBuffer> batch = mutator();
+
+        recorder.getMutator().addInsertion(bytebuffer("failed"),
+                "Entity_Properties", createColumn("name", "value", se, se));
+        recorder.clear();
+        assertEquals(0, recorder.getMutator().getPendingMutationCount());
+
+        recorder.getMutator().addInsertion(bytebuffer("item"),
+                "Entity_Properties", createColumn("name", "value", se, se));
+        recorder.addTo(batch);
+        assertEquals(1, batch.getPendingMutationCount());
+    }
+
+    @Test
+    public void failedMutationIsNotRecorded() {
+        MutationRecorder recorder = new MutationRecorder(mutator());
+        Mutator<ByteBuffer> batch = mutator();
+
+        try {
+            recorder.getMutator().addInsertion(bytebuffer("item"),
+                    "Entity_Properties",
+                    HFactory.<String, String> createColumn("name", null, se, se));
+            fail("a column without a value can't be added");
+        } catch (RuntimeException e) {
+        }
+
+        recorder.addTo(batch);
+        assertEquals(0, batch.getPendingMutationCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void refusesExecute() {
+        new MutationRecorder(mutator()).getMutator().execute();
+    }
+
+    private static Mutator<ByteBuffer> mutator() {
+        return HFactory.createMutator(null, be);
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.persistence.cassandra;
+
+import static me.prettyprint.hector.api.factory.HFactory.createColumn;
+import static me.prettyprint.hector.api.factory.HFactory.createMutator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.usergrid.persistence.cassandra.ApplicationCF.ENTITY_UNIQUE;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+import static org.usergrid.utils.UUIDUtils.newTimeUUID;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.UUIDSerializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.persistence.AbstractPersistenceTest;
+import org.usergrid.persistence.Entity;
+import org.usergrid.persistence.exceptions.DuplicateUniquePropertyExistsException;
+
+public class UniquePropertyClaimTest extends AbstractPersistenceTest {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(UniquePropertyClaimTest.class);
+
+	private static final ByteBufferSerializer be = new ByteBufferSerializer();
+	private static final UUIDSerializer ue = new UUIDSerializer();
+
+	@Test
+	public void duplicateValueRejected() throws Exception {
+		EntityManagerImpl em = entityManager("duplicateValueRejected");
+
+		em.create("user", user("dup", "dup@example.com"));
+
+		try {
+			em.create("user", user("dup", "other@example.com"));
+			fail("Duplicate username was accepted");
+		} catch (DuplicateUniquePropertyExistsException e) {
+			// expected
+		}
+
+		assertEquals(1, uniqueColumns(em, "username", "dup").size());
+	}
+
+	@Test
+	public void reclaimOwnValue() throws Exception {
+		EntityManagerImpl em = entityManager("reclaimOwnValue");
+
+		Entity user = em.create("user", user("mine", "mine@example.com"));
+
+		assertTrue(em.claimUniqueProperty(user.getUuid(), "user", "username",
+				"mine", System.currentTimeMillis() * 1000));
+
+		em.setProperty(user, "username", "mine");
+
+		List<HColumn<ByteBuffer, ByteBuffer>> cols = uniqueColumns(em,
+				"username", "mine");
+		assertEquals(1, cols.size());
+		assertEquals(user.getUuid(), ue.fromByteBuffer(cols.get(0).getName()));
+	}
+
+	@Test
+	public void loserRemovesClaim() throws Exception {
+		EntityManagerImpl em = entityManager("loserRemovesClaim");
+
+		// another entity's claim, made before ours
+		UUID other = newTimeUUID();
+		long timestamp = System.currentTimeMillis() * 1000;
+
+		Object key = em.createUniqueIndexKey("users", "username", "contested");
+		Mutator<ByteBuffer> m = createMutator(
+				em.getCass().getApplicationKeyspace(em.getApplicationId()), be);
+		HColumn<ByteBuffer, ByteBuffer> claim = createColumn(
+				bytebuffer(other), bytebuffer(newTimeUUID()), timestamp, be, be);
+		claim.setTtl(30);
+		m.addInsertion(bytebuffer(key), ENTITY_UNIQUE.toString(), claim);
+		m.execute();
+
+		UUID loser = newTimeUUID();
+		assertFalse(em.claimUniqueProperty(loser, "user", "username",
+				"contested", timestamp));
+
+		List<HColumn<ByteBuffer, ByteBuffer>> cols = uniqueColumns(em,
+				"username", "contested");
+		assertEquals(1, cols.size());
+		assertEquals(other, ue.fromByteBuffer(cols.get(0).getName()));
+	}
+
+	@Test
+	public void failedCreateReleasesClaims() throws Exception {
+		EntityManagerImpl em = entityManager("failedCreateReleasesClaims");
+
+		em.create("user", user("first", "taken@example.com"));
+
+		// the username is claimed before the email turns out to be taken
+		try {
+			em.create("user", user("second", "taken@example.com"));
+			fail("Duplicate email was accepted");
+		} catch (DuplicateUniquePropertyExistsException e) {
+			// expected
+		}
+
+		assertEquals(0, uniqueColumns(em, "username", "second").size());
+
+		// and is free right away, not when the claim expires
+		assertNotNull(em.create("user", user("second", "second@example.com")));
+	}
+
+	@Test
+	public void failedUpdateReleasesClaims() throws Exception {
+		EntityManagerImpl em = entityManager("failedUpdateReleasesClaims");
+
+		em.create("user", user("first", "first@example.com"));
+		Entity second = em.create("user",
+				user("second", "second@example.com"));
+
+		try {
+			em.updateProperties(second, user("renamed", "first@example.com"));
+			fail("Duplicate email was accepted");
+		} catch (DuplicateUniquePropertyExistsException e) {
+			// expected
+		}
+
+		assertEquals(0, uniqueColumns(em, "username", "renamed").size());
+
+		// a value the entity already held isn't released with the claims
+		try {
+			em.updateProperties(second, user("second", "first@example.com"));
+			fail("Duplicate email was accepted");
+		} catch (DuplicateUniquePropertyExistsException e) {
+			// expected
+		}
+
+		List<HColumn<ByteBuffer, ByteBuffer>> cols = uniqueColumns(em,
+				"username", "second");
+		assertEquals(1, cols.size());
+		assertEquals(second.getUuid(), ue.fromByteBuffer(cols.get(0).getName()));
+	}
+
+	@Test
+	public void concurrentCreatesOneWinner() throws Exception {
+		final EntityManagerImpl em = entityManager("concurrentCreatesOneWinner");
+
+		int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < threads; i++) {
+			final int n = i;
+			results.add(executor.submit(new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() throws Exception {
+					start.await();
+
+					// claims that collide can both lose, so retry until
+					// somebody holds the username
+					for (int attempt = 0; attempt < 20; attempt++) {
+						try {
+							em.create("user", user("racer", "racer" + n
+									+ "@example.com"));
+							return true;
+						} catch (DuplicateUniquePropertyExistsException e) {
+							if (em.getAlias("user", "racer") != null) {
+								return false;
+							}
+							Thread.sleep((long) (Math.random() * 100));
+						}
+					}
+					return false;
+				}
+			}));
+		}
+
+		start.countDown();
+
+		int winners = 0;
+		for (Future<Boolean> result : results) {
+			if (result.get()) {
+				winners++;
+			}
+		}
+		executor.shutdown();
+
+		logger.info("{} of {} concurrent creates won", winners, threads);
+
+		assertEquals(1, winners);
+		assertEquals(1, uniqueColumns(em, "username", "racer").size());
+	}
+
+	private EntityManagerImpl entityManager(String applicationName)
+			throws Exception {
+		UUID applicationId = createApplication("testOrganization",
+				applicationName);
+		return (EntityManagerImpl) emf.getEntityManager(applicationId);
+	}
+
+	private static Map<String, Object> user(String username, String email) {
+		Map<String, Object> properties = new LinkedHashMap<String, Object>();
+		properties.put("username", username);
+		properties.put("email", email);
+		return properties;
+	}
+
+	private static List<HColumn<ByteBuffer, ByteBuffer>> uniqueColumns(
+			EntityManagerImpl em, String propertyName, Object value)
+			throws Exception {
+		CassandraService cass = em.getCass();
+		return cass.getColumns(
+				cass.getApplicationKeyspace(em.getApplicationId()),
+				ENTITY_UNIQUE,
+				em.createUniqueIndexKey("users", propertyName, value), null,
+				null, 100, false);
+	}
+
+}
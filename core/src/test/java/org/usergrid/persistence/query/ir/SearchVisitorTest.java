@@ -0,0 +1,218 @@
+package org.usergrid.persistence.query.ir;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.persistence.Query;
+import org.usergrid.persistence.Results;
+import org.usergrid.persistence.SimpleEntityRef;
+import org.usergrid.persistence.cassandra.QueryProcessor;
+import org.usergrid.persistence.query.ir.result.FilterIterator.Filter;
+import org.usergrid.persistence.query.ir.result.ResultIterator;
+import org.usergrid.persistence.query.ir.result.ScanColumn;
+import org.usergrid.persistence.query.ir.result.ScanIterator;
+import org.usergrid.utils.UUIDUtils;
+
+/**
+ * @author tnine
+ *
+ */
+public class SearchVisitorTest {
+
+    @Test
+    public void sortedSliceDrives() throws Exception {
+        List<UUID> ids = ids(5);
+
+        TestVisitor visitor = search(
+                "select * where status = 'a' and age > 3 order by age");
+        visitor.entities.put("status",
+                Arrays.asList(ids.get(0), ids.get(1), ids.get(3)));
+        visitor.entities.put("age",
+                Arrays.asList(ids.get(4), ids.get(3), ids.get(1), ids.get(0)));
+
+        Results r = visitor.search();
+
+        // in the order of the sort, not of the equality slice
+        assertEquals(Arrays.asList(ids.get(3), ids.get(1), ids.get(0)),
+                r.getIds());
+        assertEquals("age", visitor.scanned.get(0));
+        assertFalse(visitor.probed);
+    }
+
+    @Test
+    public void sortedSideDrivesAnd() throws Exception {
+        List<UUID> ids = ids(5);
+
+        TestVisitor visitor = search(
+                "select * where (a = 1 or c = 2) and b > 5 order by b");
+        visitor.entities.put("a", Arrays.asList(ids.get(0), ids.get(3)));
+        visitor.entities.put("c", Arrays.asList(ids.get(1)));
+        visitor.entities.put("b",
+                Arrays.asList(ids.get(4), ids.get(3), ids.get(1), ids.get(0)));
+
+        // the OR is much smaller, but the sorted side still has to drive
+        visitor.estimates.put("a", 1L);
+        visitor.estimates.put("c", 1L);
+        visitor.estimates.put("b", 1000L);
+
+        Results r = visitor.search();
+
+        assertEquals(Arrays.asList(ids.get(3), ids.get(1), ids.get(0)),
+                r.getIds());
+        assertEquals("b", visitor.scanned.get(0));
+    }
+
+    @Test
+    public void subtractUnorderedByLookup() throws Exception {
+        List<UUID> ids = ids(5);
+
+        TestVisitor visitor = search(
+                "select * where age > 3 and not status = 'a'");
+        visitor.entities.put("status",
+                Arrays.asList(ids.get(0), ids.get(1), ids.get(3)));
+        visitor.entities.put("age",
+                Arrays.asList(ids.get(4), ids.get(3), ids.get(1), ids.get(0)));
+
+        Results r = visitor.search();
+
+        assertEquals(Arrays.asList(ids.get(4)), r.getIds());
+        assertFalse(visitor.probed);
+    }
+
+    @Test
+    public void unorderedUnionPagesReturnEachEntityOnce() throws Exception {
+        List<UUID> ids = ids(4);
+
+        List<UUID> read = new ArrayList<UUID>();
+        String cursor = null;
+
+        do {
+            Query query = Query.fromQL("select * where a > 1 or b > 1");
+            query.setLimit(2);
+            query.setCursor(cursor);
+
+            TestVisitor visitor = new TestVisitor(query, new QueryProcessor(
+                    query, null));
+            visitor.entities.put("a",
+                    Arrays.asList(ids.get(0), ids.get(1), ids.get(2)));
+            visitor.entities.put("b",
+                    Arrays.asList(ids.get(2), ids.get(3), ids.get(1)));
+
+            List<UUID> page = visitor.search().getIds();
+            if ((page == null) || page.isEmpty()) {
+                break;
+            }
+
+            // the last id only shows there's another page
+            read.addAll(page.subList(0, Math.min(2, page.size())));
+            cursor = visitor.queryProcessor.getCursor();
+        } while ((cursor != null) && (read.size() < 10));
+
+        assertEquals(ids, read);
+    }
+
+    private static TestVisitor search(String ql) throws Exception {
+        Query query = Query.fromQL(ql);
+        return new TestVisitor(query, new QueryProcessor(query, null));
+    }
+
+    private static List<UUID> ids(int count) {
+        List<UUID> ids = new ArrayList<UUID>();
+        for (int i = 0; i < count; i++) {
+            ids.add(UUIDUtils.newTimeUUID());
+        }
+        return ids;
+    }
+
+    /**
+     * Searches fixed lists of entities, in the order given for each property
+     */
+    private static class TestVisitor extends SearchVisitor {
+
+        final Map<String, List<UUID>> entities = new HashMap<String, List<UUID>>();
+        final Map<String, Long> estimates = new HashMap<String, Long>();
+        final List<String> scanned = new ArrayList<String>();
+        boolean probed;
+
+        TestVisitor(Query query, QueryProcessor queryProcessor) {
+            super(query, queryProcessor);
+        }
+
+        Results search() throws Exception {
+            queryProcessor.getFirstNode().visit(this);
+            return getResults();
+        }
+
+        @Override
+        protected ResultIterator scanSlice(SliceNode node, QuerySlice slice,
+                boolean probe) throws Exception {
+            scanned.add(slice.getPropertyName());
+            probed |= probe;
+
+            final List<ScanColumn> columns = new ArrayList<ScanColumn>();
+            for (UUID id : entities.get(slice.getPropertyName())) {
+                columns.add(new ScanColumn(new SimpleEntityRef(id), null,
+                        bytebuffer(id)));
+            }
+
+            ScanIterator scan = new ScanIterator(new ScanIterator.Scanner() {
+
+                @Override
+                public List<ScanColumn> scan(ByteBuffer start, int count) {
+                    int index = 0;
+                    if (start != null) {
+                        while ((index < columns.size())
+                                && !columns.get(index).getCursor()
+                                        .equals(start)) {
+                            index++;
+                        }
+                    }
+                    return new ArrayList<ScanColumn>(columns.subList(index,
+                            Math.min(columns.size(), index + count)));
+                }
+            }, probe ? null : slice.getCursor(), 10, slice.isEquals(),
+                    slice.isReversed());
+
+            return probe ? scan : scan.withCursor(queryProcessor, slice);
+        }
+
+        @Override
+        protected long estimate(SliceNode node, QuerySlice slice) {
+            Long estimate = estimates.get(slice.getPropertyName());
+            return estimate == null ? UNKNOWN : estimate;
+        }
+
+        @Override
+        protected Filter verifier(SliceNode node, final QuerySlice slice) {
+            return new Filter() {
+
+                @Override
+                public boolean accept(ScanColumn column) {
+                    return entities.get(slice.getPropertyName()).contains(
+                            column.getUuid());
+                }
+            };
+        }
+
+        @Override
+        public void visit(AllNode node) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void visit(WithinNode node) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
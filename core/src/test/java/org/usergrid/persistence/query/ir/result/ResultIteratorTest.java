@@ -0,0 +1,266 @@
+package org.usergrid.persistence.query.ir.result;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.usergrid.utils.ConversionUtils.bytebuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.usergrid.persistence.SimpleEntityRef;
+import org.usergrid.utils.UUIDUtils;
+
+/**
+ * @author tnine
+ *
+ */
+public class ResultIteratorTest {
+
+    @Test
+    public void scanPages() throws Exception {
+        List<UUID> ids = ids(10);
+
+        ListScanner scanner = new ListScanner(ids);
+        ScanIterator scan = new ScanIterator(scanner, null, 3, true, false);
+
+        assertEquals(ids, drain(scan));
+
+        // 3 full pages of 3 new columns, then the last one
+        assertEquals(4, scanner.reads);
+    }
+
+    @Test
+    public void scanReturnsEachEntityOnce() throws Exception {
+        List<UUID> ids = ids(3);
+
+        // a range over several values has an entry for each value of an
+        // entity, and they needn't be next to each other
+        ScanIterator scan = new ScanIterator(new ListScanner(Arrays.asList(
+                ids.get(2), ids.get(0), ids.get(2), ids.get(1), ids.get(0))),
+                null, 10, false, false);
+
+        assertEquals(Arrays.asList(ids.get(2), ids.get(0), ids.get(1)),
+                drain(scan));
+    }
+
+    @Test
+    public void scanResumedSkipsEarlierPages() throws Exception {
+        final List<UUID> ids = ids(4);
+
+        final EntryScanner scanner = new EntryScanner(ids.get(2), ids.get(0),
+                ids.get(2), ids.get(1), ids.get(0), ids.get(3));
+
+        ScanIterator scan = new ScanIterator(scanner, null, 10, false, false);
+        assertEquals(ids.get(2), scan.next().getUuid());
+        assertEquals(ids.get(0), scan.next().getUuid());
+
+        // the next page starts at the first entry that wasn't returned
+        final ByteBuffer cursor = scan.peek().getCursor();
+        assertEquals(ids.get(1), scan.peek().getUuid());
+
+        scan = new ScanIterator(scanner, cursor, 10, false, false)
+                .withReadBefore(new FilterIterator.Filter() {
+
+                    @Override
+                    public boolean accept(ScanColumn column) {
+                        return scanner.before(column.getUuid(), cursor);
+                    }
+                });
+
+        assertEquals(Arrays.asList(ids.get(1), ids.get(3)), drain(scan));
+    }
+
+    @Test
+    public void intersection() throws Exception {
+        List<UUID> ids = ids(10);
+
+        ResultIterator left = scan(ids.get(0), ids.get(2), ids.get(4),
+                ids.get(6));
+        ResultIterator right = scan(ids.get(1), ids.get(2), ids.get(3),
+                ids.get(6), ids.get(9));
+
+        assertEquals(Arrays.asList(ids.get(2), ids.get(6)),
+                drain(new IntersectionIterator(left, right)));
+    }
+
+    @Test
+    public void intersectionProbe() throws Exception {
+        List<UUID> ids = ids(5);
+
+        ResultIterator left = scan(ids.get(0), ids.get(1), ids.get(3));
+        ResultIterator probe = new StaticIterator(columns(ids.get(3),
+                ids.get(4), ids.get(0)));
+
+        assertEquals(Arrays.asList(ids.get(0), ids.get(3)),
+                drain(new IntersectionIterator(left, new ProbeSet(probe))));
+    }
+
+    @Test
+    public void subtraction() throws Exception {
+        List<UUID> ids = ids(6);
+
+        ResultIterator keep = scan(ids.get(0), ids.get(1), ids.get(2),
+                ids.get(4));
+        ResultIterator remove = scan(ids.get(1), ids.get(3), ids.get(4));
+
+        assertEquals(Arrays.asList(ids.get(0), ids.get(2)),
+                drain(new SubtractionIterator(keep, remove)));
+    }
+
+    @Test
+    public void union() throws Exception {
+        List<UUID> ids = ids(6);
+
+        ResultIterator left = scan(ids.get(0), ids.get(2), ids.get(4));
+        ResultIterator right = scan(ids.get(1), ids.get(2), ids.get(5));
+
+        assertEquals(Arrays.asList(ids.get(0), ids.get(1), ids.get(2),
+                ids.get(4), ids.get(5)), drain(new UnionIterator(left, right)));
+
+        // unordered unions return the left side, then the right side without
+        // what the left side matched
+        left = new StaticIterator(columns(ids.get(4), ids.get(0)));
+        right = new SubtractionIterator(scan(ids.get(0), ids.get(3)),
+                new ProbeSet(new StaticIterator(columns(ids.get(4),
+                        ids.get(0)))));
+
+        assertEquals(Arrays.asList(ids.get(4), ids.get(0), ids.get(3)),
+                drain(new UnionIterator(left, right)));
+    }
+
+    @Test
+    public void filter() throws Exception {
+        final List<UUID> ids = ids(6);
+
+        final List<UUID> checked = new ArrayList<UUID>();
+
+        ResultIterator filtered = new FilterIterator(scan(ids.get(0),
+                ids.get(1), ids.get(2), ids.get(3)),
+                new FilterIterator.Filter() {
+
+                    @Override
+                    public boolean accept(ScanColumn column) {
+                        checked.add(column.getUuid());
+                        return !column.getUuid().equals(ids.get(1));
+                    }
+                });
+
+        assertEquals(ids.get(0), filtered.peek().getUuid());
+        assertEquals(Arrays.asList(ids.get(0), ids.get(2), ids.get(3)),
+                drain(filtered));
+
+        // each entity is only checked once
+        assertEquals(ids.subList(0, 4), checked);
+    }
+
+    @Test
+    public void emptyStartIsComplete() throws Exception {
+        ScanIterator scan = new ScanIterator(new ListScanner(ids(3)),
+                ByteBuffer.allocate(0), 10, true, false);
+        assertNull(scan.next());
+    }
+
+    private static List<UUID> ids(int count) {
+        List<UUID> ids = new ArrayList<UUID>();
+        for (int i = 0; i < count; i++) {
+            ids.add(UUIDUtils.newTimeUUID());
+        }
+        return ids;
+    }
+
+    private static List<ScanColumn> columns(UUID... ids) {
+        List<ScanColumn> columns = new ArrayList<ScanColumn>();
+        for (UUID id : ids) {
+            columns.add(new ScanColumn(new SimpleEntityRef(id), null,
+                    bytebuffer(id)));
+        }
+        return columns;
+    }
+
+    private static ResultIterator scan(UUID... ids) {
+        return new ScanIterator(new ListScanner(Arrays.asList(ids)), null, 2,
+                true, false);
+    }
+
+    private static List<UUID> drain(ResultIterator iterator) throws Exception {
+        List<UUID> ids = new ArrayList<UUID>();
+        ScanColumn column = null;
+        while ((column = iterator.next()) != null) {
+            ids.add(column.getUuid());
+        }
+        return ids;
+    }
+
+    /**
+     * A range with an entry per value, so the same entity can be at more than
+     * one position. The cursor of an entry is its position
+     */
+    private static class EntryScanner implements ScanIterator.Scanner {
+
+        private final List<ScanColumn> columns = new ArrayList<ScanColumn>();
+
+        EntryScanner(UUID... ids) {
+            for (int i = 0; i < ids.length; i++) {
+                columns.add(new ScanColumn(new SimpleEntityRef(ids[i]), null,
+                        bytebuffer(new UUID(0, i))));
+            }
+        }
+
+        /**
+         * @return true if the entity has an entry before the cursor
+         */
+        boolean before(UUID id, ByteBuffer cursor) {
+            for (ScanColumn column : columns) {
+                if (column.getCursor().equals(cursor)) {
+                    return false;
+                }
+                if (column.getUuid().equals(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public List<ScanColumn> scan(ByteBuffer start, int count) {
+            int index = 0;
+            if (start != null) {
+                while ((index < columns.size())
+                        && !columns.get(index).getCursor().equals(start)) {
+                    index++;
+                }
+            }
+            return new ArrayList<ScanColumn>(columns.subList(index,
+                    Math.min(columns.size(), index + count)));
+        }
+    }
+
+    private static class ListScanner implements ScanIterator.Scanner {
+
+        private final List<ScanColumn> columns;
+        int reads;
+
+        ListScanner(List<UUID> ids) {
+            columns = columns(ids.toArray(new UUID[ids.size()]));
+        }
+
+        @Override
+        public List<ScanColumn> scan(ByteBuffer start, int count) {
+            reads++;
+            int index = 0;
+            if (start != null) {
+                while ((index < columns.size())
+                        && !columns.get(index).getCursor().equals(start)) {
+                    index++;
+                }
+            }
+            return new ArrayList<ScanColumn>(columns.subList(index,
+                    Math.min(columns.size(), index + count)));
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.usergrid.utils.JsonUtils.toJsonNode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class PropertyCodecUtilsTest {
+
+	@Test
+	public void sameAsSmile() {
+		UUID id = UUIDUtils.newTimeUUID();
+
+		Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		nested.put("id", id.toString());
+		nested.put("count", 5);
+		nested.put("list", Arrays.asList(1, id.toString()));
+
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("name", "edanuff");
+		map.put("id", id);
+		map.put("idString", id.toString());
+		map.put("int", 5);
+		map.put("long", Long.MAX_VALUE);
+		map.put("nothing", null);
+		map.put("nested", nested);
+		map.put("list", Arrays.asList(1, true, nested));
+
+		List<Object> list = new ArrayList<Object>();
+		list.add(map);
+		list.add(Arrays.asList(7, id.toString(), nested));
+
+		Object[] values = { "", "edanuff", "caf\u00e9 \u20ac \ud83d\ude00", id,
+				id.toString(), 1, -1, 0L, Long.MIN_VALUE, (short) 12, (byte) 3,
+				1.5, 1.1f, -0.0, true, false, map, nested, list,
+				new ArrayList<Object>(), new LinkedHashMap<String, Object>() };
+
+		for (Object value : values) {
+			ByteBuffer bytes = PropertyCodecUtils.encode(value);
+			assertTrue(PropertyCodecUtils.isEncoded(bytes));
+
+			Object expected = smile(value);
+			Object decoded = PropertyCodecUtils.decode(bytes);
+
+			assertEquals(expected, decoded);
+			assertSameTypes(expected, decoded);
+		}
+	}
+
+	@Test
+	public void smileFallback() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("date", new Date());
+
+		assertNull(PropertyCodecUtils.encode(map));
+		assertNull(PropertyCodecUtils.encode(new Date()));
+		assertNull(PropertyCodecUtils.encode(null));
+
+		// legacy columns aren't mistaken for encoded ones
+		assertFalse(PropertyCodecUtils.isEncoded(JsonUtils
+				.toByteBuffer(toJsonNode(map))));
+		assertFalse(PropertyCodecUtils.isEncoded(JsonUtils
+				.toByteBuffer(toJsonNode(1))));
+		assertFalse(PropertyCodecUtils.isEncoded(ByteBuffer.wrap("{}"
+				.getBytes())));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void truncated() {
+		ByteBuffer bytes = PropertyCodecUtils.encode("edanuff");
+		bytes.limit(bytes.limit() - 1);
+		PropertyCodecUtils.decode(bytes);
+	}
+
+	private static Object smile(Object value) {
+		return JsonUtils.normalizeJsonTree(JsonUtils.fromByteBuffer(JsonUtils
+				.toByteBuffer(toJsonNode(value))));
+	}
+
+	private static void assertSameTypes(Object expected, Object actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.getClass(), actual.getClass());
+		if (expected instanceof Map) {
+			for (Object key : ((Map<?, ?>) expected).keySet()) {
+				assertSameTypes(((Map<?, ?>) expected).get(key),
+						((Map<?, ?>) actual).get(key));
+			}
+		} else if (expected instanceof List) {
+			for (int i = 0; i < ((List<?>) expected).size(); i++) {
+				assertSameTypes(((List<?>) expected).get(i),
+						((List<?>) actual).get(i));
+			}
+		}
+	}
+}
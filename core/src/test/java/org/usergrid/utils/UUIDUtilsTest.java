@@ -198,6 +198,58 @@ public class UUIDUtilsTest {
     return jobs;
   }
 
+  @Test
+  public void timeUUIDFields() {
+    long start = System.currentTimeMillis();
+    UUID uuid = newTimeUUID();
+    long end = System.currentTimeMillis();
+
+    assertEquals(1, uuid.version());
+    assertEquals(2, uuid.variant());
+
+    long ts = getTimestampInMillis(uuid);
+    assertTrue(ts >= start && ts <= end);
+
+    // laid out the same as uuids built from a timestamp
+    UUID fromTs = newTimeUUID(ts, 0);
+    assertEquals(fromTs.timestamp() / 10000, uuid.timestamp() / 10000);
+    assertEquals(uuid.getMostSignificantBits() & 0xF000L,
+        fromTs.getMostSignificantBits() & 0xF000L);
+  }
+
+  @Test
+  public void concurrentUniqueAndOrdered() throws Exception {
+    ExecutorService exec = Executors.newFixedThreadPool(8);
+    List<Future<List<UUID>>> jobs = new ArrayList<Future<List<UUID>>>();
+
+    for (int x = 0; x < 8; x++) {
+      jobs.add(exec.submit(new Callable<List<UUID>>() {
+        @Override
+        public List<UUID> call() throws Exception {
+          List<UUID> uuids = new ArrayList<UUID>(50000);
+          for (int i = 0; i < 50000; i++) {
+            uuids.add(newTimeUUID());
+          }
+          return uuids;
+        }
+      }));
+    }
+
+    Set<Long> micros = new HashSet<Long>();
+    for (Future<List<UUID>> f : jobs) {
+      List<UUID> uuids = f.get();
+      for (int i = 0; i < uuids.size(); i++) {
+        assertTrue(micros.add(UUIDUtils.getTimestampInMicros(uuids.get(i))));
+        if (i > 0) {
+          assertTrue(uuids.get(i - 1).timestamp() < uuids.get(i).timestamp());
+        }
+      }
+    }
+    exec.shutdown();
+
+    assertEquals(8 * 50000, micros.size());
+  }
+
   @Test
   public void timeUUIDOrderingRolls() {
 
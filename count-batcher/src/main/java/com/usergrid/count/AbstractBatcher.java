@@ -15,11 +15,12 @@
  ******************************************************************************/
 package com.usergrid.count;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
@@ -39,7 +40,7 @@ import com.yammer.metrics.core.TimerContext;
 public abstract class AbstractBatcher implements Batcher {
     protected BatchSubmitter batchSubmitter;
 
-    private Batch batch;
+    private volatile Batch batch;
     private final ReentrantLock submitLock = new ReentrantLock();
     private final AtomicLong opCount = new AtomicLong();
     private final Timer addTimer =
@@ -80,21 +81,35 @@ public abstract class AbstractBatcher implements Batcher {
       invocationCounter.inc();
       final TimerContext context = addTimer.time();
 
-
-     
-      batch.add(count);
+      // A batch refuses writers once it has been swapped out, in which
+      // case we simply retry against its replacement
+      Batch current;
+      for (;;) {
+        current = batch;
+        if (current.enter()) {
+          try {
+            current.add(count);
+          } finally {
+            current.exit();
+          }
+          break;
+        }
+      }
 
       // If it's submit time and the lock is free, acquire the lock.
       // Submission of the batch should reset the child impl submit state.
       // Though multiple threads can return true on shouldSubmit, only one
       //  thread will pass the tryLock check and acquire the submitLock
-      if (shouldSubmit(batch) && submitLock.tryLock()) {
+      if (shouldSubmit(current) && submitLock.tryLock()) {
         try {
-          Batch copy = batch;
-          batch = new Batch();
-          submit(copy);
+          // another thread may have already swapped this batch out
+          if (current == batch) {
+            batch = new Batch();
+            current.seal();
+            submit(current);
+          }
         } finally {
-          // by this time, submit(copy) above will have reset the the
+          // by this time, submit(current) above will have reset the the
           // shouldSubmit condition
           submitLock.unlock();
         }
@@ -104,35 +119,65 @@ public abstract class AbstractBatcher implements Batcher {
     }
     
 
+    /**
+     * Accumulates counts by counter name. Each distinct counter gets a
+     * single cell whose value is updated atomically, so concurrent adds
+     * only contend when they hit the same counter and allocate nothing
+     * once the counter has been seen.
+     */
     class Batch {
-        private final Map<String,Count> counts;
+        private final ConcurrentMap<String,Cell> counts;
         private final AtomicInteger localCallCounter = new AtomicInteger();
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile boolean sealed;
+        private List<Count> sealedCounts;
 
         Batch() {
-            counts = new HashMap<String, Count>();
+            counts = new ConcurrentHashMap<String, Cell>();
+        }
+
+        /**
+         * Register an in-flight add against this batch
+         * @return false if the batch has been sealed and can no longer be written to
+         */
+        boolean enter() {
+            writers.incrementAndGet();
+            if (sealed) {
+                writers.decrementAndGet();
+                return false;
+            }
+            return true;
         }
 
-        /* copy constructor */
-        Batch(Batch batch) {
-            batch.localCallCounter.set(batch.localCallCounter.get());
-            counts = new HashMap<String, Count>(batch.counts);
+        void exit() {
+            writers.decrementAndGet();
         }
 
-        void clear() {
-          counts.clear();
-          localCallCounter.set(0);
+        /**
+         * Stop accepting writers and wait for the in-flight ones to finish
+         * so that the counts are complete when handed to the submitter
+         */
+        void seal() {
+            sealed = true;
+            while (writers.get() > 0) {
+                Thread.yield();
+            }
         }
 
         void add(Count count) {
             opCount.incrementAndGet();
             localCallCounter.incrementAndGet();
-            Count found = counts.get(count.getCounterName());
-            if ( found != null ) {
-                existingCounterHit.inc();
-                counts.put(found.getCounterName(), found.apply(count));
-            } else {
-                counts.put(count.getCounterName(),count);
+            String counterName = count.getCounterName();
+            Cell found = counts.get(counterName);
+            if ( found == null ) {
+                Cell cell = new Cell(count);
+                found = counts.putIfAbsent(counterName, cell);
+                if ( found == null ) {
+                    return;
+                }
             }
+            existingCounterHit.inc();
+            found.value.addAndGet(count.getValue());
         }
 
         /**
@@ -144,7 +189,17 @@ public abstract class AbstractBatcher implements Batcher {
         }
 
         public Collection<Count> getCounts() {
-            return counts.values();
+            if ( sealedCounts != null ) {
+                return sealedCounts;
+            }
+            List<Count> result = new ArrayList<Count>(counts.size());
+            for ( Cell cell : counts.values() ) {
+                result.add(cell.toCount());
+            }
+            if ( sealed ) {
+                sealedCounts = result;
+            }
+            return result;
         }
 
         /**
@@ -157,4 +212,22 @@ public abstract class AbstractBatcher implements Batcher {
         }
 
     }
+
+    /**
+     * Running total for a single counter
+     */
+    private static class Cell {
+        private final Count template;
+        private final AtomicLong value;
+
+        Cell(Count count) {
+            this.template = count;
+            this.value = new AtomicLong(count.getValue());
+        }
+
+        Count toCount() {
+            return new Count(template.getTableName(), template.getKeyName(),
+                    template.getColumnName(), value.get());
+        }
+    }
 }
@@ -15,21 +15,33 @@
  ******************************************************************************/
 package com.usergrid.count;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.usergrid.count.common.Count;
 import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
 import com.yammer.metrics.core.Timer;
 import com.yammer.metrics.core.TimerContext;
+import com.yammer.metrics.util.RatioGauge;
 
 /**
- * Submits directly to Cassandra for insertion
+ * Submits directly to Cassandra for insertion. Batches are written by a
+ * fixed number of threads through a bounded queue, and the
+ * {@link OverflowPolicy} decides what happens to a batch when that queue is
+ * full.
  * 
  * @author zznate
  */
@@ -37,32 +49,133 @@ public class CassandraSubmitter implements BatchSubmitter {
 	private final Logger log = LoggerFactory
 			.getLogger(CassandraSubmitter.class);
 
-	private final int threadCount = 3;
+	public static final int DEFAULT_THREAD_COUNT = 3;
+	public static final int DEFAULT_QUEUE_DEPTH = 1000;
+
+	/**
+	 * What to do with a batch when the submit queue is full
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Merge the batch into the most recently queued batch that hasn't
+		 * been picked up yet, blocking only if there is none
+		 */
+		COALESCE,
+		/** Block the submitting thread until there is room in the queue */
+		BLOCK,
+		/** Throw a {@link CounterProcessingUnavailableException} */
+		THROW
+	}
+
 	private final CassandraCounterStore cassandraCounterStore;
+	private final OverflowPolicy overflowPolicy;
+	private final ArrayBlockingQueue<Runnable> queue;
+	private final ThreadPoolExecutor executor;
+
+	private volatile PendingBatch lastQueued;
 
-	private final ExecutorService executor = Executors
-			.newFixedThreadPool(threadCount);
 	private final Timer addTimer = Metrics.newTimer(CassandraSubmitter.class,
 			"submit_invocation", TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+	private final Timer queueWaitTimer = Metrics.newTimer(
+			CassandraSubmitter.class, "submit_queue_wait",
+			TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+	private final Counter submittedCounter = Metrics.newCounter(
+			CassandraSubmitter.class, "batches_submitted");
+	private final Counter coalescedCounter = Metrics.newCounter(
+			CassandraSubmitter.class, "batches_coalesced");
+	private final Counter rejectedCounter = Metrics.newCounter(
+			CassandraSubmitter.class, "batches_rejected");
 
 	public CassandraSubmitter(CassandraCounterStore cassandraCounterStore) {
+		this(cassandraCounterStore, DEFAULT_THREAD_COUNT,
+				DEFAULT_QUEUE_DEPTH, OverflowPolicy.COALESCE);
+	}
+
+	public CassandraSubmitter(CassandraCounterStore cassandraCounterStore,
+			int threadCount, int queueDepth, OverflowPolicy overflowPolicy) {
 		this.cassandraCounterStore = cassandraCounterStore;
+		this.overflowPolicy = overflowPolicy;
+		queue = new ArrayBlockingQueue<Runnable>(Math.max(1, queueDepth));
+		executor = new ThreadPoolExecutor(threadCount, threadCount, 0L,
+				TimeUnit.MILLISECONDS, queue,
+				new ThreadPoolExecutor.AbortPolicy());
+
+		Metrics.newGauge(CassandraSubmitter.class, "submit_queue_depth",
+				new Gauge<Integer>() {
+					@Override
+					public Integer value() {
+						return queue.size();
+					}
+				});
+		Metrics.newGauge(CassandraSubmitter.class, "coalesce_ratio",
+				new RatioGauge() {
+					@Override
+					protected double getNumerator() {
+						return coalescedCounter.count();
+					}
+
+					@Override
+					protected double getDenominator() {
+						return submittedCounter.count();
+					}
+				});
 	}
 
 	@Override
 	public Future submit(final AbstractBatcher.Batch batch) {
 		// TODO reconcile this dupped code with the other submitters
-		return executor.submit(new Callable<Object>() {
-			final TimerContext timer = addTimer.time();
-
-			@Override
-			public Object call() throws Exception {
-				cassandraCounterStore.save(batch.getCounts());
-				timer.stop();
-				return true;
+		submittedCounter.inc();
+		PendingBatch pending = new PendingBatch(batch.getCounts());
+		try {
+			executor.execute(pending);
+			lastQueued = pending;
+			return pending;
+		} catch (RejectedExecutionException e) {
+			if (executor.isShutdown()) {
+				throw new CounterProcessingUnavailableException(
+						"CassandraSubmitter has been shut down", e);
+			}
+		}
+
+		switch (overflowPolicy) {
+		case COALESCE:
+			PendingBatch target = lastQueued;
+			if ((target != null) && target.merge(pending)) {
+				coalescedCounter.inc();
+				return target;
 			}
-		});
+			return enqueue(pending);
+		case BLOCK:
+			return enqueue(pending);
+		default:
+			rejectedCounter.inc();
+			throw new CounterProcessingUnavailableException(
+					"counter submit queue is full (" + queue.size()
+							+ " batches pending)");
+		}
+	}
 
+	/**
+	 * Block until there is room for the batch in the queue. The put goes
+	 * around the executor, so if it was shut down meanwhile its threads may
+	 * already be gone and the batch is taken back out and rejected.
+	 */
+	private Future enqueue(PendingBatch pending) {
+		try {
+			queue.put(pending);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			rejectedCounter.inc();
+			throw new CounterProcessingUnavailableException(
+					"interrupted waiting for the counter submit queue", e);
+		}
+		if (executor.isShutdown() && queue.remove(pending)) {
+			rejectedCounter.inc();
+			throw new CounterProcessingUnavailableException(
+					"CassandraSubmitter has been shut down");
+		}
+		lastQueued = pending;
+		return pending;
 	}
 
 	@Override
@@ -70,4 +183,69 @@ public class CassandraSubmitter implements BatchSubmitter {
 		log.warn("Shutting down CassandraSubmitter");
 		executor.shutdown();
 	}
+
+	/**
+	 * A queued write of counts which other batches can be merged into until
+	 * a submitter thread picks it up
+	 */
+	private class PendingBatch extends FutureTask<Object> {
+		private final Map<String, Count> counts;
+		private final long queuedAt = System.nanoTime();
+		private boolean started;
+
+		PendingBatch(Collection<Count> batchCounts) {
+			this(new LinkedHashMap<String, Count>());
+			for (Count count : batchCounts) {
+				add(count);
+			}
+		}
+
+		private PendingBatch(final Map<String, Count> counts) {
+			super(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					TimerContext timer = addTimer.time();
+					try {
+						cassandraCounterStore.save(counts.values());
+					} finally {
+						timer.stop();
+					}
+					return true;
+				}
+			});
+			this.counts = counts;
+		}
+
+		private void add(Count count) {
+			Count found = counts.get(count.getCounterName());
+			if (found != null) {
+				found.apply(count);
+			} else {
+				counts.put(count.getCounterName(), count);
+			}
+		}
+
+		/**
+		 * @return false if this batch is already being written
+		 */
+		synchronized boolean merge(PendingBatch other) {
+			if (started) {
+				return false;
+			}
+			for (Count count : other.counts.values()) {
+				add(count);
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				started = true;
+			}
+			queueWaitTimer.update(System.nanoTime() - queuedAt,
+					TimeUnit.NANOSECONDS);
+			super.run();
+		}
+	}
 }
@@ -46,7 +46,7 @@ public class SimpleBatcher extends AbstractBatcher {
     protected boolean shouldSubmit(Batch batch) {
       if (batchSize == 0) return true;
       int localCallCount = batch.getLocalCallCount();
-      return (localCallCount > 0 && localCallCount % batchSize == 0);
+      return (localCallCount >= batchSize);
     }
 
     protected void submit(Batch batch) {
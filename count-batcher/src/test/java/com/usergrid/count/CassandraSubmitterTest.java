@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.usergrid.count;
+
+import com.usergrid.count.common.Count;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit test for the bounded submit queue of CassandraSubmitter.
+ */
+public class CassandraSubmitterTest {
+
+    @Test
+    public void testCoalesceWhenQueueIsFull() throws Exception {
+        BlockingCounterStore store = new BlockingCounterStore();
+        CassandraSubmitter submitter = new CassandraSubmitter(store, 1, 1,
+                CassandraSubmitter.OverflowPolicy.COALESCE);
+
+        submitter.submit(batch("c1", 1));
+        store.started.await(5, TimeUnit.SECONDS);
+        Future queued = submitter.submit(batch("c1", 2));
+        Future coalesced = submitter.submit(batch("c1", 3));
+        assertSame(queued, coalesced);
+
+        store.release.countDown();
+        coalesced.get(5, TimeUnit.SECONDS);
+        submitter.shutdown();
+
+        assertEquals(2, store.saved.size());
+        assertEquals(1, store.saved.get(1).size());
+        assertEquals(5, store.saved.get(1).get(0).getValue());
+    }
+
+    @Test
+    public void testThrowWhenQueueIsFull() throws Exception {
+        BlockingCounterStore store = new BlockingCounterStore();
+        CassandraSubmitter submitter = new CassandraSubmitter(store, 1, 1,
+                CassandraSubmitter.OverflowPolicy.THROW);
+
+        submitter.submit(batch("c1", 1));
+        store.started.await(5, TimeUnit.SECONDS);
+        submitter.submit(batch("c1", 2));
+        try {
+            submitter.submit(batch("c1", 3));
+            fail("a full queue should reject the batch");
+        } catch (CounterProcessingUnavailableException e) {
+            // expected
+        } finally {
+            store.release.countDown();
+            submitter.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlockedBatchIsNotLostOnShutdown() throws Exception {
+        BlockingCounterStore store = new BlockingCounterStore();
+        final CassandraSubmitter submitter = new CassandraSubmitter(store, 1, 1,
+                CassandraSubmitter.OverflowPolicy.BLOCK);
+
+        submitter.submit(batch("c1", 1));
+        store.started.await(5, TimeUnit.SECONDS);
+        submitter.submit(batch("c1", 2));
+
+        final AtomicReference<Object> outcome = new AtomicReference<Object>();
+        Thread blocked = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    outcome.set(submitter.submit(batch("c1", 3)));
+                } catch (CounterProcessingUnavailableException e) {
+                    outcome.set(e);
+                }
+            }
+        };
+        blocked.start();
+        while (blocked.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+
+        submitter.shutdown();
+        store.release.countDown();
+        blocked.join(5000);
+
+        // either the submit is rejected or the batch is written
+        Object result = outcome.get();
+        if (!(result instanceof CounterProcessingUnavailableException)) {
+            ((Future) result).get(5, TimeUnit.SECONDS);
+            assertEquals(3, store.saved.size());
+        }
+    }
+
+    private AbstractBatcher.Batch batch(String column, long value) {
+        AbstractBatcher.Batch batch = new SimpleBatcher(1).new Batch();
+        batch.add(new Count("Counter", "k1", column, value));
+        return batch;
+    }
+
+    static class BlockingCounterStore extends CassandraCounterStore {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<List<Count>> saved = new ArrayList<List<Count>>();
+
+        BlockingCounterStore() {
+            super(null);
+        }
+
+        @Override
+        public void save(Collection<Count> counts) {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (saved) {
+                saved.add(new ArrayList<Count>(counts));
+            }
+        }
+    }
+}
@@ -19,6 +19,14 @@ import com.usergrid.count.common.Count;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static junit.framework.Assert.assertEquals;
 
 /**
@@ -49,4 +57,54 @@ public class SimpleBatcherTest {
 
     }
 
+    @Test
+    public void testConcurrentAddsAreNotLost() throws Exception {
+        final AtomicLong submitted = new AtomicLong();
+        final SimpleBatcher simpleBatcher = new SimpleBatcher(1);
+        simpleBatcher.setBatchSize(1);
+        simpleBatcher.setBatchSubmitter(new BatchSubmitter() {
+            @Override
+            public Future<?> submit(AbstractBatcher.Batch batch) {
+                for (Count c : batch.getCounts()) {
+                    submitted.addAndGet(c.getValue());
+                }
+                FutureTask<Object> f = new FutureTask<Object>(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return true;
+                    }
+                });
+                f.run();
+                return f;
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        });
+
+        int threads = 8;
+        final int adds = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            final int t = i;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < adds; j++) {
+                        simpleBatcher.add(new Count("Counter", "k1", "c" + (j % 4) + t % 2, 1));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        // flushes whatever is left in the current batch
+        simpleBatcher.add(new Count("Counter", "k1", "c0", 1));
+
+        assertEquals(threads * adds + 1, submitted.get());
+        assertEquals(threads * adds + 1, simpleBatcher.getOpCount());
+    }
+
 }
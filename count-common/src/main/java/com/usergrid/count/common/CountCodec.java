@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.usergrid.count.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of {@link Count} for transport between the
+ * batcher and a remote inserter. Lengths and values are written as
+ * varints, and key and column names carry a one byte type tag so that the
+ * same key and column types come back out.
+ *
+ * A batch is written as a version byte, the number of counts and then
+ * each count in turn. The codec holds no state and is safe to use from
+ * any number of threads.
+ */
+public final class CountCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_UUID = 3;
+    private static final byte TYPE_BYTES = 4;
+
+    private CountCodec() {
+    }
+
+    public static byte[] encode(Count count) {
+        Writer out = new Writer(64);
+        writeCount(out, count);
+        return out.toByteArray();
+    }
+
+    public static Count decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        Count count = readCount(in);
+        in.checkFinished();
+        return count;
+    }
+
+    public static byte[] encodeBatch(Collection<Count> counts) {
+        Writer out = new Writer(16 + counts.size() * 48);
+        out.writeByte(VERSION);
+        out.writeVarLong(counts.size());
+        for (Count count : counts) {
+            writeCount(out, count);
+        }
+        return out.toByteArray();
+    }
+
+    public static List<Count> decodeBatch(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new CountTransportSerDeException("Unsupported batch version " + version);
+        }
+        int size = in.readLength();
+        List<Count> counts = new ArrayList<Count>(Math.min(size, bytes.length));
+        for (int i = 0; i < size; i++) {
+            counts.add(readCount(in));
+        }
+        in.checkFinished();
+        return counts;
+    }
+
+    private static void writeCount(Writer out, Count count) {
+        out.writeString(count.getTableName());
+        writeName(out, count.getKeyName());
+        writeName(out, count.getColumnName());
+        out.writeVarLong(zigzag(count.getValue()));
+    }
+
+    private static Count readCount(Reader in) {
+        String tableName = in.readString();
+        Object keyName = readName(in);
+        Object columnName = readName(in);
+        long value = unzigzag(in.readVarLong());
+        return new Count(tableName, keyName, columnName, value);
+    }
+
+    private static void writeName(Writer out, Object name) {
+        if (name instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeString((String) name);
+        } else if (name instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeVarLong(zigzag((Long) name));
+        } else if (name instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeVarLong(zigzag((Integer) name));
+        } else if (name instanceof UUID) {
+            UUID uuid = (UUID) name;
+            out.writeByte(TYPE_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (name instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) name).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.writeByte(TYPE_BYTES);
+            out.writeBytes(bytes);
+        } else {
+            throw new CountTransportSerDeException("Unsupported name type "
+                    + (name == null ? "null" : name.getClass().getName()));
+        }
+    }
+
+    private static Object readName(Reader in) {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return in.readString();
+            case TYPE_LONG:
+                return unzigzag(in.readVarLong());
+            case TYPE_INTEGER:
+                return (int) unzigzag(in.readVarLong());
+            case TYPE_UUID:
+                return new UUID(in.readLong(), in.readLong());
+            case TYPE_BYTES:
+                return ByteBuffer.wrap(in.readBytes());
+            default:
+                throw new CountTransportSerDeException("Unknown name type " + type);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buffer[position++] = (byte) b;
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buffer[position++] = (byte) v;
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                throw new CountTransportSerDeException("Null string in count");
+            }
+            writeBytes(s.getBytes(UTF8));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private void require(int length) {
+            if (length < 0 || position + length > buffer.length) {
+                throw new CountTransportSerDeException("Truncated count data");
+            }
+        }
+
+        byte readByte() {
+            require(1);
+            return buffer[position++];
+        }
+
+        long readLong() {
+            require(8);
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buffer[position++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new CountTransportSerDeException("Malformed varint");
+        }
+
+        int readLength() {
+            long length = readVarLong();
+            if (length > Integer.MAX_VALUE) {
+                throw new CountTransportSerDeException("Invalid length " + length);
+            }
+            return (int) length;
+        }
+
+        byte[] readBytes() {
+            int length = readLength();
+            require(length);
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        String readString() {
+            int length = readLength();
+            require(length);
+            String s = new String(buffer, position, length, UTF8);
+            position += length;
+            return s;
+        }
+
+        void checkFinished() {
+            if (position != buffer.length) {
+                throw new CountTransportSerDeException((buffer.length - position)
+                        + " trailing bytes after count data");
+            }
+        }
+    }
+}
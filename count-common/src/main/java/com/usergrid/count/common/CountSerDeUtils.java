@@ -22,12 +22,21 @@ import org.codehaus.jackson.map.ObjectMapper;
 import java.io.IOException;
 
 /**
+ * JSON encoding of {@link Count}. See {@link CountCodec} for the more
+ * compact binary encoding.
+ *
  * @author zznate
  */
 public class CountSerDeUtils {
 
+    // mappers are thread safe once configured, so share one across calls
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static {
+        mapper.setVisibility(JsonMethod.CREATOR, JsonAutoDetect.Visibility.ANY);
+    }
+
     public static String serialize(Count count) {
-        ObjectMapper mapper = new ObjectMapper();
         try {
             return mapper.writeValueAsString(count);
         } catch (Exception ex) {
@@ -36,9 +45,6 @@ public class CountSerDeUtils {
     }
 
     public static Count deserialize(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setVisibility(JsonMethod.CREATOR, JsonAutoDetect.Visibility.ANY);
-
         try {
             return mapper.readValue(json, Count.class);
         } catch (IOException e) {
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.usergrid.count.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CountCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        Count count = CountCodec.decode(CountCodec.encode(new Count("Counters", "k1", "c1", 1)));
+        assertEquals("Counters", count.getTableName());
+        assertEquals("k1", count.getKeyName());
+        assertEquals("c1", count.getColumnName());
+        assertEquals(1, count.getValue());
+    }
+
+    @Test
+    public void testMixedTypes() {
+        UUID id = UUID.randomUUID();
+        ByteBuffer key = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+
+        Count count = CountCodec.decode(CountCodec.encode(new Count("Counters", 1, 1349980800000L, -5)));
+        assertEquals(1, count.getKeyName());
+        assertEquals(1349980800000L, count.getColumnName());
+        assertEquals(-5, count.getValue());
+
+        count = CountCodec.decode(CountCodec.encode(new Count("Counters", key, id, Long.MAX_VALUE)));
+        assertEquals(key, count.getKeyName());
+        assertEquals(id, count.getColumnName());
+        assertEquals(Long.MAX_VALUE, count.getValue());
+        assertEquals(new Count("Counters", key, id, 0).getCounterName(), count.getCounterName());
+    }
+
+    @Test
+    public void testBatch() {
+        List<Count> counts = CountCodec.decodeBatch(CountCodec.encodeBatch(Arrays.<Count>asList(
+                new Count("Counters", "k1", "c1", 1),
+                new Count("Counters", "k1", "c2", 2),
+                new Count("Counters", "k2", 7L, 3))));
+        assertEquals(3, counts.size());
+        assertEquals("c2", counts.get(1).getColumnName());
+        assertEquals(7L, counts.get(2).getColumnName());
+        assertEquals(3, counts.get(2).getValue());
+    }
+
+    @Test
+    public void testSmallerThanJson() {
+        Count count = new Count("Counters", "k1", "c1", 1);
+        assertTrue(CountCodec.encode(count).length < CountSerDeUtils.serialize(count).length());
+    }
+
+    @Test
+    public void testTruncated() {
+        byte[] bytes = CountCodec.encode(new Count("Counters", "k1", "c1", 1));
+        try {
+            CountCodec.decode(Arrays.copyOf(bytes, bytes.length - 2));
+            fail("truncated data should not decode");
+        } catch (CountTransportSerDeException e) {
+            // expected
+        }
+    }
+}
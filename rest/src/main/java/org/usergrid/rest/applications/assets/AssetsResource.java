@@ -19,12 +19,17 @@ import org.usergrid.rest.applications.ServiceResource;
 import org.usergrid.rest.security.annotations.RequireApplicationAccess;
 import org.usergrid.services.assets.data.AssetUtils;
 import org.usergrid.services.assets.data.BinaryStore;
-import org.usergrid.utils.StringUtils;
+import org.usergrid.services.assets.data.ByteRange;
+import org.usergrid.utils.ConversionUtils;
+import org.usergrid.utils.UUIDUtils;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -38,6 +43,14 @@ public class AssetsResource extends ServiceResource {
 
   private Logger logger = LoggerFactory.getLogger(AssetsResource.class);
 
+  private static final int PARTIAL_CONTENT = 206;
+  private static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+  private static final String ACCEPT_RANGES = "Accept-Ranges";
+  private static final String CONTENT_RANGE = "Content-Range";
+  private static final String CONTENT_LENGTH = "Content-Length";
+  private static final String BYTES = "bytes";
+
   @Autowired
   private BinaryStore binaryStore;
 
@@ -132,7 +145,10 @@ public class AssetsResource extends ServiceResource {
             new Object[]{assetId, range, modifiedSince});
     EntityManager em = emf.getEntityManager(getApplicationId());
 
-    Asset asset = em.get(assetId, Asset.class);
+    final Asset asset = em.get(assetId, Asset.class);
+    if ( asset == null ) {
+      return Response.status(Response.Status.NOT_FOUND).build();
+    }
 
     // return a 302 if not modified
     Date moded = AssetUtils.fromIfModifiedSince(modifiedSince);
@@ -142,29 +158,80 @@ public class AssetsResource extends ServiceResource {
       }
     }
 
-    InputStream is;
-    if ( StringUtils.isBlank(range) ) {
-      is = binaryStore.read(getApplicationId(), asset);
+    final UUID applicationId = getApplicationId();
+    String contentType = asset.getProperty(AssetUtils.CONTENT_TYPE) != null ?
+            asset.getProperty(AssetUtils.CONTENT_TYPE).toString() : MediaType.APPLICATION_OCTET_STREAM;
+    final long size = ConversionUtils.getLong(asset.getProperty(AssetUtils.CONTENT_LENGTH));
+
+    Response.ResponseBuilder responseBuilder;
+    if ( size <= 0 ) {
+      // without the size we can't work out ranges, send it all as before
+      InputStream is = binaryStore.read(applicationId, asset);
+      if ( is == null ) {
+        return Response.status(Response.Status.NOT_FOUND).build();
+      }
+      responseBuilder = Response.ok(is).type(contentType);
     } else {
-      // TODO range parser
-      is = binaryStore.read(getApplicationId(), asset);
-    }
-    if ( is == null ) {
-      return Response.status(Response.Status.NOT_FOUND).build();
+      // the bytes are streamed after the headers are sent, too late to
+      // turn a missing file into a 404
+      if ( !binaryStore.exists(applicationId, asset) ) {
+        return Response.status(Response.Status.NOT_FOUND).build();
+      }
+      final List<ByteRange> ranges = ByteRange.parse(range, size);
+      if ( ranges == null ) {
+        responseBuilder = Response.ok(new StreamingOutput() {
+          @Override
+          public void write(OutputStream output) throws IOException {
+            binaryStore.read(applicationId, asset, 0, size, output);
+          }
+        }).type(contentType).header(CONTENT_LENGTH, size);
+      } else if ( ranges.isEmpty() ) {
+        return Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(ACCEPT_RANGES, BYTES)
+                .header(CONTENT_RANGE, "bytes */" + size).build();
+      } else if ( ranges.size() == 1 ) {
+        final ByteRange byteRange = ranges.get(0);
+        logger.info("Sending Content-Range: {}", byteRange.toContentRange(size));
+        responseBuilder = Response.status(PARTIAL_CONTENT).entity(new StreamingOutput() {
+          @Override
+          public void write(OutputStream output) throws IOException {
+            binaryStore.read(applicationId, asset, byteRange.getFirst(), byteRange.getLength(), output);
+          }
+        }).type(contentType)
+                .header(CONTENT_RANGE, byteRange.toContentRange(size))
+                .header(CONTENT_LENGTH, byteRange.getLength());
+      } else {
+        final String boundary = UUIDUtils.newTimeUUID().toString();
+        final byte[][] partHeaders = new byte[ranges.size()][];
+        long length = 0;
+        for ( int i = 0; i < ranges.size(); i++ ) {
+          partHeaders[i] = ("\r\n--" + boundary + "\r\n" + "Content-Type: " + contentType + "\r\n"
+                  + "Content-Range: " + ranges.get(i).toContentRange(size) + "\r\n\r\n").getBytes("US-ASCII");
+          length += partHeaders[i].length + ranges.get(i).getLength();
+        }
+        final byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes("US-ASCII");
+        length += end.length;
+
+        responseBuilder = Response.status(PARTIAL_CONTENT).entity(new StreamingOutput() {
+          @Override
+          public void write(OutputStream output) throws IOException {
+            for ( int i = 0; i < ranges.size(); i++ ) {
+              output.write(partHeaders[i]);
+              binaryStore.read(applicationId, asset, ranges.get(i).getFirst(), ranges.get(i).getLength(), output);
+            }
+            output.write(end);
+          }
+        }).type("multipart/byteranges; boundary=" + boundary)
+                .header(CONTENT_LENGTH, length);
+      }
     }
 
-    logger.info("AssetResource.findAsset read inputStream, composing response");
-    Response.ResponseBuilder responseBuilder = Response.ok(is)
-            .type(asset.getProperty("content-type").toString())
+    logger.info("AssetResource.findAsset composing response");
+    responseBuilder.header(ACCEPT_RANGES, BYTES)
             .lastModified(new Date(asset.getModified()));
     if ( asset.getProperty(AssetUtils.E_TAG) != null ) {
       responseBuilder.tag((String)asset.getProperty(AssetUtils.E_TAG));
     }
-    if ( StringUtils.isNotBlank(range)) {
-      logger.info("Range header was not blank, sending back Content-Range");
-      // TODO build content range header if needed
-      //responseBuilder.header("Content-Range", );
-    }
     return responseBuilder.build();
   }
 
@@ -2,9 +2,11 @@ package org.usergrid.rest.applications.assets;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.usergrid.utils.MapUtils.hashMap;
 
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.UUID;
 
@@ -18,6 +20,8 @@ import org.slf4j.LoggerFactory;
 import org.usergrid.rest.AbstractRestTest;
 import org.usergrid.rest.applications.utils.UserRepo;
 
+import com.sun.jersey.api.client.ClientResponse;
+
 /**
  * @author zznate
  */
@@ -67,5 +71,77 @@ public class AssetResourceTest extends AbstractRestTest {
     assertEquals(id.toString(), idNode.getTextValue());
   }
 
+  @Test
+  public void verifyRanges() throws Exception {
+    UserRepo.INSTANCE.load(resource(), access_token);
+
+    Map<String, String> payload = hashMap("path", "my/ranged/path")
+            .map("name", "rangedasset");
+
+    JsonNode node = resource().path("/test-organization/test-app/assets")
+            .queryParam("access_token", access_token)
+            .accept(MediaType.APPLICATION_JSON)
+            .type(MediaType.APPLICATION_JSON_TYPE)
+            .post(JsonNode.class, payload);
+    UUID id = UUID.fromString(node.get("entities").get(0).get("uuid").getTextValue());
+
+    byte[] data = IOUtils.toByteArray(this.getClass().getResourceAsStream("/cassandra_eye.jpg"));
+    resource().path("/test-organization/test-app/assets/" + id.toString() + "/data")
+                .queryParam("access_token", access_token)
+                .type(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+                .put(data);
+
+    ClientResponse response = resource().path("/test-organization/test-app/assets/" + id.toString() + "/data")
+                    .queryParam("access_token", access_token)
+                    .header("Range", "bytes=100-199")
+                    .get(ClientResponse.class);
+    assertEquals(206, response.getStatus());
+    assertEquals("bytes 100-199/7979", response.getHeaders().getFirst("Content-Range"));
+    byte[] foundData = IOUtils.toByteArray(response.getEntityInputStream());
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, 200), foundData));
+
+    response = resource().path("/test-organization/test-app/assets/" + id.toString() + "/data")
+                    .queryParam("access_token", access_token)
+                    .header("Range", "bytes=0-9,-10")
+                    .get(ClientResponse.class);
+    assertEquals(206, response.getStatus());
+    assertTrue(response.getType().toString().startsWith("multipart/byteranges"));
+
+    response = resource().path("/test-organization/test-app/assets/" + id.toString() + "/data")
+                    .queryParam("access_token", access_token)
+                    .header("Range", "bytes=8000-")
+                    .get(ClientResponse.class);
+    assertEquals(416, response.getStatus());
+    assertEquals("bytes */7979", response.getHeaders().getFirst("Content-Range"));
+  }
+
+  @Test
+  public void missingDataNotFound() throws Exception {
+    UserRepo.INSTANCE.load(resource(), access_token);
+
+    // says it has data, but none was ever uploaded
+    Map<String, String> payload = hashMap("path", "my/missing/path")
+            .map("name", "missingasset")
+            .map("content-length", "7979");
+
+    JsonNode node = resource().path("/test-organization/test-app/assets")
+            .queryParam("access_token", access_token)
+            .accept(MediaType.APPLICATION_JSON)
+            .type(MediaType.APPLICATION_JSON_TYPE)
+            .post(JsonNode.class, payload);
+    UUID id = UUID.fromString(node.get("entities").get(0).get("uuid").getTextValue());
+
+    ClientResponse response = resource().path("/test-organization/test-app/assets/" + id.toString() + "/data")
+                    .queryParam("access_token", access_token)
+                    .get(ClientResponse.class);
+    assertEquals(404, response.getStatus());
+
+    response = resource().path("/test-organization/test-app/assets/" + id.toString() + "/data")
+                    .queryParam("access_token", access_token)
+                    .header("Range", "bytes=100-199")
+                    .get(ClientResponse.class);
+    assertEquals(404, response.getStatus());
+  }
+
 
 }
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import java.util.UUID;
+
+import org.usergrid.security.tokens.TokenInfo;
+import org.usergrid.security.tokens.cassandra.TokenCache;
+
+/**
+ * Wraps a node local {@link TokenCache} and broadcasts invalidations to every
+ * node in the Hazelcast cluster, so a token revoked on one node stops working
+ * on all of them
+ * 
+ */
+public class HazelcastTokenCache extends
+        HazelcastInvalidatingCache<TokenCache, UUID> implements TokenCache {
+
+    public static final String DEFAULT_TOPIC = "usergrid.token.cache";
+
+    public HazelcastTokenCache(TokenCache delegate) {
+        super(delegate, DEFAULT_TOPIC);
+    }
+
+    @Override
+    public TokenInfo get(UUID tokenId) {
+        return delegate.get(tokenId);
+    }
+
+    @Override
+    public void put(TokenInfo tokenInfo, long expires) {
+        delegate.put(tokenInfo, expires);
+    }
+
+    @Override
+    public void update(TokenInfo tokenInfo) {
+        delegate.update(tokenInfo);
+    }
+
+    @Override
+    public void invalidate(UUID tokenId) {
+        delegate.invalidate(tokenId);
+        publish(tokenId);
+    }
+
+    @Override
+    protected void invalidateLocally(UUID tokenId) {
+        delegate.invalidate(tokenId);
+    }
+
+}
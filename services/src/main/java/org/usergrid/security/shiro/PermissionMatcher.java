@@ -0,0 +1,728 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.security.shiro;
+
+import static org.usergrid.security.shiro.CustomPermission.isPath;
+import static org.usergrid.security.shiro.CustomPermission.makePath;
+import static org.usergrid.security.shiro.CustomPermission.matcher;
+import static org.usergrid.security.shiro.CustomPermission.normalizeIfPath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.shiro.authz.Permission;
+import org.springframework.util.StringUtils;
+import org.usergrid.management.UserInfo;
+
+/**
+ * The permissions granted to a subject, compiled once so checks don't have
+ * to resolve and rescan every grant.
+ *
+ * Grants are indexed by their domain ("applications", "organizations", ...)
+ * and then by their target (the application or organization id). A check
+ * only looks at the grants under the requested domain and target, and the
+ * few grants using wildcards or paths there. Each grant has its paths
+ * normalized, its patterns split into segments, and its ${user} and /me/
+ * substitutions made for the subject's user up front, so checking it
+ * compares the requested values where they lie without building any
+ * strings.
+ *
+ * A grant implies a permission exactly when {@link CustomPermission#implies}
+ * would, for the same user.
+ */
+public class PermissionMatcher {
+
+	private static final String WILDCARD = "*";
+	private static final String USER = "${user}";
+	private static final String ME = "/me/";
+	private static final String APPLICATIONS = "applications";
+
+	/**
+	 * What makePath turns a wildcard into
+	 */
+	private static final String ANY_PATH = "/**";
+
+	private static final int DOMAIN = 0;
+	private static final int TARGET = 2;
+
+	/**
+	 * The bounds of the segments of the path being matched, reused by each
+	 * thread's checks
+	 */
+	private static final ThreadLocal<int[]> SEGMENTS = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[32];
+		}
+	};
+
+	private final String username;
+	private final String uuid;
+
+	/**
+	 * Grants whose domain can't be looked up directly
+	 */
+	private final List<Grant> anyDomain = new ArrayList<Grant>();
+
+	private final Map<String, Domain> domains = new TreeMap<String, Domain>(
+			String.CASE_INSENSITIVE_ORDER);
+
+	/**
+	 * Granted permissions that aren't custom permissions, checked as is
+	 */
+	private final List<Permission> others = new ArrayList<Permission>();
+
+	/**
+	 * @param permissions
+	 *            the granted permissions
+	 * @param user
+	 *            the user ${user} and /me/ stand for, or null
+	 */
+	public PermissionMatcher(Collection<Permission> permissions, UserInfo user) {
+		username = user != null ? user.getUsername() : null;
+		uuid = user != null ? user.getUuid().toString() : null;
+
+		if (permissions == null) {
+			return;
+		}
+
+		for (Permission permission : permissions) {
+			if (!(permission instanceof CustomPermission)) {
+				others.add(permission);
+				continue;
+			}
+
+			Grant grant = new Grant(
+					((CustomPermission) permission).getParts(), user);
+
+			String domainKey = key(grant.parts, DOMAIN);
+			if (domainKey == null) {
+				anyDomain.add(grant);
+				continue;
+			}
+
+			// a grant is found by its value with or without the leading
+			// slash, the same as makePath would compare it
+			for (String key : indexKeys(domainKey)) {
+				Domain domain = domains.get(key);
+				if (domain == null) {
+					domain = new Domain();
+					domains.put(key, domain);
+				}
+				domain.add(grant);
+			}
+		}
+	}
+
+	/**
+	 * @param user
+	 * @return true if ${user} and /me/ were substituted for this user
+	 */
+	public boolean isFor(UserInfo user) {
+		if (user == null) {
+			return username == null;
+		}
+		return user.getUsername().equals(username)
+				&& user.getUuid().toString().equals(uuid);
+	}
+
+	/**
+	 * @param permission
+	 * @return true if a granted permission implies the permission
+	 */
+	public boolean implies(Permission permission) {
+		for (int i = 0; i < others.size(); i++) {
+			if (others.get(i).implies(permission)) {
+				return true;
+			}
+		}
+
+		if (!(permission instanceof CustomPermission)) {
+			return false;
+		}
+
+		List<Set<String>> parts = ((CustomPermission) permission).getParts();
+		boolean app = (parts.size() > 0) && parts.get(0).contains(APPLICATIONS);
+
+		if (implies(anyDomain, parts, app)) {
+			return true;
+		}
+
+		if (parts.size() <= DOMAIN) {
+			// only grants of nothing but wildcards imply nothing
+			return false;
+		}
+
+		// a grant must match every requested value, so it's enough to look
+		// under the first one
+		Domain domain = domains.get(first(parts.get(DOMAIN)));
+		if (domain == null) {
+			return false;
+		}
+
+		if (implies(domain.anyTarget, parts, app)) {
+			return true;
+		}
+
+		if (parts.size() <= TARGET) {
+			return implies(domain.anyTargeted, parts, app);
+		}
+
+		return implies(domain.targets.get(first(parts.get(TARGET))), parts,
+				app);
+	}
+
+	private static boolean implies(List<Grant> grants,
+			List<Set<String>> parts, boolean app) {
+		if (grants == null) {
+			return false;
+		}
+		for (int i = 0; i < grants.size(); i++) {
+			if (grants.get(i).implies(parts, app)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String first(Set<String> part) {
+		return part.isEmpty() ? "" : part.iterator().next();
+	}
+
+	/**
+	 * The value a grant part is indexed by, or null if the part has to be
+	 * checked against every request because it has several values,
+	 * wildcards, or substitutions
+	 */
+	private static String key(Part[] parts, int i) {
+		if (parts.length <= i) {
+			return null;
+		}
+		Part part = parts[i];
+		if (part.wildcard || (part.values.length != 1)) {
+			return null;
+		}
+		Value value = part.values[0];
+		if ((value.alternatives.length != 1) || value.alternatives[0].pattern
+				|| value.alternatives[0].pathPattern) {
+			return null;
+		}
+		return value.alternatives[0].value;
+	}
+
+	/**
+	 * Plain values and paths compare equal once both are made paths, so a
+	 * value is indexed as a path and as that path without its leading slash,
+	 * which is what a requested value that makePath would add the slash to
+	 * looks like
+	 */
+	private static String[] indexKeys(String value) {
+		String path = makePath(value);
+		return new String[] { path, path.substring(1) };
+	}
+
+	private static class Domain {
+		final List<Grant> anyTarget = new ArrayList<Grant>();
+		final List<Grant> anyTargeted = new ArrayList<Grant>();
+		final Map<String, List<Grant>> targets = new TreeMap<String, List<Grant>>(
+				String.CASE_INSENSITIVE_ORDER);
+
+		void add(Grant grant) {
+			String targetKey = key(grant.parts, TARGET);
+			if (targetKey == null) {
+				anyTarget.add(grant);
+				return;
+			}
+
+			anyTargeted.add(grant);
+			for (String key : indexKeys(targetKey)) {
+				List<Grant> grants = targets.get(key);
+				if (grants == null) {
+					grants = new ArrayList<Grant>();
+					targets.put(key, grants);
+				}
+				grants.add(grant);
+			}
+		}
+	}
+
+	/**
+	 * A granted permission
+	 */
+	private static class Grant {
+
+		final Part[] parts;
+
+		/**
+		 * The parts after the target as they're compared for application
+		 * permissions, where every value is a path
+		 */
+		final Part[] appParts;
+
+		Grant(List<Set<String>> parts, UserInfo user) {
+			this.parts = new Part[parts.size()];
+			appParts = new Part[parts.size()];
+			for (int i = 0; i < parts.size(); i++) {
+				this.parts[i] = new Part(parts.get(i), false, user);
+				appParts[i] = i > TARGET ? new Part(parts.get(i), true, user)
+						: this.parts[i];
+			}
+		}
+
+		boolean implies(List<Set<String>> requested, boolean app) {
+			int i = 0;
+			for (; i < requested.size(); i++) {
+				// everything after this permission's parts is implied
+				if (i >= parts.length) {
+					return true;
+				}
+				Part part = app ? appParts[i] : parts[i];
+				if (!part.wildcard
+						&& !part.containsAll(requested.get(i), app
+								&& (i > TARGET))) {
+					return false;
+				}
+			}
+
+			// remaining parts of this permission must all be wildcards
+			for (; i < parts.length; i++) {
+				if (!parts[i].wildcard) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	private static class Part {
+
+		final boolean wildcard;
+		final Value[] values;
+
+		Part(Set<String> part, boolean paths, UserInfo user) {
+			values = new Value[part.size()];
+			boolean wildcard = false;
+			int i = 0;
+			for (String value : part) {
+				if (paths) {
+					value = makePath(value);
+				}
+				if (WILDCARD.equals(value)) {
+					wildcard = true;
+				}
+				values[i++] = new Value(value, user);
+			}
+			this.wildcard = wildcard;
+		}
+
+		boolean containsAll(Set<String> requested, boolean paths) {
+			for (String r : requested) {
+				if (!contains(r, paths)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		boolean contains(String requested, boolean paths) {
+			for (Value value : values) {
+				for (Alternative alternative : value.alternatives) {
+					if (alternative.matches(requested, paths)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A granted value with its ${user} and /me/ substitutions
+	 */
+	private static class Value {
+
+		final Alternative[] alternatives;
+
+		Value(String value, UserInfo user) {
+			List<Alternative> alternatives = new ArrayList<Alternative>();
+			expand(value, user, alternatives);
+			this.alternatives = alternatives
+					.toArray(new Alternative[alternatives.size()]);
+		}
+
+		private static void expand(String value, UserInfo user,
+				List<Alternative> alternatives) {
+			if (user != null) {
+				if (value.contains(USER)) {
+					expand(value.replace(USER, user.getUsername()), user,
+							alternatives);
+					expand(value.replace(USER, user.getUuid().toString()),
+							user, alternatives);
+				} else if (value.contains(ME)) {
+					expand(value.replace(ME, "/" + user.getUsername() + "/"),
+							user, alternatives);
+					expand(value.replace(ME, "/" + user.getUuid() + "/"), user,
+							alternatives);
+				}
+			}
+			alternatives.add(new Alternative(value));
+		}
+	}
+
+	/**
+	 * One way a granted value can match, with both the forms it's compared
+	 * in worked out
+	 */
+	private static class Alternative {
+
+		final String value;
+		final boolean pattern;
+		final PathPattern valuePattern;
+
+		final boolean path;
+		final String pathValue;
+		final boolean pathPattern;
+		final PathPattern pathValuePattern;
+
+		Alternative(String value) {
+			this.value = value;
+			pattern = matcher.isPattern(value);
+			valuePattern = pattern ? new PathPattern(value) : null;
+
+			path = isPath(value);
+			pathValue = makePath(value);
+			pathPattern = matcher.isPattern(pathValue);
+			pathValuePattern = pathPattern ? new PathPattern(pathValue) : null;
+		}
+
+		/**
+		 * Compares the same way CustomPermission does, paths are compared as
+		 * paths when either side is one
+		 */
+		boolean matches(String requested, boolean paths) {
+			if (paths || path || isPath(requested)) {
+				if (pathPattern) {
+					return pathValuePattern.matchesPath(requested);
+				}
+				return equalsPath(requested);
+			}
+
+			if (pattern) {
+				// neither side has a slash, so normalizing changes nothing
+				return valuePattern.matches(requested);
+			}
+			return value.equalsIgnoreCase(requested);
+		}
+
+		/**
+		 * @return true if makePath of the requested value equals the path
+		 */
+		private boolean equalsPath(String requested) {
+			if (WILDCARD.equals(requested)) {
+				return pathValue.equalsIgnoreCase(ANY_PATH);
+			}
+			if (requested.startsWith("/")) {
+				return pathValue.equalsIgnoreCase(requested);
+			}
+			return (pathValue.length() == requested.length() + 1)
+					&& pathValue.regionMatches(true, 1, requested, 0,
+							requested.length());
+		}
+	}
+
+	/**
+	 * An ant pattern split into segments the way AntPathMatcher splits it,
+	 * matched against the segments of a path found in place. Matches exactly
+	 * when AntPathMatcher would, and leaves the cases this doesn't handle,
+	 * URI template variables and line breaks, to AntPathMatcher.
+	 */
+	private static class PathPattern {
+
+		final String pattern;
+		final String[] segments;
+		final boolean[] globs;
+		final boolean[] anyDirectories;
+		final boolean startsWithSlash;
+		final boolean endsWithSlash;
+		final boolean normalizedEndsWithSlash;
+		final boolean template;
+
+		PathPattern(String pattern) {
+			this.pattern = pattern;
+			segments = StringUtils.tokenizeToStringArray(pattern, "/");
+			globs = new boolean[segments.length];
+			anyDirectories = new boolean[segments.length];
+			for (int i = 0; i < segments.length; i++) {
+				globs[i] = matcher.isPattern(segments[i]);
+				anyDirectories[i] = "**".equals(segments[i]);
+			}
+			startsWithSlash = pattern.startsWith("/");
+			endsWithSlash = pattern.endsWith("/");
+			normalizedEndsWithSlash = normalizeIfPath(pattern).endsWith("/");
+			template = pattern.indexOf('{') != -1;
+		}
+
+		/**
+		 * Match a value neither side of which has a slash
+		 */
+		boolean matches(String requested) {
+			if (template || hasLineBreak(requested)) {
+				return matcher.match(pattern, requested);
+			}
+			return matches(requested, requested.startsWith("/"),
+					requested.endsWith("/"), endsWithSlash);
+		}
+
+		/**
+		 * Match makePath of the requested value, as is and normalized
+		 */
+		boolean matchesPath(String requested) {
+			if (template || hasLineBreak(requested)) {
+				String path = makePath(requested);
+				return matcher.match(pattern, path)
+						|| matcher.match(normalizeIfPath(pattern),
+								normalizeIfPath(path));
+			}
+
+			// makePath only ever adds a leading slash, which doesn't change
+			// the segments
+			String path = WILDCARD.equals(requested) ? ANY_PATH : requested;
+			boolean pathEndsWithSlash = (path.length() == 0)
+					|| path.endsWith("/");
+			boolean normalizedPathEndsWithSlash = pathEndsWithSlash
+					|| !path.endsWith("*");
+
+			return matches(path, true, pathEndsWithSlash, endsWithSlash)
+					|| matches(path, true, normalizedPathEndsWithSlash,
+							normalizedEndsWithSlash);
+		}
+
+		/**
+		 * AntPathMatcher.doMatch for a full match, with the path's segments
+		 * given by their bounds
+		 */
+		private boolean matches(String path, boolean pathStartsWithSlash,
+				boolean pathEndsWithSlash, boolean patternEndsWithSlash) {
+			if (pathStartsWithSlash != startsWithSlash) {
+				return false;
+			}
+
+			int[] bounds = SEGMENTS.get();
+			int count = split(path, bounds);
+			if (count < 0) {
+				bounds = new int[path.length() + 2];
+				SEGMENTS.set(bounds);
+				count = split(path, bounds);
+			}
+
+			int pattStart = 0;
+			int pattEnd = segments.length - 1;
+			int pathStart = 0;
+			int pathEnd = count - 1;
+
+			// match all segments up to the first **
+			while ((pattStart <= pattEnd) && (pathStart <= pathEnd)) {
+				if (anyDirectories[pattStart]) {
+					break;
+				}
+				if (!matches(pattStart, path, bounds, pathStart)) {
+					return false;
+				}
+				pattStart++;
+				pathStart++;
+			}
+
+			if (pathStart > pathEnd) {
+				// the path is used up, only match if the rest of the pattern
+				// is * or **
+				if (pattStart > pattEnd) {
+					return patternEndsWithSlash ? pathEndsWithSlash
+							: !pathEndsWithSlash;
+				}
+				if ((pattStart == pattEnd) && WILDCARD.equals(segments[pattStart])
+						&& pathEndsWithSlash) {
+					return true;
+				}
+				return anyDirectories(pattStart, pattEnd);
+			}
+			if (pattStart > pattEnd) {
+				// the pattern is used up, but not the path
+				return false;
+			}
+
+			// match all segments after the last **
+			while ((pattStart <= pattEnd) && (pathStart <= pathEnd)) {
+				if (anyDirectories[pattEnd]) {
+					break;
+				}
+				if (!matches(pattEnd, path, bounds, pathEnd)) {
+					return false;
+				}
+				pattEnd--;
+				pathEnd--;
+			}
+			if (pathStart > pathEnd) {
+				return anyDirectories(pattStart, pattEnd);
+			}
+
+			// find the segments between each pair of ** in what's left of
+			// the path
+			while ((pattStart != pattEnd) && (pathStart <= pathEnd)) {
+				int next = -1;
+				for (int i = pattStart + 1; i <= pattEnd; i++) {
+					if (anyDirectories[i]) {
+						next = i;
+						break;
+					}
+				}
+				if (next == pattStart + 1) {
+					// **/**, skip one
+					pattStart++;
+					continue;
+				}
+
+				int pattLength = next - pattStart - 1;
+				int pathLength = pathEnd - pathStart + 1;
+				int found = -1;
+				search: for (int i = 0; i <= pathLength - pattLength; i++) {
+					for (int j = 0; j < pattLength; j++) {
+						if (!matches(pattStart + j + 1, path, bounds, pathStart
+								+ i + j)) {
+							continue search;
+						}
+					}
+					found = pathStart + i;
+					break;
+				}
+				if (found == -1) {
+					return false;
+				}
+
+				pattStart = next;
+				pathStart = found + pattLength;
+			}
+
+			return anyDirectories(pattStart, pattEnd);
+		}
+
+		private boolean anyDirectories(int start, int end) {
+			for (int i = start; i <= end; i++) {
+				if (!anyDirectories[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Match a pattern segment against a path segment, case sensitive
+		 * like AntPathMatcher
+		 */
+		private boolean matches(int segment, String path, int[] bounds, int i) {
+			int start = bounds[2 * i];
+			int end = bounds[(2 * i) + 1];
+			String glob = segments[segment];
+			if (!globs[segment]) {
+				return (glob.length() == end - start)
+						&& path.regionMatches(start, glob, 0, glob.length());
+			}
+
+			// * matches any run of characters, ? any one, backtracking to
+			// the last * on a mismatch
+			int g = 0;
+			int star = -1;
+			int mark = start;
+			while (start < end) {
+				char c = g < glob.length() ? glob.charAt(g) : '/';
+				if (c == '*') {
+					star = g++;
+					mark = start;
+				} else if ((c == '?') || (c == path.charAt(start))) {
+					g++;
+					start++;
+				} else if (star >= 0) {
+					g = star + 1;
+					start = ++mark;
+				} else {
+					return false;
+				}
+			}
+			while ((g < glob.length()) && (glob.charAt(g) == '*')) {
+				g++;
+			}
+			return g == glob.length();
+		}
+
+		/**
+		 * Find the bounds of the segments of a path the way
+		 * StringUtils.tokenizeToStringArray does, trimmed and without empty
+		 * ones
+		 *
+		 * @return the number of segments, or -1 if there are too many for
+		 *         the bounds
+		 */
+		private static int split(String path, int[] bounds) {
+			int count = 0;
+			int length = path.length();
+			int i = 0;
+			while (i < length) {
+				while ((i < length) && (path.charAt(i) == '/')) {
+					i++;
+				}
+				int start = i;
+				while ((i < length) && (path.charAt(i) != '/')) {
+					i++;
+				}
+				int end = i;
+				while ((start < end) && (path.charAt(start) <= ' ')) {
+					start++;
+				}
+				while ((end > start) && (path.charAt(end - 1) <= ' ')) {
+					end--;
+				}
+				if (start < end) {
+					if ((2 * count) + 1 >= bounds.length) {
+						return -1;
+					}
+					bounds[2 * count] = start;
+					bounds[(2 * count) + 1] = end;
+					count++;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * AntPathMatcher compiles segments to regular expressions, where
+		 * wildcards don't match line terminators
+		 */
+		private static boolean hasLineBreak(String path) {
+			for (int i = 0; i < path.length(); i++) {
+				char c = path.charAt(i);
+				if ((c == '\n') || (c == '\r') || (c == '\u0085')
+						|| (c == '\u2028') || (c == '\u2029')) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -23,8 +23,15 @@ import static org.usergrid.security.shiro.utils.SubjectUtils.getPermissionFromPa
 import static org.usergrid.utils.StringUtils.stringOrSubstringAfterFirst;
 import static org.usergrid.utils.StringUtils.stringOrSubstringBeforeFirst;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
 
@@ -38,6 +45,7 @@ import org.apache.shiro.authc.SimpleAuthenticationInfo;
 import org.apache.shiro.authc.credential.AllowAllCredentialsMatcher;
 import org.apache.shiro.authc.credential.CredentialsMatcher;
 import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
 import org.apache.shiro.authz.permission.PermissionResolver;
 import org.apache.shiro.cache.CacheManager;
@@ -60,6 +68,7 @@ import org.usergrid.persistence.EntityManagerFactory;
 import org.usergrid.persistence.Results;
 import org.usergrid.persistence.Results.Level;
 import org.usergrid.persistence.SimpleEntityRef;
+import org.usergrid.persistence.cassandra.AuthorizationCache;
 import org.usergrid.persistence.entities.Role;
 import org.usergrid.persistence.entities.User;
 import org.usergrid.security.shiro.credentials.AccessTokenCredentials;
@@ -93,6 +102,7 @@ public class Realm extends AuthorizingRealm {
     private EntityManagerFactory emf;
     private ManagementService management;
     private TokenService tokens;
+    private AuthorizationCache authorizationCache;
 
     
     @Value("${"+PROPERTIES_SYSADMIN_LOGIN_ALLOWED+"}")
@@ -154,6 +164,11 @@ public class Realm extends AuthorizingRealm {
         this.tokens = tokens;
     }
 
+    @Autowired(required = false)
+    public void setAuthorizationCache(AuthorizationCache authorizationCache) {
+        this.authorizationCache = authorizationCache;
+    }
+
     @Override
     protected AuthenticationInfo doGetAuthenticationInfo(
             AuthenticationToken token) throws AuthenticationException {
@@ -393,69 +408,16 @@ public class Realm extends AuthorizingRealm {
                  * "/users/${user}/following/user/*"));
                  */
 
-                EntityManager em = emf.getEntityManager(applicationId);
-                try {
-                    String appName = (String) em.getProperty(
-                            em.getApplicationRef(), "name");
-                    applicationSet.put(applicationId, appName);
-                    application = new ApplicationInfo(applicationId, appName);
-                } catch (Exception e) {
-                }
-
-                try {
-                    Set<String> permissions = em.getRolePermissions("default");
-                    grant(info, principal, applicationId, permissions);
-                } catch (Exception e) {
-                    logger.error("Unable to get user default role permissions",
-                            e);
-                }
-
                 UserInfo user = ((ApplicationUserPrincipal) principal)
                         .getUser();
-                try {
-                    Set<String> permissions = em.getUserPermissions(user
-                            .getUuid());
-                    grant(info, principal, applicationId, permissions);
-                } catch (Exception e) {
-                    logger.error("Unable to get user permissions", e);
-                }
-
-                try {
-                    Set<String> rolenames = em.getUserRoles(user.getUuid());
-                    grantAppRoles(info, em, applicationId, token, principal, rolenames);
-                } catch (Exception e) {
-                    logger.error("Unable to get user role permissions", e);
-                }
-
-                try {
-                    //TODO TN.  This is woefully inefficient, but temporary.  Introduce cassandra backed shiro caching so this only ever happens once.
-                    //See USERGRID-779 for details
-                    Results r = em.getCollection(new SimpleEntityRef(
-                            User.ENTITY_TYPE, user.getUuid()), "groups", null,
-                            1000, Level.IDS, false);
-                    if (r != null) {
-                        
-                        Set<String> rolenames = new HashSet<String>();
-                        
-                        for (UUID groupId : r.getIds()) {
-                          
-                            Results roleResults = em.getCollection(new SimpleEntityRef(
-                                    Role.ENTITY_TYPE, groupId), "roles", null,
-                                    1000, Level.CORE_PROPERTIES, false);
-                            
-                            for(Entity entity : roleResults.getEntities()){
-                                rolenames.add(entity.getName());
-                            }
-
-                        }
-                        
-                        
-                        grantAppRoles(info, em, applicationId, token, principal, rolenames);
-                    }
-
-                } catch (Exception e) {
-                    logger.error("Unable to get user group role permissions", e);
+                ApplicationGrants grants = getApplicationGrants(applicationId,
+                        user.getUuid());
+                if (grants.applicationName != null) {
+                    applicationSet.put(applicationId, grants.applicationName);
+                    application = new ApplicationInfo(applicationId,
+                            grants.applicationName);
                 }
+                grants.grant(info, principal, applicationId, token);
 
             } else if (principal instanceof ApplicationGuestPrincipal) {
                 role(info, principal, ROLE_APPLICATION_USER);
@@ -463,25 +425,18 @@ public class Realm extends AuthorizingRealm {
                 UUID applicationId = ((ApplicationGuestPrincipal) principal)
                         .getApplicationId();
 
-                EntityManager em = emf.getEntityManager(applicationId);
-                try {
-                    String appName = (String) em.getProperty(
-                            em.getApplicationRef(), "name");
-                    applicationSet.put(applicationId, appName);
-                    application = new ApplicationInfo(applicationId, appName);
-                } catch (Exception e) {
+                ApplicationGrants grants = getApplicationGrants(applicationId,
+                        null);
+                if (grants.applicationName != null) {
+                    applicationSet.put(applicationId, grants.applicationName);
+                    application = new ApplicationInfo(applicationId,
+                            grants.applicationName);
                 }
 
                 grant(info, principal,
                         getPermissionFromPath(applicationId, "access"));
 
-                try {
-                    Set<String> permissions = em.getRolePermissions("guest");
-                    grant(info, principal, applicationId, permissions);
-                } catch (Exception e) {
-                    logger.error("Unable to get user default role permissions",
-                            e);
-                }
+                grants.grant(info, principal, applicationId, null);
             }
         }
 
@@ -503,39 +458,137 @@ public class Realm extends AuthorizingRealm {
     }
 
     /**
-     * Grant all permissions for the role names on this application
-     * @param info
-     * @param em
+     * Get the roles and permissions of an application user, or of the
+     * application's guests, from the authorization cache or the application
+     * 
      * @param applicationId
-     * @param token
-     * @param principal
+     * @param userId
+     *            the user, or null for guests
+     * @return
+     */
+    private ApplicationGrants getApplicationGrants(UUID applicationId,
+            UUID userId) {
+        ApplicationGrants grants = null;
+        if (authorizationCache != null) {
+            grants = (ApplicationGrants) authorizationCache.get(applicationId,
+                    userId);
+        }
+        if (grants != null) {
+            return grants;
+        }
+
+        EntityManager em = emf.getEntityManager(applicationId);
+        grants = userId != null ? loadUserGrants(em, userId)
+                : loadGuestGrants(em);
+
+        // don't cache what a failed read left out
+        if ((authorizationCache != null) && grants.complete) {
+            authorizationCache.put(applicationId, userId, grants);
+        }
+        return grants;
+    }
+
+    private ApplicationGrants loadUserGrants(EntityManager em, UUID userId) {
+        ApplicationGrants grants = new ApplicationGrants();
+        grants.applicationName = getApplicationName(em);
+
+        try {
+            grants.addPermissions(em.getRolePermissions("default"));
+        } catch (Exception e) {
+            logger.error("Unable to get user default role permissions", e);
+            grants.complete = false;
+        }
+
+        try {
+            grants.addPermissions(em.getUserPermissions(userId));
+        } catch (Exception e) {
+            logger.error("Unable to get user permissions", e);
+            grants.complete = false;
+        }
+
+        try {
+            Set<String> rolenames = em.getUserRoles(userId);
+            addRoles(grants, em, rolenames);
+        } catch (Exception e) {
+            logger.error("Unable to get user role permissions", e);
+            grants.complete = false;
+        }
+
+        try {
+            // roles of the groups the user is in, this is several reads per
+            // group, so it's only done when the user isn't cached
+            Results r = em.getCollection(new SimpleEntityRef(User.ENTITY_TYPE,
+                    userId), "groups", null, 1000, Level.IDS, false);
+            if (r != null) {
+
+                Set<String> rolenames = new HashSet<String>();
+
+                for (UUID groupId : r.getIds()) {
+
+                    Results roleResults = em.getCollection(new SimpleEntityRef(
+                            Role.ENTITY_TYPE, groupId), "roles", null, 1000,
+                            Level.CORE_PROPERTIES, false);
+
+                    for (Entity entity : roleResults.getEntities()) {
+                        rolenames.add(entity.getName());
+                    }
+
+                }
+
+                addRoles(grants, em, rolenames);
+            }
+
+        } catch (Exception e) {
+            logger.error("Unable to get user group role permissions", e);
+            grants.complete = false;
+        }
+
+        return grants;
+    }
+
+    private ApplicationGrants loadGuestGrants(EntityManager em) {
+        ApplicationGrants grants = new ApplicationGrants();
+        grants.applicationName = getApplicationName(em);
+
+        try {
+            grants.addPermissions(em.getRolePermissions("guest"));
+        } catch (Exception e) {
+            logger.error("Unable to get user default role permissions", e);
+            grants.complete = false;
+        }
+
+        return grants;
+    }
+
+    private static String getApplicationName(EntityManager em) {
+        try {
+            return (String) em.getProperty(em.getApplicationRef(), "name");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Add the permissions and inactivity limits of the role names on this
+     * application
+     * 
+     * @param grants
+     * @param em
      * @param rolenames
      * @throws Exception
      */
-    private void grantAppRoles( SimpleAuthorizationInfo info, EntityManager em, UUID applicationId,  TokenInfo token, PrincipalIdentifier principal, Set<String> rolenames) throws Exception{
-        Map<String, Role> app_roles = em
-                .getRolesWithTitles(rolenames);
+    private static void addRoles(ApplicationGrants grants, EntityManager em,
+            Set<String> rolenames) throws Exception {
+        Map<String, Role> app_roles = em.getRolesWithTitles(rolenames);
 
         for (String rolename : rolenames) {
-            if ((app_roles != null) && (token != null)) {
-                Role role = app_roles.get(rolename);
-                if ((role != null)
-                        && (role.getInactivity() > 0)
-                        && (token.getInactive() > role
-                                .getInactivity())) {
-                    continue;
-                }
-            }
-            Set<String> permissions = em
-                    .getRolePermissions(rolename);
-            grant(info, principal, applicationId, permissions);
-            role(info,
-                    principal,
-                    "application-role:"
-                            .concat(applicationId.toString())
-                            .concat(":").concat(rolename));
+            Role role = app_roles != null ? app_roles.get(rolename) : null;
+            grants.addRole(rolename,
+                    role != null ? role.getInactivity() : null,
+                    em.getRolePermissions(rolename));
         }
     }
+
     public static void grant(SimpleAuthorizationInfo info,
             PrincipalIdentifier principal, String permission) {
         logger.debug("Principal {} granted permission: {}",
@@ -572,8 +625,187 @@ public class Realm extends AuthorizingRealm {
         }
     }
 
+    @Override
+    public boolean isPermitted(PrincipalCollection principals,
+            Permission permission) {
+        if (!(permission instanceof CustomPermission)) {
+            return super.isPermitted(principals, permission);
+        }
+
+        AuthorizationInfo info = getAuthorizationInfo(principals);
+        if (info == null) {
+            return false;
+        }
+
+        PermissionMatcher matcher = getMatcher(principals, info);
+        if (matcher != null) {
+            return matcher.implies(permission);
+        }
+
+        for (Permission granted : getPermissions(info)) {
+            if (granted.implies(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the grants of an application user or guest compiled for checking.
+     * The matcher is kept with the grants in the authorization cache, so it's
+     * keyed by the application and principal and dropped whenever the
+     * cache's invalidations drop the grants.
+     * 
+     * @param principals
+     * @param info
+     *            the authorization info the check would otherwise use
+     * @return null if the subject's grants aren't cached, or aren't all
+     *         granted to this token
+     */
+    private PermissionMatcher getMatcher(PrincipalCollection principals,
+            AuthorizationInfo info) {
+        if (authorizationCache == null) {
+            return null;
+        }
+
+        Object principal = principals.getPrimaryPrincipal();
+        UUID applicationId;
+        UserInfo user = null;
+        if (principal instanceof ApplicationUserPrincipal) {
+            applicationId = ((ApplicationUserPrincipal) principal)
+                    .getApplicationId();
+            user = ((ApplicationUserPrincipal) principal).getUser();
+        } else if (principal instanceof ApplicationGuestPrincipal) {
+            applicationId = ((ApplicationGuestPrincipal) principal)
+                    .getApplicationId();
+        } else {
+            return null;
+        }
+        if (principals.asList().size() != 1) {
+            return null;
+        }
+
+        ApplicationGrants grants = (ApplicationGrants) authorizationCache.get(
+                applicationId, user != null ? user.getUuid() : null);
+        if ((grants == null)
+                || !grants.grantedAllRoles(info, applicationId)) {
+            return null;
+        }
+
+        PermissionMatcher matcher = grants.matcher;
+        if ((matcher == null) || !matcher.isFor(user)) {
+            SimpleAuthorizationInfo granted = new SimpleAuthorizationInfo();
+            granted.addStringPermission(getPermissionFromPath(applicationId,
+                    "access"));
+            grants.grant(granted, (PrincipalIdentifier) principal,
+                    applicationId, null);
+            matcher = new PermissionMatcher(getPermissions(granted), user);
+            grants.matcher = matcher;
+        }
+        return matcher;
+    }
+
+    private Collection<Permission> getPermissions(AuthorizationInfo info) {
+        List<Permission> permissions = new ArrayList<Permission>();
+        if (info.getObjectPermissions() != null) {
+            permissions.addAll(info.getObjectPermissions());
+        }
+        if (info.getStringPermissions() != null) {
+            for (String permission : info.getStringPermissions()) {
+                permissions.add(getPermissionResolver().resolvePermission(
+                        permission));
+            }
+        }
+        return permissions;
+    }
+
     @Override
     public boolean supports(AuthenticationToken token) {
         return token instanceof PrincipalCredentialsToken;
     }
+
+    /**
+     * The roles and permissions read from an application for one of its
+     * users or its guests. Cached as is, so it mustn't change once built.
+     */
+    private static class ApplicationGrants {
+
+        private String applicationName;
+
+        private final Set<String> permissions = new LinkedHashSet<String>();
+
+        private final Map<String, Set<String>> roles = new LinkedHashMap<String, Set<String>>();
+
+        private final Map<String, Long> roleInactivity = new HashMap<String, Long>();
+
+        /**
+         * False if a read failed and some grants are missing
+         */
+        private boolean complete = true;
+
+        /**
+         * The grants compiled for checking, made on first use
+         */
+        private volatile PermissionMatcher matcher;
+
+        private void addPermissions(Set<String> permissions) {
+            if (permissions != null) {
+                this.permissions.addAll(permissions);
+            }
+        }
+
+        private void addRole(String rolename, Long inactivity,
+                Set<String> permissions) {
+            roles.put(rolename, permissions);
+            if (inactivity != null) {
+                roleInactivity.put(rolename, inactivity);
+            }
+        }
+
+        /**
+         * @return true if the info has every role, so none were left out
+         *         for the token's inactivity
+         */
+        private boolean grantedAllRoles(AuthorizationInfo info,
+                UUID applicationId) {
+            if (roleInactivity.isEmpty()) {
+                return true;
+            }
+            for (String rolename : roleInactivity.keySet()) {
+                if ((info.getRoles() == null)
+                        || !info.getRoles().contains(
+                                "application-role:"
+                                        .concat(applicationId.toString())
+                                        .concat(":").concat(rolename))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Grant the permissions and roles, except roles the token has been
+         * inactive for too long to keep
+         */
+        private void grant(SimpleAuthorizationInfo info,
+                PrincipalIdentifier principal, UUID applicationId,
+                TokenInfo token) {
+            Realm.grant(info, principal, applicationId, permissions);
+
+            for (Entry<String, Set<String>> role : roles.entrySet()) {
+                String rolename = role.getKey();
+                Long inactivity = roleInactivity.get(rolename);
+                if ((token != null) && (inactivity != null)
+                        && (inactivity > 0)
+                        && (token.getInactive() > inactivity)) {
+                    continue;
+                }
+                Realm.grant(info, principal, applicationId, role.getValue());
+                role(info,
+                        principal,
+                        "application-role:".concat(applicationId.toString())
+                                .concat(":").concat(rolename));
+            }
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package org.usergrid.security.tokens.cassandra;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.security.AuthPrincipalInfo;
+import org.usergrid.security.tokens.TokenInfo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * In memory {@link TokenCache} bounded by the number of cached tokens. A max
+ * size of 0 disables caching.
+ * 
+ * A token is read again from Cassandra once it's been cached for the ttl,
+ * however often it's used, so revocations and accesses on other nodes are
+ * seen within the ttl. For a cluster, wrap it with
+ * org.usergrid.clustering.hazelcast.HazelcastTokenCache to see revocations
+ * right away
+ * 
+ */
+public class LocalTokenCache implements TokenCache {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(LocalTokenCache.class);
+
+    private final Cache<UUID, CachedToken> cache;
+
+    private final ConcurrentMap<UUID, CachedToken> tokens;
+
+    private final long ttlMillis;
+
+    /**
+     * 
+     * @param maxSize
+     *            The max number of cached tokens
+     * @param ttlSeconds
+     *            How long a token stays cached after it's read from Cassandra
+     */
+    public LocalTokenCache(long maxSize, long ttlSeconds) {
+        if ((maxSize <= 0) || (ttlSeconds <= 0)) {
+            logger.info("Token cache is disabled");
+            cache = null;
+            tokens = null;
+            ttlMillis = 0;
+            return;
+        }
+
+        ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+        tokens = cache.asMap();
+    }
+
+    @Override
+    public TokenInfo get(UUID tokenId) {
+        if (cache == null) {
+            return null;
+        }
+
+        CachedToken cached = tokens.get(tokenId);
+        if (cached == null) {
+            return null;
+        }
+
+        long now = currentTimeMillis();
+        if ((now >= cached.expires) || (now >= cached.loaded + ttlMillis)) {
+            tokens.remove(tokenId, cached);
+            return null;
+        }
+
+        return copy(cached.tokenInfo);
+    }
+
+    @Override
+    public void put(TokenInfo tokenInfo, long expires) {
+        if (cache == null) {
+            return;
+        }
+
+        tokens.put(tokenInfo.getUuid(), new CachedToken(copy(tokenInfo),
+                expires, currentTimeMillis()));
+    }
+
+    @Override
+    public void update(TokenInfo tokenInfo) {
+        if (cache == null) {
+            return;
+        }
+
+        CachedToken cached = tokens.get(tokenInfo.getUuid());
+        if (cached == null) {
+            return;
+        }
+
+        // if it was replaced or invalidated since, leave that be
+        tokens.replace(tokenInfo.getUuid(), cached, new CachedToken(
+                copy(tokenInfo), cached.expires, cached.loaded));
+    }
+
+    @Override
+    public void invalidate(UUID tokenId) {
+        if (cache == null) {
+            return;
+        }
+
+        cache.invalidate(tokenId);
+    }
+
+    /**
+     * Copy the token so callers can't modify what's in the cache
+     */
+    private static TokenInfo copy(TokenInfo tokenInfo) {
+        AuthPrincipalInfo principal = tokenInfo.getPrincipal();
+        if (principal != null) {
+            principal = new AuthPrincipalInfo(principal.getType(),
+                    principal.getUuid(), principal.getApplicationId());
+        }
+        return new TokenInfo(tokenInfo.getUuid(), tokenInfo.getType(),
+                tokenInfo.getCreated(), tokenInfo.getAccessed(),
+                tokenInfo.getInactive(), tokenInfo.getDuration(), principal,
+                tokenInfo.getState() != null ? new HashMap<String, Object>(
+                        tokenInfo.getState()) : null);
+    }
+
+    private static class CachedToken {
+        private final TokenInfo tokenInfo;
+        private final long expires;
+        private final long loaded;
+
+        private CachedToken(TokenInfo tokenInfo, long expires, long loaded) {
+            this.tokenInfo = tokenInfo;
+            this.expires = expires;
+            this.loaded = loaded;
+        }
+    }
+
+}
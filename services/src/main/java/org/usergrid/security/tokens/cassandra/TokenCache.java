@@ -0,0 +1,55 @@
+package org.usergrid.security.tokens.cassandra;
+
+import java.util.UUID;
+
+import org.usergrid.security.tokens.TokenInfo;
+
+/**
+ * Cache of token info read from the tokens column family, so validating a
+ * token doesn't have to read it on every request. The token service loads
+ * tokens into it, keeps their last access up to date as they're used, and
+ * invalidates them when they're revoked
+ * 
+ */
+public interface TokenCache {
+
+    /**
+     * Get a cached token
+     * 
+     * @param tokenId
+     *            The token id
+     * @return A copy of the cached token that the caller may modify, or null
+     *         if the token isn't cached, has expired, or has been cached too
+     *         long without being read again
+     */
+    public TokenInfo get(UUID tokenId);
+
+    /**
+     * Cache a token just read or written
+     * 
+     * @param tokenInfo
+     *            The token
+     * @param expires
+     *            When the token expires, in milliseconds since the epoch
+     */
+    public void put(TokenInfo tokenInfo, long expires);
+
+    /**
+     * Replace a cached token with one that's been used since, without
+     * extending how long it stays cached. Does nothing if the token isn't
+     * cached
+     * 
+     * @param tokenInfo
+     *            The token
+     */
+    public void update(TokenInfo tokenInfo);
+
+    /**
+     * Remove a token from the cache
+     * 
+     * @param tokenId
+     *            The token id
+     */
+    public void invalidate(UUID tokenId);
+
+}
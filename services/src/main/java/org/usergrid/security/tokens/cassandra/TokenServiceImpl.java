@@ -25,11 +25,19 @@ import static org.usergrid.utils.UUIDUtils.getTimestampInMillis;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.serializers.LongSerializer;
@@ -58,6 +66,8 @@ import org.usergrid.security.tokens.exceptions.InvalidTokenException;
 import org.usergrid.utils.JsonUtils;
 import org.usergrid.utils.UUIDUtils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class TokenServiceImpl implements TokenService {
 
     private static final Logger logger = LoggerFactory.getLogger(TokenServiceImpl.class);
@@ -65,6 +75,7 @@ public class TokenServiceImpl implements TokenService {
     public static final String PROPERTIES_AUTH_TOKEN_SECRET_SALT = "usergrid.auth.token_secret_salt";
     public static final String PROPERTIES_AUTH_TOKEN_EXPIRES_FROM_LAST_USE = "usergrid.auth.token_expires_from_last_use";
     public static final String PROPERTIES_AUTH_TOKEN_REFRESH_REUSES_ID = "usergrid.auth.token_refresh_reuses_id";
+    public static final String PROPERTIES_AUTH_TOKEN_ACCESS_FLUSH_INTERVAL = "usergrid.auth.token.access.flush.interval";
 
     private static final String TOKEN_UUID = "uuid";
     private static final String TOKEN_TYPE = "type";
@@ -116,6 +127,9 @@ public class TokenServiceImpl implements TokenService {
     // Long-lived token is good for 7 days
     public static final long LONG_TOKEN_AGE = 7 * 24 * 60 * 60 * 1000;
 
+    // Token uses are written to Cassandra as they happen
+    public static final long ACCESS_FLUSH_INTERVAL = 0;
+
     String tokenSecretSalt = TOKEN_SECRET_SALT;
 
     long maxPersistenceTokenAge = LONG_TOKEN_AGE;
@@ -128,8 +142,19 @@ public class TokenServiceImpl implements TokenService {
     long maxEmailTokenAge = LONG_TOKEN_AGE;
     long maxOfflineTokenAge = LONG_TOKEN_AGE;
 
+    long accessFlushInterval = ACCESS_FLUSH_INTERVAL;
+
     protected CassandraService cassandra;
 
+    protected TokenCache tokenCache;
+
+    /**
+     * Token uses not yet written to Cassandra, by token id
+     */
+    private final ConcurrentMap<UUID, TokenAccess> pendingAccesses = new ConcurrentHashMap<UUID, TokenAccess>();
+
+    private volatile ScheduledExecutorService accessFlusher;
+
     protected Properties properties;
 
     protected EntityManagerFactory emf;
@@ -175,7 +200,21 @@ public class TokenServiceImpl implements TokenService {
             setExpirationFromProperties("offline");
 
             tokenSecretSalt = properties.getProperty(PROPERTIES_AUTH_TOKEN_SECRET_SALT, TOKEN_SECRET_SALT);
+
+            accessFlushInterval = Long.parseLong(properties.getProperty(PROPERTIES_AUTH_TOKEN_ACCESS_FLUSH_INTERVAL, ""
+                    + ACCESS_FLUSH_INTERVAL));
+        }
+    }
+
+    /**
+     * Writes any token uses that haven't been written yet
+     */
+    public void destroy() {
+        ScheduledExecutorService flusher = accessFlusher;
+        if (flusher != null) {
+            flusher.shutdown();
         }
+        flushAccesses();
     }
 
     @Override
@@ -243,33 +282,186 @@ public class TokenServiceImpl implements TokenService {
         TokenInfo tokenInfo = null;
         UUID uuid = getUUIDForToken(token);
         if (uuid != null) {
-            tokenInfo = getTokenInfo(uuid);
+            tokenInfo = getCachedTokenInfo(uuid);
             if (tokenInfo != null) {
                 long now = currentTimeMillis();
 
-                long maxTokenTtl = getMaxTtl(tokenInfo.getPrincipal());
-
-                Mutator<UUID> batch = createMutator(cassandra.getSystemKeyspace(), UUIDSerializer.get());
-
-                HColumn<String, Long> col = createColumn(TOKEN_ACCESSED, now,
-                        calcTokenTime(tokenInfo.getExpiration(maxTokenTtl)), StringSerializer.get(),
-                        LongSerializer.get());
-                batch.addInsertion(uuid, TOKENS_CF, col);
-
+                boolean inactiveChanged = false;
                 long inactive = now - tokenInfo.getAccessed();
                 if (inactive > tokenInfo.getInactive()) {
-                    col = createColumn(TOKEN_INACTIVE, inactive, calcTokenTime(tokenInfo.getExpiration(maxTokenTtl)),
-                            StringSerializer.get(), LongSerializer.get());
-                    batch.addInsertion(uuid, TOKENS_CF, col);
                     tokenInfo.setInactive(inactive);
+                    inactiveChanged = true;
+                }
+
+                // the caller gets the token as it was before this use
+                TokenInfo used = new TokenInfo(uuid, tokenInfo.getType(), tokenInfo.getCreated(), now,
+                        tokenInfo.getInactive(), tokenInfo.getDuration(), tokenInfo.getPrincipal(),
+                        tokenInfo.getState());
+
+                if (tokenCache != null) {
+                    tokenCache.update(used);
                 }
 
-                batch.execute();
+                recordAccess(new TokenAccess(used, inactiveChanged));
             }
         }
         return tokenInfo;
     }
 
+    /**
+     * Get the token from the cache, or from Cassandra with any uses on this
+     * node that haven't been written yet
+     */
+    private TokenInfo getCachedTokenInfo(UUID uuid) throws Exception {
+        TokenInfo tokenInfo = tokenCache != null ? tokenCache.get(uuid) : null;
+        if (tokenInfo != null) {
+            return tokenInfo;
+        }
+
+        tokenInfo = getTokenInfo(uuid);
+
+        TokenAccess pending = pendingAccesses.get(uuid);
+        if (pending != null) {
+            tokenInfo.setAccessed(Math.max(tokenInfo.getAccessed(), pending.tokenInfo.getAccessed()));
+            tokenInfo.setInactive(Math.max(tokenInfo.getInactive(), pending.tokenInfo.getInactive()));
+        }
+
+        // when it was last written isn't known, so count from its creation
+        cacheTokenInfo(tokenInfo, tokenInfo.getCreated());
+
+        return tokenInfo;
+    }
+
+    /**
+     * Cache a token until it runs out, counting its duration from when it was
+     * last written
+     */
+    private void cacheTokenInfo(TokenInfo tokenInfo, long written) {
+        if (tokenCache == null) {
+            return;
+        }
+
+        long start = Math.max(tokenInfo.getCreated(), written);
+        long duration = tokenInfo.getDuration();
+        long expires = ((duration > 0) && (duration < Long.MAX_VALUE - start)) ? start + duration : Long.MAX_VALUE;
+
+        tokenCache.put(tokenInfo, expires);
+    }
+
+    /**
+     * Queue a token use to be written with the next flush, or write it now if
+     * flushing is turned off
+     */
+    private void recordAccess(TokenAccess access) throws Exception {
+        if (accessFlushInterval <= 0) {
+            writeAccesses(Collections.singletonList(access));
+            return;
+        }
+
+        queueAccess(access, false);
+        startAccessFlusher();
+    }
+
+    /**
+     * Add a token use to the next flush, merged with any use already queued
+     * for the token
+     * 
+     * @param earlier
+     *            true if the use happened before any queued one, as for the
+     *            uses of a failed flush
+     */
+    private void queueAccess(TokenAccess access, boolean earlier) {
+        UUID uuid = access.tokenInfo.getUuid();
+        for (;;) {
+            TokenAccess previous = pendingAccesses.putIfAbsent(uuid, access);
+            if (previous == null) {
+                return;
+            }
+            TokenAccess merged = earlier ? access.merge(previous) : previous.merge(access);
+            if (pendingAccesses.replace(uuid, previous, merged)) {
+                return;
+            }
+        }
+    }
+
+    private void startAccessFlusher() {
+        if (accessFlusher != null) {
+            return;
+        }
+        synchronized (this) {
+            if (accessFlusher == null) {
+                ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setDaemon(true).setNameFormat("token-access-flusher-%d").build());
+                flusher.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushAccesses();
+                    }
+                }, accessFlushInterval, accessFlushInterval, TimeUnit.MILLISECONDS);
+                accessFlusher = flusher;
+            }
+        }
+    }
+
+    /**
+     * Write the queued token uses in one batch
+     */
+    public void flushAccesses() {
+        List<TokenAccess> accesses = new ArrayList<TokenAccess>();
+        for (Entry<UUID, TokenAccess> entry : pendingAccesses.entrySet()) {
+            // if it was used again since, the newer use goes in the next flush
+            if (pendingAccesses.remove(entry.getKey(), entry.getValue())) {
+                accesses.add(entry.getValue());
+            }
+        }
+
+        if (accesses.isEmpty()) {
+            return;
+        }
+
+        try {
+            writeAccesses(accesses);
+        } catch (Exception e) {
+            logger.error("Unable to write the last use of {} tokens, retrying with the next flush", accesses.size(), e);
+            for (TokenAccess access : accesses) {
+                queueAccess(access, true);
+            }
+        }
+    }
+
+    private void writeAccesses(Collection<TokenAccess> accesses) throws Exception {
+        Mutator<UUID> batch = createMutator(cassandra.getSystemKeyspace(), UUIDSerializer.get());
+
+        for (TokenAccess access : accesses) {
+            TokenInfo tokenInfo = access.tokenInfo;
+            UUID uuid = tokenInfo.getUuid();
+
+            int ttl = calcTokenTime(tokenInfo.getExpiration(getMaxTtl(tokenInfo.getPrincipal())));
+
+            HColumn<String, Long> col = createColumn(TOKEN_ACCESSED, tokenInfo.getAccessed(), ttl,
+                    StringSerializer.get(), LongSerializer.get());
+            batch.addInsertion(uuid, TOKENS_CF, col);
+
+            if (access.inactiveChanged) {
+                col = createColumn(TOKEN_INACTIVE, tokenInfo.getInactive(), ttl, StringSerializer.get(),
+                        LongSerializer.get());
+                batch.addInsertion(uuid, TOKENS_CF, col);
+            }
+        }
+
+        batch.execute();
+    }
+
+    /**
+     * Forget a removed token
+     */
+    private void uncacheTokenInfo(UUID uuid) {
+        pendingAccesses.remove(uuid);
+        if (tokenCache != null) {
+            tokenCache.invalidate(uuid);
+        }
+    }
+
     /**
      * Get the max ttl per app. This is null safe,and will return the default in
      * the case of missing data
@@ -338,6 +530,10 @@ public class TokenServiceImpl implements TokenService {
 
         batch.execute();
 
+        for (UUID tokenId : tokenIds) {
+            uncacheTokenInfo(tokenId);
+        }
+
     }
 
     /*
@@ -373,6 +569,8 @@ public class TokenServiceImpl implements TokenService {
 
         batch.execute();
 
+        uncacheTokenInfo(tokenId);
+
     }
 
     private TokenInfo getTokenInfo(UUID uuid) throws Exception {
@@ -464,6 +662,8 @@ public class TokenServiceImpl implements TokenService {
         }
 
         m.execute();
+
+        cacheTokenInfo(tokenInfo, currentTimeMillis());
     }
 
     /**
@@ -562,6 +762,11 @@ public class TokenServiceImpl implements TokenService {
         this.emf = emf;
     }
 
+    @Autowired(required = false)
+    public void setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
     private String getTokenForUUID(TokenInfo tokenInfo, TokenCategory tokenCategory, UUID uuid) {
         int l = 36;
         if (tokenCategory.getExpires()) {
@@ -617,4 +822,27 @@ public class TokenServiceImpl implements TokenService {
     }
 
     private static final int MAX_TTL = 20 * 365 * 24 * 60 * 60;
+
+    /**
+     * A use of a token waiting to be written
+     */
+    private static class TokenAccess {
+        private final TokenInfo tokenInfo;
+        private final boolean inactiveChanged;
+
+        private TokenAccess(TokenInfo tokenInfo, boolean inactiveChanged) {
+            this.tokenInfo = tokenInfo;
+            this.inactiveChanged = inactiveChanged;
+        }
+
+        private TokenAccess merge(TokenAccess later) {
+            TokenInfo merged = later.tokenInfo;
+            if (tokenInfo.getInactive() > merged.getInactive()) {
+                merged = new TokenInfo(merged.getUuid(), merged.getType(), merged.getCreated(),
+                        merged.getAccessed(), tokenInfo.getInactive(), merged.getDuration(), merged.getPrincipal(),
+                        merged.getState());
+            }
+            return new TokenAccess(merged, inactiveChanged || later.inactiveChanged);
+        }
+    }
 }
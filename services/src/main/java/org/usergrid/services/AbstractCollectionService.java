@@ -18,13 +18,17 @@ package org.usergrid.services;
 import static org.usergrid.utils.ClassUtils.cast;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import org.apache.commons.lang.ClassUtils;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.usergrid.persistence.BulkCreateResults;
 import org.usergrid.persistence.Entity;
 import org.usergrid.persistence.EntityRef;
 import org.usergrid.persistence.Query;
@@ -34,6 +38,7 @@ import org.usergrid.persistence.Schema;
 import org.usergrid.persistence.exceptions.UnexpectedEntityTypeException;
 import org.usergrid.services.ServiceResults.Type;
 import org.usergrid.services.exceptions.ServiceResourceNotFoundException;
+import org.usergrid.utils.InflectionUtils;
 
 public class AbstractCollectionService extends AbstractService {
 
@@ -321,41 +326,40 @@ public class AbstractCollectionService extends AbstractService {
 		checkPermissionsForCollection(context);
 
 		if (context.getPayload().isBatch()) {
-			List<Entity> entities = new ArrayList<Entity>();
 			List<Map<String, Object>> batch = context.getPayload()
 					.getBatchProperties();
-			logger.info("Attempting to batch create " + batch.size()
+			logger.debug("Attempting to batch create " + batch.size()
 					+ " entities in collection " + context.getCollectionName());
-			int i = 1;
-			for (Map<String, Object> p : batch) {
-				logger.info("Creating entity " + i + " in collection "
-						+ context.getCollectionName());
-
-				Entity item = null;
-
-				try {
-					item = em.createItemInCollection(context.getOwner(),
-							context.getCollectionName(), getEntityType(), p);
-				} catch (Exception e) {
-					logger.error(
-							"Entity " + i
-									+ " unable to be created in collection "
-									+ context.getCollectionName(), e);
-
-					i++;
+
+			BulkCreateResults created = em.createItemsInCollection(
+					context.getOwner(), context.getCollectionName(),
+					getEntityType(), batch);
+
+			List<Entity> entities = new ArrayList<Entity>();
+			List<Map<String, Object>> errors = new ArrayList<Map<String, Object>>();
+			for (int i = 0; i < created.size(); i++) {
+				Exception e = created.getError(i);
+				if (e != null) {
+					logger.error("Entity " + (i + 1)
+							+ " unable to be created in collection "
+							+ context.getCollectionName(), e);
+					errors.add(itemError(i, e));
 					continue;
 				}
+				Entity item = created.getEntity(i);
+				if (item != null) {
+					entities.add(importEntity(context, item));
+				}
+			}
 
-				logger.info("Entity " + i + " created in collection "
-						+ context.getCollectionName() + " with UUID "
-						+ item.getUuid());
-
-				item = importEntity(context, item);
-				entities.add(item);
-				i++;
+			Map<String, Object> metadata = null;
+			if (!errors.isEmpty()) {
+				metadata = new LinkedHashMap<String, Object>();
+				metadata.put("errors", errors);
 			}
+
 			return new ServiceResults(this, context, Type.COLLECTION,
-					Results.fromEntities(entities), null, null);
+					Results.fromEntities(entities), metadata, null);
 		}
 
 		Entity item = em.createItemInCollection(context.getOwner(),
@@ -369,6 +373,22 @@ public class AbstractCollectionService extends AbstractService {
 
 	}
 
+	/**
+	 * Describe an item of a batch post that couldn't be created, the way an
+	 * error response would
+	 */
+	private static Map<String, Object> itemError(int index, Exception e) {
+		String code = ClassUtils.getShortClassName(e.getClass());
+		code = InflectionUtils.underscore(StringUtils.removeEnd(code,
+				"Exception")).toLowerCase();
+
+		Map<String, Object> error = new LinkedHashMap<String, Object>();
+		error.put("index", index);
+		error.put("error", code);
+		error.put("error_description", e.getMessage());
+		return error;
+	}
+
   @Override
   public ServiceResults putCollection(ServiceContext context) throws Exception {
     return postCollection(context);
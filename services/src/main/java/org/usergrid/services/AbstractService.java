@@ -291,12 +291,18 @@ public abstract class AbstractService implements Service {
 
   @Override
   public Entity importEntity(ServiceRequest request, Entity entity) throws Exception {
+    return importEntity(request, entity, null);
+  }
+
+  @Override
+  public Entity importEntity(ServiceRequest request, Entity entity,
+      Map<String, Set<Object>> connectionTypes) throws Exception {
     if (entity == null) {
       return null;
     }
 
     if (!isRootService()) {
-      return sm.importEntity(request, entity);
+      return sm.importEntity(request, entity, connectionTypes);
     }
 
     String path = request.getPath() + "/" + entity.getUuid();
@@ -307,7 +313,13 @@ public abstract class AbstractService implements Service {
       metadata.putAll(defaultEntityMetadata);
     }
 
-    Set<Object> connections = getConnectedTypesSet(entity);
+    if (!isMetadataRequested(request)) {
+      entity.mergeMetadata(metadata);
+      return entity;
+    }
+
+    Set<Object> connections = connectionTypes != null ? filterConnectionTypes(connectionTypes
+        .get(Schema.DICTIONARY_CONNECTED_TYPES)) : getConnectedTypesSet(entity);
     if (connections != null) {
       Map<String, Object> m = new LinkedHashMap<String, Object>();
       for (Object n : connections) {
@@ -316,7 +328,8 @@ public abstract class AbstractService implements Service {
       metadata.put("connections", m);
     }
 
-    Set<Object> connecting = getConnectingTypesSet(entity);
+    Set<Object> connecting = connectionTypes != null ? filterConnectionTypes(connectionTypes
+        .get(Schema.DICTIONARY_CONNECTING_TYPES)) : getConnectingTypesSet(entity);
     if (connecting != null) {
       Map<String, Object> m = new LinkedHashMap<String, Object>();
       for (Object n : connecting) {
@@ -348,12 +361,23 @@ public abstract class AbstractService implements Service {
     return entity;
   }
 
+  /**
+   * Imports the entities of a page of results. The connection types linked to
+   * in their metadata are read for the whole page at once, rather than with
+   * reads for each entity.
+   */
   public void importEntities(ServiceRequest request, Results results) throws Exception {
 
     List<Entity> entities = results.getEntities();
     if (entities != null) {
+      Map<UUID, Map<String, Set<Object>>> connectionTypes = null;
+      if ((entities.size() > 1) && isMetadataRequested(request)) {
+        connectionTypes = em.getDictionariesAsSets(entities, Schema.DICTIONARY_CONNECTED_TYPES,
+            Schema.DICTIONARY_CONNECTING_TYPES);
+      }
       for (Entity entity : entities) {
-        Entity imported = importEntity(request, entity);
+        Entity imported = importEntity(request, entity,
+            connectionTypes != null ? connectionTypes.get(entity.getUuid()) : null);
         if (imported != entity) {
           logger.debug("Import returned new entity instace for {} replacing in results set", entity.getUuid());
           results.replace(imported);
@@ -426,25 +450,28 @@ public abstract class AbstractService implements Service {
     }
   }
 
+  /**
+   * @return false if the request asked for entities without the links in
+   *         their metadata, with metadata=false
+   */
+  protected boolean isMetadataRequested(ServiceRequest request) {
+    Query query = request != null ? request.getLastQuery() : null;
+    return (query == null) || query.isMetadata();
+  }
+
   public Set<Object> getConnectedTypesSet(EntityRef ref) throws Exception {
-    Set<Object> connections = em.getDictionaryAsSet(ref, Schema.DICTIONARY_CONNECTED_TYPES);
-    if (connections == null) {
-      return null;
-    }
-    if (connections.size() > 0) {
-      connections.remove("connection");
-      if (privateConnections != null) {
-        connections.removeAll(privateConnections);
-      }
-      if (connections.size() > 0) {
-        return new LinkedHashSet<Object>(connections);
-      }
-    }
-    return null;
+    return filterConnectionTypes(em.getDictionaryAsSet(ref, Schema.DICTIONARY_CONNECTED_TYPES));
   }
 
   public Set<Object> getConnectingTypesSet(EntityRef ref) throws Exception {
-    Set<Object> connections = em.getDictionaryAsSet(ref, Schema.DICTIONARY_CONNECTING_TYPES);
+    return filterConnectionTypes(em.getDictionaryAsSet(ref, Schema.DICTIONARY_CONNECTING_TYPES));
+  }
+
+  /**
+   * @return the connection types to link to, without the private ones, or
+   *         null if there are none
+   */
+  protected Set<Object> filterConnectionTypes(Set<Object> connections) {
     if (connections == null) {
       return null;
     }
@@ -1119,7 +1146,10 @@ public abstract class AbstractService implements Service {
     if (logger.isDebugEnabled()) {
       logger.debug(PATH_MSG, new Object[] { path, context.getAction(), permission, permitted });
     }
-    SubjectUtils.checkPermission(permission);
+    if (!permitted) {
+      // check again to throw the authorization exception
+      SubjectUtils.checkPermission(permission);
+    }
   }
 
   private static final String PATH_MSG = "---- Check permissions for path -----------------------------------\n"
@@ -15,6 +15,8 @@
  ******************************************************************************/
 package org.usergrid.services;
 
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.usergrid.persistence.Entity;
@@ -44,6 +46,14 @@ public interface Service {
 	public Entity importEntity(ServiceRequest request, Entity entity)
 			throws Exception;
 
+	/**
+	 * @param connectionTypes
+	 *            the entity's connected and connecting types dictionaries
+	 *            if they've already been read, or null to read them
+	 */
+	public Entity importEntity(ServiceRequest request, Entity entity,
+			Map<String, Set<Object>> connectionTypes) throws Exception;
+
 	public Entity writeEntity(ServiceRequest request, Entity entity)
 			throws Exception;
 
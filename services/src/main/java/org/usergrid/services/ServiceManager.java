@@ -21,7 +21,9 @@ import static org.usergrid.utils.InflectionUtils.pluralize;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -164,6 +166,15 @@ public class ServiceManager {
 		return entity;
 	}
 
+	public Entity importEntity(ServiceRequest request, Entity entity,
+			Map<String, Set<Object>> connectionTypes) throws Exception {
+		Service service = getEntityService(entity.getType());
+		if (service != null) {
+			return service.importEntity(request, entity, connectionTypes);
+		}
+		return entity;
+	}
+
 	public Entity writeEntity(ServiceRequest request, Entity entity)
 			throws Exception {
 		Service service = getEntityService(entity.getType());
@@ -1,6 +1,8 @@
 package org.usergrid.services.assets.data;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
 import org.usergrid.persistence.entities.Asset;
@@ -13,7 +15,24 @@ public interface BinaryStore {
 
   InputStream read(UUID appId, Asset asset);
 
+  /**
+   * @return a stream of at most length bytes of the asset, starting at offset
+   */
   InputStream read(UUID appId, Asset asset, long offset, long length);
 
+  /**
+   * Copy at most length bytes of the asset, starting at offset, to the
+   * stream. Lets a store send the bytes without reading them through an
+   * InputStream.
+   */
+  void read(UUID appId, Asset asset, long offset, long length, OutputStream outputStream)
+          throws IOException;
+
+  /**
+   * @return true if the store has the bytes of the asset. Lets a caller
+   * that streams them after the response headers are sent check first.
+   */
+  boolean exists(UUID appId, Asset asset);
+
   void delete(UUID appId, Asset asset);
 }
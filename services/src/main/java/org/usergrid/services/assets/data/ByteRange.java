@@ -0,0 +1,111 @@
+package org.usergrid.services.assets.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An inclusive range of the bytes of an asset, as asked for by an HTTP Range
+ * header
+ */
+public class ByteRange {
+
+  /**
+   * Most ranges served for one request, the whole asset is sent for more
+   */
+  public static final int MAX_RANGES = 20;
+
+  private static final String BYTES_UNIT = "bytes=";
+
+  private final long first;
+  private final long last;
+
+  public ByteRange(long first, long last) {
+    this.first = first;
+    this.last = last;
+  }
+
+  public long getFirst() {
+    return first;
+  }
+
+  public long getLast() {
+    return last;
+  }
+
+  public long getLength() {
+    return last - first + 1;
+  }
+
+  /**
+   * @param size the size of the asset
+   * @return the value of the Content-Range header for this range
+   */
+  public String toContentRange(long size) {
+    return "bytes " + first + "-" + last + "/" + size;
+  }
+
+  /**
+   * Parse a Range header for an asset of the given size. Ranges past the end
+   * are trimmed to it.
+   *
+   * @param header the Range header
+   * @param size the size of the asset
+   * @return the satisfiable ranges in the order asked for, an empty list if
+   *         none of them are, or null if the header isn't a valid byte range
+   *         header and should be ignored
+   */
+  public static List<ByteRange> parse(String header, long size) {
+    if (header == null) {
+      return null;
+    }
+    header = header.trim();
+    if (!header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+      return null;
+    }
+
+    String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+    if (specs.length > MAX_RANGES) {
+      return null;
+    }
+
+    List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+    for (String spec : specs) {
+      int dash = spec.indexOf('-');
+      if (dash < 0) {
+        return null;
+      }
+      String from = spec.substring(0, dash).trim();
+      String to = spec.substring(dash + 1).trim();
+
+      try {
+        if (from.length() == 0) {
+          // the last bytes
+          long suffix = Long.parseLong(to);
+          if (suffix < 0) {
+            return null;
+          }
+          if ((suffix > 0) && (size > 0)) {
+            ranges.add(new ByteRange(Math.max(0, size - suffix), size - 1));
+          }
+          continue;
+        }
+
+        long first = Long.parseLong(from);
+        long last = Long.MAX_VALUE;
+        if (to.length() > 0) {
+          last = Long.parseLong(to);
+          if (last < first) {
+            return null;
+          }
+        }
+        if (first < size) {
+          ranges.add(new ByteRange(first, Math.min(last, size - 1)));
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    return ranges;
+  }
+}
@@ -2,11 +2,18 @@ package org.usergrid.services.assets.data;
 
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.UUID;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.usergrid.persistence.entities.Asset;
 
 /**
@@ -64,20 +71,63 @@ public class LocalFileBinaryStore implements BinaryStore {
 
   @Override
   public InputStream read(UUID appId, Asset asset) {
-    return read(appId, asset, 0, FileUtils.ONE_MB * 5);
+    try {
+      return new BufferedInputStream(FileUtils.openInputStream(path(appId, asset)));
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+    }
+    // TODO throw typed exception
+    return null;
   }
 
   @Override
   public InputStream read(UUID appId, Asset asset, long offset, long length) {
+    FileInputStream fis = null;
     try {
-      return new BufferedInputStream(FileUtils.openInputStream(path(appId, asset)));
+      fis = FileUtils.openInputStream(path(appId, asset));
+      fis.getChannel().position(offset);
+      return new BoundedInputStream(new BufferedInputStream(fis), length);
     } catch (IOException ioe) {
+      IOUtils.closeQuietly(fis);
       ioe.printStackTrace();
     }
     // TODO throw typed exception
     return null;
   }
 
+  /**
+   * Sends the bytes with {@link FileChannel#transferTo}, so they aren't
+   * copied through a buffer here. It can only go straight from the file
+   * cache to the socket when the stream's channel is the socket's.
+   */
+  @Override
+  public void read(UUID appId, Asset asset, long offset, long length, OutputStream outputStream)
+          throws IOException {
+    FileInputStream fis = FileUtils.openInputStream(path(appId, asset));
+    try {
+      FileChannel channel = fis.getChannel();
+      // not closed, that would close the stream
+      WritableByteChannel target = Channels.newChannel(outputStream);
+
+      long end = Math.min(offset + length, channel.size());
+      long position = offset;
+      while (position < end) {
+        long sent = channel.transferTo(position, end - position, target);
+        if (sent <= 0) {
+          break;
+        }
+        position += sent;
+      }
+    } finally {
+      IOUtils.closeQuietly(fis);
+    }
+  }
+
+  @Override
+  public boolean exists(UUID appId, Asset asset) {
+    return path(appId, asset).isFile();
+  }
+
   /**
    * Deletes the asset if it is a file. Does nothing if
    * {@link org.usergrid.persistence.entities.Asset#getPath()}
@@ -4,6 +4,7 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Properties;
@@ -155,19 +156,8 @@ public class S3BinaryStore implements BinaryStore {
 
   @Override
   public InputStream read(UUID appId, Asset asset, long offset, long length) {
-    AsyncBlobStore blobStore = context.getAsyncBlobStore();
-    ListenableFuture<Blob> blobFuture;
     try {
-      if ( offset == 0 && length == FIVE_MB ) {
-        // missing file will throw: org.jclouds.aws.AWSResponseException:
-        blobFuture = blobStore.getBlob(bucketName,AssetUtils.buildAssetKey(appId, asset));
-      } else {
-        GetOptions options = GetOptions.Builder.range(offset, length);
-        blobFuture = blobStore.getBlob(bucketName,AssetUtils.buildAssetKey(appId, asset), options);
-      }
-      return blobFuture.get().getPayload().getInput();
-      //return blob.getPayload().
-      //return null;
+      return readBlob(appId, asset, offset, length);
     } catch (Exception ex) {
       // TODO throw typed exception
       ex.printStackTrace();
@@ -177,7 +167,57 @@ public class S3BinaryStore implements BinaryStore {
 
   @Override
   public InputStream read(UUID appId, Asset asset) {
-    return read(appId, asset,0,FIVE_MB);
+    try {
+      return readBlob(appId, asset, 0, -1);
+    } catch (Exception ex) {
+      // TODO throw typed exception
+      ex.printStackTrace();
+    }
+    return null;
+  }
+
+  @Override
+  public void read(UUID appId, Asset asset, long offset, long length, OutputStream outputStream)
+          throws IOException {
+    InputStream is;
+    try {
+      is = readBlob(appId, asset, offset, length);
+    } catch (Exception ex) {
+      throw new IOException("Unable to read asset " + asset.getUuid(), ex);
+    }
+    try {
+      IOUtils.copyLarge(is, outputStream);
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
+  }
+
+  /**
+   * Get the blob, or only the range of it if length isn't negative, so
+   * only the bytes asked for come from S3
+   */
+  private InputStream readBlob(UUID appId, Asset asset, long offset, long length) throws Exception {
+    AsyncBlobStore blobStore = context.getAsyncBlobStore();
+    ListenableFuture<Blob> blobFuture;
+    if ( length < 0 ) {
+      // missing file will throw: org.jclouds.aws.AWSResponseException:
+      blobFuture = blobStore.getBlob(bucketName,AssetUtils.buildAssetKey(appId, asset));
+    } else {
+      // the end of the range is inclusive
+      GetOptions options = GetOptions.Builder.range(offset, offset + length - 1);
+      blobFuture = blobStore.getBlob(bucketName,AssetUtils.buildAssetKey(appId, asset), options);
+    }
+    return blobFuture.get().getPayload().getInput();
+  }
+
+  @Override
+  public boolean exists(UUID appId, Asset asset) {
+    try {
+      return context.getAsyncBlobStore().blobExists(bucketName, AssetUtils.buildAssetKey(appId, asset)).get();
+    } catch (Exception ex) {
+      logger.error("Unable to check for asset " + asset.getUuid(), ex);
+    }
+    return false;
   }
 
   @Override
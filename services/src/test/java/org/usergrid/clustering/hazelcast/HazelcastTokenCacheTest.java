@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.clustering.hazelcast;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+
+import org.junit.runners.Parameterized.Parameters;
+import org.usergrid.security.AuthPrincipalInfo;
+import org.usergrid.security.AuthPrincipalType;
+import org.usergrid.security.tokens.TokenInfo;
+import org.usergrid.security.tokens.cassandra.LocalTokenCache;
+import org.usergrid.security.tokens.cassandra.TokenCache;
+import org.usergrid.utils.UUIDUtils;
+
+/**
+ * The invalidating cache checks for the token cache, which lives in services
+ */
+public class HazelcastTokenCacheTest extends HazelcastInvalidatingCacheTest {
+
+    @Parameters
+    public static Collection<Object[]> caches() {
+        return Arrays.asList(new Object[][] { { new TokenCacheFixture() } });
+    }
+
+    public HazelcastTokenCacheTest(CacheFixture<?, ?> fixture) {
+        super(fixture);
+    }
+
+    static class TokenCacheFixture extends CacheFixture<TokenCache, UUID> {
+
+        @Override
+        public TokenCache create(long maxSize) {
+            return new LocalTokenCache(maxSize, 60);
+        }
+
+        @Override
+        public HazelcastInvalidatingCache<TokenCache, ?> wrap(TokenCache local) {
+            return new HazelcastTokenCache(local);
+        }
+
+        @Override
+        public UUID newKey() {
+            return UUIDUtils.newTimeUUID();
+        }
+
+        @Override
+        public void put(TokenCache cache, UUID tokenId) {
+            long now = currentTimeMillis();
+            cache.put(new TokenInfo(tokenId, "access", now, now, 0, 60000,
+                    new AuthPrincipalInfo(AuthPrincipalType.APPLICATION_USER,
+                            UUIDUtils.newTimeUUID(), UUIDUtils.newTimeUUID()),
+                    null), Long.MAX_VALUE);
+        }
+
+        @Override
+        public boolean isCached(TokenCache cache, UUID tokenId) {
+            return cache.get(tokenId) != null;
+        }
+
+        @Override
+        public void invalidate(TokenCache cache, UUID tokenId) {
+            cache.invalidate(tokenId);
+        }
+    }
+
+}
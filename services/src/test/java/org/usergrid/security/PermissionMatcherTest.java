@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.shiro.authz.Permission;
+import org.junit.Test;
+import org.usergrid.management.UserInfo;
+import org.usergrid.security.shiro.CustomPermission;
+import org.usergrid.security.shiro.PermissionMatcher;
+import org.usergrid.utils.UUIDUtils;
+
+public class PermissionMatcherTest {
+
+	private static final String APP = "00000000-0000-0000-0000-000000000001";
+	private static final String OTHER_APP = "00000000-0000-0000-0000-000000000002";
+
+	@Test
+	public void sameAsCustomPermission() {
+		String[] granted = { "applications:get:" + APP + ":/foo",
+				"applications:get:" + APP + ":/foo/bar/*",
+				"applications:get:" + APP + ":/foo/bar/**",
+				"applications:get:" + APP + ":/foo/bar/*/boz/*",
+				"applications:get,put:" + APP + ":/users/*",
+				"applications:get:" + APP + ":/foo/**/boz",
+				"applications:get:" + APP + ":/foo/b?r/*/",
+				"applications:get:" + APP + ":/foo/*z",
+				"applications:get:" + APP + ":foo/**/baz/**",
+				"applications:*:" + APP + ":*", "applications:get:*:/things",
+				"applications:access:" + APP, "organizations:access:*",
+				"applications", "users:get:/foo/*", "*" };
+
+		String[] requested = { "applications:get:" + APP + ":/foo",
+				"applications:get:" + APP + ":foo",
+				"applications:get:" + APP + ":/foo/bar",
+				"applications:get:" + APP + ":/foo/bar/baz",
+				"applications:get:" + APP + ":/foo/bar/baz/",
+				"applications:get:" + APP + ":/foo/bar/baz/boz",
+				"applications:get:" + APP + ":/foo/bar/baz/boz/biz",
+				"applications:get:" + APP + ":/foo/bar/baz/boz/biz/box",
+				"applications:get:" + APP + ":/foo/baz/boz",
+				"applications:get:" + APP + ":/foo//bar/baz/",
+				"applications:get:" + APP + ":foo/bar/baz/bar/baz",
+				"applications:get:" + APP + ":/FOO/BAR",
+				"applications:get:" + APP + ":*",
+				"applications:put:" + APP + ":/users/fred",
+				"applications:delete:" + APP + ":/users/fred",
+				"applications:get:" + OTHER_APP + ":/things",
+				"applications:get:" + OTHER_APP + ":/foo",
+				"applications:access:" + APP,
+				"applications:access:" + OTHER_APP,
+				"organizations:access:" + OTHER_APP, "applications:get",
+				"users:get:/foo/bar", "users:put:/foo/bar", "roles" };
+
+		for (String g : granted) {
+			CustomPermission grant = new CustomPermission(g);
+			PermissionMatcher matcher = matcher(null, g);
+			for (String r : requested) {
+				CustomPermission request = new CustomPermission(r);
+				assertEquals(g + " implies " + r, grant.implies(request),
+						matcher.implies(request));
+			}
+		}
+	}
+
+	@Test
+	public void manyGrants() {
+		PermissionMatcher matcher = matcher(null, "applications:get:" + APP
+				+ ":/foo/*", "applications:put:" + OTHER_APP + ":/bar",
+				"applications:post:" + APP + ":/bar", "organizations:access:"
+						+ OTHER_APP);
+
+		assertTrue(matcher.implies(new CustomPermission("applications:get:"
+				+ APP + ":/foo/baz")));
+		assertTrue(matcher.implies(new CustomPermission("applications:put:"
+				+ OTHER_APP + ":/bar")));
+		assertTrue(matcher.implies(new CustomPermission("applications:post:"
+				+ APP + ":/bar")));
+		assertTrue(matcher.implies(new CustomPermission("organizations:access:"
+				+ OTHER_APP)));
+
+		assertFalse(matcher.implies(new CustomPermission("applications:put:"
+				+ APP + ":/bar")));
+		assertFalse(matcher.implies(new CustomPermission("applications:get:"
+				+ OTHER_APP + ":/foo/baz")));
+		assertFalse(matcher.implies(new CustomPermission("organizations:access:"
+				+ APP)));
+		assertFalse(matcher.implies(new CustomPermission("applications:get")));
+		assertFalse(matcher.implies(new CustomPermission("users:get")));
+	}
+
+	@Test
+	public void userMeSubstitution() {
+		UUID userId = UUIDUtils.newTimeUUID();
+		UserInfo user = new UserInfo(UUIDUtils.newTimeUUID(), userId,
+				"testusername", "Test User", "test@usergrid.org", true, false,
+				null);
+
+		PermissionMatcher matcher = matcher(user, "/users/me/**",
+				"applications:get:" + APP + ":/devices/${user}");
+
+		assertTrue(matcher.implies(new CustomPermission(
+				"/users/testusername/permissions")));
+		assertTrue(matcher.implies(new CustomPermission("/users/" + userId
+				+ "/permissions")));
+		assertFalse(matcher.implies(new CustomPermission(
+				"/users/otheruser/permissions")));
+
+		assertTrue(matcher.implies(new CustomPermission("applications:get:"
+				+ APP + ":/devices/testusername")));
+		assertTrue(matcher.implies(new CustomPermission("applications:get:"
+				+ APP + ":/devices/" + userId)));
+		assertFalse(matcher.implies(new CustomPermission("applications:get:"
+				+ APP + ":/devices/otheruser")));
+	}
+
+	@Test
+	public void compiledForUser() {
+		UserInfo user = new UserInfo(UUIDUtils.newTimeUUID(),
+				UUIDUtils.newTimeUUID(), "testusername", "Test User",
+				"test@usergrid.org", true, false, null);
+		UserInfo renamed = new UserInfo(user.getApplicationId(),
+				user.getUuid(), "renamed", "Test User", "test@usergrid.org",
+				true, false, null);
+
+		assertTrue(matcher(user, "/users/me/**").isFor(user));
+		assertFalse(matcher(user, "/users/me/**").isFor(renamed));
+		assertFalse(matcher(user, "/users/me/**").isFor(null));
+		assertTrue(matcher(null, "/users/me/**").isFor(null));
+	}
+
+	private static PermissionMatcher matcher(UserInfo user, String... granted) {
+		List<Permission> permissions = new ArrayList<Permission>();
+		for (String g : granted) {
+			permissions.add(new CustomPermission(g));
+		}
+		return new PermissionMatcher(permissions, user);
+	}
+}
@@ -0,0 +1,69 @@
+package org.usergrid.security.tokens;
+
+import static java.lang.System.currentTimeMillis;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.usergrid.security.AuthPrincipalInfo;
+import org.usergrid.security.AuthPrincipalType;
+import org.usergrid.security.tokens.cassandra.LocalTokenCache;
+import org.usergrid.utils.UUIDUtils;
+
+public class LocalTokenCacheTest {
+
+    @Test
+    public void getPutInvalidate() {
+        LocalTokenCache cache = new LocalTokenCache(100, 60);
+        TokenInfo tokenInfo = token();
+
+        assertNull(cache.get(tokenInfo.getUuid()));
+
+        cache.put(tokenInfo, Long.MAX_VALUE);
+
+        TokenInfo cached = cache.get(tokenInfo.getUuid());
+        assertNotNull(cached);
+        assertEquals(tokenInfo.getAccessed(), cached.getAccessed());
+        assertEquals(tokenInfo.getPrincipal().getUuid(), cached.getPrincipal().getUuid());
+
+        // changes to what was returned don't reach the cache
+        cached.setAccessed(0);
+        assertEquals(tokenInfo.getAccessed(), cache.get(tokenInfo.getUuid()).getAccessed());
+
+        cached.setAccessed(tokenInfo.getAccessed() + 1000);
+        cache.update(cached);
+        assertEquals(tokenInfo.getAccessed() + 1000, cache.get(tokenInfo.getUuid()).getAccessed());
+
+        cache.invalidate(tokenInfo.getUuid());
+        assertNull(cache.get(tokenInfo.getUuid()));
+
+        // nothing to update once it's gone
+        cache.update(cached);
+        assertNull(cache.get(tokenInfo.getUuid()));
+    }
+
+    @Test
+    public void expired() {
+        LocalTokenCache cache = new LocalTokenCache(100, 60);
+        TokenInfo tokenInfo = token();
+
+        cache.put(tokenInfo, currentTimeMillis() - 1);
+        assertNull(cache.get(tokenInfo.getUuid()));
+    }
+
+    @Test
+    public void disabled() {
+        LocalTokenCache cache = new LocalTokenCache(0, 60);
+        TokenInfo tokenInfo = token();
+
+        cache.put(tokenInfo, Long.MAX_VALUE);
+        assertNull(cache.get(tokenInfo.getUuid()));
+    }
+
+    private static TokenInfo token() {
+        long now = currentTimeMillis();
+        return new TokenInfo(UUIDUtils.newTimeUUID(), "access", now, now, 0, 60000, new AuthPrincipalInfo(
+                AuthPrincipalType.APPLICATION_USER, UUIDUtils.newTimeUUID(), UUIDUtils.newTimeUUID()), null);
+    }
+}
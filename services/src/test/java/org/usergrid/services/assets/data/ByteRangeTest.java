@@ -0,0 +1,73 @@
+package org.usergrid.services.assets.data;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+  @Test
+  public void singleRanges() {
+    List<ByteRange> ranges = ByteRange.parse("bytes=0-499", 1000);
+    assertEquals(1, ranges.size());
+    assertEquals(0, ranges.get(0).getFirst());
+    assertEquals(499, ranges.get(0).getLast());
+    assertEquals(500, ranges.get(0).getLength());
+    assertEquals("bytes 0-499/1000", ranges.get(0).toContentRange(1000));
+
+    // open ended and past the end are trimmed to the size
+    ranges = ByteRange.parse("bytes=900-", 1000);
+    assertEquals(900, ranges.get(0).getFirst());
+    assertEquals(999, ranges.get(0).getLast());
+    ranges = ByteRange.parse("bytes=900-5000", 1000);
+    assertEquals(999, ranges.get(0).getLast());
+
+    // the last bytes
+    ranges = ByteRange.parse("bytes=-100", 1000);
+    assertEquals(900, ranges.get(0).getFirst());
+    assertEquals(999, ranges.get(0).getLast());
+    ranges = ByteRange.parse("bytes=-5000", 1000);
+    assertEquals(0, ranges.get(0).getFirst());
+  }
+
+  @Test
+  public void multipleRanges() {
+    List<ByteRange> ranges = ByteRange.parse("bytes=0-0, 10-19,-1", 1000);
+    assertEquals(3, ranges.size());
+    assertEquals(1, ranges.get(0).getLength());
+    assertEquals(10, ranges.get(1).getFirst());
+    assertEquals(19, ranges.get(1).getLast());
+    assertEquals(999, ranges.get(2).getFirst());
+
+    // unsatisfiable ones are dropped
+    ranges = ByteRange.parse("bytes=0-9,2000-2010", 1000);
+    assertEquals(1, ranges.size());
+  }
+
+  @Test
+  public void unsatisfiable() {
+    assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+    assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+    assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+  }
+
+  @Test
+  public void ignored() {
+    assertNull(ByteRange.parse(null, 1000));
+    assertNull(ByteRange.parse("", 1000));
+    assertNull(ByteRange.parse("items=0-10", 1000));
+    assertNull(ByteRange.parse("bytes=10", 1000));
+    assertNull(ByteRange.parse("bytes=20-10", 1000));
+    assertNull(ByteRange.parse("bytes=a-b", 1000));
+
+    StringBuilder header = new StringBuilder("bytes=0-0");
+    for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+      header.append(",").append(i).append("-").append(i);
+    }
+    assertNull(ByteRange.parse(header.toString(), 1000));
+  }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.usergrid.count.common.Count;
+import com.usergrid.count.common.CountCodec;
+import com.usergrid.count.common.CountSerDeUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricPredicate;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import com.yammer.metrics.reporting.ConsoleReporter;
+
+/**
+ * 
+ * Compares the JSON and binary transport encodings of counter batches.
+ * Doesn't need Cassandra.
+ * 
+ */
+public class CountCodecBenchMark extends ToolBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(CountCodecBenchMark.class);
+
+    private final Timer jsonEncode = Metrics.newTimer(CountCodecBenchMark.class, "json_encode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+    private final Timer jsonDecode = Metrics.newTimer(CountCodecBenchMark.class, "json_decode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+    private final Timer binaryEncode = Metrics.newTimer(CountCodecBenchMark.class, "binary_encode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+    private final Timer binaryDecode = Metrics.newTimer(CountCodecBenchMark.class, "binary_decode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+
+    @Override
+    @SuppressWarnings("static-access")
+    public Options createOptions() {
+
+        Option countOption = OptionBuilder.withArgName("count").hasArg().isRequired(true)
+                .withDescription("Number of batches to encode").create("count");
+
+        Option batchOption = OptionBuilder.withArgName("batch").hasArg().isRequired(true)
+                .withDescription("Number of counts per batch").create("batch");
+
+        Options options = new Options();
+        options.addOption(countOption);
+        options.addOption(batchOption);
+
+        return options;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.usergrid.tools.ToolBase#runTool(org.apache.commons.cli.CommandLine)
+     */
+    @Override
+    public void runTool(CommandLine line) throws Exception {
+        int count = Integer.parseInt(line.getOptionValue("count"));
+        int batchSize = Integer.parseInt(line.getOptionValue("batch"));
+
+        // string keys since the JSON encoding can't round trip byte buffers
+        List<Count> batch = new ArrayList<Count>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new Count("AggregateCounters", UUID.randomUUID().toString(),
+                    System.currentTimeMillis() + i, i));
+        }
+
+        // warm up the JIT before measuring
+        for (int i = 0; i < Math.min(count, 1000); i++) {
+            for (Count c : batch) {
+                CountSerDeUtils.deserialize(CountSerDeUtils.serialize(c));
+            }
+            CountCodec.decodeBatch(CountCodec.encodeBatch(batch));
+        }
+
+        long jsonBytes = 0;
+        long binaryBytes = 0;
+
+        for (int i = 0; i < count; i++) {
+            List<String> json = new ArrayList<String>(batchSize);
+            TimerContext timer = jsonEncode.time();
+            for (Count c : batch) {
+                json.add(CountSerDeUtils.serialize(c));
+            }
+            timer.stop();
+
+            timer = jsonDecode.time();
+            for (String s : json) {
+                CountSerDeUtils.deserialize(s);
+            }
+            timer.stop();
+
+            timer = binaryEncode.time();
+            byte[] bytes = CountCodec.encodeBatch(batch);
+            timer.stop();
+
+            timer = binaryDecode.time();
+            CountCodec.decodeBatch(bytes);
+            timer.stop();
+
+            for (String s : json) {
+                jsonBytes += s.length();
+            }
+            binaryBytes += bytes.length;
+        }
+
+        logger.info("JSON bytes: {} binary bytes: {}", jsonBytes, binaryBytes);
+
+        ConsoleReporter reporter = new ConsoleReporter(Metrics.defaultRegistry(), System.out,
+                MetricPredicate.ALL);
+        reporter.run();
+    }
+}
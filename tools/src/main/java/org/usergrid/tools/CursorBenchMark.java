@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.tools;
+
+import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
+import static org.usergrid.utils.ConversionUtils.bytes;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.hector.api.beans.DynamicComposite;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.persistence.cassandra.CursorCache;
+import org.usergrid.utils.UUIDUtils;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricPredicate;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import com.yammer.metrics.reporting.ConsoleReporter;
+
+/**
+ *
+ * Compares the text and binary query cursor formats. Doesn't need Cassandra.
+ *
+ */
+public class CursorBenchMark extends ToolBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(CursorBenchMark.class);
+
+    private final Timer textEncode = Metrics.newTimer(CursorBenchMark.class, "text_encode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+    private final Timer textDecode = Metrics.newTimer(CursorBenchMark.class, "text_decode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+    private final Timer binaryEncode = Metrics.newTimer(CursorBenchMark.class, "binary_encode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+    private final Timer binaryDecode = Metrics.newTimer(CursorBenchMark.class, "binary_decode",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+
+    @Override
+    @SuppressWarnings("static-access")
+    public Options createOptions() {
+
+        Option countOption = OptionBuilder.withArgName("count").hasArg().isRequired(true)
+                .withDescription("Number of cursors to encode").create("count");
+
+        Option slicesOption = OptionBuilder.withArgName("slices").hasArg().isRequired(true)
+                .withDescription("Number of slices per cursor").create("slices");
+
+        Options options = new Options();
+        options.addOption(countOption);
+        options.addOption(slicesOption);
+
+        return options;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.usergrid.tools.ToolBase#runTool(org.apache.commons.cli.CommandLine)
+     */
+    @Override
+    public void runTool(CommandLine line) throws Exception {
+        int count = Integer.parseInt(line.getOptionValue("count"));
+        int sliceCount = Integer.parseInt(line.getOptionValue("slices"));
+
+        // index columns like the ones slice cursors point at
+        Random random = new Random();
+        Map<Integer, ByteBuffer> slices = new LinkedHashMap<Integer, ByteBuffer>();
+        for (int i = 0; i < sliceCount; i++) {
+            slices.put(random.nextInt(), new DynamicComposite((byte) 's', "value" + i,
+                    UUIDUtils.newTimeUUID()).serialize());
+        }
+
+        // warm up the JIT before measuring
+        for (int i = 0; i < Math.min(count, 1000); i++) {
+            new CursorCache(encodeText(slices));
+            new CursorCache(encodeBinary(slices));
+        }
+
+        long textBytes = 0;
+        long binaryBytes = 0;
+
+        for (int i = 0; i < count; i++) {
+            TimerContext timer = textEncode.time();
+            String text = encodeText(slices);
+            timer.stop();
+
+            timer = textDecode.time();
+            CursorCache parsed = new CursorCache(text);
+            for (Integer hash : slices.keySet()) {
+                parsed.getCursorBytes(hash);
+            }
+            timer.stop();
+
+            timer = binaryEncode.time();
+            String binary = encodeBinary(slices);
+            timer.stop();
+
+            timer = binaryDecode.time();
+            parsed = new CursorCache(binary);
+            for (Integer hash : slices.keySet()) {
+                parsed.getCursorBytes(hash);
+            }
+            timer.stop();
+
+            textBytes += text.length();
+            binaryBytes += binary.length();
+        }
+
+        logger.info("Text cursor chars: {} binary cursor chars: {}", textBytes / count,
+                binaryBytes / count);
+
+        ConsoleReporter reporter = new ConsoleReporter(Metrics.defaultRegistry(), System.out,
+                MetricPredicate.ALL);
+        reporter.run();
+    }
+
+    private static String encodeBinary(Map<Integer, ByteBuffer> slices) {
+        CursorCache cache = new CursorCache(null);
+        for (Entry<Integer, ByteBuffer> entry : slices.entrySet()) {
+            cache.setNextCursor(entry.getKey(), entry.getValue());
+        }
+        return cache.asString();
+    }
+
+    /**
+     * The text format cursors had before the binary one
+     */
+    private static String encodeText(Map<Integer, ByteBuffer> slices) {
+        StringBuffer buff = new StringBuffer();
+
+        for (Entry<Integer, ByteBuffer> entry : slices.entrySet()) {
+            buff.append(entry.getKey());
+            buff.append(":");
+            buff.append(encodeBase64URLSafeString(bytes(entry.getValue())));
+            buff.append("|");
+        }
+
+        buff.setLength(buff.length() - 1);
+
+        return encodeBase64URLSafeString(buff.toString().getBytes());
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2012 Apigee Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.usergrid.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.utils.UUIDUtils;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricPredicate;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import com.yammer.metrics.reporting.ConsoleReporter;
+
+/**
+ *
+ * Measures time UUID generation with many threads generating at once. Doesn't
+ * need Cassandra.
+ *
+ */
+public class UUIDBenchMark extends ToolBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(UUIDBenchMark.class);
+
+    /**
+     * Each timing covers a batch, single UUIDs are too quick to time
+     */
+    private static final int BATCH = 1000;
+
+    private final Timer newTimeUUID = Metrics.newTimer(UUIDBenchMark.class, "newTimeUUID_batch",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+    private final Timer generator = Metrics.newTimer(UUIDBenchMark.class, "generator_batch",
+            TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+
+    @Override
+    @SuppressWarnings("static-access")
+    public Options createOptions() {
+
+        Option countOption = OptionBuilder.withArgName("count").hasArg().isRequired(true)
+                .withDescription("Number of UUIDs each thread generates").create("count");
+
+        Option threadsOption = OptionBuilder.withArgName("threads").hasArg().isRequired(true)
+                .withDescription("Number of generating threads").create("threads");
+
+        Options options = new Options();
+        options.addOption(countOption);
+        options.addOption(threadsOption);
+
+        return options;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.usergrid.tools.ToolBase#runTool(org.apache.commons.cli.CommandLine)
+     */
+    @Override
+    public void runTool(CommandLine line) throws Exception {
+        final int count = Integer.parseInt(line.getOptionValue("count"));
+        int threads = Integer.parseInt(line.getOptionValue("threads"));
+
+        // warm up the JIT before measuring
+        for (int i = 0; i < 100000; i++) {
+            UUIDUtils.newTimeUUID();
+            UUIDUtils.generator.generate();
+        }
+
+        long newTimeUUIDMillis = run(threads, count, newTimeUUID, false);
+        long generatorMillis = run(threads, count, generator, true);
+
+        logger.info("{} threads generating {} UUIDs each", threads, count);
+        logger.info("newTimeUUID took {} ms, the generator took {} ms", newTimeUUIDMillis,
+                generatorMillis);
+
+        ConsoleReporter reporter = new ConsoleReporter(Metrics.defaultRegistry(), System.out,
+                MetricPredicate.ALL);
+        reporter.run();
+    }
+
+    /**
+     * Run all the threads at once
+     *
+     * @return how long until the last one finished
+     */
+    private long run(int threads, final int count, final Timer timer, final boolean useGenerator)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> jobs = new ArrayList<Future<Void>>(threads);
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < threads; i++) {
+            jobs.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < count; i += BATCH) {
+                        TimerContext context = timer.time();
+                        for (int j = 0; j < BATCH; j++) {
+                            if (useGenerator) {
+                                UUIDUtils.generator.generate();
+                            } else {
+                                UUIDUtils.newTimeUUID();
+                            }
+                        }
+                        context.stop();
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<Void> job : jobs) {
+            job.get();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+
+        executor.shutdown();
+
+        return elapsed;
+    }
+}